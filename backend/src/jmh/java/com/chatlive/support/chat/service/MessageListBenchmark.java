@@ -0,0 +1,124 @@
+package com.chatlive.support.chat.service;
+
+import com.chatlive.support.chat.api.MessageItem;
+import com.chatlive.support.chat.api.MessagePage;
+import com.chatlive.support.chat.repo.MessageRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One REST message-list page ({@code messages} rows, 200 is the API maximum) from stored rows to response bytes:
+ * content passed through as {@link RawValue} after the streaming well-formedness check (as {@code MessageService}
+ * builds list items) against the previous {@code readTree} per row + tree serialization.
+ *
+ * Latency is us/op; add {@code -prof gc} for allocation per page ({@code gc.alloc.rate.norm}).
+ * Run with {@code mvn -Pbench test-compile exec:exec -Dbench.args="MessageListBenchmark -prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageListBenchmark {
+
+    /** Shape of the pre-change item: content parsed into a tree. */
+    public record TreeItem(
+            String id,
+            String sender_type,
+            String sender_id,
+            String content_type,
+            JsonNode content,
+            long created_at,
+            long seq
+    ) {
+    }
+
+    public record TreePage(
+            List<TreeItem> messages,
+            boolean has_more,
+            String next_after_msg_id,
+            boolean reset,
+            Long next_after_seq,
+            boolean has_more_before,
+            String prev_before_msg_id,
+            Long prev_before_seq
+    ) {
+    }
+
+    @Param({"200"})
+    public int messages;
+
+    private ObjectMapper objectMapper;
+    private List<MessageRepository.MessageRow> rows;
+
+    @Setup
+    public void setup() {
+        objectMapper = new ObjectMapper();
+        rows = new ArrayList<>(messages);
+        var base = Instant.parse("2026-01-01T00:00:00Z");
+        for (int i = 0; i < messages; i++) {
+            String contentType;
+            String content;
+            if (i % 10 == 9) {
+                contentType = "file";
+                content = "{\"attachment_id\":\"att_" + i + "\",\"filename\":\"报价单-" + i + ".pdf\","
+                        + "\"content_type\":\"application/pdf\",\"size_bytes\":" + (10_000 + i) + "}";
+            } else {
+                contentType = "text";
+                content = "{\"text\":\"您好，我想咨询一下订单 #" + i + " 的发货时间，谢谢！Hello, when will my order ship?\"}";
+            }
+            rows.add(new MessageRepository.MessageRow("msg_" + i, "t1", "conv-1", i % 2 == 0 ? "customer" : "agent",
+                    i % 2 == 0 ? "visitor-42" : "agent-7", null, contentType, content, base.plusSeconds(i), i + 1));
+        }
+    }
+
+    @Benchmark
+    public byte[] rawContent() throws JsonProcessingException {
+        var items = new ArrayList<MessageItem>(rows.size());
+        for (var row : rows) {
+            items.add(new MessageItem(row.id(), row.senderType(), row.senderId(), row.contentType(),
+                    new RawValue(MessageService.contentJsonOrEmpty(objectMapper, row.contentJson())),
+                    row.createdAt().getEpochSecond(), row.seq()));
+        }
+        var last = rows.getLast();
+        return objectMapper.writeValueAsBytes(
+                new MessagePage(items, false, last.id(), false, last.seq(), false, null, null));
+    }
+
+    /** The pre-change path: every row parsed into a tree, then serialized again. */
+    @Benchmark
+    public byte[] treeContent() throws JsonProcessingException {
+        var items = new ArrayList<TreeItem>(rows.size());
+        for (var row : rows) {
+            JsonNode content;
+            try {
+                content = objectMapper.readTree(row.contentJson());
+            } catch (Exception e) {
+                content = objectMapper.createObjectNode();
+            }
+            items.add(new TreeItem(row.id(), row.senderType(), row.senderId(), row.contentType(), content,
+                    row.createdAt().getEpochSecond(), row.seq()));
+        }
+        var last = rows.getLast();
+        return objectMapper.writeValueAsBytes(new TreePage(items, false, last.id(), false, last.seq(), false, null, null));
+    }
+}
@@ -0,0 +1,70 @@
+package com.chatlive.support.chat.service.assignment;
+
+import com.chatlive.support.chat.repo.AgentProfileRepository;
+import com.chatlive.support.chat.service.assignment.sim.AssignmentSimulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one {@link AssignmentStrategy#select} over tenant-sized candidate lists.
+ *
+ * Loads are random with {@code fullPercent} of the candidates already at max_concurrent, and the cursor sits in the
+ * middle of the list, so round-robin has to walk past full agents and least-open scans everything.
+ * Run with {@code mvn -Pbench test-compile exec:exec} (see pom.xml).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssignmentStrategyBenchmark {
+
+    @Param({"10", "100", "500", "2000"})
+    public int candidates;
+
+    @Param({"round_robin", "least_open", "weighted"})
+    public String strategy;
+
+    @Param({"0", "80"})
+    public int fullPercent;
+
+    private AssignmentStrategy selected;
+    private AssignmentContext ctx;
+
+    @Setup
+    public void setup() {
+        var random = new Random(7);
+        var rows = new ArrayList<AgentProfileRepository.AgentCandidateRow>(candidates);
+        var loads = new HashMap<String, Integer>();
+        for (int i = 0; i < candidates; i++) {
+            var userId = String.format("agent-%05d", i);
+            int maxConcurrent = 2 + random.nextInt(4);
+            rows.add(new AgentProfileRepository.AgentCandidateRow(userId, maxConcurrent));
+            int load = random.nextInt(100) < fullPercent ? maxConcurrent : random.nextInt(maxConcurrent);
+            if (load > 0) loads.put(userId, load);
+        }
+        selected = AssignmentSimulator.STRATEGIES.get(strategy).get();
+        ctx = new AssignmentContext("bench", AssignmentEngine.DEFAULT_GROUP_KEY,
+                rows.get(candidates / 2).userId(), rows, loads);
+    }
+
+    @Benchmark
+    public AgentProfileRepository.AgentCandidateRow select() {
+        return selected.select(ctx);
+    }
+}
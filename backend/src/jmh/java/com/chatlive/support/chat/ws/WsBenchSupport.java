@@ -0,0 +1,174 @@
+package com.chatlive.support.chat.ws;
+
+import com.chatlive.support.chat.repo.ConversationEventRepository;
+import com.chatlive.support.chat.repo.RecentMessageCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Plain stubs for the WebSocket benchmarks: Mockito mocks on the hot path would dominate the scores.
+ */
+final class WsBenchSupport {
+
+    private WsBenchSupport() {
+    }
+
+    /** Cluster bus that drops everything. */
+    static final class NoopClusterBus implements WsClusterBus {
+        @Override
+        public void publish(WsClusterEvent event) {
+        }
+
+        @Override
+        public void subscribe(Consumer<WsClusterEvent> listener) {
+        }
+    }
+
+    /** Outbound dispatcher that only counts frames instead of queueing them for a writer. */
+    static final class CountingOutbound extends WsOutboundDispatcher {
+        long frames;
+        long bytes;
+
+        CountingOutbound() {
+            super(new SimpleMeterRegistry(), 256, 1 << 20, "drop");
+        }
+
+        @Override
+        public void register(WebSocketSession session) {
+        }
+
+        @Override
+        public void unregister(WebSocketSession session) {
+        }
+
+        @Override
+        public boolean send(WebSocketSession session, TextMessage frame) {
+            frames++;
+            bytes += frame.getPayloadLength();
+            return true;
+        }
+
+        @Override
+        public void closeAfterFlush(WebSocketSession session, CloseStatus status) {
+        }
+    }
+
+    static WsBroadcaster broadcaster(ObjectMapper objectMapper, WsSessionRegistry registry, WsOutboundDispatcher outbound) {
+        return new WsBroadcaster(
+                objectMapper,
+                registry,
+                mock(ConversationEventRepository.class, withSettings().stubOnly()),
+                mock(RecentMessageCache.class, withSettings().stubOnly()),
+                outbound,
+                new NoopClusterBus(),
+                new WsFrameWriter(objectMapper)
+        );
+    }
+
+    /** Open session that accepts and discards everything. */
+    static final class StubSession implements WebSocketSession {
+        private final String id;
+        private final Map<String, Object> attributes = new HashMap<>();
+
+        StubSession(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public URI getUri() {
+            return null;
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return HttpHeaders.EMPTY;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return List.of();
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.chatlive.support.chat.ws;
+
+import com.chatlive.support.auth.service.jwt.JwtClaims;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One MSG broadcast to {@code recipients} conversation subscribers: encoded once and shared
+ * ({@link WsBroadcaster#broadcastToConversation}) against the previous per-recipient
+ * {@code writeValueAsString} + {@code new TextMessage}.
+ *
+ * Throughput is ops/ms; add {@code -prof gc} for allocation per op ({@code gc.alloc.rate.norm}).
+ * Run with {@code mvn -Pbench test-compile exec:exec -Dbench.args="WsBroadcastEncodingBenchmark -prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WsBroadcastEncodingBenchmark {
+
+    private static final String CONVERSATION_ID = "conv-1";
+
+    @Param({"1", "10", "500"})
+    public int recipients;
+
+    private ObjectMapper objectMapper;
+    private WsSessionRegistry registry;
+    private WsBenchSupport.CountingOutbound outbound;
+    private WsBroadcaster broadcaster;
+    private WebSocketSession[] sessions;
+    private ObjectNode payload;
+
+    @Setup
+    public void setup() {
+        objectMapper = new ObjectMapper();
+        registry = new WsSessionRegistry();
+        outbound = new WsBenchSupport.CountingOutbound();
+        broadcaster = WsBenchSupport.broadcaster(objectMapper, registry, outbound);
+
+        sessions = new WebSocketSession[recipients];
+        for (int i = 0; i < recipients; i++) {
+            var s = new WsBenchSupport.StubSession("s" + i);
+            var claims = new JwtClaims("agent-" + i, "t1", "agent", "agent-" + i, null);
+            registry.bind(s, new WsSessionRegistry.SessionContext(claims, "agent", null, "10.0.0.1"));
+            registry.subscribe(CONVERSATION_ID, s);
+            broadcaster.register(s);
+            sessions[i] = s;
+        }
+
+        payload = objectMapper.createObjectNode();
+        payload.put("type", "MSG");
+        payload.put("conversation_id", CONVERSATION_ID);
+        var msg = payload.putObject("msg");
+        msg.put("id", "msg_0b5d7c2e-6a55-4e0b-9d0c-6f4f3f7b2a11");
+        msg.put("sender_type", "customer");
+        msg.put("sender_id", "visitor-42");
+        msg.put("content_type", "text");
+        msg.putObject("content").put("text", "您好，我想咨询一下订单的发货时间，谢谢！Hello, when will my order ship?");
+        msg.put("created_at", 1_760_000_000L);
+        msg.put("seq", 1234);
+    }
+
+    @Benchmark
+    public long encodeOnce() {
+        broadcaster.broadcastToConversation(CONVERSATION_ID, payload);
+        return outbound.frames;
+    }
+
+    /** The pre-change path: every recipient serialized its own copy. */
+    @Benchmark
+    public long encodePerRecipient() throws JsonProcessingException {
+        for (var sessionId : registry.getSubscriberSessionIds(CONVERSATION_ID)) {
+            var frame = new TextMessage(objectMapper.writeValueAsString(payload));
+            outbound.send(sessions[0], frame);
+        }
+        return outbound.frames;
+    }
+}
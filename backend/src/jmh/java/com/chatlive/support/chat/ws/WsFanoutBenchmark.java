@@ -0,0 +1,105 @@
+package com.chatlive.support.chat.ws;
+
+import com.chatlive.support.auth.service.jwt.JwtClaims;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Targeted sends and disconnects while {@code unrelatedSessions} visitor sockets of other tenants are connected.
+ *
+ * Recipients are fixed (20 agent sessions of one tenant), so with the registry's secondary indexes every score
+ * should stay flat as {@code unrelatedSessions} grows. Delivery is stubbed out (see {@link WsBenchSupport}), so
+ * this measures recipient lookup and encoding, not socket writes.
+ * Run with {@code mvn -Pbench test-compile exec:exec -Dbench.args="WsFanoutBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WsFanoutBenchmark {
+
+    private static final int AGENTS = 20;
+
+    @Param({"0", "10000", "100000"})
+    public int unrelatedSessions;
+
+    private WsSessionRegistry registry;
+    private WsBroadcaster broadcaster;
+    private ObjectNode payload;
+    private WebSocketSession churnSession;
+    private WsSessionRegistry.SessionContext churnContext;
+
+    private static WebSocketSession session(String id) {
+        return new WsBenchSupport.StubSession(id);
+    }
+
+    private void connect(WebSocketSession session, WsSessionRegistry.SessionContext ctx) {
+        registry.bind(session, ctx);
+        broadcaster.register(session);
+    }
+
+    @Setup
+    public void setup() {
+        var objectMapper = new ObjectMapper();
+        registry = new WsSessionRegistry();
+        broadcaster = WsBenchSupport.broadcaster(objectMapper, registry, new WsBenchSupport.CountingOutbound());
+
+        for (int i = 0; i < AGENTS; i++) {
+            var claims = new JwtClaims("agent-" + i, "t1", "agent", "agent-" + i, null);
+            connect(session("a" + i), new WsSessionRegistry.SessionContext(claims, "agent", null, "10.0.0.1"));
+        }
+        for (int i = 0; i < unrelatedSessions; i++) {
+            var claims = new JwtClaims("visitor-" + i, "t" + (2 + i % 500), "visitor", null, "site-" + (i % 500));
+            var s = session("v" + i);
+            connect(s, new WsSessionRegistry.SessionContext(claims, "visitor", null, "10.1." + (i / 250 % 256) + "." + (i % 250)));
+            registry.subscribe("conv-" + i, s);
+        }
+
+        churnSession = session("churn");
+        churnContext = new WsSessionRegistry.SessionContext(
+                new JwtClaims("visitor-churn", "t2", "visitor", null, "site-2"), "visitor", null, "10.9.9.9");
+        payload = objectMapper.createObjectNode();
+        payload.put("type", "AGENT_STATUS");
+        payload.put("user_id", "agent-0");
+        payload.put("status", "online");
+    }
+
+    @Benchmark
+    public void broadcastToTenantAgents() {
+        broadcaster.broadcastToTenantAgents("t1", payload);
+    }
+
+    @Benchmark
+    public void sendToTenantAgentUser() {
+        broadcaster.sendToTenantAgentUser("t1", "agent-7", payload);
+    }
+
+    @Benchmark
+    public int kickVisitorSessionsBySiteAndIp() {
+        // No session matches: measures the lookup, which used to walk every live session.
+        return broadcaster.kickVisitorSessionsBySiteAndIp("site-1", "192.0.2.1", "banned");
+    }
+
+    @Benchmark
+    public void visitorConnectSubscribeDisconnect() {
+        registry.bind(churnSession, churnContext);
+        registry.subscribe("conv-churn", churnSession);
+        registry.unbind(churnSession);
+    }
+}
@@ -0,0 +1,161 @@
+package com.chatlive.support.chat.ws;
+
+import com.chatlive.support.chat.repo.ConversationEventRepository;
+import com.chatlive.support.chat.repo.MessageRepository;
+import com.chatlive.support.chat.service.MessageService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.TextMessage;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One first-page SYNC_RES ({@code messages} rows plus {@code events} conversation events) from stored rows to the
+ * outgoing frame: streamed by {@link WsFrameWriter} against the previous path, which parsed every content/data
+ * column into a tree, built an ObjectNode frame and serialized it with {@code writeValueAsString}. Both frames are
+ * then sized twice, as {@link WsOutboundDispatcher} does on enqueue and on send; a String-built frame re-encodes
+ * for each.
+ *
+ * Latency is us/op; add {@code -prof gc} for allocation per frame ({@code gc.alloc.rate.norm}).
+ * Run with {@code mvn -Pbench test-compile exec:exec -Dbench.args="WsSyncFrameBenchmark -prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WsSyncFrameBenchmark {
+
+    private static final String CONVERSATION_ID = "conv-1";
+
+    @Param({"50", "200"})
+    public int messages;
+
+    @Param({"20"})
+    public int events;
+
+    private ObjectMapper objectMapper;
+    private WsFrameWriter frameWriter;
+    private MessageService.MessageRowPage page;
+    private List<ConversationEventRepository.ConversationEventRawRow> eventRows;
+
+    @Setup
+    public void setup() {
+        objectMapper = new ObjectMapper();
+        frameWriter = new WsFrameWriter(objectMapper);
+        var base = Instant.parse("2026-01-01T00:00:00Z");
+
+        var rows = new ArrayList<MessageRepository.MessageRow>(messages);
+        for (int i = 0; i < messages; i++) {
+            String contentType;
+            String content;
+            if (i % 10 == 9) {
+                contentType = "file";
+                content = "{\"attachment_id\":\"att_" + i + "\",\"filename\":\"报价单-" + i + ".pdf\","
+                        + "\"content_type\":\"application/pdf\",\"size_bytes\":" + (10_000 + i) + "}";
+            } else {
+                contentType = "text";
+                content = "{\"text\":\"您好，我想咨询一下订单 #" + i + " 的发货时间，谢谢！Hello, when will my order ship?\"}";
+            }
+            rows.add(new MessageRepository.MessageRow("msg_" + i, "t1", CONVERSATION_ID,
+                    i % 2 == 0 ? "customer" : "agent", i % 2 == 0 ? "visitor-42" : "agent-7", null,
+                    contentType, content, base.plusSeconds(i), i + 1));
+        }
+        var last = rows.getLast();
+        page = new MessageService.MessageRowPage(rows, false, last.id(), false, last.seq(), false, null, null);
+
+        eventRows = new ArrayList<>(events);
+        for (int i = 0; i < events; i++) {
+            eventRows.add(new ConversationEventRepository.ConversationEventRawRow("ev_" + i, "assigned",
+                    base.plusSeconds(i), "{\"from_agent_user_id\":null,\"to_agent_user_id\":\"agent-7\",\"reason\":\"auto\"}"));
+        }
+    }
+
+    @Benchmark
+    public int streamed() throws IOException {
+        return dispatched(frameWriter.syncRes(CONVERSATION_ID, null, page, eventRows));
+    }
+
+    /** The pre-change path: trees for every content/data column and the frame itself. */
+    @Benchmark
+    public int tree() throws IOException {
+        ObjectNode res = objectMapper.createObjectNode();
+        res.put("type", "SYNC_RES");
+        res.put("conversation_id", CONVERSATION_ID);
+
+        ArrayNode arr = objectMapper.createArrayNode();
+        for (var row : page.rows()) {
+            JsonNode content;
+            try {
+                content = objectMapper.readTree(row.contentJson());
+            } catch (Exception e) {
+                content = objectMapper.createObjectNode();
+            }
+            ObjectNode msgObj = objectMapper.createObjectNode();
+            msgObj.put("id", row.id());
+            msgObj.put("sender_type", row.senderType());
+            msgObj.put("sender_id", row.senderId());
+            msgObj.put("content_type", row.contentType());
+            msgObj.set("content", content);
+            msgObj.put("created_at", row.createdAt().getEpochSecond());
+            msgObj.put("seq", row.seq());
+            msgObj.put("preview_text", treePreviewText(row.contentType(), content));
+            arr.add(msgObj);
+        }
+        res.set("messages", arr);
+        res.put("has_more", page.hasMore());
+        res.put("next_after_msg_id", page.nextAfterMsgId());
+        res.put("next_after_seq", page.nextAfterSeq());
+
+        ArrayNode evArr = objectMapper.createArrayNode();
+        for (var ev : eventRows) {
+            ObjectNode o = objectMapper.createObjectNode();
+            o.put("conversation_id", CONVERSATION_ID);
+            o.put("event_id", ev.id());
+            o.put("event_key", ev.eventKey());
+            o.put("created_at", ev.createdAt().getEpochSecond());
+            o.set("data", objectMapper.readTree(ev.dataJson()));
+            evArr.add(o);
+        }
+        res.set("conversation_events", evArr);
+        return dispatched(new TextMessage(objectMapper.writeValueAsString(res)));
+    }
+
+    private static int dispatched(TextMessage frame) {
+        return frame.getPayloadLength() + frame.getPayloadLength();
+    }
+
+    private static String treePreviewText(String contentType, JsonNode content) {
+        if ("text".equals(contentType)) {
+            return treeNormalize(content.path("text").asText(""));
+        }
+        if ("file".equals(contentType)) {
+            var name = treeNormalize(content.path("filename").asText(""));
+            return name.isBlank() ? "[附件]" : "[附件] " + name;
+        }
+        return treeNormalize("[" + contentType + "]");
+    }
+
+    private static String treeNormalize(String s) {
+        var trimmed = s.replaceAll("\\s+", " ").trim();
+        return trimmed.length() > 200 ? trimmed.substring(0, 200) : trimmed;
+    }
+}
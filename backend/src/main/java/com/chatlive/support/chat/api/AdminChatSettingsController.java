@@ -41,6 +41,8 @@ public class AdminChatSettingsController {
     private final boolean defaultVisitorFileEnabled;
     private final boolean defaultAgentFileEnabled;
 
+    private final int retentionDays;
+
     public AdminChatSettingsController(
             JwtService jwtService,
             ChatInactivityTimeoutsRepository inactivityTimeoutsRepository,
@@ -55,7 +57,8 @@ public class AdminChatSettingsController {
             @Value("${app.conversation.inactivity-archive.minutes:60}") int defaultInactivityArchiveMinutes,
             @Value("${app.chat.file-sharing.visitor-enabled:true}") boolean defaultVisitorFileEnabled,
             @Value("${app.chat.file-sharing.agent-enabled:true}") boolean defaultAgentFileEnabled,
-            @Value("${app.assignment.strategy:round_robin}") String defaultAssignmentStrategyKey
+            @Value("${app.assignment.strategy:round_robin}") String defaultAssignmentStrategyKey,
+            @Value("${app.chat.retention.days:0}") int retentionDays
     ) {
         this.jwtService = jwtService;
         this.inactivityTimeoutsRepository = inactivityTimeoutsRepository;
@@ -73,6 +76,7 @@ public class AdminChatSettingsController {
         this.defaultAgentFileEnabled = defaultAgentFileEnabled;
 
         this.defaultAssignmentStrategyKey = normalizeStrategyKey(defaultAssignmentStrategyKey);
+        this.retentionDays = Math.max(0, retentionDays);
     }
 
     public record TranscriptForwardingDto(List<String> emails) {
@@ -118,9 +122,14 @@ public class AdminChatSettingsController {
         return getTranscriptForwarding(authorization);
     }
 
-    public record ChatAssignmentDto(String mode) {
+    /**
+     * {@code strategy} is the auto-assignment strategy (round_robin, least_open, weighted); null when mode is manual.
+     */
+    public record ChatAssignmentDto(String mode, String strategy) {
     }
 
+    private static final java.util.Set<String> AUTO_STRATEGIES = java.util.Set.of("round_robin", "least_open", "weighted");
+
     @GetMapping("/chat-assignment")
     public ApiResponse<ChatAssignmentDto> getChatAssignment(
             @RequestHeader(value = "Authorization", required = false) String authorization,
@@ -133,8 +142,10 @@ public class AdminChatSettingsController {
                 .orElse(defaultAssignmentStrategyKey);
         strategyKey = normalizeStrategyKey(strategyKey);
 
-        var mode = "manual".equals(strategyKey) ? "manual" : "auto";
-        return ApiResponse.ok(new ChatAssignmentDto(mode));
+        if ("manual".equals(strategyKey)) {
+            return ApiResponse.ok(new ChatAssignmentDto("manual", null));
+        }
+        return ApiResponse.ok(new ChatAssignmentDto("auto", strategyKey));
     }
 
     @PutMapping("/chat-assignment")
@@ -147,7 +158,21 @@ public class AdminChatSettingsController {
         var groupKey = normalizeGroupKey(groupId);
         var mode = (req == null || req.mode() == null) ? "auto" : req.mode().trim().toLowerCase();
 
-        var strategyKey = "manual".equals(mode) ? "manual" : "round_robin";
+        String strategyKey;
+        if ("manual".equals(mode)) {
+            strategyKey = "manual";
+        } else if (req == null || req.strategy() == null || req.strategy().isBlank()) {
+            // Switching back to auto without a strategy: keep the current auto strategy, else round_robin.
+            var current = assignmentStrategyConfigRepository.findStrategyKey(claims.tenantId(), groupKey)
+                    .map(AdminChatSettingsController::normalizeStrategyKey)
+                    .orElse("round_robin");
+            strategyKey = AUTO_STRATEGIES.contains(current) ? current : "round_robin";
+        } else {
+            strategyKey = normalizeStrategyKey(req.strategy());
+            if (!AUTO_STRATEGIES.contains(strategyKey)) {
+                throw new IllegalArgumentException("invalid_strategy");
+            }
+        }
         assignmentStrategyConfigRepository.upsert(claims.tenantId(), groupKey, strategyKey);
         return getChatAssignment(authorization, groupId);
     }
@@ -270,6 +295,19 @@ public class AdminChatSettingsController {
         ));
         }
 
+    /**
+     * Message/event history retention in days (0 = forever). Read-only: history is retired a whole month-partition
+     * at a time and partitions hold every tenant's rows, so it is one deployment-wide value
+     * ({@code app.chat.retention.days}, see MessagePartitionMaintenance), not a tenant setting.
+     */
+    @GetMapping("/retention")
+    public ApiResponse<RetentionDto> getRetention(
+            @RequestHeader(value = "Authorization", required = false) String authorization
+    ) {
+        requireAdminClaims(authorization);
+        return ApiResponse.ok(new RetentionDto(retentionDays));
+    }
+
     private JwtClaims requireAdminClaims(String authorization) {
         var token = JwtService.extractBearerToken(authorization)
                 .orElseThrow(() -> new IllegalArgumentException("missing_token"));
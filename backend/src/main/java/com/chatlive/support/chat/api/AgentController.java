@@ -4,10 +4,9 @@ import com.chatlive.support.auth.service.jwt.JwtService;
 import com.chatlive.support.chat.repo.AgentProfileRepository;
 import com.chatlive.support.chat.service.AssignmentService;
 import com.chatlive.support.chat.service.AgentPresenceService;
+import com.chatlive.support.chat.service.AgentStatusTracker;
+import com.chatlive.support.chat.service.assignment.AssignmentEngine;
 import com.chatlive.support.common.api.ApiResponse;
-import com.chatlive.support.chat.ws.WsBroadcaster;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.chatlive.support.user.repo.UserAccountRepository;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
@@ -25,8 +24,8 @@ public class AgentController {
     private final AssignmentService assignmentService;
     private final UserAccountRepository userAccountRepository;
         private final AgentPresenceService agentPresenceService;
-        private final WsBroadcaster broadcaster;
-        private final ObjectMapper objectMapper;
+        private final AgentStatusTracker agentStatusTracker;
+        private final AssignmentEngine assignmentEngine;
 
     public AgentController(
             JwtService jwtService,
@@ -34,16 +33,16 @@ public class AgentController {
             AssignmentService assignmentService,
                         UserAccountRepository userAccountRepository,
                         AgentPresenceService agentPresenceService,
-                        WsBroadcaster broadcaster,
-                        ObjectMapper objectMapper
+                        AgentStatusTracker agentStatusTracker,
+                        AssignmentEngine assignmentEngine
     ) {
         this.jwtService = jwtService;
         this.agentProfileRepository = agentProfileRepository;
         this.assignmentService = assignmentService;
         this.userAccountRepository = userAccountRepository;
                 this.agentPresenceService = agentPresenceService;
-                this.broadcaster = broadcaster;
-                this.objectMapper = objectMapper;
+                this.agentStatusTracker = agentStatusTracker;
+                this.assignmentEngine = assignmentEngine;
     }
 
         @PostMapping("/heartbeat")
@@ -361,28 +360,9 @@ public class AgentController {
     }
 
         private void broadcastAgentStatus(String tenantId, String userId) {
-                if (tenantId == null || tenantId.isBlank() || userId == null || userId.isBlank()) return;
-                var profile = agentProfileRepository.findByUserId(userId)
-                                .orElse(new AgentProfileRepository.AgentProfileRow(userId, "offline", 3));
-                var assignedActive = assignmentService.getAssignedActiveCount(tenantId, userId);
-                var maxC = Math.max(1, profile.maxConcurrent());
-                var remaining = Math.max(0, maxC - assignedActive);
-                var hasPresence = agentPresenceService.hasActiveSession(userId);
-                var status = hasPresence ? profile.status() : "offline";
-                if (hasPresence && "offline".equals(status)) {
-                        status = "online";
-                }
-                var effective = ("online".equals(status) && remaining == 0) ? "busy" : status;
-                var canAccept = "online".equals(status) && remaining > 0;
-
-                ObjectNode evt = objectMapper.createObjectNode();
-                evt.put("user_id", userId);
-                evt.put("status", status);
-                evt.put("effective_status", effective);
-                evt.put("max_concurrent", maxC);
-                evt.put("assigned_active", assignedActive);
-                evt.put("remaining_capacity", remaining);
-                evt.put("can_accept", canAccept);
-                broadcaster.broadcastAgentStatus(tenantId, evt);
+                // Broadcast (batched) only if status/capacity actually changed.
+                agentStatusTracker.markDirty(tenantId, userId);
+                // Profile status / max_concurrent may have changed: refresh the assignment model.
+                assignmentEngine.agentChanged(tenantId, userId);
         }
 }
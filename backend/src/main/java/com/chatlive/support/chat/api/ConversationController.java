@@ -3,6 +3,7 @@ package com.chatlive.support.chat.api;
 import com.chatlive.support.auth.service.jwt.JwtService;
 import com.chatlive.support.chat.service.ConversationService;
 import com.chatlive.support.chat.service.WorkbenchMetaService;
+import com.chatlive.support.chat.service.MessageSearchService;
 import com.chatlive.support.chat.service.MessageService;
 import com.chatlive.support.chat.service.QuickReplyService;
 import com.chatlive.support.common.api.ApiResponse;
@@ -17,6 +18,7 @@ public class ConversationController {
     private final ConversationService conversationService;
     private final JwtService jwtService;
     private final MessageService messageService;
+    private final MessageSearchService messageSearchService;
         private final WorkbenchMetaService workbenchMetaService;
         private final QuickReplyService quickReplyService;
 
@@ -24,12 +26,14 @@ public class ConversationController {
                         ConversationService conversationService,
                         JwtService jwtService,
                         MessageService messageService,
+                        MessageSearchService messageSearchService,
                         WorkbenchMetaService workbenchMetaService,
                         QuickReplyService quickReplyService
         ) {
         this.conversationService = conversationService;
         this.jwtService = jwtService;
         this.messageService = messageService;
+        this.messageSearchService = messageSearchService;
                 this.workbenchMetaService = workbenchMetaService;
                 this.quickReplyService = quickReplyService;
     }
@@ -86,13 +90,44 @@ public class ConversationController {
             @RequestHeader(value = "Authorization", required = false) String authorization,
             @PathVariable("id") String conversationId,
             @RequestParam(value = "after_msg_id", required = false) String afterMsgId,
+            @RequestParam(value = "after_seq", required = false) Long afterSeq,
+            @RequestParam(value = "before_msg_id", required = false) String beforeMsgId,
+            @RequestParam(value = "before_seq", required = false) Long beforeSeq,
+            @RequestParam(value = "tail", required = false, defaultValue = "false") boolean tail,
             @RequestParam(value = "limit", required = false, defaultValue = "50") int limit
     ) {
         var token = JwtService.extractBearerToken(authorization)
                 .orElseThrow(() -> new IllegalArgumentException("missing_token"));
         var claims = jwtService.parse(token);
         var safeLimit = Math.max(1, Math.min(limit, 200));
-        return ApiResponse.ok(messageService.listMessages(claims, conversationId, afterMsgId, safeLimit));
+        // tail / before_*: newest-first history for lazy scroll-back (rows are still returned ascending).
+        if (tail || beforeSeq != null || (beforeMsgId != null && !beforeMsgId.isBlank())) {
+            return ApiResponse.ok(messageService.listMessagesBefore(claims, conversationId, beforeMsgId, beforeSeq, safeLimit));
+        }
+        return ApiResponse.ok(messageService.listMessages(claims, conversationId, afterMsgId, afterSeq, safeLimit));
+    }
+
+    /**
+     * Full-text search over the tenant's messages (archived history included); newest first, paged by
+     * {@code cursor} = the previous page's {@code next_cursor}. {@code from} / {@code to} are epoch seconds.
+     */
+    @GetMapping("/messages/search")
+    public ApiResponse<MessageSearchPage> searchMessages(
+            @RequestHeader(value = "Authorization", required = false) String authorization,
+            @RequestParam(value = "q") String query,
+            @RequestParam(value = "site_id", required = false) String siteId,
+            @RequestParam(value = "agent_user_id", required = false) String agentUserId,
+            @RequestParam(value = "tag", required = false) String tag,
+            @RequestParam(value = "from", required = false) Long from,
+            @RequestParam(value = "to", required = false) Long to,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false, defaultValue = "20") int limit
+    ) {
+        var token = JwtService.extractBearerToken(authorization)
+                .orElseThrow(() -> new IllegalArgumentException("missing_token"));
+        var claims = jwtService.parse(token);
+        var safeLimit = Math.max(1, Math.min(limit, 100));
+        return ApiResponse.ok(messageSearchService.search(claims, query, siteId, agentUserId, tag, from, to, cursor, safeLimit));
     }
 
     @PostMapping("/conversations/{id}/close")
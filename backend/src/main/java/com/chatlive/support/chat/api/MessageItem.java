@@ -1,13 +1,24 @@
 package com.chatlive.support.chat.api;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.util.RawValue;
 
+/**
+ * {@code content} is the stored content JSON, written to the output verbatim (never parsed into a tree).
+ */
 public record MessageItem(
         String id,
         String sender_type,
         String sender_id,
         String content_type,
-        JsonNode content,
-        long created_at
+        RawValue content,
+        long created_at,
+        long seq
 ) {
+
+    /**
+     * The content JSON text.
+     */
+    public String contentJson() {
+        return content == null ? null : String.valueOf(content.rawValue());
+    }
 }
@@ -6,6 +6,10 @@ public record MessagePage(
         List<MessageItem> messages,
         boolean has_more,
         String next_after_msg_id,
-        boolean reset
+        boolean reset,
+        Long next_after_seq,
+        boolean has_more_before,
+        String prev_before_msg_id,
+        Long prev_before_seq
 ) {
 }
@@ -0,0 +1,21 @@
+package com.chatlive.support.chat.api;
+
+import java.util.List;
+
+/**
+ * One search match. {@code highlights} are {@code [start, end)} character ranges of the matched terms within
+ * {@code snippet}.
+ */
+public record MessageSearchHit(
+        String message_id,
+        String conversation_id,
+        long seq,
+        String sender_type,
+        String sender_id,
+        long created_at,
+        String site_id,
+        String assigned_agent_user_id,
+        String snippet,
+        List<int[]> highlights
+) {
+}
@@ -0,0 +1,10 @@
+package com.chatlive.support.chat.api;
+
+import java.util.List;
+
+public record MessageSearchPage(
+        List<MessageSearchHit> hits,
+        boolean has_more,
+        String next_cursor
+) {
+}
@@ -0,0 +1,6 @@
+package com.chatlive.support.chat.api;
+
+public record RetentionDto(
+        Integer message_retention_days
+) {
+}
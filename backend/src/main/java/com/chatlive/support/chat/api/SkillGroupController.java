@@ -2,6 +2,8 @@ package com.chatlive.support.chat.api;
 
 import com.chatlive.support.auth.service.jwt.JwtService;
 import com.chatlive.support.chat.repo.SkillGroupRepository;
+import com.chatlive.support.chat.service.AssignmentWakeups;
+import com.chatlive.support.chat.service.assignment.AssignmentEngine;
 import com.chatlive.support.common.api.ApiResponse;
 import com.chatlive.support.user.repo.UserAccountRepository;
 import jakarta.validation.Valid;
@@ -18,15 +20,21 @@ public class SkillGroupController {
     private final JwtService jwtService;
     private final SkillGroupRepository skillGroupRepository;
     private final UserAccountRepository userAccountRepository;
+    private final AssignmentEngine assignmentEngine;
+    private final AssignmentWakeups assignmentWakeups;
 
     public SkillGroupController(
             JwtService jwtService,
             SkillGroupRepository skillGroupRepository,
-            UserAccountRepository userAccountRepository
+            UserAccountRepository userAccountRepository,
+            AssignmentEngine assignmentEngine,
+            AssignmentWakeups assignmentWakeups
     ) {
         this.jwtService = jwtService;
         this.skillGroupRepository = skillGroupRepository;
         this.userAccountRepository = userAccountRepository;
+        this.assignmentEngine = assignmentEngine;
+        this.assignmentWakeups = assignmentWakeups;
     }
 
     @GetMapping
@@ -160,6 +168,7 @@ public class SkillGroupController {
 
                         skillGroupRepository.upsertMember(id, agentUserId, 1);
                 }
+                assignmentEngine.groupsChanged(claims.tenantId());
 
         var row = skillGroupRepository.findById(claims.tenantId(), id)
                 .orElseThrow(() -> new IllegalArgumentException("create_failed"));
@@ -232,6 +241,57 @@ public class SkillGroupController {
                 ));
         }
 
+    @GetMapping("/{id}/routing")
+    public ApiResponse<SkillGroupRoutingItem> getRouting(
+            @RequestHeader(value = "Authorization", required = false) String authorization,
+            @PathVariable("id") String groupId
+    ) {
+        var token = JwtService.extractBearerToken(authorization)
+                .orElseThrow(() -> new IllegalArgumentException("missing_token"));
+        var claims = jwtService.parse(token);
+        if (!"admin".equals(claims.role())) {
+            throw new IllegalArgumentException("forbidden");
+        }
+
+        var row = skillGroupRepository.findRouting(claims.tenantId(), groupId)
+                .orElseThrow(() -> new IllegalArgumentException("group_not_found"));
+        return ApiResponse.ok(new SkillGroupRoutingItem(row.groupId(), row.priority(), row.targetWaitSeconds()));
+    }
+
+    /**
+     * Queue priority and SLA target of a group. Allowed on system groups too: routing does not change membership.
+     */
+    @PutMapping("/{id}/routing")
+    public ApiResponse<SkillGroupRoutingItem> updateRouting(
+            @RequestHeader(value = "Authorization", required = false) String authorization,
+            @PathVariable("id") String groupId,
+            @RequestBody UpdateSkillGroupRoutingRequest req
+    ) {
+        var token = JwtService.extractBearerToken(authorization)
+                .orElseThrow(() -> new IllegalArgumentException("missing_token"));
+        var claims = jwtService.parse(token);
+        if (!"admin".equals(claims.role())) {
+            throw new IllegalArgumentException("forbidden");
+        }
+
+        var priority = req == null || req.priority() == null ? 0 : req.priority();
+        if (priority < 0 || priority > 10) {
+            throw new IllegalArgumentException("invalid_priority");
+        }
+        var targetWaitSeconds = req == null ? null : req.target_wait_seconds();
+        if (targetWaitSeconds != null && (targetWaitSeconds < 1 || targetWaitSeconds > 86400)) {
+            throw new IllegalArgumentException("invalid_target_wait_seconds");
+        }
+
+        if (skillGroupRepository.updateRouting(claims.tenantId(), groupId, priority, targetWaitSeconds) <= 0) {
+            throw new IllegalArgumentException("group_not_found");
+        }
+        assignmentEngine.groupsChanged(claims.tenantId());
+        // Queue order changed; let a drain pick up what is now most urgent.
+        assignmentWakeups.wakeTenant(claims.tenantId());
+        return ApiResponse.ok(new SkillGroupRoutingItem(groupId, priority, targetWaitSeconds));
+    }
+
     @PostMapping("/{id}/members")
     public ApiResponse<Void> upsertMember(
             @RequestHeader(value = "Authorization", required = false) String authorization,
@@ -262,6 +322,9 @@ public class SkillGroupController {
         }
 
         skillGroupRepository.upsertMember(groupId, req.agent_user_id(), req.weight());
+        assignmentEngine.groupsChanged(claims.tenantId());
+        // The new member may be able to take this group's queued conversations right away.
+        assignmentWakeups.wakeGroup(claims.tenantId(), groupId);
         return ApiResponse.ok(null);
     }
 
@@ -286,6 +349,7 @@ public class SkillGroupController {
         }
 
         skillGroupRepository.removeMember(groupId, agentUserId);
+        assignmentEngine.groupsChanged(claims.tenantId());
         return ApiResponse.ok(null);
     }
 
@@ -328,6 +392,7 @@ public class SkillGroupController {
                 skillGroupRepository.clearConversationSkillGroup(claims.tenantId(), groupId);
                 skillGroupRepository.removeAllMembers(groupId);
                 skillGroupRepository.deleteGroup(claims.tenantId(), groupId);
+                assignmentEngine.groupsChanged(claims.tenantId());
 
                 return ApiResponse.ok(null);
         }
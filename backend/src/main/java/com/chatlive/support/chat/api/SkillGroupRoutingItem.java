@@ -0,0 +1,8 @@
+package com.chatlive.support.chat.api;
+
+public record SkillGroupRoutingItem(
+        String group_id,
+        int priority,
+        Integer target_wait_seconds
+) {
+}
@@ -0,0 +1,11 @@
+package com.chatlive.support.chat.api;
+
+/**
+ * priority: 0..10, each step moves the group's conversations forward in the queue (see AssignmentEngine).
+ * target_wait_seconds: SLA target for first assignment; null = tenant default.
+ */
+public record UpdateSkillGroupRoutingRequest(
+        Integer priority,
+        Integer target_wait_seconds
+) {
+}
@@ -3,7 +3,11 @@ package com.chatlive.support.chat.repo;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -27,6 +31,13 @@ public class AgentProfileRepository {
     public record AgentCandidateRow(String userId, int maxConcurrent) {
     }
 
+    /**
+     * Active tenant user with an agent profile, as held by the in-memory assignment engine. {@code label} is the
+     * display name, falling back to the username.
+     */
+    public record AssignableAgentRow(String userId, String type, String status, int maxConcurrent, String label) {
+    }
+
     private final JdbcTemplate jdbcTemplate;
 
     public AgentProfileRepository(JdbcTemplate jdbcTemplate) {
@@ -43,6 +54,33 @@ public class AgentProfileRepository {
         return list.stream().findFirst();
     }
 
+    /**
+     * Profiles of several agents of one tenant in one query, keyed by user id (agents without a profile are absent).
+     */
+    public Map<String, AgentProfileRow> findByUserIds(String tenantId, List<String> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
+            return Map.of();
+        }
+        var sql = "select p.user_id, p.status, p.max_concurrent "
+                + "from agent_profile p "
+                + "join user_account u on u.id = p.user_id "
+                + "where u.tenant_id = ? "
+                + "  and p.user_id in (" + String.join(",", Collections.nCopies(userIds.size(), "?")) + ")";
+        var args = new ArrayList<Object>(userIds.size() + 1);
+        args.add(tenantId);
+        args.addAll(userIds);
+
+        var map = new HashMap<String, AgentProfileRow>();
+        jdbcTemplate.query(sql, rs -> {
+            map.put(rs.getString("user_id"), new AgentProfileRow(
+                    rs.getString("user_id"),
+                    rs.getString("status"),
+                    rs.getInt("max_concurrent")
+            ));
+        }, args.toArray());
+        return map;
+    }
+
     public void upsertStatus(String userId, String status, Integer maxConcurrent) {
         var pgUpsert = """
             insert into agent_profile(user_id, status, max_concurrent, created_at)
@@ -213,4 +251,42 @@ public class AgentProfileRepository {
                 rs.getInt("max_concurrent")
         ), tenantId);
     }
+
+    public List<AssignableAgentRow> listAssignableAgents(String tenantId) {
+        var sql = """
+                select u.id as user_id, u.type, p.status, p.max_concurrent,
+                       coalesce(nullif(trim(p.display_name), ''), u.username) as label
+                from user_account u
+                join agent_profile p on p.user_id = u.id
+                where u.tenant_id = ?
+                  and u.status = 'active'
+                """;
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new AssignableAgentRow(
+                rs.getString("user_id"),
+                rs.getString("type"),
+                rs.getString("status"),
+                rs.getInt("max_concurrent"),
+                rs.getString("label")
+        ), tenantId);
+    }
+
+    public Optional<AssignableAgentRow> findAssignableAgent(String tenantId, String userId) {
+        var sql = """
+                select u.id as user_id, u.type, p.status, p.max_concurrent,
+                       coalesce(nullif(trim(p.display_name), ''), u.username) as label
+                from user_account u
+                join agent_profile p on p.user_id = u.id
+                where u.tenant_id = ?
+                  and u.id = ?
+                  and u.status = 'active'
+                """;
+        var list = jdbcTemplate.query(sql, (rs, rowNum) -> new AssignableAgentRow(
+                rs.getString("user_id"),
+                rs.getString("type"),
+                rs.getString("status"),
+                rs.getInt("max_concurrent"),
+                rs.getString("label")
+        ), tenantId, userId);
+        return list.stream().findFirst();
+    }
 }
@@ -92,4 +92,60 @@ public class AgentSessionRepository {
         var sql = "delete from agent_session where session_id in (" + placeholders + ")";
         jdbcTemplate.update(sql, sessionIds.toArray());
     }
+
+    /**
+     * Sessions whose lease has not expired yet (all tenants); used to seed/refresh the in-memory lease table.
+     */
+    public List<AgentSessionRow> listActiveSessions() {
+        var sql = """
+            select session_id, tenant_id, user_id, last_seen_at, expires_at
+            from agent_session
+            where expires_at > now()
+            """;
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new AgentSessionRow(
+                rs.getString("session_id"),
+                rs.getString("tenant_id"),
+                rs.getString("user_id"),
+                rs.getTimestamp("last_seen_at").toInstant(),
+                rs.getTimestamp("expires_at").toInstant()
+        ));
+    }
+
+    /**
+     * Write-behind flush of heartbeats in one batched statement.
+     *
+     * @return per-row update counts (0 = row no longer exists)
+     */
+    public int[] touchSessions(List<AgentSessionRow> rows) {
+        if (rows == null || rows.isEmpty()) return new int[0];
+        var sql = """
+            update agent_session
+            set last_seen_at = ?,
+                expires_at = ?
+            where session_id = ?
+              and user_id = ?
+            """;
+        var args = rows.stream().map(r -> new Object[]{
+                java.sql.Timestamp.from(r.lastSeenAt()),
+                java.sql.Timestamp.from(r.expiresAt()),
+                r.sessionId(),
+                r.userId()
+        }).toList();
+        return jdbcTemplate.batchUpdate(sql, args);
+    }
+
+    /**
+     * Delete sessions only if they are still expired in the database (another node may have extended them).
+     */
+    public void deleteExpiredSessions(List<String> sessionIds) {
+        if (sessionIds == null || sessionIds.isEmpty()) return;
+        var placeholders = String.join(",", sessionIds.stream().map((x) -> "?").toList());
+        var sql = "delete from agent_session where expires_at <= now() and session_id in (" + placeholders + ")";
+        jdbcTemplate.update(sql, sessionIds.toArray());
+    }
+
+    public int deleteExpiredBefore(Instant cutoff) {
+        var sql = "delete from agent_session where expires_at <= ?";
+        return jdbcTemplate.update(sql, java.sql.Timestamp.from(cutoff));
+    }
 }
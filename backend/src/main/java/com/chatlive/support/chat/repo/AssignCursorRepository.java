@@ -3,6 +3,8 @@ package com.chatlive.support.chat.repo;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -68,4 +70,37 @@ public class AssignCursorRepository {
         // last_agent_user_id is nullable; avoid Optional.of(null) inside findFirst().
         return list.stream().filter(Objects::nonNull).findFirst();
     }
+
+    /**
+     * groupKey -> last agent for every cursor of the tenant (groups without a last agent are omitted).
+     */
+    public Map<String, String> listLastAgents(String tenantId) {
+        var sql = "select group_key, last_agent_user_id from agent_assign_cursor where tenant_id = ?";
+        var map = new HashMap<String, String>();
+        jdbcTemplate.query(sql, rs -> {
+            var last = rs.getString("last_agent_user_id");
+            if (last != null) {
+                map.put(rs.getString("group_key"), last);
+            }
+        }, tenantId);
+        return map;
+    }
+
+    public void upsertLastAgent(String tenantId, String groupKey, String lastAgentUserId) {
+        var pg = """
+            insert into agent_assign_cursor(tenant_id, group_key, last_agent_user_id, updated_at)
+            values (?, ?, ?, now())
+            on conflict (tenant_id, group_key)
+            do update set last_agent_user_id = excluded.last_agent_user_id, updated_at = excluded.updated_at
+            """;
+        var h2 = """
+            merge into agent_assign_cursor key(tenant_id, group_key)
+            values (?, ?, ?, current_timestamp)
+            """;
+        try {
+            jdbcTemplate.update(pg, tenantId, groupKey, lastAgentUserId);
+        } catch (Exception ignored) {
+            jdbcTemplate.update(h2, tenantId, groupKey, lastAgentUserId);
+        }
+    }
 }
@@ -99,4 +99,22 @@ public class AttachmentRepository {
                 """;
         return jdbcTemplate.update(sql, msgId, tenantId, attachmentId);
     }
+
+    /**
+     * Drops the message link of attachments whose messages move to the cold archive (the archived message content
+     * still carries the attachment id; status stays {@code linked}).
+     */
+    public int unlinkMessagesThroughSeq(String tenantId, String conversationId, long maxSeq) {
+        var sql = """
+                update attachment
+                set linked_msg_id = null
+                where tenant_id = ?
+                  and linked_msg_id in (
+                      select m.id from message m
+                      where m.conversation_id = ? and m.seq <= ? and m.tenant_id = ?
+                        and m.%s
+                  )
+                """.formatted(MessageRepository.SINCE_CONVERSATION_START);
+        return jdbcTemplate.update(sql, tenantId, conversationId, maxSeq, tenantId, conversationId);
+    }
 }
@@ -0,0 +1,178 @@
+package com.chatlive.support.chat.repo;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded read-through cache of {@link ConversationRepository.ConversationAccessRow}.
+ *
+ * Access checks run on every WS frame and again inside the services, while the row only changes on
+ * assignment/close/reopen. {@link ConversationRepository} invalidates on each of those updates; inside a
+ * transaction the key stays uncacheable until completion so uncommitted state never leaks to other threads, and
+ * the invalidation is re-applied after commit and handed to the invalidation publisher, which the WS cluster relay
+ * fans out to the other nodes. A short TTL bounds staleness if an invalidation is ever lost.
+ */
+@Component
+public class ConversationAccessCache {
+
+    private static final int STRIPES = 1024;
+
+    private record Entry(ConversationRepository.ConversationAccessRow row, long expiresAtMs) {
+    }
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long ttlMs;
+    // Set by the cluster relay; receives every committed invalidation so other nodes can drop their copies.
+    private volatile BiConsumer<String, String> invalidationPublisher = (tenantId, conversationId) -> {
+    };
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Keys modified by transactions that have not completed yet: never cache them meanwhile.
+    private final Map<String, AtomicInteger> dirty = new ConcurrentHashMap<>();
+    // Bumped on every invalidation so a load that raced with an update does not re-cache the old row.
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter invalidations;
+
+    public ConversationAccessCache(
+            MeterRegistry meterRegistry,
+            @Value("${app.conversation.access-cache.enabled:true}") boolean enabled,
+            @Value("${app.conversation.access-cache.max-entries:50000}") int maxEntries,
+            @Value("${app.conversation.access-cache.ttl-seconds:60}") long ttlSeconds
+    ) {
+        this.enabled = enabled;
+        this.maxEntries = Math.max(100, maxEntries);
+        this.ttlMs = Math.max(1, ttlSeconds) * 1000L;
+
+        // Low-cardinality metrics: do NOT tag by tenant/conversation.
+        this.hits = Counter.builder("chatlive.conversation.access_cache.hits")
+                .description("Conversation access lookups served from memory")
+                .register(meterRegistry);
+        this.misses = Counter.builder("chatlive.conversation.access_cache.misses")
+                .description("Conversation access lookups that went to the database")
+                .register(meterRegistry);
+        this.invalidations = Counter.builder("chatlive.conversation.access_cache.invalidations")
+                .description("Conversation access entries invalidated (local and cluster)")
+                .register(meterRegistry);
+        Gauge.builder("chatlive.conversation.access_cache.size", entries, Map::size)
+                .description("Cached conversation access rows")
+                .register(meterRegistry);
+    }
+
+    public Optional<ConversationRepository.ConversationAccessRow> get(
+            String tenantId,
+            String conversationId,
+            Supplier<Optional<ConversationRepository.ConversationAccessRow>> loader
+    ) {
+        if (!enabled || tenantId == null || conversationId == null) return loader.get();
+        var key = key(tenantId, conversationId);
+        var now = System.currentTimeMillis();
+        var cached = entries.get(key);
+        if (cached != null && cached.expiresAtMs() > now) {
+            hits.increment();
+            return Optional.of(cached.row());
+        }
+
+        misses.increment();
+        var stripe = stripe(key);
+        var generation = generations.get(stripe);
+        var loaded = loader.get();
+        if (loaded.isPresent() && !dirty.containsKey(key) && generations.get(stripe) == generation) {
+            if (entries.size() >= maxEntries) {
+                evictSome(now);
+            }
+            entries.put(key, new Entry(loaded.get(), now + ttlMs));
+        }
+        return loaded;
+    }
+
+    /**
+     * Called after any update that may change the access row. Safe to call inside or outside a transaction.
+     */
+    public void invalidate(String tenantId, String conversationId) {
+        if (!enabled || tenantId == null || conversationId == null) return;
+        var key = key(tenantId, conversationId);
+        evict(key);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            dirty.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    dirty.computeIfPresent(key, (k, n) -> n.decrementAndGet() <= 0 ? null : n);
+                    evict(key);
+                    if (status == STATUS_COMMITTED) {
+                        publish(tenantId, conversationId);
+                    }
+                }
+            });
+            return;
+        }
+        publish(tenantId, conversationId);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Receives {@code (tenantId, conversationId)} for every committed local invalidation.
+     */
+    public void setInvalidationPublisher(BiConsumer<String, String> publisher) {
+        this.invalidationPublisher = publisher;
+    }
+
+    /**
+     * Applies an invalidation made by another node (not re-published).
+     */
+    public void evictRemote(String tenantId, String conversationId) {
+        if (!enabled || tenantId == null || conversationId == null) return;
+        evict(key(tenantId, conversationId));
+    }
+
+    private void publish(String tenantId, String conversationId) {
+        invalidationPublisher.accept(tenantId, conversationId);
+    }
+
+    private void evict(String key) {
+        generations.incrementAndGet(stripe(key));
+        entries.remove(key);
+        invalidations.increment();
+    }
+
+    private void evictSome(long now) {
+        // Drop expired entries first; if still full, drop an arbitrary tenth (cheap, no LRU bookkeeping).
+        entries.values().removeIf(e -> e.expiresAtMs() <= now);
+        if (entries.size() < maxEntries) return;
+        int toDrop = Math.max(1, maxEntries / 10);
+        var it = entries.keySet().iterator();
+        while (toDrop-- > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static String key(String tenantId, String conversationId) {
+        return tenantId + "|" + conversationId;
+    }
+
+    private static int stripe(String key) {
+        return (key.hashCode() & 0x7fffffff) % STRIPES;
+    }
+}
@@ -8,6 +8,8 @@ import org.springframework.stereotype.Repository;
 
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Repository
@@ -31,6 +33,18 @@ public class ConversationEventRepository {
     ) {
     }
 
+    /**
+     * Same as {@link ConversationEventRow} but with {@code data_jsonb} left as stored JSON text, for writers that
+     * embed it verbatim.
+     */
+    public record ConversationEventRawRow(
+            String id,
+            String eventKey,
+            Instant createdAt,
+            String dataJson
+    ) {
+    }
+
     public void insertEvent(
             String id,
             String tenantId,
@@ -74,6 +88,49 @@ public class ConversationEventRepository {
         }
     }
 
+    public record NewEventRow(
+            String id,
+            String tenantId,
+            String conversationId,
+            String eventKey,
+            String dataJson,
+            Instant createdAt
+    ) {
+    }
+
+    /**
+     * {@link #insertEvent} for many rows in one JDBC batch.
+     */
+    public void insertEvents(List<NewEventRow> rows) {
+        if (rows == null || rows.isEmpty()) return;
+
+        var sqlCastJsonb = """
+            insert into conversation_event(id, tenant_id, conversation_id, event_key, data_jsonb, created_at)
+            values (?, ?, ?, ?, cast(? as jsonb), ?)
+            """;
+
+        var sqlPlain = """
+            insert into conversation_event(id, tenant_id, conversation_id, event_key, data_jsonb, created_at)
+            values (?, ?, ?, ?, ?, ?)
+            """;
+
+        var args = rows.stream().map(r -> new Object[]{
+                r.id(),
+                r.tenantId(),
+                r.conversationId(),
+                r.eventKey(),
+                r.dataJson(),
+                Timestamp.from(r.createdAt())
+        }).toList();
+        try {
+            jdbcTemplate.batchUpdate(sqlCastJsonb, args);
+        } catch (DuplicateKeyException dup) {
+            // idempotent
+        } catch (Exception ignored) {
+            jdbcTemplate.batchUpdate(sqlPlain, args);
+        }
+    }
+
     public List<ConversationEventRow> listByConversation(String tenantId, String conversationId, int limit) {
         int safeLimit = Math.max(1, Math.min(limit, 1000));
         var sql = """
@@ -102,4 +159,79 @@ public class ConversationEventRepository {
             );
         }, tenantId, conversationId, safeLimit);
     }
+
+    public List<ConversationEventRawRow> listRawByConversation(String tenantId, String conversationId, int limit) {
+        int safeLimit = Math.max(1, Math.min(limit, 1000));
+        var sql = """
+            select id, event_key, created_at, data_jsonb
+            from conversation_event
+            where tenant_id = ?
+              and conversation_id = ?
+            order by created_at asc
+            limit ?
+            """;
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new ConversationEventRawRow(
+                rs.getString("id"),
+                rs.getString("event_key"),
+                rs.getTimestamp("created_at").toInstant(),
+                rs.getString("data_jsonb")
+        ), tenantId, conversationId, safeLimit);
+    }
+
+    /**
+     * The newest {@code limit} events, returned oldest first (timeline order).
+     */
+    public List<ConversationEventRawRow> listRawNewestByConversation(String tenantId, String conversationId, int limit) {
+        int safeLimit = Math.max(1, Math.min(limit, 1000));
+        var sql = """
+            select id, event_key, created_at, data_jsonb
+            from conversation_event
+            where tenant_id = ?
+              and conversation_id = ?
+            order by created_at desc
+            limit ?
+            """;
+
+        var rows = new ArrayList<>(jdbcTemplate.query(sql, (rs, rowNum) -> new ConversationEventRawRow(
+                rs.getString("id"),
+                rs.getString("event_key"),
+                rs.getTimestamp("created_at").toInstant(),
+                rs.getString("data_jsonb")
+        ), tenantId, conversationId, safeLimit));
+        Collections.reverse(rows);
+        return rows;
+    }
+
+    /**
+     * Events to move to the cold archive, oldest first; anything past {@code limit} simply stays in the table.
+     */
+    public List<ConversationEventRawRow> listRawForArchive(String tenantId, String conversationId, int limit) {
+        var sql = """
+            select id, event_key, created_at, data_jsonb
+            from conversation_event
+            where tenant_id = ?
+              and conversation_id = ?
+            order by created_at asc
+            limit ?
+            """;
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new ConversationEventRawRow(
+                rs.getString("id"),
+                rs.getString("event_key"),
+                rs.getTimestamp("created_at").toInstant(),
+                rs.getString("data_jsonb")
+        ), tenantId, conversationId, Math.max(1, limit));
+    }
+
+    public int deleteByIds(String tenantId, String conversationId, List<String> ids) {
+        if (ids == null || ids.isEmpty()) return 0;
+        var placeholders = String.join(", ", java.util.Collections.nCopies(ids.size(), "?"));
+        var sql = "delete from conversation_event where tenant_id = ? and conversation_id = ? and id in (" + placeholders + ")";
+        var args = new java.util.ArrayList<Object>(ids.size() + 2);
+        args.add(tenantId);
+        args.add(conversationId);
+        args.addAll(ids);
+        return jdbcTemplate.update(sql, args.toArray());
+    }
 }
@@ -9,15 +9,31 @@ import org.springframework.stereotype.Repository;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.function.Function;
 
 @Repository
 public class ConversationRepository {
 
+    /**
+     * Guard for the auto-assign UPDATEs: the agent is still below max_concurrent. Args: tenant, agent, agent. Only
+     * exact across nodes while the caller holds the agent's load lock (see AssignmentService), since a concurrent
+     * transaction's assignment is not visible to this count until it commits.
+     */
+    private static final String BELOW_CAPACITY = """
+            (select count(1) from conversation a
+             where a.tenant_id = ? and a.assigned_agent_user_id = ? and a.status = 'assigned' and a.closed_at is null)
+            < (select greatest(p.max_concurrent, 1) from agent_profile p where p.user_id = ?)
+            """;
+
     public record InactiveConversationRow(String id, Instant lastMsgAt) {
     }
 
@@ -44,7 +60,9 @@ public class ConversationRepository {
             String assignedAgentUserId,
         String status,
         String siteId,
-        String visitorId
+        String visitorId,
+        // Messages with seq <= archivedSeq live in the cold archive (MessageHistoryReader).
+        long archivedSeq
     ) {
     }
 
@@ -65,20 +83,42 @@ public class ConversationRepository {
 
         public record QueuedConversationRow(
             String id,
-            String skillGroupId
+            String skillGroupId,
+            Instant createdAt
         ) {
         }
 
+        public record ActiveAssignmentRow(String id, String assignedAgentUserId) {
+        }
+
     private final JdbcTemplate jdbcTemplate;
 
     private final ObjectMapper objectMapper;
 
-    public ConversationRepository(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+    private final ConversationAccessCache accessCache;
+
+    public ConversationRepository(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, ConversationAccessCache accessCache) {
         this.jdbcTemplate = jdbcTemplate;
         this.objectMapper = objectMapper;
+        this.accessCache = accessCache;
+    }
+
+    private int invalidateAccessIfUpdated(String tenantId, String conversationId, int updated) {
+        if (updated > 0) {
+            accessCache.invalidate(tenantId, conversationId);
+        }
+        return updated;
     }
 
+    // Snapshot column bound; the inbox only shows a single line.
+    private static final int LAST_MESSAGE_PREVIEW_MAX = 500;
+
     private String toLastMessagePreview(String contentType, String contentJson) {
+        var preview = buildLastMessagePreview(contentType, contentJson);
+        return preview.length() > LAST_MESSAGE_PREVIEW_MAX ? preview.substring(0, LAST_MESSAGE_PREVIEW_MAX) : preview;
+    }
+
+    private String buildLastMessagePreview(String contentType, String contentJson) {
         if (contentType == null || contentType.isBlank()) return "";
         if (contentJson == null || contentJson.isBlank()) return "";
 
@@ -163,14 +203,81 @@ public class ConversationRepository {
                 return list.stream().filter(java.util.Objects::nonNull).findFirst();
         }
 
+        /**
+         * Takes the conversation for {@code agentUserId} if nobody holds it and the agent has a free slot.
+         */
         public int tryAssignToAgent(String tenantId, String conversationId, String agentUserId) {
                 var sql = """
                                 update conversation
                                 set assigned_agent_user_id = ?, status = 'assigned'
                                 where tenant_id = ? and id = ?
                                     and assigned_agent_user_id is null
-                                """;
-                return jdbcTemplate.update(sql, agentUserId, tenantId, conversationId);
+                                    and """ + BELOW_CAPACITY;
+                return invalidateAccessIfUpdated(tenantId, conversationId, jdbcTemplate.update(sql, agentUserId, tenantId, conversationId,
+                                tenantId, agentUserId, agentUserId));
+        }
+
+        public record AgentAssignment(String conversationId, String agentUserId) {
+        }
+
+        /**
+         * {@link #tryRestoreAssignment} for many rows in one JDBC batch: only still-queued, open, unassigned rows are
+         * taken, so a stale entry from the engine's in-memory queue cannot reopen a closed conversation, and only while
+         * the agent is below max_concurrent.
+         *
+         * @return ids of the conversations whose UPDATE took effect
+         */
+        public Set<String> tryAssignBatch(String tenantId, List<AgentAssignment> assignments) {
+                if (tenantId == null || tenantId.isBlank() || assignments == null || assignments.isEmpty()) return Set.of();
+                // Sorted so concurrent batches lock conversation rows in the same order.
+                var sorted = new ArrayList<>(assignments);
+                sorted.sort(java.util.Comparator.comparing(AgentAssignment::conversationId));
+                var sql = """
+                                update conversation
+                                set assigned_agent_user_id = ?, status = 'assigned'
+                                where tenant_id = ? and id = ?
+                                    and status = 'queued'
+                                    and closed_at is null
+                                    and assigned_agent_user_id is null
+                                    and """ + BELOW_CAPACITY;
+                // Earlier statements of the batch count towards later ones (same transaction).
+                var args = sorted.stream()
+                                .map(a -> new Object[]{a.agentUserId(), tenantId, a.conversationId(), tenantId, a.agentUserId(), a.agentUserId()})
+                                .toList();
+                var counts = jdbcTemplate.batchUpdate(sql, args);
+
+                var won = new HashSet<String>();
+                var unknown = new ArrayList<AgentAssignment>();
+                for (int i = 0; i < sorted.size(); i++) {
+                        var n = i < counts.length ? counts[i] : java.sql.Statement.SUCCESS_NO_INFO;
+                        if (n > 0) {
+                                won.add(sorted.get(i).conversationId());
+                        } else if (n == java.sql.Statement.SUCCESS_NO_INFO) {
+                                unknown.add(sorted.get(i));
+                        }
+                }
+                if (!unknown.isEmpty()) {
+                        // Driver did not report per-statement counts: check who holds the rows now.
+                        var ids = unknown.stream().map(AgentAssignment::conversationId).toList();
+                        var holders = new HashMap<String, String>();
+                        var check = "select id, assigned_agent_user_id from conversation where tenant_id = ? and id in ("
+                                        + String.join(",", java.util.Collections.nCopies(ids.size(), "?")) + ")";
+                        var checkArgs = new ArrayList<Object>();
+                        checkArgs.add(tenantId);
+                        checkArgs.addAll(ids);
+                        jdbcTemplate.query(check, rs -> {
+                                holders.put(rs.getString("id"), rs.getString("assigned_agent_user_id"));
+                        }, checkArgs.toArray());
+                        for (var a : unknown) {
+                                if (a.agentUserId().equals(holders.get(a.conversationId()))) {
+                                        won.add(a.conversationId());
+                                }
+                        }
+                }
+                for (var id : won) {
+                        invalidateAccessIfUpdated(tenantId, id, 1);
+                }
+                return won;
         }
 
         public int forceAssign(String tenantId, String conversationId, String agentUserId) {
@@ -179,7 +286,7 @@ public class ConversationRepository {
                                 set assigned_agent_user_id = ?, status = 'assigned'
                                 where tenant_id = ? and id = ?
                                 """;
-                return jdbcTemplate.update(sql, agentUserId, tenantId, conversationId);
+                return invalidateAccessIfUpdated(tenantId, conversationId, jdbcTemplate.update(sql, agentUserId, tenantId, conversationId));
         }
 
         public int unassignToQueued(String tenantId, String conversationId, String expectedAgentUserId) {
@@ -197,7 +304,7 @@ public class ConversationRepository {
                                     and closed_at is null
                                     and assigned_agent_user_id = ?
                                 """;
-                return jdbcTemplate.update(sql, tenantId, conversationId, expectedAgentUserId);
+                return invalidateAccessIfUpdated(tenantId, conversationId, jdbcTemplate.update(sql, tenantId, conversationId, expectedAgentUserId));
         }
 
             public int tryRestoreAssignment(String tenantId, String conversationId, String agentUserId) {
@@ -215,7 +322,7 @@ public class ConversationRepository {
                           and closed_at is null
                           and assigned_agent_user_id is null
                         """;
-                return jdbcTemplate.update(sql, agentUserId, tenantId, conversationId);
+                return invalidateAccessIfUpdated(tenantId, conversationId, jdbcTemplate.update(sql, agentUserId, tenantId, conversationId));
             }
 
         /**
@@ -283,7 +390,7 @@ public class ConversationRepository {
                                 where tenant_id = ? and id = ?
                                     and (assigned_agent_user_id is null or assigned_agent_user_id = ?)
                                 """;
-                return jdbcTemplate.update(sql, agentUserId, tenantId, conversationId, agentUserId);
+                return invalidateAccessIfUpdated(tenantId, conversationId, jdbcTemplate.update(sql, agentUserId, tenantId, conversationId, agentUserId));
         }
 
         public int countActiveAssignedToAgent(String tenantId, String agentUserId) {
@@ -326,51 +433,74 @@ public class ConversationRepository {
             return map;
         }
 
-            public List<QueuedConversationRow> listQueuedForAssignment(String tenantId, int limit) {
+        /**
+         * Every open assignment of the tenant; the assignment engine derives agent loads from this snapshot.
+         */
+        public List<ActiveAssignmentRow> listActiveAssignments(String tenantId) {
                 var sql = """
-                        select id, skill_group_id
-                        from conversation
-                        where tenant_id = ?
-                          and status = 'queued'
-                          and assigned_agent_user_id is null
-                        order by created_at asc
+                                select id, assigned_agent_user_id
+                                from conversation
+                                where tenant_id = ?
+                                    and status = 'assigned'
+                                    and closed_at is null
+                                    and assigned_agent_user_id is not null
+                                """;
+                return jdbcTemplate.query(sql, (rs, rowNum) -> new ActiveAssignmentRow(
+                                rs.getString("id"),
+                                rs.getString("assigned_agent_user_id")
+                ), tenantId);
+        }
+
+            /**
+             * Queue snapshot loaded into AssignmentEngine, which orders and drains it in memory. Rows come earliest
+             * due first under the engine's due-time rule (created_at + group target wait, capped, - priority * step),
+             * so a truncated snapshot keeps the entries the engine would serve first.
+             */
+            public List<QueuedConversationRow> listQueuedForAssignment(String tenantId, int limit, long defaultTargetWaitSeconds,
+                                                                       long maxTargetWaitSeconds, long priorityStepSeconds) {
+                var sql = """
+                        select c.id, c.skill_group_id, c.created_at
+                        from conversation c
+                        left join skill_group g on g.id = c.skill_group_id and g.tenant_id = c.tenant_id
+                        where c.tenant_id = ?
+                          and c.status = 'queued'
+                          and c.assigned_agent_user_id is null
+                        order by extract(epoch from c.created_at)
+                                 + least(case when g.target_wait_seconds > 0 then g.target_wait_seconds else ? end, ?)
+                                 - least(greatest(coalesce(g.priority, 0), 0), 10) * ?,
+                                 c.created_at asc, c.id asc
                         limit ?
                         """;
                 return jdbcTemplate.query(sql, (rs, rowNum) -> new QueuedConversationRow(
                         rs.getString("id"),
-                        rs.getString("skill_group_id")
-                ), tenantId, limit);
+                        rs.getString("skill_group_id"),
+                        rs.getTimestamp("created_at").toInstant()
+                ), tenantId, defaultTargetWaitSeconds, maxTargetWaitSeconds, priorityStepSeconds, limit);
             }
 
-                public List<QueuedConversationRow> listQueuedForAgent(String tenantId, String agentUserId, int limit) {
-                var sql = """
-                    select c.id, c.skill_group_id
-                    from conversation c
-                    where c.tenant_id = ?
-                      and c.status = 'queued'
-                      and c.assigned_agent_user_id is null
-                      and (
-                        c.skill_group_id is null
-                         or c.skill_group_id = ''
-                         or exists (
-                          select 1
-                          from skill_group_member m
-                          where m.group_id = c.skill_group_id
-                            and m.agent_user_id = ?
-                         )
-                      )
-                    order by c.created_at asc
-                    limit ?
-                    """;
-                return jdbcTemplate.query(sql, (rs, rowNum) -> new QueuedConversationRow(
-                    rs.getString("id"),
-                    rs.getString("skill_group_id")
-                ), tenantId, agentUserId, limit);
-                }
+    /**
+     * Tenants with at least one conversation waiting for auto-assignment (one index probe per tenant).
+     */
+    public List<String> listTenantIdsWithQueued() {
+        var sql = """
+                select t.id
+                from tenant t
+                where exists (
+                    select 1 from conversation c
+                    where c.tenant_id = t.id and c.status = 'queued' and c.assigned_agent_user_id is null
+                )
+                order by t.id asc
+                """;
+        return jdbcTemplate.query(sql, (rs, rowNum) -> rs.getString("id"));
+    }
 
     public java.util.Optional<ConversationAccessRow> findAccess(String tenantId, String conversationId) {
+        return accessCache.get(tenantId, conversationId, () -> loadAccess(tenantId, conversationId));
+    }
+
+    private java.util.Optional<ConversationAccessRow> loadAccess(String tenantId, String conversationId) {
         var sql = """
-            select id, tenant_id, customer_user_id, assigned_agent_user_id, status, site_id, visitor_id
+            select id, tenant_id, customer_user_id, assigned_agent_user_id, status, site_id, visitor_id, archived_seq
                 from conversation
                 where tenant_id = ? and id = ?
                 limit 1
@@ -382,7 +512,8 @@ public class ConversationRepository {
                 rs.getString("assigned_agent_user_id"),
             rs.getString("status"),
             rs.getString("site_id"),
-            rs.getString("visitor_id")
+            rs.getString("visitor_id"),
+            rs.getLong("archived_seq")
         ), tenantId, conversationId);
         return list.stream().findFirst();
     }
@@ -461,7 +592,11 @@ public class ConversationRepository {
                   and status <> 'closed'
                 """;
         // actorUserId reserved for future audit columns
-        return jdbcTemplate.update(sql, archivedReason, archivedInactivityMinutes, tenantId, conversationId);
+        return invalidateAccessIfUpdated(
+                tenantId,
+                conversationId,
+                jdbcTemplate.update(sql, archivedReason, archivedInactivityMinutes, tenantId, conversationId)
+        );
     }
 
     public int reopenConversation(String tenantId, String conversationId, String actorUserId) {
@@ -476,7 +611,7 @@ public class ConversationRepository {
                   and id = ?
                   and status = 'closed'
                 """;
-        return jdbcTemplate.update(sql, actorUserId, tenantId, conversationId);
+        return invalidateAccessIfUpdated(tenantId, conversationId, jdbcTemplate.update(sql, actorUserId, tenantId, conversationId));
     }
 
     /**
@@ -497,7 +632,55 @@ public class ConversationRepository {
                   and id = ?
                   and status = 'closed'
                 """;
-        return jdbcTemplate.update(sql, tenantId, conversationId);
+        return invalidateAccessIfUpdated(tenantId, conversationId, jdbcTemplate.update(sql, tenantId, conversationId));
+    }
+
+    public record ArchiveCandidateRow(String id, String tenantId, long archivedSeq) {
+    }
+
+    /**
+     * Closed conversations (closed before {@code closedBefore}) with history not yet moved to the cold archive,
+     * oldest first.
+     */
+    public List<ArchiveCandidateRow> listArchiveCandidates(Instant closedBefore, int limit) {
+        var sql = """
+                select id, tenant_id, archived_seq
+                from conversation
+                where status = 'closed'
+                  and closed_at < ?
+                  and last_seq > archived_seq
+                order by closed_at asc
+                limit ?
+                """;
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new ArchiveCandidateRow(
+                rs.getString("id"),
+                rs.getString("tenant_id"),
+                rs.getLong("archived_seq")
+        ), Timestamp.from(closedBefore), limit);
+    }
+
+    /**
+     * Row-locks the conversation if it is still closed (same lock the message writers take). Must run inside a
+     * transaction.
+     */
+    public boolean lockIfClosed(String tenantId, String conversationId) {
+        var sql = """
+                select id
+                from conversation
+                where tenant_id = ? and id = ? and status = 'closed'
+                for update
+                """;
+        return !jdbcTemplate.queryForList(sql, String.class, tenantId, conversationId).isEmpty();
+    }
+
+    public int markArchivedThrough(String tenantId, String conversationId, long archivedSeq) {
+        var sql = """
+                update conversation
+                set archived_seq = ?
+                where tenant_id = ? and id = ? and archived_seq < ?
+                """;
+        return invalidateAccessIfUpdated(tenantId, conversationId,
+                jdbcTemplate.update(sql, archivedSeq, tenantId, conversationId, archivedSeq));
     }
 
     public java.util.Optional<String> findSkillGroupId(String tenantId, String conversationId) {
@@ -512,14 +695,98 @@ public class ConversationRepository {
         return list.stream().filter(java.util.Objects::nonNull).findFirst();
     }
 
-    public void touchLastMsgAt(String tenantId, String conversationId) {
-        var sql = "update conversation set last_msg_at = now() where tenant_id = ? and id = ?";
-        jdbcTemplate.update(sql, tenantId, conversationId);
+    /**
+     * A newly inserted message, as needed to bump its conversation's activity timestamps and last-message snapshot.
+     */
+    public record MessageTouch(
+            String tenantId,
+            String conversationId,
+            String messageId,
+            String senderType,
+            String contentType,
+            String contentJson,
+            Instant createdAt,
+            long seq
+    ) {
+        public static MessageTouch of(MessageRepository.MessageRow row) {
+            return new MessageTouch(row.tenantId(), row.conversationId(), row.id(), row.senderType(), row.contentType(),
+                    row.contentJson(), row.createdAt(), row.seq());
+        }
+    }
+
+    /**
+     * Record new messages on their conversations: {@code last_msg_at}, {@code last_customer_msg_at} for customer
+     * messages, and the denormalized last-message snapshot read by the inbox lists. One statement however many
+     * conversations are involved; must run in the transaction that inserted the messages.
+     */
+    public void touchLastMsgAt(Collection<MessageTouch> touches) {
+        if (touches == null || touches.isEmpty()) return;
+        // Sorted so concurrent batches lock conversation rows in the same order.
+        var latest = new TreeMap<String, MessageTouch>();
+        var customer = new TreeMap<String, MessageTouch>();
+        var customerCounts = new HashMap<String, Integer>();
+        for (var t : touches) {
+            var key = t.tenantId() + "|" + t.conversationId();
+            latest.merge(key, t, (a, b) -> b.seq() > a.seq() ? b : a);
+            if ("customer".equals(t.senderType())) {
+                customer.putIfAbsent(key, t);
+                customerCounts.merge(t.conversationId(), 1, Integer::sum);
+            }
+        }
+
+        var args = new ArrayList<Object>();
+        var sql = new StringBuilder("update conversation set last_msg_at = now()");
+        if (!customer.isEmpty()) {
+            sql.append(", last_customer_msg_at = case when (tenant_id, id) in (");
+            appendKeys(sql, args, customer.values());
+            sql.append(") then now() else last_customer_msg_at end");
+            // Unread counters: see message_state.read_customer_count.
+            sql.append(", customer_msg_count = customer_msg_count + case id");
+            for (var t : customer.values()) {
+                sql.append(" when ? then ?");
+                args.add(t.conversationId());
+                args.add(customerCounts.get(t.conversationId()));
+            }
+            sql.append(" else 0 end");
+        }
+        appendSnapshotColumn(sql, args, latest.values(), "last_message_id", "?", MessageTouch::messageId);
+        appendSnapshotColumn(sql, args, latest.values(), "last_message_sender_type", "?", MessageTouch::senderType);
+        appendSnapshotColumn(sql, args, latest.values(), "last_message_content_type", "?", MessageTouch::contentType);
+        appendSnapshotColumn(sql, args, latest.values(), "last_message_preview", "?",
+                t -> toLastMessagePreview(t.contentType(), t.contentJson()));
+        appendSnapshotColumn(sql, args, latest.values(), "last_message_created_at", "cast(? as timestamp with time zone)",
+                t -> Timestamp.from(t.createdAt()));
+        sql.append(" where (tenant_id, id) in (");
+        appendKeys(sql, args, latest.values());
+        sql.append(")");
+        jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    private static void appendSnapshotColumn(
+            StringBuilder sql,
+            List<Object> args,
+            Collection<MessageTouch> touches,
+            String column,
+            String valuePlaceholder,
+            Function<MessageTouch, Object> value
+    ) {
+        sql.append(", ").append(column).append(" = case id");
+        for (var t : touches) {
+            sql.append(" when ? then ").append(valuePlaceholder);
+            args.add(t.conversationId());
+            args.add(value.apply(t));
+        }
+        sql.append(" else ").append(column).append(" end");
     }
 
-    public void touchLastCustomerMsgAt(String tenantId, String conversationId) {
-        var sql = "update conversation set last_customer_msg_at = now() where tenant_id = ? and id = ?";
-        jdbcTemplate.update(sql, tenantId, conversationId);
+    private static void appendKeys(StringBuilder sql, List<Object> args, Collection<MessageTouch> keys) {
+        var first = true;
+        for (var t : keys) {
+            sql.append(first ? "(?, ?)" : ", (?, ?)");
+            args.add(t.tenantId());
+            args.add(t.conversationId());
+            first = false;
+        }
     }
 
     public void updateLastIdleEventAt(String tenantId, String conversationId, Instant ts) {
@@ -590,6 +857,20 @@ public class ConversationRepository {
         ), tenantId, Timestamp.from(lastMsgBefore), safeLimit);
     }
 
+    /**
+     * Unread customer messages for one user, from the materialized counters (no scan of {@code message}).
+     */
+    public long findUnreadCount(String tenantId, String conversationId, String userId) {
+        var sql = """
+                select greatest(c.customer_msg_count - coalesce(ms.read_customer_count, 0), 0)
+                from conversation c
+                left join message_state ms on ms.conversation_id = c.id and ms.user_id = ?
+                where c.tenant_id = ? and c.id = ?
+                """;
+        var list = jdbcTemplate.query(sql, (rs, rowNum) -> rs.getLong(1), userId, tenantId, conversationId);
+        return list.isEmpty() ? 0L : list.getFirst();
+    }
+
     public List<ConversationSummary> listInbox(String tenantId, String status) {
         var sql = """
               select c.id, c.status, c.channel, c.subject, c.assigned_agent_user_id,
@@ -604,34 +885,10 @@ public class ConversationRepository {
                     extract(epoch from c.last_idle_event_at)::bigint as last_idle_event_at_epoch,
                     c.last_archived_reason as last_archived_reason,
                     c.last_archived_inactivity_minutes as last_archived_inactivity_minutes,
-                    (
-                        select m.sender_type
-                        from message m
-                        where m.tenant_id = c.tenant_id and m.conversation_id = c.id
-                        order by m.created_at desc, m.id desc
-                        limit 1
-                    ) as last_message_sender_type,
-                    (
-                        select m.content_type
-                        from message m
-                        where m.tenant_id = c.tenant_id and m.conversation_id = c.id
-                        order by m.created_at desc, m.id desc
-                        limit 1
-                    ) as last_message_content_type,
-                    (
-                        select m.content_jsonb
-                        from message m
-                        where m.tenant_id = c.tenant_id and m.conversation_id = c.id
-                        order by m.created_at desc, m.id desc
-                        limit 1
-                    ) as last_message_content_json
-                        ,(
-                            select extract(epoch from m.created_at)::bigint
-                            from message m
-                            where m.tenant_id = c.tenant_id and m.conversation_id = c.id
-                            order by m.created_at desc, m.id desc
-                            limit 1
-                        ) as last_message_created_at
+                    c.last_message_sender_type as last_message_sender_type,
+                    c.last_message_content_type as last_message_content_type,
+                    c.last_message_preview as last_message_preview,
+                    extract(epoch from c.last_message_created_at)::bigint as last_message_created_at
             from conversation c
             left join visitor v on v.id = c.visitor_id and v.site_id = c.site_id
             where c.tenant_id = ?
@@ -653,7 +910,7 @@ public class ConversationRepository {
                 rs.getInt("unread_count"),
                 rs.getString("last_message_sender_type"),
                 rs.getString("last_message_content_type"),
-                toLastMessagePreview(rs.getString("last_message_content_type"), rs.getString("last_message_content_json")),
+                Objects.requireNonNullElse(rs.getString("last_message_preview"), ""),
                 rs.getLong("last_message_created_at") > 0 ? rs.getLong("last_message_created_at") : rs.getLong("last_msg_at_epoch"),
                 rs.getLong("created_at_epoch"),
                 rs.getLong("last_msg_at_epoch"),
@@ -679,7 +936,7 @@ public class ConversationRepository {
             rs.getInt("unread_count"),
             rs.getString("last_message_sender_type"),
             rs.getString("last_message_content_type"),
-            toLastMessagePreview(rs.getString("last_message_content_type"), rs.getString("last_message_content_json")),
+            Objects.requireNonNullElse(rs.getString("last_message_preview"), ""),
             rs.getLong("last_message_created_at") > 0 ? rs.getLong("last_message_created_at") : rs.getLong("last_msg_at_epoch"),
             rs.getLong("created_at_epoch"),
             rs.getLong("last_msg_at_epoch"),
@@ -703,38 +960,11 @@ public class ConversationRepository {
         sql.append("     , extract(epoch from c.last_idle_event_at)::bigint as last_idle_event_at_epoch ");
         sql.append("     , c.last_archived_reason as last_archived_reason ");
         sql.append("     , c.last_archived_inactivity_minutes as last_archived_inactivity_minutes ");
-        sql.append("     , coalesce((");
-        sql.append("         select count(1) ");
-        sql.append("         from message m ");
-        sql.append("         where m.conversation_id = c.id ");
-        sql.append("           and m.sender_type = 'customer' ");
-        sql.append("           and m.created_at > coalesce((");
-        sql.append("              select m2.created_at ");
-        sql.append("              from message m2 ");
-        sql.append("              where m2.conversation_id = c.id and m2.id = ms.last_read_msg_id ");
-        sql.append("              limit 1");
-        sql.append("           ), timestamp '1970-01-01 00:00:00') ");
-        sql.append("     ), 0) as unread_count ");
-        sql.append("   , (");
-        sql.append("        select m.sender_type from message m ");
-        sql.append("        where m.tenant_id = c.tenant_id and m.conversation_id = c.id ");
-        sql.append("        order by m.created_at desc, m.id desc limit 1");
-        sql.append("     ) as last_message_sender_type ");
-        sql.append("   , (");
-        sql.append("        select m.content_type from message m ");
-        sql.append("        where m.tenant_id = c.tenant_id and m.conversation_id = c.id ");
-        sql.append("        order by m.created_at desc, m.id desc limit 1");
-        sql.append("     ) as last_message_content_type ");
-        sql.append("   , (");
-        sql.append("        select m.content_jsonb from message m ");
-        sql.append("        where m.tenant_id = c.tenant_id and m.conversation_id = c.id ");
-        sql.append("        order by m.created_at desc, m.id desc limit 1");
-        sql.append("     ) as last_message_content_json ");
-        sql.append("   , (");
-        sql.append("        select extract(epoch from m.created_at)::bigint from message m ");
-        sql.append("        where m.tenant_id = c.tenant_id and m.conversation_id = c.id ");
-        sql.append("        order by m.created_at desc, m.id desc limit 1");
-        sql.append("     ) as last_message_created_at ");
+        sql.append("     , greatest(c.customer_msg_count - coalesce(ms.read_customer_count, 0), 0) as unread_count ");
+        sql.append("     , c.last_message_sender_type as last_message_sender_type ");
+        sql.append("     , c.last_message_content_type as last_message_content_type ");
+        sql.append("     , c.last_message_preview as last_message_preview ");
+        sql.append("     , extract(epoch from c.last_message_created_at)::bigint as last_message_created_at ");
         sql.append("from conversation c ");
         sql.append("left join visitor v on v.id = c.visitor_id and v.site_id = c.site_id ");
         sql.append("left join conversation_mark cm on cm.tenant_id = c.tenant_id and cm.conversation_id = c.id and cm.user_id = ? ");
@@ -789,7 +1019,7 @@ public class ConversationRepository {
             rs.getInt("unread_count"),
             rs.getString("last_message_sender_type"),
             rs.getString("last_message_content_type"),
-            toLastMessagePreview(rs.getString("last_message_content_type"), rs.getString("last_message_content_json")),
+            Objects.requireNonNullElse(rs.getString("last_message_preview"), ""),
             rs.getLong("last_message_created_at") > 0 ? rs.getLong("last_message_created_at") : rs.getLong("last_msg_at_epoch"),
             rs.getLong("created_at_epoch"),
             rs.getLong("last_msg_at_epoch"),
@@ -816,38 +1046,11 @@ public class ConversationRepository {
         sql.append("     , extract(epoch from c.last_idle_event_at)::bigint as last_idle_event_at_epoch ");
         sql.append("     , c.last_archived_reason as last_archived_reason ");
         sql.append("     , c.last_archived_inactivity_minutes as last_archived_inactivity_minutes ");
-        sql.append("     , coalesce((");
-        sql.append("         select count(1) ");
-        sql.append("         from message m ");
-        sql.append("         where m.conversation_id = c.id ");
-        sql.append("           and m.sender_type = 'customer' ");
-        sql.append("           and m.created_at > coalesce((");
-        sql.append("              select m2.created_at ");
-        sql.append("              from message m2 ");
-        sql.append("              where m2.conversation_id = c.id and m2.id = ms.last_read_msg_id ");
-        sql.append("              limit 1");
-        sql.append("           ), timestamp '1970-01-01 00:00:00') ");
-        sql.append("     ), 0) as unread_count ");
-        sql.append("   , (");
-        sql.append("        select m.sender_type from message m ");
-        sql.append("        where m.tenant_id = c.tenant_id and m.conversation_id = c.id ");
-        sql.append("        order by m.created_at desc, m.id desc limit 1");
-        sql.append("     ) as last_message_sender_type ");
-        sql.append("   , (");
-        sql.append("        select m.content_type from message m ");
-        sql.append("        where m.tenant_id = c.tenant_id and m.conversation_id = c.id ");
-        sql.append("        order by m.created_at desc, m.id desc limit 1");
-        sql.append("     ) as last_message_content_type ");
-        sql.append("   , (");
-        sql.append("        select m.content_jsonb from message m ");
-        sql.append("        where m.tenant_id = c.tenant_id and m.conversation_id = c.id ");
-        sql.append("        order by m.created_at desc, m.id desc limit 1");
-        sql.append("     ) as last_message_content_json ");
-        sql.append("   , (");
-        sql.append("        select extract(epoch from m.created_at)::bigint from message m ");
-        sql.append("        where m.tenant_id = c.tenant_id and m.conversation_id = c.id ");
-        sql.append("        order by m.created_at desc, m.id desc limit 1");
-        sql.append("     ) as last_message_created_at ");
+        sql.append("     , greatest(c.customer_msg_count - coalesce(ms.read_customer_count, 0), 0) as unread_count ");
+        sql.append("     , c.last_message_sender_type as last_message_sender_type ");
+        sql.append("     , c.last_message_content_type as last_message_content_type ");
+        sql.append("     , c.last_message_preview as last_message_preview ");
+        sql.append("     , extract(epoch from c.last_message_created_at)::bigint as last_message_created_at ");
         sql.append("from conversation c ");
         sql.append("left join visitor v on v.id = c.visitor_id and v.site_id = c.site_id ");
         sql.append("left join conversation_mark cm on cm.tenant_id = c.tenant_id and cm.conversation_id = c.id and cm.user_id = ? ");
@@ -880,7 +1083,7 @@ public class ConversationRepository {
             rs.getInt("unread_count"),
             rs.getString("last_message_sender_type"),
             rs.getString("last_message_content_type"),
-                toLastMessagePreview(rs.getString("last_message_content_type"), rs.getString("last_message_content_json")),
+                Objects.requireNonNullElse(rs.getString("last_message_preview"), ""),
                 rs.getLong("last_message_created_at") > 0 ? rs.getLong("last_message_created_at") : rs.getLong("last_msg_at_epoch"),
                 rs.getLong("created_at_epoch"),
                 rs.getLong("last_msg_at_epoch"),
@@ -906,34 +1109,10 @@ public class ConversationRepository {
                     extract(epoch from c.last_idle_event_at)::bigint as last_idle_event_at_epoch,
                     c.last_archived_reason as last_archived_reason,
                     c.last_archived_inactivity_minutes as last_archived_inactivity_minutes,
-                    (
-                        select m.sender_type
-                        from message m
-                        where m.tenant_id = c.tenant_id and m.conversation_id = c.id
-                        order by m.created_at desc, m.id desc
-                        limit 1
-                    ) as last_message_sender_type,
-                    (
-                        select m.content_type
-                        from message m
-                        where m.tenant_id = c.tenant_id and m.conversation_id = c.id
-                        order by m.created_at desc, m.id desc
-                        limit 1
-                    ) as last_message_content_type,
-                    (
-                        select m.content_jsonb
-                        from message m
-                        where m.tenant_id = c.tenant_id and m.conversation_id = c.id
-                        order by m.created_at desc, m.id desc
-                        limit 1
-                    ) as last_message_content_json
-                        ,(
-                            select extract(epoch from m.created_at)::bigint
-                            from message m
-                            where m.tenant_id = c.tenant_id and m.conversation_id = c.id
-                            order by m.created_at desc, m.id desc
-                            limit 1
-                        ) as last_message_created_at
+                    c.last_message_sender_type as last_message_sender_type,
+                    c.last_message_content_type as last_message_content_type,
+                    c.last_message_preview as last_message_preview,
+                    extract(epoch from c.last_message_created_at)::bigint as last_message_created_at
             from conversation c
             left join visitor v on v.id = c.visitor_id and v.site_id = c.site_id
             where c.tenant_id = ? and c.customer_user_id = ?
@@ -955,7 +1134,7 @@ public class ConversationRepository {
                 rs.getInt("unread_count"),
                 rs.getString("last_message_sender_type"),
                 rs.getString("last_message_content_type"),
-                toLastMessagePreview(rs.getString("last_message_content_type"), rs.getString("last_message_content_json")),
+                Objects.requireNonNullElse(rs.getString("last_message_preview"), ""),
                 rs.getLong("last_message_created_at") > 0 ? rs.getLong("last_message_created_at") : rs.getLong("last_msg_at_epoch"),
                 rs.getLong("created_at_epoch"),
                 rs.getLong("last_msg_at_epoch"),
@@ -981,7 +1160,7 @@ public class ConversationRepository {
             rs.getInt("unread_count"),
             rs.getString("last_message_sender_type"),
             rs.getString("last_message_content_type"),
-            toLastMessagePreview(rs.getString("last_message_content_type"), rs.getString("last_message_content_json")),
+            Objects.requireNonNullElse(rs.getString("last_message_preview"), ""),
             rs.getLong("last_message_created_at") > 0 ? rs.getLong("last_message_created_at") : rs.getLong("last_msg_at_epoch"),
             rs.getLong("created_at_epoch"),
             rs.getLong("last_msg_at_epoch"),
@@ -0,0 +1,104 @@
+package com.chatlive.support.chat.repo;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Index of the cold-archive segments (one gzip NDJSON object each) holding a conversation's archived history.
+ */
+@Repository
+public class MessageArchiveSegmentRepository {
+
+    public record SegmentRow(
+            String id,
+            String tenantId,
+            String conversationId,
+            String bucket,
+            String objectKey,
+            long minSeq,
+            long maxSeq,
+            int messageCount,
+            int customerCount,
+            int eventCount,
+            Instant firstCreatedAt,
+            Instant lastCreatedAt,
+            long compressedBytes,
+            // Bloom filter of the segment's message ids; null for segments written before it existed.
+            byte[] msgIdBloom
+    ) {
+    }
+
+    private static final RowMapper<SegmentRow> ROW_MAPPER = (rs, rowNum) -> {
+        var first = rs.getTimestamp("first_created_at");
+        var last = rs.getTimestamp("last_created_at");
+        return new SegmentRow(
+                rs.getString("id"),
+                rs.getString("tenant_id"),
+                rs.getString("conversation_id"),
+                rs.getString("bucket"),
+                rs.getString("object_key"),
+                rs.getLong("min_seq"),
+                rs.getLong("max_seq"),
+                rs.getInt("message_count"),
+                rs.getInt("customer_count"),
+                rs.getInt("event_count"),
+                first == null ? null : first.toInstant(),
+                last == null ? null : last.toInstant(),
+                rs.getLong("compressed_bytes"),
+                rs.getBytes("msg_id_bloom")
+        );
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public MessageArchiveSegmentRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void insert(SegmentRow row) {
+        var sql = """
+                insert into message_archive_segment(
+                    id, tenant_id, conversation_id, bucket, object_key, min_seq, max_seq,
+                    message_count, customer_count, event_count, first_created_at, last_created_at, compressed_bytes,
+                    msg_id_bloom
+                )
+                values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                """;
+        jdbcTemplate.update(sql,
+                row.id(),
+                row.tenantId(),
+                row.conversationId(),
+                row.bucket(),
+                row.objectKey(),
+                row.minSeq(),
+                row.maxSeq(),
+                row.messageCount(),
+                row.customerCount(),
+                row.eventCount(),
+                row.firstCreatedAt() == null ? null : Timestamp.from(row.firstCreatedAt()),
+                row.lastCreatedAt() == null ? null : Timestamp.from(row.lastCreatedAt()),
+                row.compressedBytes(),
+                row.msgIdBloom()
+        );
+    }
+
+    /**
+     * All segments of a conversation in seq order (a conversation is archived once, so this stays short).
+     */
+    public List<SegmentRow> listByConversation(String tenantId, String conversationId) {
+        var sql = """
+                select id, tenant_id, conversation_id, bucket, object_key, min_seq, max_seq,
+                       message_count, customer_count, event_count, first_created_at, last_created_at, compressed_bytes,
+                       msg_id_bloom
+                from message_archive_segment
+                where conversation_id = ? and tenant_id = ?
+                order by min_seq asc
+                """;
+        return jdbcTemplate.query(sql, ROW_MAPPER, conversationId, tenantId);
+    }
+}
@@ -0,0 +1,143 @@
+package com.chatlive.support.chat.repo;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Partition DDL for the monthly-partitioned history tables ({@code message}, {@code conversation_event}).
+ *
+ * Partitions are named after their range (see V49): {@code <table>_pYYYYMM} holds that UTC month,
+ * {@code <table>_p_before_YYYYMM} everything before it (the pre-partitioning table).
+ */
+@Repository
+public class MessagePartitionRepository {
+
+    public static final List<String> PARTITIONED_TABLES = List.of("message", "conversation_event");
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    /**
+     * An attached partition and the exclusive upper bound of its range.
+     */
+    public record Partition(String table, String name, YearMonth upperBoundExclusive) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Boolean postgres;
+
+    public MessagePartitionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * False on H2 and on a Postgres database that has not been partitioned.
+     */
+    public boolean isPartitioned(String table) {
+        if (!isPostgres()) return false;
+        Integer n = jdbcTemplate.queryForObject(
+                "select count(1) from pg_partitioned_table where partrelid = to_regclass(?)",
+                Integer.class,
+                table
+        );
+        return n != null && n > 0;
+    }
+
+    public List<Partition> listPartitions(String table) {
+        var sql = """
+                select c.relname
+                from pg_inherits i
+                join pg_class c on c.oid = i.inhrelid
+                where i.inhparent = to_regclass(?)
+                order by c.relname
+                """;
+        var monthly = Pattern.compile("^" + Pattern.quote(table) + "_p(\\d{6})$");
+        var before = Pattern.compile("^" + Pattern.quote(table) + "_p_before_(\\d{6})$");
+        return jdbcTemplate.queryForList(sql, String.class, table).stream()
+                .map(name -> {
+                    var m = monthly.matcher(name);
+                    if (m.matches()) return Optional.of(new Partition(table, name, YearMonth.parse(m.group(1), SUFFIX).plusMonths(1)));
+                    var b = before.matcher(name);
+                    if (b.matches()) return Optional.of(new Partition(table, name, YearMonth.parse(b.group(1), SUFFIX)));
+                    return Optional.<Partition>empty();
+                })
+                .flatMap(Optional::stream)
+                .toList();
+    }
+
+    public void createMonthlyPartition(String table, YearMonth month) {
+        var from = month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+        var to = month.plusMonths(1).atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+        jdbcTemplate.execute("create table if not exists " + partitionName(table, month)
+                + " partition of " + requireKnown(table)
+                + " for values from ('" + from + "') to ('" + to + "')");
+    }
+
+    /**
+     * Detached partitions stay as standalone tables (for archiving) and no longer show up in queries.
+     *
+     * Uses {@code DETACH PARTITION ... CONCURRENTLY}, which only takes SHARE UPDATE EXCLUSIVE on the parent, so
+     * history reads and inserts keep running. It cannot run inside a transaction block: call it outside any
+     * transaction (autocommit). A concurrent detach that was interrupted leaves the partition "detach pending";
+     * that one is completed with {@code FINALIZE}.
+     */
+    public void detachPartition(Partition partition) {
+        var ddl = "alter table " + requireKnown(partition.table()) + " detach partition " + requireOwned(partition);
+        jdbcTemplate.execute(ddl + (isDetachPending(partition) ? " finalize" : " concurrently"));
+    }
+
+    /**
+     * Detaches first (see {@link #detachPartition}): dropping an attached partition would lock the parent
+     * ACCESS EXCLUSIVE. Same no-transaction rule.
+     */
+    public void dropPartition(Partition partition) {
+        detachPartition(partition);
+        jdbcTemplate.execute("drop table if exists " + requireOwned(partition));
+    }
+
+    private boolean isDetachPending(Partition partition) {
+        var pending = jdbcTemplate.queryForList(
+                "select inhdetachpending from pg_inherits where inhrelid = to_regclass(?) and inhparent = to_regclass(?)",
+                Boolean.class,
+                requireOwned(partition),
+                requireKnown(partition.table())
+        );
+        return !pending.isEmpty() && Boolean.TRUE.equals(pending.getFirst());
+    }
+
+    public static String partitionName(String table, YearMonth month) {
+        return requireKnown(table) + "_p" + month.format(SUFFIX);
+    }
+
+    private static String requireKnown(String table) {
+        if (!PARTITIONED_TABLES.contains(table)) {
+            throw new IllegalArgumentException("unknown_partitioned_table");
+        }
+        return table;
+    }
+
+    private static String requireOwned(Partition partition) {
+        // Names end up in DDL: only accept the ones listPartitions produced for a known table.
+        if (!partition.name().matches("^" + requireKnown(partition.table()) + "_p(_before_)?\\d{6}$")) {
+            throw new IllegalArgumentException("invalid_partition_name");
+        }
+        return partition.name();
+    }
+
+    private boolean isPostgres() {
+        var cached = postgres;
+        if (cached != null) return cached;
+        Boolean resolved = jdbcTemplate.execute((ConnectionCallback<Boolean>) con ->
+                "PostgreSQL".equalsIgnoreCase(con.getMetaData().getDatabaseProductName()));
+        postgres = Boolean.TRUE.equals(resolved);
+        return postgres;
+    }
+}
@@ -1,18 +1,35 @@
 package com.chatlive.support.chat.repo;
 
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Repository
 public class MessageRepository {
 
+    /**
+     * Lower bound on {@code created_at} for reads keyed by {@code (conversation_id, seq)}, which otherwise probe
+     * every monthly partition: no message predates its conversation. Postgres evaluates the subquery once and prunes
+     * the older partitions at execution time. The day of slack covers clock skew, since conversation.created_at comes
+     * from the database clock and message.created_at from the writing node's. Arg: conversation id.
+     */
+    static final String SINCE_CONVERSATION_START =
+            "created_at >= (select c.created_at - interval '1' day from conversation c where c.id = ?)";
+
     public record MessageRow(
             String id,
             String tenantId,
@@ -22,180 +39,339 @@ public class MessageRepository {
             String clientMsgId,
             String contentType,
             String contentJson,
-            Instant createdAt
+            Instant createdAt,
+            long seq
     ) {
     }
 
     public record InsertResult(MessageRow row, boolean inserted) {
     }
 
-    public record Marker(Instant createdAt, String id) {
+    public record Marker(Instant createdAt, String id, long seq) {
+    }
+
+    /**
+     * One message to insert as part of a batch (see {@link #insertMessages(List)}).
+     */
+    public record PendingInsert(
+            String tenantId,
+            String conversationId,
+            String senderType,
+            String senderId,
+            String clientMsgId,
+            String contentType,
+            String contentJson
+    ) {
     }
 
+    private static final String COLUMNS =
+            "id, tenant_id, conversation_id, sender_type, sender_id, client_msg_id, content_type, content_jsonb, created_at, seq";
+
+    private static final RowMapper<MessageRow> ROW_MAPPER = (rs, rowNum) -> new MessageRow(
+            rs.getString("id"),
+            rs.getString("tenant_id"),
+            rs.getString("conversation_id"),
+            rs.getString("sender_type"),
+            rs.getString("sender_id"),
+            rs.getString("client_msg_id"),
+            rs.getString("content_type"),
+            rs.getString("content_jsonb"),
+            rs.getTimestamp("created_at").toInstant(),
+            rs.getLong("seq")
+    );
+
     private final JdbcTemplate jdbcTemplate;
 
+    // Last created_at handed out (epoch microseconds): batches on this node never reuse or go back in time.
+    private final AtomicLong lastMicros = new AtomicLong();
+
+    // Resolved once: a failed cast attempt would abort the surrounding transaction on Postgres.
+    private volatile Boolean jsonbCast;
+
     public MessageRepository(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
 
     public Optional<MessageRow> findByClientMsgId(String tenantId, String senderId, String clientMsgId) {
-        var sql = """
-                select id, tenant_id, conversation_id, sender_type, sender_id, client_msg_id, content_type, content_jsonb, created_at
+        var sql = "select " + COLUMNS + """
+
                 from message
                 where tenant_id = ? and sender_id = ? and client_msg_id = ?
                 limit 1
                 """;
-        var list = jdbcTemplate.query(sql, (rs, rowNum) -> new MessageRow(
-                rs.getString("id"),
-                rs.getString("tenant_id"),
-                rs.getString("conversation_id"),
-                rs.getString("sender_type"),
-                rs.getString("sender_id"),
-                rs.getString("client_msg_id"),
-                rs.getString("content_type"),
-                rs.getString("content_jsonb"),
-                rs.getTimestamp("created_at").toInstant()
-        ), tenantId, senderId, clientMsgId);
+        var list = jdbcTemplate.query(sql, ROW_MAPPER, tenantId, senderId, clientMsgId);
         return list.stream().findFirst();
     }
 
-    public InsertResult insertMessage(
-            String tenantId,
-            String conversationId,
-            String senderType,
-            String senderId,
-            String clientMsgId,
-            String contentType,
-            String contentJson
-    ) {
-        var id = "m_" + UUID.randomUUID();
-        var now = Instant.now();
+    /**
+     * Insert messages with one multi-row statement. Must run inside a transaction.
+     *
+     * Each new row gets the next {@code seq} of its conversation, allocated from {@code conversation.last_seq}
+     * in the same transaction, so sequences stay dense (a rollback gives the numbers back).
+     *
+     * {@code client_msg_id} is idempotent per sender: an existing row (or an earlier item of the same batch) is
+     * returned with {@code inserted=false}. The lookup runs after the conversation rows are locked, so a retry racing
+     * its original in the same conversation sees the committed row (on partitioned Postgres there is no global unique
+     * index to fall back on). Where the unique index exists, a concurrent insert that still wins the race surfaces
+     * as {@link DuplicateKeyException}; the caller resolves it after rollback with {@link #findByClientMsgId}.
+     */
+    public List<InsertResult> insertMessages(List<PendingInsert> batch) {
+        var results = new ArrayList<InsertResult>(batch.size());
+        if (batch.isEmpty()) return results;
+
+        lockConversations(batch);
+        var existing = findByClientMsgIds(batch);
+        var firstByKey = new HashMap<String, PendingInsert>();
+        var fresh = new ArrayList<PendingInsert>(batch.size());
+        // Sorted so concurrent batches lock conversation rows in the same order.
+        var countByConversation = new TreeMap<String, Integer>();
+
+        for (var p : batch) {
+            var key = clientKey(p);
+            if (key != null && (existing.containsKey(key) || firstByKey.containsKey(key))) continue;
+            if (key != null) firstByKey.put(key, p);
+            fresh.add(p);
+            countByConversation.merge(p.tenantId() + "|" + p.conversationId(), 1, Integer::sum);
+        }
+
+        var nextSeq = new HashMap<String, Long>();
+        for (var e : countByConversation.entrySet()) {
+            var sep = e.getKey().indexOf('|');
+            var last = allocateSeq(e.getKey().substring(0, sep), e.getKey().substring(sep + 1), e.getValue());
+            nextSeq.put(e.getKey(), last - e.getValue() + 1);
+        }
+
+        // One microsecond apart (the column resolution), so created_at order matches seq order inside the batch.
+        var firstMicros = reserveMicros(fresh.size());
+        int index = 0;
+        // Identity: two sends without client_msg_id can be equal records.
+        var rows = new IdentityHashMap<PendingInsert, MessageRow>();
+        var toInsert = new ArrayList<MessageRow>(fresh.size());
+        for (var p : fresh) {
+            var convKey = p.tenantId() + "|" + p.conversationId();
+            long seq = nextSeq.merge(convKey, 1L, Long::sum) - 1;
+            var createdAt = ofMicros(firstMicros + index++);
+            var row = new MessageRow("m_" + UUID.randomUUID(), p.tenantId(), p.conversationId(), p.senderType(),
+                    p.senderId(), normalizeClientMsgId(p.clientMsgId()), p.contentType(), p.contentJson(), createdAt, seq);
+            rows.put(p, row);
+            toInsert.add(row);
+        }
 
-                // Postgres jsonb needs an explicit cast; H2 uses CLOB in dev profile.
-                var sqlCastJsonb = """
-                                insert into message(
-                                        id, tenant_id, conversation_id, sender_type, sender_id, client_msg_id, content_type, content_jsonb, created_at
-                                ) values (?, ?, ?, ?, ?, ?, ?, cast(? as jsonb), ?)
-                                """;
-
-                var sqlPlain = """
-                                insert into message(
-                                        id, tenant_id, conversation_id, sender_type, sender_id, client_msg_id, content_type, content_jsonb, created_at
-                                ) values (?, ?, ?, ?, ?, ?, ?, ?, ?)
-                                """;
-
-                try {
-                        try {
-                                jdbcTemplate.update(sqlCastJsonb,
-                                                id,
-                                                tenantId,
-                                                conversationId,
-                                                senderType,
-                                                senderId,
-                                                (clientMsgId == null || clientMsgId.isBlank()) ? null : clientMsgId,
-                                                contentType,
-                                                contentJson,
-                                                Timestamp.from(now)
-                                );
-                        } catch (Exception ignored) {
-                                jdbcTemplate.update(sqlPlain,
-                                                id,
-                                                tenantId,
-                                                conversationId,
-                                                senderType,
-                                                senderId,
-                                                (clientMsgId == null || clientMsgId.isBlank()) ? null : clientMsgId,
-                                                contentType,
-                                                contentJson,
-                                                Timestamp.from(now)
-                                );
-                        }
-        } catch (DuplicateKeyException dup) {
-            if (clientMsgId != null && !clientMsgId.isBlank()) {
-                        var existing = findByClientMsgId(tenantId, senderId, clientMsgId)
-                                .orElseThrow(() -> dup);
-                        return new InsertResult(existing, false);
+        for (var p : batch) {
+            var row = rows.get(p);
+            if (row != null) {
+                results.add(new InsertResult(row, true));
+                continue;
             }
-            throw dup;
+            var key = clientKey(p);
+            var prior = existing.get(key);
+            if (prior == null) prior = rows.get(firstByKey.get(key));
+            if (!p.tenantId().equals(prior.tenantId())) {
+                throw new DuplicateKeyException("client_msg_id_conflict");
+            }
+            results.add(new InsertResult(prior, false));
         }
 
-                var row = new MessageRow(id, tenantId, conversationId, senderType, senderId,
-                        (clientMsgId == null || clientMsgId.isBlank()) ? null : clientMsgId,
-                        contentType, contentJson, now);
-                return new InsertResult(row, true);
+        if (!toInsert.isEmpty()) {
+            var contentValue = useJsonbCast() ? "cast(? as jsonb)" : "?";
+            var sql = new StringBuilder("insert into message(" + COLUMNS + ") values ");
+            var args = new ArrayList<Object>(toInsert.size() * 10);
+            for (int i = 0; i < toInsert.size(); i++) {
+                var row = toInsert.get(i);
+                sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, ?, ?, ").append(contentValue).append(", ?, ?)");
+                args.add(row.id());
+                args.add(row.tenantId());
+                args.add(row.conversationId());
+                args.add(row.senderType());
+                args.add(row.senderId());
+                args.add(row.clientMsgId());
+                args.add(row.contentType());
+                args.add(row.contentJson());
+                args.add(Timestamp.from(row.createdAt()));
+                args.add(row.seq());
+            }
+            jdbcTemplate.update(sql.toString(), args.toArray());
+        }
+        return results;
     }
 
-    public InsertResult insertTextMessage(
-            String tenantId,
-            String conversationId,
-            String senderType,
-            String senderId,
-            String clientMsgId,
-            String contentJson
-    ) {
-        return insertMessage(tenantId, conversationId, senderType, senderId, clientMsgId, "text", contentJson);
+    /**
+     * Lock the batch's conversation rows (in id order, like every other batch) for the rest of the transaction.
+     */
+    private void lockConversations(List<PendingInsert> batch) {
+        var keys = new TreeMap<String, PendingInsert>();
+        for (var p : batch) {
+            keys.putIfAbsent(p.tenantId() + "|" + p.conversationId(), p);
+        }
+        var sql = new StringBuilder("select id from conversation where (tenant_id, id) in (");
+        var args = new ArrayList<Object>(keys.size() * 2);
+        for (var p : keys.values()) {
+            sql.append(args.isEmpty() ? "" : ", ").append("(?, ?)");
+            args.add(p.tenantId());
+            args.add(p.conversationId());
+        }
+        sql.append(") order by tenant_id, id for update");
+        var locked = jdbcTemplate.queryForList(sql.toString(), String.class, args.toArray());
+        if (locked.size() < keys.size()) {
+            throw new IllegalArgumentException("conversation_not_found");
+        }
+    }
+
+    /**
+     * Reserve {@code count} sequence numbers; returns the last one. The conversation row is locked until the
+     * transaction ends (see {@link #lockConversations}), which is what makes the allocation atomic.
+     */
+    private long allocateSeq(String tenantId, String conversationId, int count) {
+        var updated = jdbcTemplate.update(
+                "update conversation set last_seq = last_seq + ? where tenant_id = ? and id = ?",
+                count,
+                tenantId,
+                conversationId
+        );
+        if (updated == 0) {
+            throw new IllegalArgumentException("conversation_not_found");
+        }
+        Long last = jdbcTemplate.queryForObject(
+                "select last_seq from conversation where tenant_id = ? and id = ?",
+                Long.class,
+                tenantId,
+                conversationId
+        );
+        return last == null ? count : last;
+    }
+
+    /**
+     * Reserve {@code count} consecutive microsecond timestamps, starting no earlier than now and strictly after any
+     * timestamp reserved before; returns the first.
+     */
+    private long reserveMicros(int count) {
+        var now = Instant.now();
+        long nowMicros = now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000;
+        long prev;
+        long first;
+        do {
+            prev = lastMicros.get();
+            first = Math.max(nowMicros, prev + 1);
+        } while (!lastMicros.compareAndSet(prev, first + Math.max(0, count - 1)));
+        return first;
+    }
+
+    private static Instant ofMicros(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L);
+    }
+
+    private HashMap<String, MessageRow> findByClientMsgIds(List<PendingInsert> batch) {
+        var out = new HashMap<String, MessageRow>();
+        var sql = new StringBuilder("select " + COLUMNS + " from message where (client_msg_id, sender_id) in (");
+        var args = new ArrayList<Object>();
+        for (var p : batch) {
+            var clientMsgId = normalizeClientMsgId(p.clientMsgId());
+            if (clientMsgId == null) continue;
+            sql.append(args.isEmpty() ? "" : ", ").append("(?, ?)");
+            args.add(clientMsgId);
+            args.add(p.senderId());
+        }
+        if (args.isEmpty()) return out;
+        sql.append(")");
+
+        for (var row : jdbcTemplate.query(sql.toString(), ROW_MAPPER, args.toArray())) {
+            out.put(row.senderId() + "\u0000" + row.clientMsgId(), row);
+        }
+        return out;
+    }
+
+    private static String normalizeClientMsgId(String clientMsgId) {
+        return (clientMsgId == null || clientMsgId.isBlank()) ? null : clientMsgId;
+    }
+
+    private static String clientKey(PendingInsert p) {
+        var clientMsgId = normalizeClientMsgId(p.clientMsgId());
+        return clientMsgId == null ? null : p.senderId() + "\u0000" + clientMsgId;
+    }
+
+    private boolean useJsonbCast() {
+        var cached = jsonbCast;
+        if (cached != null) return cached;
+        Boolean resolved = jdbcTemplate.execute((ConnectionCallback<Boolean>) con ->
+                "PostgreSQL".equalsIgnoreCase(con.getMetaData().getDatabaseProductName()));
+        jsonbCast = Boolean.TRUE.equals(resolved);
+        return jsonbCast;
     }
 
     public Optional<Marker> findMarker(String tenantId, String conversationId, String msgId) {
         var sql = """
-                select id, created_at
+                select id, created_at, seq
                 from message
                 where tenant_id = ? and conversation_id = ? and id = ?
+                  and %s
                 limit 1
-                """;
+                """.formatted(SINCE_CONVERSATION_START);
         var list = jdbcTemplate.query(sql, (rs, rowNum) -> new Marker(
                 rs.getTimestamp("created_at").toInstant(),
-                rs.getString("id")
-        ), tenantId, conversationId, msgId);
+                rs.getString("id"),
+                rs.getLong("seq")
+        ), tenantId, conversationId, msgId, conversationId);
         return list.stream().findFirst();
     }
 
+    /**
+     * Id-based paging, kept for clients that resume with {@code after_msg_id}: resolves the marker's seq, then
+     * pages like {@link #listMessagesAfterSeq}.
+     */
     public List<MessageRow> listMessages(String tenantId, String conversationId, String afterMsgId, int limit) {
-        Marker marker = null;
+        long afterSeq = 0;
         if (afterMsgId != null && !afterMsgId.isBlank()) {
-            marker = findMarker(tenantId, conversationId, afterMsgId)
-                    .orElseThrow(() -> new IllegalArgumentException("after_msg_id_not_found"));
+            afterSeq = findMarker(tenantId, conversationId, afterMsgId)
+                    .orElseThrow(() -> new IllegalArgumentException("after_msg_id_not_found"))
+                    .seq();
         }
+        return listMessagesAfterSeq(tenantId, conversationId, afterSeq, limit);
+    }
 
-        if (marker == null) {
-            var sql = """
-                    select id, tenant_id, conversation_id, sender_type, sender_id, client_msg_id, content_type, content_jsonb, created_at
-                    from message
-                    where tenant_id = ? and conversation_id = ?
-                    order by created_at asc, id asc
-                    limit ?
-                    """;
-            return jdbcTemplate.query(sql, (rs, rowNum) -> new MessageRow(
-                    rs.getString("id"),
-                    rs.getString("tenant_id"),
-                    rs.getString("conversation_id"),
-                    rs.getString("sender_type"),
-                    rs.getString("sender_id"),
-                    rs.getString("client_msg_id"),
-                    rs.getString("content_type"),
-                    rs.getString("content_jsonb"),
-                    rs.getTimestamp("created_at").toInstant()
-            ), tenantId, conversationId, limit);
-        }
+    /**
+     * Messages with {@code seq > afterSeq} in order: one range scan on {@code (conversation_id, seq)}.
+     */
+    public List<MessageRow> listMessagesAfterSeq(String tenantId, String conversationId, long afterSeq, int limit) {
+        var sql = "select " + COLUMNS + """
 
-        var sql = """
-                select id, tenant_id, conversation_id, sender_type, sender_id, client_msg_id, content_type, content_jsonb, created_at
                 from message
-                where tenant_id = ? and conversation_id = ?
-                  and (created_at > ? or (created_at = ? and id > ?))
-                order by created_at asc, id asc
+                where conversation_id = ? and seq > ? and tenant_id = ?
+                  and %s
+                order by seq asc
                 limit ?
-                """;
-        return jdbcTemplate.query(sql, (rs, rowNum) -> new MessageRow(
-                rs.getString("id"),
-                rs.getString("tenant_id"),
-                rs.getString("conversation_id"),
-                rs.getString("sender_type"),
-                rs.getString("sender_id"),
-                rs.getString("client_msg_id"),
-                rs.getString("content_type"),
-                rs.getString("content_jsonb"),
-                rs.getTimestamp("created_at").toInstant()
-        ), tenantId, conversationId, Timestamp.from(marker.createdAt()), Timestamp.from(marker.createdAt()), marker.id(), limit);
+                """.formatted(SINCE_CONVERSATION_START);
+        return jdbcTemplate.query(sql, ROW_MAPPER, conversationId, Math.max(0, afterSeq), tenantId, conversationId, limit);
+    }
+
+    /**
+     * The {@code limit} messages just before {@code beforeSeq} ({@code null}: the newest ones), returned in
+     * ascending order. Descending keyset over the same {@code (conversation_id, seq)} index, so opening the tail of a
+     * long conversation costs the same as opening a short one.
+     */
+    public List<MessageRow> listMessagesBeforeSeq(String tenantId, String conversationId, Long beforeSeq, int limit) {
+        var sql = "select " + COLUMNS + """
+
+                from message
+                where conversation_id = ? and seq < ? and tenant_id = ?
+                  and %s
+                order by seq desc
+                limit ?
+                """.formatted(SINCE_CONVERSATION_START);
+        long upper = beforeSeq == null ? Long.MAX_VALUE : beforeSeq;
+        var rows = new ArrayList<>(jdbcTemplate.query(sql, ROW_MAPPER, conversationId, upper, tenantId, conversationId, limit));
+        Collections.reverse(rows);
+        return rows;
+    }
+
+    /**
+     * Removes rows already written to the cold archive. Callers hold the conversation row lock.
+     */
+    public int deleteThroughSeq(String tenantId, String conversationId, long maxSeq) {
+        var sql = """
+                delete from message
+                where conversation_id = ? and seq <= ? and tenant_id = ?
+                  and %s
+                """.formatted(SINCE_CONVERSATION_START);
+        return jdbcTemplate.update(sql, conversationId, maxSeq, tenantId, conversationId);
     }
 }
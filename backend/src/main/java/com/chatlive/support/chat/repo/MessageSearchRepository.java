@@ -0,0 +1,173 @@
+package com.chatlive.support.chat.repo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The search index of message content ({@code message_search}, V51): one row per text message (its text) or
+ * file message (its filename), written next to the message in the insert transaction.
+ *
+ * Every term must occur in the body as a case-insensitive substring ({@code ILIKE}, served by the {@code pg_trgm}
+ * GIN index on Postgres), which works the same for space-separated and CJK text and is what the service highlights.
+ */
+@Repository
+public class MessageSearchRepository {
+
+    // Also the column width on H2.
+    private static final int BODY_MAX = 4000;
+
+    public record SearchFilter(
+            String tenantId,
+            List<String> terms,
+            String siteId,
+            String agentUserId,
+            String tag,
+            Instant from,
+            Instant to,
+            // Agents only see closed conversations plus the ones assigned to them; null: no restriction (admin).
+            String visibleToAgentUserId,
+            Instant beforeCreatedAt,
+            String beforeMessageId,
+            int limit
+    ) {
+    }
+
+    public record SearchRow(
+            String messageId,
+            String conversationId,
+            long seq,
+            String senderType,
+            String senderId,
+            Instant createdAt,
+            String body,
+            String siteId,
+            String assignedAgentUserId
+    ) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    public MessageSearchRepository(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Index freshly inserted messages; called inside the message insert transaction.
+     */
+    public void indexMessages(List<MessageRepository.MessageRow> rows) {
+        var sql = new StringBuilder(
+                "insert into message_search(message_id, tenant_id, conversation_id, seq, sender_type, sender_id, created_at, body) values ");
+        var args = new ArrayList<Object>(rows.size() * 8);
+        for (var row : rows) {
+            var body = searchableText(row.contentType(), row.contentJson());
+            if (body.isEmpty()) continue;
+            sql.append(args.isEmpty() ? "" : ", ").append("(?, ?, ?, ?, ?, ?, ?, ?)");
+            args.add(row.id());
+            args.add(row.tenantId());
+            args.add(row.conversationId());
+            args.add(row.seq());
+            args.add(row.senderType());
+            args.add(row.senderId());
+            args.add(Timestamp.from(row.createdAt()));
+            args.add(body);
+        }
+        if (args.isEmpty()) return;
+        jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    /**
+     * Newest matches first, keyset-paged on {@code (created_at, message_id)}.
+     */
+    public List<SearchRow> search(SearchFilter filter) {
+        var sql = new StringBuilder("""
+                select s.message_id, s.conversation_id, s.seq, s.sender_type, s.sender_id, s.created_at, s.body,
+                       c.site_id, c.assigned_agent_user_id
+                from message_search s
+                join conversation c on c.tenant_id = s.tenant_id and c.id = s.conversation_id
+                where s.tenant_id = ?
+                """);
+        var args = new ArrayList<Object>();
+        args.add(filter.tenantId());
+
+        // Terms are letters and digits only (MessageSearchService.parseTerms): no LIKE wildcards to escape.
+        for (var term : filter.terms()) {
+            sql.append(" and s.body ilike ?");
+            args.add("%" + term + "%");
+        }
+        if (filter.siteId() != null) {
+            sql.append(" and c.site_id = ?");
+            args.add(filter.siteId());
+        }
+        if (filter.agentUserId() != null) {
+            sql.append(" and c.assigned_agent_user_id = ?");
+            args.add(filter.agentUserId());
+        }
+        if (filter.tag() != null) {
+            sql.append(" and exists (select 1 from conversation_tag t where t.tenant_id = s.tenant_id and t.conversation_id = s.conversation_id and t.tag = ?)");
+            args.add(filter.tag());
+        }
+        if (filter.from() != null) {
+            sql.append(" and s.created_at >= ?");
+            args.add(Timestamp.from(filter.from()));
+        }
+        if (filter.to() != null) {
+            sql.append(" and s.created_at < ?");
+            args.add(Timestamp.from(filter.to()));
+        }
+        if (filter.visibleToAgentUserId() != null) {
+            sql.append(" and (c.status = 'closed' or c.assigned_agent_user_id = ?)");
+            args.add(filter.visibleToAgentUserId());
+        }
+        if (filter.beforeCreatedAt() != null && filter.beforeMessageId() != null) {
+            sql.append(" and (s.created_at, s.message_id) < (?, ?)");
+            args.add(Timestamp.from(filter.beforeCreatedAt()));
+            args.add(filter.beforeMessageId());
+        }
+        sql.append(" order by s.created_at desc, s.message_id desc limit ?");
+        args.add(filter.limit());
+
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> new SearchRow(
+                rs.getString("message_id"),
+                rs.getString("conversation_id"),
+                rs.getLong("seq"),
+                rs.getString("sender_type"),
+                rs.getString("sender_id"),
+                rs.getTimestamp("created_at").toInstant(),
+                rs.getString("body"),
+                rs.getString("site_id"),
+                rs.getString("assigned_agent_user_id")
+        ), args.toArray());
+    }
+
+    /**
+     * Drops index rows of history that retention removed (partitions ending at {@code before}).
+     */
+    public int deleteCreatedBefore(Instant before) {
+        return jdbcTemplate.update("delete from message_search where created_at < ?", Timestamp.from(before));
+    }
+
+    private String searchableText(String contentType, String contentJson) {
+        if (contentJson == null || contentJson.isBlank()) return "";
+        try {
+            var node = objectMapper.readTree(contentJson);
+            var text = switch (contentType == null ? "" : contentType) {
+                case "text" -> node.path("text").asText("");
+                case "file" -> node.path("filename").asText("");
+                default -> "";
+            };
+            text = text.trim();
+            return text.length() > BODY_MAX ? text.substring(0, BODY_MAX) : text;
+        } catch (Exception ignored) {
+            // Never fail a message write over its index row.
+            return "";
+        }
+    }
+}
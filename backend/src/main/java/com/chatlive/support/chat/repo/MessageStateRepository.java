@@ -1,5 +1,6 @@
 package com.chatlive.support.chat.repo;
 
+import org.springframework.jdbc.BadSqlGrammarException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
@@ -8,21 +9,62 @@ import java.sql.Timestamp;
 @Repository
 public class MessageStateRepository {
 
+    // Customer messages up to the marker (parameters: seq x3, conversation id). The created_at bound lets Postgres
+    // skip the message partitions older than the conversation (see MessageRepository.SINCE_CONVERSATION_START).
+    private static final String READ_CUSTOMER_COUNT = """
+            select case
+                when c.last_seq <= ? then c.customer_msg_count
+                else (
+                    select count(1) from message m
+                    where m.conversation_id = c.id and m.sender_type = 'customer' and m.seq <= ?
+                      and m.created_at >= c.created_at - interval '1' day
+                ) + (
+                    select coalesce(sum(s.customer_count), 0) from message_archive_segment s
+                    where s.conversation_id = c.id and s.max_seq <= ?
+                )
+            end
+            from conversation c
+            where c.id = ?
+            """;
+
     private final JdbcTemplate jdbcTemplate;
 
     public MessageStateRepository(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
 
-    public long upsertLastReadAndGetUpdatedAtSeconds(String conversationId, String userId, String lastReadMsgId) {
-        var sql = """
-                insert into message_state(conversation_id, user_id, last_read_msg_id, updated_at)
-                values (?, ?, ?, now())
+    /**
+     * Moves the read marker and snapshots the conversation's customer-message count up to it, which is what the
+     * inbox unread counters subtract from. A marker at the newest message (the usual case) copies
+     * {@code conversation.customer_msg_count}; an older marker counts the customer rows up to it through the partial
+     * {@code idx_message_conversation_customer_seq} index, plus whole archive segments at or below it.
+     */
+    public long upsertLastReadAndGetUpdatedAtSeconds(String conversationId, String userId, String lastReadMsgId, long lastReadSeq) {
+        var pg = """
+                insert into message_state(conversation_id, user_id, last_read_msg_id, last_read_seq, read_customer_count, updated_at)
+                values (?, ?, ?, ?, (%s), now())
                 on conflict (conversation_id, user_id)
-                do update set last_read_msg_id = excluded.last_read_msg_id, updated_at = now()
+                do update set last_read_msg_id = excluded.last_read_msg_id,
+                              last_read_seq = excluded.last_read_seq,
+                              read_customer_count = excluded.read_customer_count,
+                              updated_at = now()
                 returning updated_at
-                """;
-        Timestamp ts = jdbcTemplate.queryForObject(sql, Timestamp.class, conversationId, userId, lastReadMsgId);
+                """.formatted(READ_CUSTOMER_COUNT);
+        var h2 = """
+                merge into message_state(conversation_id, user_id, last_read_msg_id, last_read_seq, read_customer_count, updated_at)
+                key(conversation_id, user_id)
+                values (?, ?, ?, ?, (%s), current_timestamp)
+                """.formatted(READ_CUSTOMER_COUNT);
+        Object[] args = {conversationId, userId, lastReadMsgId, lastReadSeq, lastReadSeq, lastReadSeq, lastReadSeq, conversationId};
+        Timestamp ts;
+        try {
+            ts = jdbcTemplate.queryForObject(pg, Timestamp.class, args);
+        } catch (BadSqlGrammarException e) {
+            jdbcTemplate.update(h2, args);
+            ts = jdbcTemplate.queryForObject(
+                    "select updated_at from message_state where conversation_id = ? and user_id = ?",
+                    Timestamp.class, conversationId, userId);
+        }
         if (ts == null) return System.currentTimeMillis() / 1000;
         return ts.toInstant().getEpochSecond();
     }
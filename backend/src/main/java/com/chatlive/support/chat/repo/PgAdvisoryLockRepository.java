@@ -26,6 +26,36 @@ public class PgAdvisoryLockRepository {
         }
     }
 
+    /**
+     * Transaction-scoped variant: must run inside a transaction, whose connection holds the lock until commit or
+     * rollback (no unlock, so it cannot leak onto a pooled connection).
+     */
+    public boolean tryXactLock(String key) {
+        try {
+            Boolean ok = jdbcTemplate.queryForObject(
+                    "select pg_try_advisory_xact_lock(hashtext(?)::bigint)",
+                    Boolean.class,
+                    key
+            );
+            return ok != null && ok;
+        } catch (Exception ignored) {
+            // Non-Postgres (e.g. H2) or function not available: run without distributed lock.
+            return true;
+        }
+    }
+
+    /**
+     * Blocking {@link #tryXactLock}: waits until the key is free. Same rule, call inside a transaction; take several
+     * keys in a stable order.
+     */
+    public void xactLock(String key) {
+        try {
+            jdbcTemplate.query("select pg_advisory_xact_lock(hashtext(?)::bigint)", rs -> null, key);
+        } catch (Exception ignored) {
+            // Non-Postgres (e.g. H2) or function not available: run without distributed lock.
+        }
+    }
+
     public void unlock(String key) {
         try {
             jdbcTemplate.queryForObject(
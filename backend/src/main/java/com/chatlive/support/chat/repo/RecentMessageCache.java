@@ -0,0 +1,373 @@
+package com.chatlive.support.chat.repo;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+
+/**
+ * Bounded in-memory window of the newest messages (and the lifecycle events) of active conversations.
+ *
+ * A reconnect storm turns into one SYNC per client at the same moment; most of them resume from a cursor close to
+ * the newest message, which this window answers without touching the database. Rows are appended after commit by
+ * {@code MessageWritePipeline}, events by {@code WsBroadcaster#broadcastConversationEvent}, and a window is seeded
+ * from any database read that reached the newest message.
+ *
+ * A window is only kept while it is contiguous up to the newest committed {@code seq}: an append that would leave
+ * a gap drops it, and every commit is handed to the invalidation publisher so the WS cluster relay can drop the
+ * other nodes' copies. Seeds that raced with an append are discarded (same generation scheme as
+ * {@link ConversationAccessCache}). Entries idle for longer than the TTL are swept, and the number of conversations
+ * is bounded. Anything the window cannot answer returns empty and the caller reads the database.
+ */
+@Component
+public class RecentMessageCache {
+
+    private static final int STRIPES = 1024;
+    // Same as the SYNC event replay limit: a longer event history is never cached.
+    private static final int MAX_EVENTS = 500;
+
+    private static final class Window {
+        final ArrayDeque<MessageRepository.MessageRow> rows = new ArrayDeque<>();
+        // Newest committed seq of the conversation; 0 when it has no messages.
+        long highSeq;
+        // null until loaded once (or after overflowing MAX_EVENTS).
+        List<ConversationEventRepository.ConversationEventRawRow> events;
+        volatile long lastAccessMs;
+
+        long lowSeq() {
+            return rows.isEmpty() ? highSeq + 1 : rows.getFirst().seq();
+        }
+    }
+
+    private final boolean enabled;
+    private final int maxConversations;
+    private final int windowSize;
+    private final long ttlMs;
+    // Set by the cluster relay; receives every committed invalidation so other nodes can drop their copies.
+    private volatile BiConsumer<String, String> invalidationPublisher = (tenantId, conversationId) -> {
+    };
+
+    private final Map<String, Window> entries = new ConcurrentHashMap<>();
+    // Bumped whenever an append could not be applied, so a seed read before it is not installed afterwards.
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public RecentMessageCache(
+            MeterRegistry meterRegistry,
+            @Value("${app.chat.recent-cache.enabled:true}") boolean enabled,
+            @Value("${app.chat.recent-cache.max-conversations:5000}") int maxConversations,
+            @Value("${app.chat.recent-cache.window:64}") int windowSize,
+            @Value("${app.chat.recent-cache.ttl-seconds:600}") long ttlSeconds
+    ) {
+        this.enabled = enabled;
+        this.maxConversations = Math.max(100, maxConversations);
+        this.windowSize = Math.max(1, windowSize);
+        this.ttlMs = Math.max(1, ttlSeconds) * 1000L;
+
+        // Low-cardinality metrics: do NOT tag by tenant/conversation.
+        this.hits = Counter.builder("chatlive.chat.recent_cache.hits")
+                .description("Message/event reads served from the recent-message window")
+                .register(meterRegistry);
+        this.misses = Counter.builder("chatlive.chat.recent_cache.misses")
+                .description("Message/event reads that fell back to the database")
+                .register(meterRegistry);
+        Gauge.builder("chatlive.chat.recent_cache.conversations", entries, Map::size)
+                .description("Conversations with a cached recent-message window")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Capture before a database read whose result may be passed to {@link #seedNewest}.
+     */
+    public long generation(String tenantId, String conversationId) {
+        if (!enabled) return 0;
+        return generations.get(stripe(key(tenantId, conversationId)));
+    }
+
+    /**
+     * Messages with {@code seq > afterSeq} (at most {@code limit}) that the window holds. When the cursor is older
+     * than the window this is only the newer part of the answer: seqs are dense, so the caller reads
+     * {@code (afterSeq, first row's seq)} from the database and puts it in front. Empty when there is no window.
+     */
+    public Optional<List<MessageRepository.MessageRow>> after(String tenantId, String conversationId, long afterSeq, int limit) {
+        var w = window(tenantId, conversationId);
+        if (w == null) return miss();
+        synchronized (w) {
+            var out = new ArrayList<MessageRepository.MessageRow>(Math.min(limit, w.rows.size()));
+            for (var row : w.rows) {
+                if (row.seq() <= afterSeq) continue;
+                if (out.size() >= limit) break;
+                out.add(row);
+            }
+            hits.increment();
+            return Optional.of(out);
+        }
+    }
+
+    /**
+     * The {@code limit} messages just before {@code beforeSeq} ({@code null}: the newest ones), ascending, as far as
+     * the window holds them. A page reaching further back than the window (the 200-row SYNC tail against the default
+     * window) gets the window's part; the caller reads the rest, everything before the first row's seq, from the
+     * database. Empty when there is no window or it holds none of the page.
+     */
+    public Optional<List<MessageRepository.MessageRow>> before(String tenantId, String conversationId, Long beforeSeq, int limit) {
+        var w = window(tenantId, conversationId);
+        if (w == null) return miss();
+        synchronized (w) {
+            long upper = beforeSeq == null ? w.highSeq + 1 : Math.min(beforeSeq, w.highSeq + 1);
+            // upper <= 1: nothing precedes the cursor, the empty page is complete.
+            if (upper > 1 && upper - 1 < w.lowSeq()) return miss();
+            long from = Math.max(1, upper - limit);
+            var out = new ArrayList<MessageRepository.MessageRow>();
+            for (var row : w.rows) {
+                if (row.seq() >= from && row.seq() < upper) out.add(row);
+            }
+            hits.increment();
+            return Optional.of(out);
+        }
+    }
+
+    /**
+     * Seq of a message still in the window (resolves {@code after_msg_id} / {@code before_msg_id} without a query).
+     */
+    public OptionalLong seqOf(String tenantId, String conversationId, String msgId) {
+        var w = window(tenantId, conversationId);
+        if (w == null || msgId == null) return OptionalLong.empty();
+        synchronized (w) {
+            for (var row : w.rows) {
+                if (msgId.equals(row.id())) return OptionalLong.of(row.seq());
+            }
+        }
+        return OptionalLong.empty();
+    }
+
+    public Optional<List<ConversationEventRepository.ConversationEventRawRow>> events(String tenantId, String conversationId) {
+        var w = window(tenantId, conversationId);
+        if (w == null) return miss();
+        synchronized (w) {
+            if (w.events == null) return miss();
+            hits.increment();
+            return Optional.of(List.copyOf(w.events));
+        }
+    }
+
+    /**
+     * Install a window from a database read. {@code rows} must be the newest messages of the conversation, contiguous
+     * and ascending (empty only if it has none). Ignored if a window already exists or an append raced with the read.
+     */
+    public void seedNewest(String tenantId, String conversationId, long generation, List<MessageRepository.MessageRow> rows) {
+        if (!enabled) return;
+        var key = key(tenantId, conversationId);
+        var stripe = stripe(key);
+        if (generations.get(stripe) != generation || entries.containsKey(key)) return;
+        if (entries.size() >= maxConversations) {
+            evictSome(System.currentTimeMillis());
+        }
+        entries.compute(key, (k, existing) -> {
+            if (existing != null || generations.get(stripe) != generation) return existing;
+            var w = new Window();
+            var from = Math.max(0, rows.size() - windowSize);
+            w.rows.addAll(rows.subList(from, rows.size()));
+            w.highSeq = rows.isEmpty() ? 0 : rows.getLast().seq();
+            w.lastAccessMs = System.currentTimeMillis();
+            return w;
+        });
+    }
+
+    /**
+     * Cache the event history loaded for a SYNC; {@code events} must be complete (fewer than the read limit).
+     */
+    public void seedEvents(String tenantId, String conversationId, long generation,
+                           List<ConversationEventRepository.ConversationEventRawRow> events, int limit) {
+        if (!enabled || events.size() >= Math.min(limit, MAX_EVENTS)) return;
+        var key = key(tenantId, conversationId);
+        var stripe = stripe(key);
+        entries.computeIfPresent(key, (k, w) -> {
+            if (generations.get(stripe) != generation) return w;
+            synchronized (w) {
+                if (w.events == null) w.events = new ArrayList<>(events);
+            }
+            return w;
+        });
+    }
+
+    /**
+     * Append freshly inserted rows. Inside a transaction this is deferred until it commits.
+     */
+    public void appendMessages(List<MessageRepository.MessageRow> rows) {
+        if (!enabled || rows.isEmpty()) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            var copy = List.copyOf(rows);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applyMessages(copy);
+                }
+            });
+            return;
+        }
+        applyMessages(rows);
+    }
+
+    public void appendEvent(String tenantId, String conversationId, ConversationEventRepository.ConversationEventRawRow event) {
+        if (!enabled) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applyEvent(tenantId, conversationId, event);
+                }
+            });
+            return;
+        }
+        applyEvent(tenantId, conversationId, event);
+    }
+
+    private void applyMessages(List<MessageRepository.MessageRow> rows) {
+        var sorted = new ArrayList<>(rows);
+        sorted.sort(Comparator.comparingLong(MessageRepository.MessageRow::seq));
+        var touched = new LinkedHashSet<String>();
+        for (var row : sorted) {
+            var key = key(row.tenantId(), row.conversationId());
+            touched.add(row.tenantId() + "\u0000" + row.conversationId());
+            entries.compute(key, (k, w) -> {
+                if (w == null) {
+                    generations.incrementAndGet(stripe(k));
+                    if (row.seq() != 1) return null;
+                    // First message of a new conversation: the window is trivially complete.
+                    var created = new Window();
+                    created.rows.add(row);
+                    created.highSeq = 1;
+                    created.lastAccessMs = System.currentTimeMillis();
+                    return created;
+                }
+                synchronized (w) {
+                    if (row.seq() <= w.highSeq) return w;
+                    if (row.seq() != w.highSeq + 1) {
+                        // Missed a commit (out-of-order append): the window is no longer contiguous.
+                        generations.incrementAndGet(stripe(k));
+                        return null;
+                    }
+                    w.rows.addLast(row);
+                    w.highSeq = row.seq();
+                    while (w.rows.size() > windowSize) {
+                        w.rows.removeFirst();
+                    }
+                    return w;
+                }
+            });
+        }
+        for (var t : touched) {
+            var sep = t.indexOf('\u0000');
+            publish(t.substring(0, sep), t.substring(sep + 1));
+        }
+    }
+
+    private void applyEvent(String tenantId, String conversationId, ConversationEventRepository.ConversationEventRawRow event) {
+        var key = key(tenantId, conversationId);
+        generations.incrementAndGet(stripe(key));
+        entries.computeIfPresent(key, (k, w) -> {
+            synchronized (w) {
+                if (w.events == null) return w;
+                if (w.events.size() + 1 >= MAX_EVENTS) {
+                    w.events = null;
+                } else {
+                    w.events.add(event);
+                }
+            }
+            return w;
+        });
+        publish(tenantId, conversationId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.chat.recent-cache.sweep-interval-ms:60000}")
+    public void sweepExpired() {
+        if (!enabled) return;
+        var cutoff = System.currentTimeMillis() - ttlMs;
+        entries.values().removeIf(w -> w.lastAccessMs < cutoff);
+    }
+
+    private Window window(String tenantId, String conversationId) {
+        if (!enabled || tenantId == null || conversationId == null) return null;
+        var key = key(tenantId, conversationId);
+        var w = entries.get(key);
+        if (w == null) return null;
+        var now = System.currentTimeMillis();
+        if (w.lastAccessMs < now - ttlMs) {
+            entries.remove(key, w);
+            return null;
+        }
+        w.lastAccessMs = now;
+        return w;
+    }
+
+    private <T> Optional<T> miss() {
+        if (enabled) misses.increment();
+        return Optional.empty();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Receives {@code (tenantId, conversationId)} for every committed change of a conversation.
+     */
+    public void setInvalidationPublisher(BiConsumer<String, String> publisher) {
+        this.invalidationPublisher = publisher;
+    }
+
+    /**
+     * Drops the window after another node committed to the conversation (not re-published).
+     */
+    public void evictRemote(String tenantId, String conversationId) {
+        if (!enabled || tenantId == null || conversationId == null) return;
+        entries.compute(key(tenantId, conversationId), (k, w) -> {
+            generations.incrementAndGet(stripe(k));
+            return null;
+        });
+    }
+
+    private void publish(String tenantId, String conversationId) {
+        invalidationPublisher.accept(tenantId, conversationId);
+    }
+
+    private void evictSome(long now) {
+        // Drop idle windows first; if still full, drop the least recently used tenth.
+        entries.values().removeIf(w -> w.lastAccessMs < now - ttlMs);
+        if (entries.size() < maxConversations) return;
+        int toDrop = Math.max(1, maxConversations / 10);
+        entries.entrySet().stream()
+                .sorted(Comparator.comparingLong(e -> e.getValue().lastAccessMs))
+                .limit(toDrop)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(entries::remove);
+    }
+
+    private static String key(String tenantId, String conversationId) {
+        return tenantId + "|" + conversationId;
+    }
+
+    private static int stripe(String key) {
+        return (key.hashCode() & 0x7fffffff) % STRIPES;
+    }
+}
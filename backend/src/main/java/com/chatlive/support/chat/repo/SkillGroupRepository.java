@@ -24,6 +24,13 @@ public class SkillGroupRepository {
     public record SkillGroupMemberRow(String groupId, String agentUserId, int weight) {
     }
 
+    /**
+     * Queue routing of a group: priority 0..10 (higher is served earlier) and the target wait in seconds
+     * (null = application default).
+     */
+    public record GroupRoutingRow(String groupId, int priority, Integer targetWaitSeconds) {
+    }
+
     private final JdbcTemplate jdbcTemplate;
 
     public SkillGroupRepository(JdbcTemplate jdbcTemplate) {
@@ -195,6 +202,39 @@ public class SkillGroupRepository {
         ), groupId);
     }
 
+    /**
+     * All memberships of the tenant's groups, each group's members in candidate order (weight desc, user asc).
+     */
+    public List<SkillGroupMemberRow> listMembersByTenant(String tenantId) {
+        var sql = """
+                select m.group_id, m.agent_user_id, m.weight
+                from skill_group_member m
+                join skill_group g on g.id = m.group_id
+                where g.tenant_id = ?
+                order by m.group_id asc, m.weight desc, m.agent_user_id asc
+                """;
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new SkillGroupMemberRow(
+                rs.getString("group_id"),
+                rs.getString("agent_user_id"),
+                rs.getInt("weight")
+        ), tenantId);
+    }
+
+    public List<SkillGroupMemberRow> listMembershipsForAgent(String tenantId, String agentUserId) {
+        var sql = """
+                select m.group_id, m.agent_user_id, m.weight
+                from skill_group_member m
+                join skill_group g on g.id = m.group_id
+                where g.tenant_id = ?
+                  and m.agent_user_id = ?
+                """;
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new SkillGroupMemberRow(
+                rs.getString("group_id"),
+                rs.getString("agent_user_id"),
+                rs.getInt("weight")
+        ), tenantId, agentUserId);
+    }
+
     public int countGroupsForAgent(String tenantId, String agentUserId) {
         var sql = """
                 select count(1)
@@ -243,4 +283,28 @@ public class SkillGroupRepository {
         var sql = "update skill_group set name = ?, enabled = coalesce(?, enabled) where tenant_id = ? and id = ?";
         return jdbcTemplate.update(sql, name, enabled, tenantId, groupId);
     }
+
+    public List<GroupRoutingRow> listRoutingByTenant(String tenantId) {
+        var sql = "select id, priority, target_wait_seconds from skill_group where tenant_id = ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new GroupRoutingRow(
+                rs.getString("id"),
+                rs.getInt("priority"),
+                rs.getObject("target_wait_seconds", Integer.class)
+        ), tenantId);
+    }
+
+    public Optional<GroupRoutingRow> findRouting(String tenantId, String groupId) {
+        var sql = "select id, priority, target_wait_seconds from skill_group where tenant_id = ? and id = ? limit 1";
+        var list = jdbcTemplate.query(sql, (rs, rowNum) -> new GroupRoutingRow(
+                rs.getString("id"),
+                rs.getInt("priority"),
+                rs.getObject("target_wait_seconds", Integer.class)
+        ), tenantId, groupId);
+        return list.stream().findFirst();
+    }
+
+    public int updateRouting(String tenantId, String groupId, int priority, Integer targetWaitSeconds) {
+        var sql = "update skill_group set priority = ?, target_wait_seconds = ? where tenant_id = ? and id = ?";
+        return jdbcTemplate.update(sql, priority, targetWaitSeconds, tenantId, groupId);
+    }
 }
@@ -1,47 +1,174 @@
 package com.chatlive.support.chat.service;
 
 import com.chatlive.support.chat.repo.AgentSessionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Agent presence sessions, kept as an in-memory lease table in front of {@code agent_session}.
+ *
+ * Heartbeats only extend the lease in memory; dirty leases are flushed to the table in one batched statement at a
+ * fixed cadence, and {@link #hasActiveSession(String)} is answered from memory. Session create/logout still write
+ * through so other nodes (and assignment queries joining {@code agent_session}) see them immediately. Leases held
+ * by other nodes are refreshed from the table periodically, and the table seeds memory on startup, so a restart
+ * does not mark everyone offline.
+ *
+ * {@link PresenceListener}s hear when a user's first live lease appears here (created, or picked up from the table)
+ * and when the last one goes (logout or expiry).
+ */
 @Service
-public class AgentPresenceService {
+public class AgentPresenceService implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(AgentPresenceService.class);
+
+    private static final class Lease {
+        final String sessionId;
+        final String tenantId;
+        final String userId;
+        volatile long lastSeenAtMs;
+        volatile long expiresAtMs;
+        // Heartbeat received here and not yet flushed.
+        volatile boolean dirty;
+
+        Lease(String sessionId, String tenantId, String userId, long lastSeenAtMs, long expiresAtMs) {
+            this.sessionId = sessionId;
+            this.tenantId = tenantId;
+            this.userId = userId;
+            this.lastSeenAtMs = lastSeenAtMs;
+            this.expiresAtMs = expiresAtMs;
+        }
+    }
+
+    private record Expiry(long atMs, String sessionId) {
+    }
+
+    public record ExpiredSession(String sessionId, String tenantId, String userId) {
+    }
+
+    /**
+     * Told when {@code userId} becomes present ({@code active}) or stops being present on this node.
+     */
+    @FunctionalInterface
+    public interface PresenceListener {
+        void presenceChanged(String tenantId, String userId, boolean active);
+    }
 
     private final AgentSessionRepository agentSessionRepository;
     private final long heartbeatTtlSeconds;
     private final long heartbeatIntervalSeconds;
 
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> sessionIdsByUser = new ConcurrentHashMap<>();
+    // Min-heap of lease deadlines. Entries are not removed on renewal; stale ones are skipped when popped.
+    private final PriorityQueue<Expiry> expiries = new PriorityQueue<>((a, b) -> Long.compare(a.atMs(), b.atMs()));
+    private final List<PresenceListener> presenceListeners = new CopyOnWriteArrayList<>();
+
+    private final Counter heartbeats;
+    private final Counter flushedRows;
+
     public AgentPresenceService(
             AgentSessionRepository agentSessionRepository,
+            MeterRegistry meterRegistry,
             @Value("${app.agent.heartbeat.ttl-seconds:45}") long heartbeatTtlSeconds,
             @Value("${app.agent.heartbeat.interval-seconds:20}") long heartbeatIntervalSeconds
     ) {
         this.agentSessionRepository = agentSessionRepository;
         this.heartbeatTtlSeconds = heartbeatTtlSeconds;
         this.heartbeatIntervalSeconds = heartbeatIntervalSeconds;
+
+        // Low-cardinality metrics: do NOT tag by tenant/agent.
+        Gauge.builder("chatlive.agent.presence.leases", leases, Map::size)
+                .description("Agent presence leases held in memory")
+                .register(meterRegistry);
+        this.heartbeats = Counter.builder("chatlive.agent.presence.heartbeats")
+                .description("Agent heartbeats applied in memory")
+                .register(meterRegistry);
+        this.flushedRows = Counter.builder("chatlive.agent.presence.flushed_rows")
+                .description("Agent session rows written by the write-behind flush")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        try {
+            refreshFromDatabase();
+        } catch (Exception e) {
+            log.warn("agent_presence_seed_failed", e);
+        }
+    }
+
+    public void subscribePresence(PresenceListener listener) {
+        if (listener != null) presenceListeners.add(listener);
     }
 
     public String createSession(String tenantId, String userId) {
         var sessionId = UUID.randomUUID().toString();
-        var expiresAt = Instant.now().plusSeconds(heartbeatTtlSeconds);
+        var now = System.currentTimeMillis();
+        var expiresAt = Instant.ofEpochMilli(now).plusSeconds(heartbeatTtlSeconds);
         agentSessionRepository.createSession(sessionId, tenantId, userId, expiresAt);
+        put(new Lease(sessionId, tenantId, userId, now, expiresAt.toEpochMilli()));
         return sessionId;
     }
 
     public boolean heartbeat(String sessionId, String userId) {
-        var expiresAt = Instant.now().plusSeconds(heartbeatTtlSeconds);
-        return agentSessionRepository.touchSession(sessionId, userId, expiresAt);
+        if (sessionId == null || userId == null) return false;
+        var now = System.currentTimeMillis();
+        var lease = leases.get(sessionId);
+        if (lease == null) {
+            // Unknown here (created on another node and not refreshed yet): fall back to the table once.
+            var expiresAt = Instant.ofEpochMilli(now).plusSeconds(heartbeatTtlSeconds);
+            var row = agentSessionRepository.findBySessionId(sessionId).orElse(null);
+            if (row == null || !userId.equals(row.userId())) return false;
+            if (!agentSessionRepository.touchSession(sessionId, userId, expiresAt)) return false;
+            put(new Lease(sessionId, row.tenantId(), userId, now, expiresAt.toEpochMilli()));
+            heartbeats.increment();
+            return true;
+        }
+        if (!userId.equals(lease.userId)) return false;
+
+        lease.lastSeenAtMs = now;
+        lease.expiresAtMs = now + heartbeatTtlSeconds * 1000L;
+        lease.dirty = true;
+        schedule(lease);
+        heartbeats.increment();
+        return true;
     }
 
     public void logout(String sessionId, String userId) {
         agentSessionRepository.deleteSession(sessionId, userId);
+        var lease = leases.get(sessionId);
+        if (lease != null && lease.userId.equals(userId) && remove(lease)) {
+            firePresenceEnded(lease);
+        }
     }
 
     public boolean hasActiveSession(String userId) {
-        return agentSessionRepository.hasActiveSession(userId);
+        if (userId == null) return false;
+        var ids = sessionIdsByUser.get(userId);
+        if (ids == null) return false;
+        var now = System.currentTimeMillis();
+        for (var id : ids) {
+            var lease = leases.get(id);
+            if (lease != null && lease.expiresAtMs > now) return true;
+        }
+        return false;
     }
 
     public long heartbeatTtlSeconds() {
@@ -51,4 +178,124 @@ public class AgentPresenceService {
     public long heartbeatIntervalSeconds() {
         return heartbeatIntervalSeconds;
     }
+
+    /**
+     * Remove and return leases whose deadline has passed. Cost is proportional to what expired, not to the number
+     * of sessions.
+     */
+    public List<ExpiredSession> sweepExpired() {
+        var now = System.currentTimeMillis();
+        var out = new ArrayList<ExpiredSession>();
+        while (true) {
+            Expiry head;
+            synchronized (expiries) {
+                head = expiries.peek();
+                if (head == null || head.atMs() > now) break;
+                expiries.poll();
+            }
+            var lease = leases.get(head.sessionId());
+            // Renewed (a later deadline is queued) or already removed.
+            if (lease == null || lease.expiresAtMs > now) continue;
+            if (remove(lease)) {
+                out.add(new ExpiredSession(lease.sessionId, lease.tenantId, lease.userId));
+                firePresenceEnded(lease);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Write-behind: persist heartbeats received since the last flush in one batch.
+     */
+    @Scheduled(fixedDelayString = "${app.agent.presence.flush-interval-ms:5000}")
+    public void flushHeartbeats() {
+        var batch = new ArrayList<AgentSessionRepository.AgentSessionRow>();
+        for (var lease : leases.values()) {
+            if (!lease.dirty) continue;
+            lease.dirty = false;
+            batch.add(new AgentSessionRepository.AgentSessionRow(
+                    lease.sessionId,
+                    lease.tenantId,
+                    lease.userId,
+                    Instant.ofEpochMilli(lease.lastSeenAtMs),
+                    Instant.ofEpochMilli(lease.expiresAtMs)
+            ));
+        }
+        if (batch.isEmpty()) return;
+        try {
+            agentSessionRepository.touchSessions(batch);
+            flushedRows.increment(batch.size());
+        } catch (Exception e) {
+            // Retry on the next flush.
+            for (var row : batch) {
+                var lease = leases.get(row.sessionId());
+                if (lease != null) lease.dirty = true;
+            }
+            log.warn("agent_presence_flush_failed rows={}", batch.size(), e);
+        }
+    }
+
+    /**
+     * Pick up sessions created or renewed on other nodes.
+     */
+    @Scheduled(fixedDelayString = "${app.agent.presence.refresh-interval-ms:10000}")
+    public void refreshFromDatabase() {
+        var now = System.currentTimeMillis();
+        for (var row : agentSessionRepository.listActiveSessions()) {
+            var lease = leases.get(row.sessionId());
+            var expiresAtMs = row.expiresAt().toEpochMilli();
+            if (lease == null) {
+                put(new Lease(row.sessionId(), row.tenantId(), row.userId(), row.lastSeenAt().toEpochMilli(), expiresAtMs));
+            } else if (!lease.dirty && expiresAtMs > lease.expiresAtMs) {
+                lease.lastSeenAtMs = row.lastSeenAt().toEpochMilli();
+                lease.expiresAtMs = expiresAtMs;
+                schedule(lease);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("agent_presence_refreshed leases={} tookMs={}", leases.size(), System.currentTimeMillis() - now);
+        }
+    }
+
+    private void put(Lease lease) {
+        var wasActive = hasActiveSession(lease.userId);
+        leases.put(lease.sessionId, lease);
+        sessionIdsByUser.computeIfAbsent(lease.userId, k -> ConcurrentHashMap.newKeySet()).add(lease.sessionId);
+        schedule(lease);
+        if (!wasActive && lease.expiresAtMs > System.currentTimeMillis()) {
+            firePresenceChanged(lease.tenantId, lease.userId, true);
+        }
+    }
+
+    private boolean remove(Lease lease) {
+        if (!leases.remove(lease.sessionId, lease)) return false;
+        sessionIdsByUser.computeIfPresent(lease.userId, (k, ids) -> {
+            ids.remove(lease.sessionId);
+            return ids.isEmpty() ? null : ids;
+        });
+        return true;
+    }
+
+    private void firePresenceEnded(Lease lease) {
+        if (!hasActiveSession(lease.userId)) {
+            firePresenceChanged(lease.tenantId, lease.userId, false);
+        }
+    }
+
+    private void firePresenceChanged(String tenantId, String userId, boolean active) {
+        if (tenantId == null || userId == null) return;
+        for (var listener : presenceListeners) {
+            try {
+                listener.presenceChanged(tenantId, userId, active);
+            } catch (Exception e) {
+                log.warn("agent_presence_listener_failed tenant={} active={}", tenantId, active, e);
+            }
+        }
+    }
+
+    private void schedule(Lease lease) {
+        synchronized (expiries) {
+            expiries.add(new Expiry(lease.expiresAtMs, lease.sessionId));
+        }
+    }
 }
@@ -0,0 +1,191 @@
+package com.chatlive.support.chat.service;
+
+import com.chatlive.support.chat.repo.AgentProfileRepository;
+import com.chatlive.support.chat.repo.ConversationRepository;
+import com.chatlive.support.chat.ws.WsBroadcaster;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory per-tenant model of agent status/capacity as last broadcast to the team UI.
+ *
+ * Callers only mark an agent dirty (presence, profile or assignment changed). A short flush recomputes the dirty
+ * agents in one pass per tenant (one profile query, one load query, presence from memory) and broadcasts only real
+ * transitions, batched into one frame per tenant. A slow reconcile re-reads every known agent the same way, which
+ * catches changes made on other nodes or never marked; it too broadcasts only what changed, so an idle tenant costs
+ * no frames and N nodes do not each fan the whole roster out every minute.
+ */
+@Component
+public class AgentStatusTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(AgentStatusTracker.class);
+
+    public record AgentStatusView(
+            String status,
+            String effectiveStatus,
+            int maxConcurrent,
+            int assignedActive,
+            int remainingCapacity,
+            boolean canAccept
+    ) {
+    }
+
+    private final AgentProfileRepository agentProfileRepository;
+    private final ConversationRepository conversationRepository;
+    private final AgentPresenceService agentPresenceService;
+    private final WsBroadcaster broadcaster;
+    private final ObjectMapper objectMapper;
+
+    // tenantId -> userId -> last broadcast view
+    private final Map<String, Map<String, AgentStatusView>> published = new ConcurrentHashMap<>();
+    // tenantId -> userIds to recompute on the next flush
+    private final Map<String, Set<String>> dirty = new ConcurrentHashMap<>();
+
+    private final Counter transitions;
+    private final Counter recomputed;
+
+    public AgentStatusTracker(
+            AgentProfileRepository agentProfileRepository,
+            ConversationRepository conversationRepository,
+            AgentPresenceService agentPresenceService,
+            WsBroadcaster broadcaster,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry
+    ) {
+        this.agentProfileRepository = agentProfileRepository;
+        this.conversationRepository = conversationRepository;
+        this.agentPresenceService = agentPresenceService;
+        this.broadcaster = broadcaster;
+        this.objectMapper = objectMapper;
+
+        // Low-cardinality metrics: do NOT tag by tenant/agent.
+        this.transitions = Counter.builder("chatlive.agent.status.transitions")
+                .description("Agent status/capacity changes broadcast to the team")
+                .register(meterRegistry);
+        this.recomputed = Counter.builder("chatlive.agent.status.recomputed")
+                .description("Agent status recomputations (dirty flushes and reconciles)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Presence, profile or assigned load may have changed for this agent; recompute on the next flush.
+     */
+    public void markDirty(String tenantId, String userId) {
+        if (tenantId == null || tenantId.isBlank() || userId == null || userId.isBlank()) return;
+        dirty.computeIfAbsent(tenantId, k -> ConcurrentHashMap.newKeySet()).add(userId);
+    }
+
+    /**
+     * Cheap variant for heartbeats: only agents the model does not know yet are recomputed.
+     */
+    public void track(String tenantId, String userId) {
+        if (tenantId == null || tenantId.isBlank() || userId == null || userId.isBlank()) return;
+        var known = published.get(tenantId);
+        if (known != null && known.containsKey(userId)) return;
+        markDirty(tenantId, userId);
+    }
+
+    public java.util.Optional<AgentStatusView> find(String tenantId, String userId) {
+        var known = published.get(tenantId);
+        return java.util.Optional.ofNullable(known == null ? null : known.get(userId));
+    }
+
+    @Scheduled(fixedDelayString = "${app.agent.status.flush-interval-ms:250}")
+    public void flush() {
+        for (var entry : dirty.entrySet()) {
+            var tenantId = entry.getKey();
+            var users = new ArrayList<String>();
+            for (var userId : entry.getValue()) {
+                // Remove one by one so marks added concurrently are kept for the next flush.
+                if (entry.getValue().remove(userId)) {
+                    users.add(userId);
+                }
+            }
+            if (users.isEmpty()) continue;
+            try {
+                publish(tenantId, users);
+            } catch (Exception e) {
+                log.warn("agent_status_flush_failed tenant={} agents={}", tenantId, users.size(), e);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.agent.status.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        for (var entry : published.entrySet()) {
+            var users = new ArrayList<>(entry.getValue().keySet());
+            if (users.isEmpty()) continue;
+            try {
+                publish(entry.getKey(), users);
+            } catch (Exception e) {
+                log.warn("agent_status_reconcile_failed tenant={}", entry.getKey(), e);
+            }
+        }
+    }
+
+    private void publish(String tenantId, List<String> userIds) {
+        var profiles = agentProfileRepository.findByUserIds(tenantId, userIds);
+        var loads = conversationRepository.countActiveAssignedByAgents(tenantId, userIds);
+        var known = published.computeIfAbsent(tenantId, k -> new ConcurrentHashMap<>());
+        var changed = new ArrayList<ObjectNode>();
+        for (var userId : userIds) {
+            var profile = profiles.get(userId);
+            if (profile == null) {
+                profile = new AgentProfileRepository.AgentProfileRow(userId, "offline", 3);
+            }
+            var view = compute(profile, loads.getOrDefault(userId, 0));
+            recomputed.increment();
+            var previous = known.put(userId, view);
+            if (!view.equals(previous)) {
+                transitions.increment();
+                changed.add(toEvent(userId, view));
+            }
+        }
+        if (changed.isEmpty()) return;
+        if (changed.size() == 1) {
+            broadcaster.broadcastAgentStatus(tenantId, changed.getFirst());
+            return;
+        }
+        var agents = objectMapper.createArrayNode();
+        changed.forEach(agents::add);
+        broadcaster.broadcastAgentStatusBatch(tenantId, agents);
+    }
+
+    private AgentStatusView compute(AgentProfileRepository.AgentProfileRow profile, int assignedActive) {
+        var userId = profile.userId();
+        var maxC = Math.max(1, profile.maxConcurrent());
+        var remaining = Math.max(0, maxC - assignedActive);
+        var hasPresence = agentPresenceService.hasActiveSession(userId);
+        var status = hasPresence ? profile.status() : "offline";
+        if (hasPresence && "offline".equals(status)) {
+            status = "online";
+        }
+        var effective = ("online".equals(status) && remaining == 0) ? "busy" : status;
+        var canAccept = "online".equals(status) && remaining > 0;
+        return new AgentStatusView(status, effective, maxC, assignedActive, remaining, canAccept);
+    }
+
+    private ObjectNode toEvent(String userId, AgentStatusView view) {
+        ObjectNode evt = objectMapper.createObjectNode();
+        evt.put("user_id", userId);
+        evt.put("status", view.status());
+        evt.put("effective_status", view.effectiveStatus());
+        evt.put("max_concurrent", view.maxConcurrent());
+        evt.put("assigned_active", view.assignedActive());
+        evt.put("remaining_capacity", view.remainingCapacity());
+        evt.put("can_accept", view.canAccept());
+        return evt;
+    }
+}
@@ -1,51 +1,60 @@
 package com.chatlive.support.chat.service;
 
+import com.chatlive.support.chat.repo.ConversationRepository;
 import com.chatlive.support.chat.repo.PgAdvisoryLockRepository;
-import com.chatlive.support.chat.repo.TenantRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
+/**
+ * Safety-net sweep of every tenant's queue. Queued conversations are normally picked up by
+ * {@link AssignmentWakeups} as soon as capacity frees up; this slower scan covers what those miss (changes made on
+ * another node, dropped wakeups, strategy switches). Only tenants with something queued are visited, and the visit
+ * does not count as engine use, so idle tenants are not kept loaded by the sweep alone.
+ */
 @Component
 public class AssignmentScheduler {
 
     private static final Logger log = LoggerFactory.getLogger(AssignmentScheduler.class);
 
-    private final TenantRepository tenantRepository;
+    private final ConversationRepository conversationRepository;
     private final PgAdvisoryLockRepository lockRepository;
     private final AssignmentService assignmentService;
+    private final TransactionTemplate transactionTemplate;
     private final int batchSize;
 
     public AssignmentScheduler(
-            TenantRepository tenantRepository,
+            ConversationRepository conversationRepository,
             PgAdvisoryLockRepository lockRepository,
             AssignmentService assignmentService,
+            TransactionTemplate transactionTemplate,
             @Value("${app.assignment.queue-batch-size:50}") int batchSize
     ) {
-        this.tenantRepository = tenantRepository;
+        this.conversationRepository = conversationRepository;
         this.lockRepository = lockRepository;
         this.assignmentService = assignmentService;
+        this.transactionTemplate = transactionTemplate;
         this.batchSize = Math.max(1, Math.min(batchSize, 500));
     }
 
-    @Scheduled(fixedDelayString = "${app.assignment.queue-scan-interval-ms:5000}")
+    @Scheduled(fixedDelayString = "${app.assignment.queue-scan-interval-ms:60000}")
     public void scanAndAssignQueued() {
-        for (var tenantId : tenantRepository.listTenantIds()) {
+        for (var tenantId : conversationRepository.listTenantIdsWithQueued()) {
             var lockKey = "assign_queue:" + tenantId;
-            if (!lockRepository.tryLock(lockKey)) {
-                continue;
-            }
             try {
-                int assigned = assignmentService.tryAssignFromQueue(tenantId, batchSize);
-                if (assigned > 0) {
-                    log.info("queue_assign tenant={} assigned={}", tenantId, assigned);
+                // Transaction-scoped lock, shared with AssignmentWakeups; released by the drain's commit/rollback.
+                var result = transactionTemplate.execute(status -> lockRepository.tryXactLock(lockKey)
+                        ? assignmentService.tryAssignFromQueue(tenantId, batchSize)
+                        : null);
+                if (result != null && !result.assigned_ids().isEmpty()) {
+                    log.info("queue_assign tenant={} scanned={} planned={} assigned={}",
+                            tenantId, result.scanned(), result.planned(), result.assigned_ids().size());
                 }
             } catch (Exception e) {
                 log.warn("queue_assign_failed tenant={}", tenantId, e);
-            } finally {
-                lockRepository.unlock(lockKey);
             }
         }
     }
@@ -3,10 +3,9 @@ package com.chatlive.support.chat.service;
 import com.chatlive.support.auth.service.jwt.JwtClaims;
 import com.chatlive.support.chat.repo.AgentProfileRepository;
 import com.chatlive.support.chat.repo.AssignmentStrategyConfigRepository;
-import com.chatlive.support.chat.repo.AssignCursorRepository;
 import com.chatlive.support.chat.repo.ConversationRepository;
-import com.chatlive.support.chat.service.assignment.AssignmentContext;
-import com.chatlive.support.chat.service.assignment.AssignmentStrategyResolver;
+import com.chatlive.support.chat.repo.PgAdvisoryLockRepository;
+import com.chatlive.support.chat.service.assignment.AssignmentEngine;
 import com.chatlive.support.user.repo.UserAccountRepository;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.DistributionSummary;
@@ -31,15 +30,14 @@ public class AssignmentService {
 
     private static final Logger log = LoggerFactory.getLogger(AssignmentService.class);
 
-    private static final String DEFAULT_GROUP_KEY = "__default__";
-
     private final ConversationRepository conversationRepository;
     private final AgentProfileRepository agentProfileRepository;
-    private final AssignCursorRepository assignCursorRepository;
     private final WsBroadcaster wsBroadcaster;
-    private final AssignmentStrategyResolver assignmentStrategyResolver;
+    private final AgentStatusTracker agentStatusTracker;
+    private final AssignmentEngine assignmentEngine;
     private final AssignmentStrategyConfigRepository assignmentStrategyConfigRepository;
     private final UserAccountRepository userAccountRepository;
+    private final PgAdvisoryLockRepository lockRepository;
 
     private final String defaultAssignmentStrategyKey;
 
@@ -48,25 +46,30 @@ public class AssignmentService {
         private final DistributionSummary onlineTriggerAssignedPerTrigger;
         private final DistributionSummary onlineTriggerScannedPerTrigger;
         private final Timer onlineTriggerDuration;
+        private final Timer queueWaitEvent;
+        private final Timer queueWaitSweep;
+        private final Timer queueWaitAgentOnline;
 
     public AssignmentService(
             ConversationRepository conversationRepository,
             AgentProfileRepository agentProfileRepository,
-            AssignCursorRepository assignCursorRepository,
             WsBroadcaster wsBroadcaster,
-            AssignmentStrategyResolver assignmentStrategyResolver,
+            AgentStatusTracker agentStatusTracker,
+            AssignmentEngine assignmentEngine,
             AssignmentStrategyConfigRepository assignmentStrategyConfigRepository,
             UserAccountRepository userAccountRepository,
+            PgAdvisoryLockRepository lockRepository,
             MeterRegistry meterRegistry,
             @Value("${app.assignment.strategy:round_robin}") String defaultAssignmentStrategyKey
     ) {
         this.conversationRepository = conversationRepository;
         this.agentProfileRepository = agentProfileRepository;
-        this.assignCursorRepository = assignCursorRepository;
         this.wsBroadcaster = wsBroadcaster;
-        this.assignmentStrategyResolver = assignmentStrategyResolver;
+        this.agentStatusTracker = agentStatusTracker;
+        this.assignmentEngine = assignmentEngine;
         this.assignmentStrategyConfigRepository = assignmentStrategyConfigRepository;
         this.userAccountRepository = userAccountRepository;
+        this.lockRepository = lockRepository;
 
         this.defaultAssignmentStrategyKey = normalizeStrategyKey(defaultAssignmentStrategyKey);
 
@@ -88,11 +91,37 @@ public class AssignmentService {
         this.onlineTriggerDuration = Timer.builder("chatlive.assignment.online_trigger.duration")
             .description("Duration of online-trigger assignment")
             .register(meterRegistry);
+        this.queueWaitEvent = queueWaitTimer(meterRegistry, TRIGGER_EVENT);
+        this.queueWaitSweep = queueWaitTimer(meterRegistry, TRIGGER_SWEEP);
+        this.queueWaitAgentOnline = queueWaitTimer(meterRegistry, TRIGGER_AGENT_ONLINE);
+    }
+
+    // Time a queued conversation waited before it got an agent, by what picked it up.
+    private static Timer queueWaitTimer(MeterRegistry meterRegistry, String trigger) {
+        return Timer.builder("chatlive.assignment.queue_wait")
+            .description("Time from conversation creation to assignment out of the queue")
+            .tag("trigger", trigger)
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .register(meterRegistry);
+    }
+
+    private Timer queueWait(String trigger) {
+        return switch (trigger == null ? "" : trigger) {
+            case TRIGGER_EVENT -> queueWaitEvent;
+            case TRIGGER_AGENT_ONLINE -> queueWaitAgentOnline;
+            default -> queueWaitSweep;
+        };
+    }
+
+    private static void recordQueueWait(Timer timer, java.time.Instant createdAt) {
+        if (createdAt == null) return;
+        var waited = java.time.Duration.between(createdAt, java.time.Instant.now());
+        timer.record(waited.isNegative() ? java.time.Duration.ZERO : waited);
     }
 
     private static String normalizeGroupKey(String groupKey) {
         var gk = (groupKey == null ? "" : groupKey.trim());
-        if (gk.isBlank()) return DEFAULT_GROUP_KEY;
+        if (gk.isBlank()) return AssignmentEngine.DEFAULT_GROUP_KEY;
         return gk;
     }
 
@@ -106,9 +135,12 @@ public class AssignmentService {
         };
     }
 
-    private String resolveAgentLabel(String userId) {
+    private String resolveAgentLabel(String tenantId, String userId) {
         if (userId == null || userId.isBlank()) return null;
 
+        var cached = assignmentEngine.agentLabel(tenantId, userId).orElse(null);
+        if (cached != null) return cached;
+
         var display = agentProfileRepository.findDisplayNameByUserId(userId)
                 .map(s -> s == null ? null : s.trim())
                 .orElse(null);
@@ -120,16 +152,33 @@ public class AssignmentService {
                 .orElse(null);
     }
 
-    private void putAgentLabel(ObjectNode data, String displayNameKey, String userId) {
+    private void putAgentLabel(ObjectNode data, String tenantId, String displayNameKey, String userId) {
         if (data == null) return;
         if (userId == null || userId.isBlank()) return;
 
-        var label = resolveAgentLabel(userId);
+        var label = resolveAgentLabel(tenantId, userId);
         if (label != null && !label.isBlank()) {
             data.put(displayNameKey, label);
         }
     }
 
+    private void notifyInboxChanged(String tenantId, String agentUserId, String conversationId, String reason) {
+        wsBroadcaster.notifyInboxChanged(tenantId, agentUserId, conversationId, reason);
+        // The agent's assigned load changed; team UI gets the new capacity if it is a real transition.
+        agentStatusTracker.markDirty(tenantId, agentUserId);
+    }
+
+    /**
+     * The engine picks from this node's view of agent loads; assignments made on other nodes reach it only after
+     * they commit. Holding the agents' load locks until commit makes the capacity check of the assigning UPDATE
+     * exact across nodes (Postgres; no-op on H2). Sorted, so concurrent drains cannot deadlock.
+     */
+    private void lockAgentLoads(String tenantId, List<String> agentUserIds) {
+        for (var agentUserId : new java.util.TreeSet<>(agentUserIds)) {
+            lockRepository.xactLock("agent_load:" + tenantId + ":" + agentUserId);
+        }
+    }
+
     private void afterCommit(Runnable r) {
         if (r == null) return;
         if (TransactionSynchronizationManager.isActualTransactionActive()) {
@@ -155,6 +204,19 @@ public class AssignmentService {
     public record AssignToAgentResult(int assigned_count, List<String> picked_ids, int scanned) {
     }
 
+    /**
+     * Outcome of a queue drain: rows read, rows the plan gave an agent, and the conversations actually assigned.
+     */
+    public record QueueDrainResult(int scanned, int planned, List<String> assigned_ids) {
+    }
+
+    /** Queue drain started by a capacity change (see {@link AssignmentWakeups}). */
+    public static final String TRIGGER_EVENT = "event";
+    /** Queue drain started by the periodic safety-net scan. */
+    public static final String TRIGGER_SWEEP = "sweep";
+    /** Queued conversations pulled by an agent coming online. */
+    public static final String TRIGGER_AGENT_ONLINE = "agent_online";
+
     @Transactional
     public void autoAssignNewConversation(String tenantId, String conversationId, String skillGroupId) {
         autoAssignNewConversationExcluding(tenantId, conversationId, skillGroupId, null);
@@ -168,83 +230,131 @@ public class AssignmentService {
      */
     @Transactional
     public void autoAssignNewConversationExcluding(String tenantId, String conversationId, String skillGroupId, String excludeAgentUserId) {
-        boolean requestedGroup = skillGroupId != null && !skillGroupId.isBlank();
-
-        // Decide candidates first (no locks). If the requested group is empty/unavailable, fallback to default pool.
-        String effectiveGroupKey = requestedGroup ? skillGroupId : DEFAULT_GROUP_KEY;
-        List<AgentProfileRepository.AgentCandidateRow> candidates = requestedGroup
-                ? agentProfileRepository.listOnlineCandidatesForGroup(tenantId, skillGroupId)
-                : agentProfileRepository.listOnlineCandidatesForTenant(tenantId);
-
-        if (requestedGroup && candidates.isEmpty()) {
-            effectiveGroupKey = DEFAULT_GROUP_KEY;
-            candidates = agentProfileRepository.listOnlineCandidatesForTenant(tenantId);
+        // Candidates, loads and cursor come from memory; only the conditional UPDATE touches the database.
+        var reservation = assignmentEngine.reserve(tenantId, conversationId, skillGroupId, excludeAgentUserId);
+        if (reservation == null) {
+            // keep queued (nobody online, all busy, or manual mode); the no-reply transfer restores its
+            // conversation instead of leaving it queued
+            if (excludeAgentUserId == null) {
+                assignmentEngine.queued(tenantId, conversationId, skillGroupId, null);
+            }
+            return;
         }
 
-        if (excludeAgentUserId != null && !excludeAgentUserId.isBlank()) {
-            final String exclude = excludeAgentUserId;
-            candidates = candidates.stream().filter(c -> c != null && !exclude.equals(c.userId())).toList();
+        int updated;
+        try {
+            lockAgentLoads(tenantId, List.of(reservation.agentUserId()));
+            updated = conversationRepository.tryAssignToAgent(tenantId, conversationId, reservation.agentUserId());
+        } catch (RuntimeException e) {
+            assignmentEngine.cancel(reservation);
+            throw e;
         }
-
-        if (candidates.isEmpty()) {
-            // keep queued
+        if (updated != 1) {
+            assignmentEngine.cancel(reservation);
+            // Taken meanwhile, or the agent filled up on another node before its loads reached this one: leave it
+            // to the queue (a stale entry loses its conditional UPDATE and is dropped).
+            if (excludeAgentUserId == null) {
+                assignmentEngine.queued(tenantId, conversationId, skillGroupId, null);
+            }
             return;
         }
+        assignmentEngine.assigned(tenantId, conversationId, reservation.agentUserId());
 
-        var cursor = assignCursorRepository.lockForUpdate(tenantId, effectiveGroupKey);
+        var agentUserId = reservation.agentUserId();
+        afterCommit(() -> {
+            notifyInboxChanged(tenantId, agentUserId, conversationId, "assigned");
 
-        var candidateIds = candidates.stream().map(AgentProfileRepository.AgentCandidateRow::userId).toList();
-        var loads = conversationRepository.countActiveAssignedByAgents(tenantId, candidateIds);
+            ObjectNode data = com.fasterxml.jackson.databind.node.JsonNodeFactory.instance.objectNode();
+            data.put("to_agent_user_id", agentUserId);
+            putAgentLabel(data, tenantId, "to_agent_display_name", agentUserId);
+            data.put("mode", "auto");
+            wsBroadcaster.broadcastConversationEvent(tenantId, conversationId, "assigned", data);
+        });
+    }
 
-        var ctx = new AssignmentContext(
-                tenantId,
-            effectiveGroupKey,
-                cursor.lastAgentUserId(),
-                candidates,
-                loads
-        );
+    /**
+     * Retry assigning queued conversations in one pass: the engine walks its in-memory queue in due-time order
+     * (SLA-aware, see {@link AssignmentEngine}) and plans every entry under its group's strategy, and the plan is
+     * applied with one batch of conditional UPDATEs. Entries another node or a claim took meanwhile simply lose and
+     * are dropped from the queue.
+     */
+    @Transactional
+    public QueueDrainResult tryAssignFromQueue(String tenantId, int limit) {
+        // The sweep is not use: it must not keep an otherwise idle tenant's engine state resident.
+        return drainQueue(tenantId, assignmentEngine.sweepQueue(tenantId, Math.max(1, Math.min(limit, 500))),
+                TRIGGER_SWEEP);
+    }
 
-        AgentProfileRepository.AgentCandidateRow selected = assignmentStrategyResolver.resolve(ctx).select(ctx);
+    /**
+     * Same as {@link #tryAssignFromQueue(String, int)}, limited to one skill group when {@code skillGroupId} is
+     * not blank. {@code trigger} only tags the queue-wait metric.
+     */
+    @Transactional
+    public QueueDrainResult tryAssignFromQueue(String tenantId, String skillGroupId, int limit, String trigger) {
+        return drainQueue(tenantId,
+                assignmentEngine.reserveQueue(tenantId, skillGroupId, Math.max(1, Math.min(limit, 500))), trigger);
+    }
 
-        if (selected == null) {
-            // all busy
-            return;
+    private QueueDrainResult drainQueue(String tenantId, AssignmentEngine.QueuePlan queuePlan, String trigger) {
+        var plan = queuePlan.reservations();
+        if (plan.isEmpty()) {
+            return new QueueDrainResult(queuePlan.scanned(), 0, List.of());
         }
 
-        var updated = conversationRepository.tryAssignToAgent(tenantId, conversationId, selected.userId());
-        if (updated == 1) {
-            assignCursorRepository.updateLastAgent(tenantId, effectiveGroupKey, selected.userId());
+        java.util.Set<String> won;
+        try {
+            lockAgentLoads(tenantId, plan.stream().map(AssignmentEngine.Reservation::agentUserId).toList());
+            won = conversationRepository.tryAssignBatch(tenantId, plan.stream()
+                    .map(r -> new ConversationRepository.AgentAssignment(r.conversationId(), r.agentUserId()))
+                    .toList());
+        } catch (RuntimeException e) {
+            plan.forEach(assignmentEngine::cancel);
+            throw e;
+        }
 
-            var agentUserId = selected.userId();
-            afterCommit(() -> {
-                wsBroadcaster.notifyInboxChanged(tenantId, agentUserId, conversationId, "assigned");
+        var assigned = new ArrayList<AssignmentEngine.Reservation>(won.size());
+        for (var reservation : plan) {
+            if (won.contains(reservation.conversationId())) {
+                assignmentEngine.assigned(tenantId, reservation.conversationId(), reservation.agentUserId());
+                assigned.add(reservation);
+            } else {
+                assignmentEngine.cancel(reservation);
+                assignmentEngine.discardQueued(tenantId, reservation.conversationId());
+            }
+        }
 
-                ObjectNode data = com.fasterxml.jackson.databind.node.JsonNodeFactory.instance.objectNode();
-                data.put("to_agent_user_id", agentUserId);
-                putAgentLabel(data, "to_agent_display_name", agentUserId);
-                data.put("mode", "auto");
-                wsBroadcaster.broadcastConversationEvent(tenantId, conversationId, "assigned", data);
+        if (!assigned.isEmpty()) {
+            var timer = queueWait(trigger);
+            afterCommit(() -> {
+                for (var r : assigned) {
+                    recordQueueWait(timer, r.queuedAt());
+                }
+                notifyAssignedBatch(tenantId, assigned);
             });
         }
+        var ids = assigned.stream().map(AssignmentEngine.Reservation::conversationId).toList();
+        return new QueueDrainResult(queuePlan.scanned(), plan.size(), ids);
     }
 
     /**
-     * Retry assigning queued conversations.
-     *
-     * @return number of conversations successfully assigned
+     * One INBOX_CHANGED per agent and one batch of "assigned" conversation events for a queue drain.
      */
-    @Transactional
-    public int tryAssignFromQueue(String tenantId, int limit) {
-        var rows = conversationRepository.listQueuedForAssignment(tenantId, Math.max(1, Math.min(limit, 500)));
-        var assigned = 0;
-        for (var row : rows) {
-            autoAssignNewConversation(tenantId, row.id(), row.skillGroupId());
-            var conv = conversationRepository.findAccess(tenantId, row.id()).orElse(null);
-            if (conv != null && conv.assignedAgentUserId() != null && !conv.assignedAgentUserId().isBlank()) {
-                assigned++;
-            }
+    private void notifyAssignedBatch(String tenantId, List<AssignmentEngine.Reservation> assigned) {
+        var agents = new java.util.LinkedHashSet<String>();
+        var events = new ArrayList<WsBroadcaster.ConversationEvent>(assigned.size());
+        for (var r : assigned) {
+            agents.add(r.agentUserId());
+
+            ObjectNode data = com.fasterxml.jackson.databind.node.JsonNodeFactory.instance.objectNode();
+            data.put("to_agent_user_id", r.agentUserId());
+            putAgentLabel(data, tenantId, "to_agent_display_name", r.agentUserId());
+            data.put("mode", "auto");
+            events.add(new WsBroadcaster.ConversationEvent(r.conversationId(), "assigned", data));
+        }
+        for (var agentUserId : agents) {
+            notifyInboxChanged(tenantId, agentUserId, null, "assigned");
         }
-        return assigned;
+        wsBroadcaster.broadcastConversationEvents(tenantId, events);
     }
 
     /**
@@ -266,6 +376,7 @@ public class AssignmentService {
             }
 
             var maxConcurrent = Math.max(1, profile.maxConcurrent());
+            lockAgentLoads(tenantId, List.of(agentUserId));
             var active = conversationRepository.countActiveAssignedToAgent(tenantId, agentUserId);
             var remaining = Math.max(0, maxConcurrent - active);
             var target = Math.min(Math.max(0, maxToAssign), remaining);
@@ -275,9 +386,10 @@ public class AssignmentService {
 
             // Scan a bit more than target to tolerate races, but never assign beyond target.
             var scanLimit = Math.min(target * 5, 200);
-            var rows = conversationRepository.listQueuedForAgent(tenantId, agentUserId, scanLimit);
+            var rows = assignmentEngine.queuedForAgent(tenantId, agentUserId, scanLimit);
 
             var picked = new ArrayList<String>(Math.min(target, 32));
+            var pickedCreatedAt = new ArrayList<java.time.Instant>(Math.min(target, 32));
             var strategyByGroupKey = new java.util.HashMap<String, String>();
             for (var row : rows) {
                 if (picked.size() >= target) {
@@ -294,9 +406,14 @@ public class AssignmentService {
                     continue;
                 }
 
-                var updated = conversationRepository.tryAssignToAgent(tenantId, row.id(), agentUserId);
+                // The row comes from the in-memory queue; only take it if the DB still has it queued.
+                var updated = conversationRepository.tryRestoreAssignment(tenantId, row.id(), agentUserId);
                 if (updated == 1) {
+                    assignmentEngine.assigned(tenantId, row.id(), agentUserId);
                     picked.add(row.id());
+                    pickedCreatedAt.add(row.createdAt());
+                } else {
+                    assignmentEngine.discardQueued(tenantId, row.id());
                 }
             }
 
@@ -306,7 +423,10 @@ public class AssignmentService {
             onlineTriggerScannedPerTrigger.record(rows.size());
 
             if (assigned > 0) {
-                afterCommit(() -> wsBroadcaster.notifyInboxChanged(tenantId, agentUserId, null, "assigned"));
+                afterCommit(() -> {
+                    pickedCreatedAt.forEach(t -> recordQueueWait(queueWaitAgentOnline, t));
+                    notifyInboxChanged(tenantId, agentUserId, null, "assigned");
+                });
             }
             return new AssignToAgentResult(assigned, List.copyOf(picked), rows.size());
         } catch (Exception e) {
@@ -332,36 +452,37 @@ public class AssignmentService {
         if (updated == 0) {
             throw new IllegalArgumentException("claim_failed");
         }
+        assignmentEngine.assigned(claims.tenantId(), conversationId, claims.userId());
 
         var tenantId = claims.tenantId();
         var newAgentUserId = claims.userId();
         afterCommit(() -> {
-            wsBroadcaster.notifyInboxChanged(tenantId, newAgentUserId, conversationId, "claimed");
+            notifyInboxChanged(tenantId, newAgentUserId, conversationId, "claimed");
 
             ObjectNode data = com.fasterxml.jackson.databind.node.JsonNodeFactory.instance.objectNode();
             data.put("by_user_id", newAgentUserId);
-            putAgentLabel(data, "by_display_name", newAgentUserId);
+            putAgentLabel(data, tenantId, "by_display_name", newAgentUserId);
             if (beforeAssigned != null && !beforeAssigned.isBlank()) {
                 data.put("from_agent_user_id", beforeAssigned);
-                putAgentLabel(data, "from_agent_display_name", beforeAssigned);
+                putAgentLabel(data, tenantId, "from_agent_display_name", beforeAssigned);
             }
             data.put("to_agent_user_id", newAgentUserId);
-            putAgentLabel(data, "to_agent_display_name", newAgentUserId);
+            putAgentLabel(data, tenantId, "to_agent_display_name", newAgentUserId);
             wsBroadcaster.broadcastConversationEvent(tenantId, conversationId, "claimed", data);
 
             if (beforeAssigned != null && !beforeAssigned.isBlank() && !beforeAssigned.equals(newAgentUserId)) {
                 ObjectNode tr = com.fasterxml.jackson.databind.node.JsonNodeFactory.instance.objectNode();
                 tr.put("from_agent_user_id", beforeAssigned);
-                putAgentLabel(tr, "from_agent_display_name", beforeAssigned);
+                putAgentLabel(tr, tenantId, "from_agent_display_name", beforeAssigned);
                 tr.put("to_agent_user_id", newAgentUserId);
-                putAgentLabel(tr, "to_agent_display_name", newAgentUserId);
+                putAgentLabel(tr, tenantId, "to_agent_display_name", newAgentUserId);
                 tr.put("by_user_id", newAgentUserId);
-                putAgentLabel(tr, "by_display_name", newAgentUserId);
+                putAgentLabel(tr, tenantId, "by_display_name", newAgentUserId);
                 wsBroadcaster.broadcastConversationEvent(tenantId, conversationId, "transferred", tr);
             }
         });
         if (beforeAssigned != null && !beforeAssigned.isBlank() && !beforeAssigned.equals(newAgentUserId)) {
-            afterCommit(() -> wsBroadcaster.notifyInboxChanged(tenantId, beforeAssigned, conversationId, "transferred_out"));
+            afterCommit(() -> notifyInboxChanged(tenantId, beforeAssigned, conversationId, "transferred_out"));
         }
     }
 
@@ -380,27 +501,28 @@ public class AssignmentService {
         if (updated == 0) {
             throw new IllegalArgumentException("assign_failed");
         }
+        assignmentEngine.assigned(claims.tenantId(), conversationId, agentUserId);
 
         var tenantId = claims.tenantId();
         var newAgentUserId = agentUserId;
         afterCommit(() -> {
-            wsBroadcaster.notifyInboxChanged(tenantId, newAgentUserId, conversationId, "transferred_in");
+            notifyInboxChanged(tenantId, newAgentUserId, conversationId, "transferred_in");
 
             ObjectNode tr = com.fasterxml.jackson.databind.node.JsonNodeFactory.instance.objectNode();
             if (beforeAssigned != null && !beforeAssigned.isBlank()) {
                 tr.put("from_agent_user_id", beforeAssigned);
-                putAgentLabel(tr, "from_agent_display_name", beforeAssigned);
+                putAgentLabel(tr, tenantId, "from_agent_display_name", beforeAssigned);
             }
             tr.put("to_agent_user_id", newAgentUserId);
-            putAgentLabel(tr, "to_agent_display_name", newAgentUserId);
+            putAgentLabel(tr, tenantId, "to_agent_display_name", newAgentUserId);
             if (claims != null && claims.userId() != null && !claims.userId().isBlank()) {
                 tr.put("by_user_id", claims.userId());
-                putAgentLabel(tr, "by_display_name", claims.userId());
+                putAgentLabel(tr, tenantId, "by_display_name", claims.userId());
             }
             wsBroadcaster.broadcastConversationEvent(tenantId, conversationId, "transferred", tr);
         });
         if (beforeAssigned != null && !beforeAssigned.isBlank() && !beforeAssigned.equals(newAgentUserId)) {
-            afterCommit(() -> wsBroadcaster.notifyInboxChanged(tenantId, beforeAssigned, conversationId, "transferred_out"));
+            afterCommit(() -> notifyInboxChanged(tenantId, beforeAssigned, conversationId, "transferred_out"));
         }
     }
 }
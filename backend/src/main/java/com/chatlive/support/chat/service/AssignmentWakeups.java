@@ -0,0 +1,229 @@
+package com.chatlive.support.chat.service;
+
+import com.chatlive.support.chat.repo.PgAdvisoryLockRepository;
+import com.chatlive.support.chat.service.assignment.AssignmentEngine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event-driven queue draining.
+ *
+ * Instead of waiting for the periodic scan, a drain is requested when capacity may have appeared: the engine
+ * reports released/moved conversations and reloaded agents, and callers wake a skill group whose membership grew.
+ * Requests are debounced per tenant (or tenant + skill group) so a burst of closes turns into one drain, and run
+ * on a small bounded worker pool under the same advisory lock as {@link AssignmentScheduler}, taken
+ * transaction-scoped inside the drain's transaction. A wake is dropped
+ * when the engine sees no free capacity or the pool is saturated; the scheduler's slower sweep picks up whatever
+ * is left.
+ */
+@Component
+public class AssignmentWakeups implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(AssignmentWakeups.class);
+
+    // skillGroupId null = the whole tenant queue
+    private record Key(String tenantId, String skillGroupId) {
+    }
+
+    private final AssignmentEngine assignmentEngine;
+    private final AssignmentService assignmentService;
+    private final PgAdvisoryLockRepository lockRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long debounceMs;
+    private final int batchSize;
+
+    private final Set<Key> pending = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService timer;
+    private final ThreadPoolExecutor workers;
+
+    private final Counter requested;
+    private final Counter coalesced;
+    private final Counter drains;
+    private final Counter dropped;
+    private final Counter skippedNoCapacity;
+    private final Counter lockBusy;
+
+    public AssignmentWakeups(
+            AssignmentEngine assignmentEngine,
+            AssignmentService assignmentService,
+            PgAdvisoryLockRepository lockRepository,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${app.assignment.wakeups.enabled:true}") boolean enabled,
+            @Value("${app.assignment.wakeups.debounce-ms:200}") long debounceMs,
+            @Value("${app.assignment.wakeups.workers:2}") int workers,
+            @Value("${app.assignment.wakeups.max-pending:1000}") int maxPending,
+            @Value("${app.assignment.queue-batch-size:50}") int batchSize
+    ) {
+        this.assignmentEngine = assignmentEngine;
+        this.assignmentService = assignmentService;
+        this.lockRepository = lockRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.debounceMs = Math.max(0, debounceMs);
+        this.batchSize = Math.max(1, Math.min(batchSize, 500));
+
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("assignment-wakeup-timer").daemon().factory());
+        int poolSize = Math.max(1, workers);
+        this.workers = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(10, maxPending)),
+                Thread.ofPlatform().name("assignment-wakeup-", 0).daemon().factory(),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+
+        // Low-cardinality metrics: do NOT tag by tenant/group.
+        this.requested = Counter.builder("chatlive.assignment.wakeups.requested")
+                .description("Queue drain wakeups requested")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("chatlive.assignment.wakeups.coalesced")
+                .description("Wakeups folded into one already pending for the same tenant/group")
+                .register(meterRegistry);
+        this.drains = Counter.builder("chatlive.assignment.wakeups.drains")
+                .description("Queue drains run by wakeups")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("chatlive.assignment.wakeups.dropped")
+                .description("Wakeups dropped because the worker pool was saturated (left to the sweep)")
+                .register(meterRegistry);
+        this.skippedNoCapacity = Counter.builder("chatlive.assignment.wakeups.skipped_no_capacity")
+                .description("Wakeups skipped because no online agent had free capacity")
+                .register(meterRegistry);
+        this.lockBusy = Counter.builder("chatlive.assignment.wakeups.lock_busy")
+                .description("Wakeups re-armed because another drain held the tenant queue lock")
+                .register(meterRegistry);
+        Gauge.builder("chatlive.assignment.wakeups.pending", pending, Set::size)
+                .description("Tenant/group wakeups waiting for their debounce or a worker")
+                .register(meterRegistry);
+
+        // The engine already reports after commit; registering another commit callback from there would never run.
+        assignmentEngine.subscribeCapacity(tenantId -> wakeNow(new Key(tenantId, null)));
+    }
+
+    @Override
+    public void destroy() {
+        timer.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Drain the tenant's whole queue soon (after the current transaction commits).
+     */
+    public void wakeTenant(String tenantId) {
+        if (tenantId == null || tenantId.isBlank()) return;
+        request(new Key(tenantId, null));
+    }
+
+    /**
+     * Drain one skill group's queue soon (after the current transaction commits); a blank group wakes the tenant.
+     */
+    public void wakeGroup(String tenantId, String skillGroupId) {
+        if (skillGroupId == null || skillGroupId.isBlank()) {
+            wakeTenant(tenantId);
+            return;
+        }
+        if (tenantId == null || tenantId.isBlank()) return;
+        request(new Key(tenantId, skillGroupId.trim()));
+    }
+
+    private void request(Key key) {
+        if (!enabled) return;
+        afterCommit(() -> wakeNow(key));
+    }
+
+    private void wakeNow(Key key) {
+        if (!enabled || key.tenantId() == null || key.tenantId().isBlank()) return;
+        requested.increment();
+        arm(key);
+    }
+
+    private void arm(Key key) {
+        // A pending whole-tenant drain covers every group of that tenant.
+        if ((key.skillGroupId() != null && pending.contains(new Key(key.tenantId(), null))) || !pending.add(key)) {
+            coalesced.increment();
+            return;
+        }
+        try {
+            timer.schedule(() -> submit(key), debounceMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            pending.remove(key);
+        }
+    }
+
+    private void submit(Key key) {
+        try {
+            workers.execute(() -> run(key));
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+            dropped.increment();
+        }
+    }
+
+    private void run(Key key) {
+        // Cleared before draining so a change during the drain schedules another pass.
+        pending.remove(key);
+        var tenantId = key.tenantId();
+        try {
+            if (!assignmentEngine.hasFreeCapacity(tenantId, key.skillGroupId())) {
+                skippedNoCapacity.increment();
+                return;
+            }
+            var lockKey = "assign_queue:" + tenantId;
+            // The drain joins this transaction, so the lock lives exactly as long as the plan is being applied.
+            var result = transactionTemplate.execute(status -> lockRepository.tryXactLock(lockKey)
+                    ? assignmentService.tryAssignFromQueue(
+                            tenantId, key.skillGroupId(), batchSize, AssignmentService.TRIGGER_EVENT)
+                    : null);
+            if (result == null) {
+                lockBusy.increment();
+                arm(key);
+                return;
+            }
+            drains.increment();
+            if (!result.assigned_ids().isEmpty()) {
+                log.info("queue_wakeup_assign tenant={} group={} scanned={} planned={} assigned={}",
+                        tenantId, key.skillGroupId(), result.scanned(), result.planned(), result.assigned_ids().size());
+            }
+            // A full plan that made progress may have more behind it.
+            if (result.planned() >= batchSize && !result.assigned_ids().isEmpty()) {
+                arm(key);
+            }
+        } catch (Exception e) {
+            log.warn("queue_wakeup_failed tenant={} group={}", tenantId, key.skillGroupId(), e);
+        }
+    }
+
+    private static void afterCommit(Runnable r) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    r.run();
+                }
+            });
+        } else {
+            r.run();
+        }
+    }
+}
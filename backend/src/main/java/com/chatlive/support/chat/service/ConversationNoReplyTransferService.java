@@ -1,7 +1,7 @@
 package com.chatlive.support.chat.service;
 
 import com.chatlive.support.chat.repo.ConversationRepository;
-import com.chatlive.support.chat.repo.AgentProfileRepository;
+import com.chatlive.support.chat.service.assignment.AssignmentEngine;
 import com.chatlive.support.chat.ws.WsBroadcaster;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.springframework.stereotype.Service;
@@ -13,20 +13,23 @@ import org.springframework.transaction.support.TransactionSynchronizationManager
 public class ConversationNoReplyTransferService {
 
     private final ConversationRepository conversationRepository;
-    private final AgentProfileRepository agentProfileRepository;
+    private final AssignmentEngine assignmentEngine;
     private final AssignmentService assignmentService;
     private final WsBroadcaster wsBroadcaster;
+    private final AgentStatusTracker agentStatusTracker;
 
     public ConversationNoReplyTransferService(
             ConversationRepository conversationRepository,
-            AgentProfileRepository agentProfileRepository,
+            AssignmentEngine assignmentEngine,
             AssignmentService assignmentService,
-            WsBroadcaster wsBroadcaster
+            WsBroadcaster wsBroadcaster,
+            AgentStatusTracker agentStatusTracker
     ) {
         this.conversationRepository = conversationRepository;
-        this.agentProfileRepository = agentProfileRepository;
+        this.assignmentEngine = assignmentEngine;
         this.assignmentService = assignmentService;
         this.wsBroadcaster = wsBroadcaster;
+        this.agentStatusTracker = agentStatusTracker;
     }
 
     private void afterCommit(Runnable r) {
@@ -55,24 +58,8 @@ public class ConversationNoReplyTransferService {
         var conversationId = row.id();
         var fromAgentUserId = row.assignedAgentUserId();
 
-        // Must have another eligible online agent; otherwise do not transfer.
-        var candidates = (row.skillGroupId() != null && !row.skillGroupId().isBlank())
-                ? agentProfileRepository.listOnlineCandidatesForGroup(tenantId, row.skillGroupId())
-                : agentProfileRepository.listOnlineCandidatesForTenant(tenantId);
-
-        // If group candidates are empty, fallback to tenant pool (consistent with assignment behavior).
-        if ((row.skillGroupId() != null && !row.skillGroupId().isBlank()) && candidates.isEmpty()) {
-            candidates = agentProfileRepository.listOnlineCandidatesForTenant(tenantId);
-        }
-
-        if (candidates.isEmpty()) {
-            return false;
-        }
-        if (fromAgentUserId != null && !fromAgentUserId.isBlank()) {
-            final String exclude = fromAgentUserId;
-            candidates = candidates.stream().filter(c -> c != null && !exclude.equals(c.userId())).toList();
-        }
-        if (candidates.isEmpty()) {
+        // Must have another eligible online agent (group pool, else tenant pool); otherwise do not transfer.
+        if (!assignmentEngine.hasOnlineCandidate(tenantId, row.skillGroupId(), fromAgentUserId)) {
             // Only one online agent (the current one), or no alternative.
             return false;
         }
@@ -82,6 +69,7 @@ public class ConversationNoReplyTransferService {
         if (updated == 0) {
             return false;
         }
+        assignmentEngine.released(tenantId, conversationId);
 
         // Re-assign (best-effort) excluding the current agent.
         assignmentService.autoAssignNewConversationExcluding(tenantId, conversationId, row.skillGroupId(), fromAgentUserId);
@@ -91,7 +79,9 @@ public class ConversationNoReplyTransferService {
 
         if (toAgentUserId == null || toAgentUserId.isBlank()) {
             // No one picked up (all busy/offline/race). Restore original assignment when safe.
-            conversationRepository.tryRestoreAssignment(tenantId, conversationId, fromAgentUserId);
+            if (conversationRepository.tryRestoreAssignment(tenantId, conversationId, fromAgentUserId) == 1) {
+                assignmentEngine.assigned(tenantId, conversationId, fromAgentUserId);
+            }
             return false;
         }
 
@@ -99,6 +89,7 @@ public class ConversationNoReplyTransferService {
             // Notify inbox changes.
             if (fromAgentUserId != null && !fromAgentUserId.isBlank()) {
                 wsBroadcaster.notifyInboxChanged(tenantId, fromAgentUserId, conversationId, "transferred");
+                agentStatusTracker.markDirty(tenantId, fromAgentUserId);
             }
             if (toAgentUserId != null && !toAgentUserId.isBlank()) {
                 wsBroadcaster.notifyInboxChanged(tenantId, toAgentUserId, conversationId, "assigned");
@@ -7,6 +7,7 @@ import com.chatlive.support.chat.repo.ConversationMarkRepository;
 import com.chatlive.support.chat.repo.ConversationPreChatFieldRepository;
 import com.chatlive.support.chat.repo.ConversationRepository;
 import com.chatlive.support.chat.repo.SkillGroupRepository;
+import com.chatlive.support.chat.service.assignment.AssignmentEngine;
 import com.chatlive.support.chat.ws.WsSessionRegistry;
 import com.chatlive.support.chat.ws.WsBroadcaster;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -33,6 +34,8 @@ public class ConversationService {
     private final AgentProfileRepository agentProfileRepository;
     private final ConversationPreChatFieldRepository conversationPreChatFieldRepository;
     private final TranscriptForwardingService transcriptForwardingService;
+    private final AgentStatusTracker agentStatusTracker;
+    private final AssignmentEngine assignmentEngine;
 
     public ConversationService(
             ConversationRepository conversationRepository,
@@ -45,7 +48,9 @@ public class ConversationService {
             ConversationMarkRepository conversationMarkRepository,
             AgentProfileRepository agentProfileRepository,
             ConversationPreChatFieldRepository conversationPreChatFieldRepository,
-            TranscriptForwardingService transcriptForwardingService
+            TranscriptForwardingService transcriptForwardingService,
+            AgentStatusTracker agentStatusTracker,
+            AssignmentEngine assignmentEngine
     ) {
         this.conversationRepository = conversationRepository;
         this.wsSessionRegistry = wsSessionRegistry;
@@ -58,6 +63,8 @@ public class ConversationService {
         this.agentProfileRepository = agentProfileRepository;
         this.conversationPreChatFieldRepository = conversationPreChatFieldRepository;
         this.transcriptForwardingService = transcriptForwardingService;
+        this.agentStatusTracker = agentStatusTracker;
+        this.assignmentEngine = assignmentEngine;
     }
 
     private String resolveAgentLabel(String userId) {
@@ -251,6 +258,9 @@ public class ConversationService {
         // Persist reason for list rendering; do not infer inactivity minutes for manual close.
         var updated = conversationRepository.closeConversation(claims.tenantId(), conversationId, claims.userId(), safeReason, null);
         final boolean transitioned = updated > 0;
+        if (transitioned) {
+            assignmentEngine.released(claims.tenantId(), conversationId);
+        }
         afterCommit(() -> {
             ObjectNode data = com.fasterxml.jackson.databind.node.JsonNodeFactory.instance.objectNode();
             data.put("by_user_id", claims.userId());
@@ -264,6 +274,7 @@ public class ConversationService {
             wsBroadcaster.broadcastConversationEvent(claims.tenantId(), conversationId, "archived", data);
 
             if (transitioned) {
+                agentStatusTracker.markDirty(claims.tenantId(), access.assignedAgentUserId());
                 transcriptForwardingService.trySendOnArchived(claims.tenantId(), conversationId, safeReason, claims.userId());
             }
         });
@@ -286,6 +297,10 @@ public class ConversationService {
         // Normalize minutes for stable UI wording.
         long safeMinutes = Math.max(1, Math.min(inactivityMinutes, 365L * 24 * 60));
 
+        var assignedAgentUserId = conversationRepository.findAccess(tenantId, conversationId)
+                .map(ConversationRepository.ConversationAccessRow::assignedAgentUserId)
+                .orElse(null);
+
         // Idempotent.
         var updated = conversationRepository.closeConversation(
             tenantId,
@@ -296,6 +311,9 @@ public class ConversationService {
         );
 
         final boolean transitioned = updated > 0;
+        if (transitioned) {
+            assignmentEngine.released(tenantId, conversationId);
+        }
 
         afterCommit(() -> {
             ObjectNode data = com.fasterxml.jackson.databind.node.JsonNodeFactory.instance.objectNode();
@@ -305,6 +323,7 @@ public class ConversationService {
             wsBroadcaster.broadcastConversationEvent(tenantId, conversationId, "archived", data);
 
             if (transitioned) {
+                agentStatusTracker.markDirty(tenantId, assignedAgentUserId);
                 transcriptForwardingService.trySendOnArchived(tenantId, conversationId, "inactivity_" + safeMinutes, null);
             }
         });
@@ -331,6 +350,7 @@ public class ConversationService {
             // If it wasn't closed, treat as no-op.
             return;
         }
+        assignmentEngine.assigned(claims.tenantId(), conversationId, claims.userId());
 
         afterCommit(() -> {
             ObjectNode data = com.fasterxml.jackson.databind.node.JsonNodeFactory.instance.objectNode();
@@ -340,6 +360,7 @@ public class ConversationService {
                 data.put("by_display_name", byLabel);
             }
             wsBroadcaster.broadcastConversationEvent(claims.tenantId(), conversationId, "reopened", data);
+            agentStatusTracker.markDirty(claims.tenantId(), claims.userId());
         });
     }
 
@@ -0,0 +1,284 @@
+package com.chatlive.support.chat.service;
+
+import com.chatlive.support.chat.repo.ConversationEventRepository;
+import com.chatlive.support.chat.repo.MessageArchiveSegmentRepository;
+import com.chatlive.support.chat.repo.MessageRepository;
+import com.chatlive.support.storage.s3.S3Properties;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Object-storage side of the cold archive: gzip NDJSON segments, one JSON object per line
+ * ({@code "type":"message"} rows in seq order, then {@code "type":"event"} rows), with message content and event
+ * data embedded verbatim.
+ *
+ * Decoded segments are kept in a small LRU: archived conversations are read rarely, but a transcript or a scroll
+ * back through one reads the same segment several times in a row.
+ */
+@Component
+public class MessageArchiveStore {
+
+    public record Segment(
+            List<MessageRepository.MessageRow> messages,
+            List<ConversationEventRepository.ConversationEventRawRow> events
+    ) {
+    }
+
+    private final ObjectProvider<S3Client> s3ClientProvider;
+    private final S3Properties s3Properties;
+    private final ObjectMapper objectMapper;
+    private final int cacheSize;
+
+    private final Map<String, Segment> cache;
+
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+
+    public MessageArchiveStore(
+            ObjectProvider<S3Client> s3ClientProvider,
+            S3Properties s3Properties,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.chat.archive.segment-cache-size:64}") int cacheSize
+    ) {
+        this.s3ClientProvider = s3ClientProvider;
+        this.s3Properties = s3Properties;
+        this.objectMapper = objectMapper;
+        this.cacheSize = Math.max(0, cacheSize);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Segment> eldest) {
+                return size() > MessageArchiveStore.this.cacheSize;
+            }
+        };
+
+        // Low-cardinality metrics: do NOT tag by tenant/conversation.
+        this.cacheHits = Counter.builder("chatlive.chat.archive.segment_cache.hits")
+                .description("Archive segment reads served from the decoded-segment cache")
+                .register(meterRegistry);
+        this.cacheMisses = Counter.builder("chatlive.chat.archive.segment_cache.misses")
+                .description("Archive segment reads fetched from object storage")
+                .register(meterRegistry);
+    }
+
+    public boolean isAvailable() {
+        return s3ClientProvider.getIfAvailable() != null
+                && s3Properties.bucket() != null
+                && !s3Properties.bucket().isBlank();
+    }
+
+    public String bucket() {
+        return s3Properties.bucket();
+    }
+
+    public static String objectKey(String tenantId, String conversationId, long minSeq, long maxSeq) {
+        return "archive/" + tenantId + "/" + conversationId + "/" + minSeq + "-" + maxSeq + ".ndjson.gz";
+    }
+
+    public void put(String bucket, String key, byte[] gzipped) {
+        try {
+            requireClient().putObject(
+                    PutObjectRequest.builder()
+                            .bucket(bucket)
+                            .key(key)
+                            .contentType("application/gzip")
+                            .build(),
+                    RequestBody.fromBytes(gzipped)
+            );
+        } catch (SdkException e) {
+            throw new IllegalStateException("archive_put_failed", e);
+        }
+    }
+
+    public void delete(String bucket, String key) {
+        synchronized (cache) {
+            cache.remove(bucket + "/" + key);
+        }
+        try {
+            requireClient().deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(key).build());
+        } catch (SdkException e) {
+            throw new IllegalStateException("archive_delete_failed", e);
+        }
+    }
+
+    public Segment read(MessageArchiveSegmentRepository.SegmentRow segment) {
+        var cacheKey = segment.bucket() + "/" + segment.objectKey();
+        synchronized (cache) {
+            var hit = cache.get(cacheKey);
+            if (hit != null) {
+                cacheHits.increment();
+                return hit;
+            }
+        }
+        cacheMisses.increment();
+        byte[] bytes;
+        try {
+            bytes = requireClient().getObjectAsBytes(
+                    GetObjectRequest.builder().bucket(segment.bucket()).key(segment.objectKey()).build()
+            ).asByteArray();
+        } catch (SdkException e) {
+            throw new IllegalStateException("archive_read_failed", e);
+        }
+        var decoded = decode(objectMapper, segment.tenantId(), segment.conversationId(), bytes);
+        if (cacheSize > 0) {
+            synchronized (cache) {
+                cache.put(cacheKey, decoded);
+            }
+        }
+        return decoded;
+    }
+
+    public byte[] encode(
+            List<MessageRepository.MessageRow> messages,
+            List<ConversationEventRepository.ConversationEventRawRow> events
+    ) {
+        return encode(objectMapper, messages, events);
+    }
+
+    /**
+     * Decodes a segment just {@link #encode encoded}, before its rows are deleted: proof the archive copy reads back.
+     */
+    public Segment decode(String tenantId, String conversationId, byte[] gzipped) {
+        return decode(objectMapper, tenantId, conversationId, gzipped);
+    }
+
+    static byte[] encode(
+            ObjectMapper objectMapper,
+            List<MessageRepository.MessageRow> messages,
+            List<ConversationEventRepository.ConversationEventRawRow> events
+    ) {
+        var out = new ByteArrayOutputStream();
+        try (var writer = new OutputStreamWriter(new GZIPOutputStream(out), StandardCharsets.UTF_8)) {
+            for (var m : messages) {
+                try (var gen = newLineGenerator(objectMapper, writer)) {
+                    gen.writeStartObject();
+                    gen.writeStringField("type", "message");
+                    gen.writeStringField("id", m.id());
+                    gen.writeNumberField("seq", m.seq());
+                    gen.writeStringField("sender_type", m.senderType());
+                    gen.writeStringField("sender_id", m.senderId());
+                    gen.writeStringField("client_msg_id", m.clientMsgId());
+                    gen.writeStringField("content_type", m.contentType());
+                    gen.writeStringField("created_at", m.createdAt().toString());
+                    gen.writeFieldName("content");
+                    writeRawJson(objectMapper, gen, m.contentJson());
+                    gen.writeEndObject();
+                }
+                writer.write('\n');
+            }
+            for (var e : events) {
+                try (var gen = newLineGenerator(objectMapper, writer)) {
+                    gen.writeStartObject();
+                    gen.writeStringField("type", "event");
+                    gen.writeStringField("id", e.id());
+                    gen.writeStringField("event_key", e.eventKey());
+                    gen.writeStringField("created_at", e.createdAt().toString());
+                    gen.writeFieldName("data");
+                    writeRawJson(objectMapper, gen, e.dataJson());
+                    gen.writeEndObject();
+                }
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static Segment decode(ObjectMapper objectMapper, String tenantId, String conversationId, byte[] gzipped) {
+        var messages = new ArrayList<MessageRepository.MessageRow>();
+        var events = new ArrayList<ConversationEventRepository.ConversationEventRawRow>();
+        try (var reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(gzipped)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                var node = objectMapper.readTree(line);
+                if ("message".equals(node.path("type").asText())) {
+                    messages.add(new MessageRepository.MessageRow(
+                            node.path("id").asText(),
+                            tenantId,
+                            conversationId,
+                            textOrNull(node, "sender_type"),
+                            textOrNull(node, "sender_id"),
+                            textOrNull(node, "client_msg_id"),
+                            textOrNull(node, "content_type"),
+                            rawOrNull(node, "content"),
+                            Instant.parse(node.path("created_at").asText()),
+                            node.path("seq").asLong()
+                    ));
+                } else if ("event".equals(node.path("type").asText())) {
+                    events.add(new ConversationEventRepository.ConversationEventRawRow(
+                            node.path("id").asText(),
+                            textOrNull(node, "event_key"),
+                            Instant.parse(node.path("created_at").asText()),
+                            rawOrNull(node, "data")
+                    ));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Segment(List.copyOf(messages), List.copyOf(events));
+    }
+
+    private static JsonGenerator newLineGenerator(ObjectMapper objectMapper, OutputStreamWriter writer) throws IOException {
+        // One generator per line: the writer is shared, so the generator must not close it.
+        return objectMapper.getFactory().createGenerator(writer).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    private static void writeRawJson(ObjectMapper objectMapper, JsonGenerator gen, String json) throws IOException {
+        if (json == null || json.isBlank()) {
+            gen.writeNull();
+        } else {
+            // Embedded unparsed: one malformed legacy row would otherwise make the whole segment unreadable.
+            gen.writeRawValue(MessageService.contentJsonOrEmpty(objectMapper, json));
+        }
+    }
+
+    private static String textOrNull(JsonNode node, String field) {
+        var v = node.get(field);
+        return v == null || v.isNull() ? null : v.asText();
+    }
+
+    private static String rawOrNull(JsonNode node, String field) {
+        var v = node.get(field);
+        return v == null || v.isNull() ? null : v.toString();
+    }
+
+    private S3Client requireClient() {
+        var client = s3ClientProvider.getIfAvailable();
+        if (client == null) {
+            throw new IllegalStateException("archive_storage_unavailable");
+        }
+        return client;
+    }
+}
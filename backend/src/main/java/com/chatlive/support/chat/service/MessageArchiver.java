@@ -0,0 +1,208 @@
+package com.chatlive.support.chat.service;
+
+import com.chatlive.support.chat.repo.AttachmentRepository;
+import com.chatlive.support.chat.repo.ConversationEventRepository;
+import com.chatlive.support.chat.repo.ConversationRepository;
+import com.chatlive.support.chat.repo.MessageArchiveSegmentRepository;
+import com.chatlive.support.chat.repo.MessageRepository;
+import com.chatlive.support.chat.repo.PgAdvisoryLockRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Moves the history of conversations closed for longer than {@code app.chat.archive.min-closed-days} into the cold
+ * archive: gzip NDJSON segments in the S3 bucket, indexed by {@code message_archive_segment}.
+ *
+ * Each segment is uploaded first, then indexed and removed from the hot tables in one transaction that holds the
+ * conversation row lock and re-checks the conversation is still closed; a conversation reopened meanwhile keeps
+ * its rows (the uploaded object is deleted again). {@code conversation.archived_seq} advances with every segment,
+ * so a run that stops halfway resumes where it left off. Disabled without S3.
+ */
+@Component
+public class MessageArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageArchiver.class);
+
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final ConversationEventRepository conversationEventRepository;
+    private final AttachmentRepository attachmentRepository;
+    private final MessageArchiveSegmentRepository segmentRepository;
+    private final MessageArchiveStore archiveStore;
+    private final PgAdvisoryLockRepository lockRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int minClosedDays;
+    private final int segmentMaxMessages;
+    private final int maxEvents;
+    private final int batchSize;
+
+    private final Counter archivedConversations;
+    private final Counter archivedMessages;
+    private final Counter failures;
+
+    public MessageArchiver(
+            ConversationRepository conversationRepository,
+            MessageRepository messageRepository,
+            ConversationEventRepository conversationEventRepository,
+            AttachmentRepository attachmentRepository,
+            MessageArchiveSegmentRepository segmentRepository,
+            MessageArchiveStore archiveStore,
+            PgAdvisoryLockRepository lockRepository,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${app.chat.archive.enabled:false}") boolean enabled,
+            @Value("${app.chat.archive.min-closed-days:30}") int minClosedDays,
+            @Value("${app.chat.archive.segment-max-messages:1000}") int segmentMaxMessages,
+            @Value("${app.chat.archive.max-events:5000}") int maxEvents,
+            @Value("${app.chat.archive.batch-size:50}") int batchSize
+    ) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.conversationEventRepository = conversationEventRepository;
+        this.attachmentRepository = attachmentRepository;
+        this.segmentRepository = segmentRepository;
+        this.archiveStore = archiveStore;
+        this.lockRepository = lockRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.minClosedDays = Math.max(1, minClosedDays);
+        this.segmentMaxMessages = Math.max(10, Math.min(segmentMaxMessages, 10000));
+        this.maxEvents = Math.max(0, Math.min(maxEvents, 10000));
+        this.batchSize = Math.max(1, Math.min(batchSize, 1000));
+
+        // Low-cardinality metrics: do NOT tag by tenant/conversation.
+        this.archivedConversations = Counter.builder("chatlive.chat.archive.conversations")
+                .description("Conversations whose history was moved to the cold archive")
+                .register(meterRegistry);
+        this.archivedMessages = Counter.builder("chatlive.chat.archive.messages")
+                .description("Messages moved to the cold archive")
+                .register(meterRegistry);
+        this.failures = Counter.builder("chatlive.chat.archive.failures")
+                .description("Conversations the archiver failed to archive")
+                .register(meterRegistry);
+    }
+
+    // synchronized: the advisory lock is a no-op on H2, and two runs of one node would archive the same range twice.
+    @Scheduled(fixedDelayString = "${app.chat.archive.interval-ms:600000}")
+    public synchronized void archive() {
+        if (!enabled || !archiveStore.isAvailable()) return;
+        var lockKey = "message_archive";
+        if (!lockRepository.tryLock(lockKey)) return;
+        try {
+            var closedBefore = Instant.now().minus(minClosedDays, ChronoUnit.DAYS);
+            for (var candidate : conversationRepository.listArchiveCandidates(closedBefore, batchSize)) {
+                try {
+                    if (archiveConversation(candidate)) archivedConversations.increment();
+                } catch (Exception e) {
+                    failures.increment();
+                    log.warn("message_archive_failed conversationId={}", candidate.id(), e);
+                }
+            }
+        } finally {
+            lockRepository.unlock(lockKey);
+        }
+    }
+
+    /**
+     * @return false when the conversation was reopened before everything was archived
+     */
+    private boolean archiveConversation(ConversationRepository.ArchiveCandidateRow candidate) {
+        var tenantId = candidate.tenantId();
+        var conversationId = candidate.id();
+        long archivedSeq = candidate.archivedSeq();
+        while (true) {
+            var rows = messageRepository.listMessagesAfterSeq(tenantId, conversationId, archivedSeq, segmentMaxMessages + 1);
+            if (rows.isEmpty()) return true;
+            var last = rows.size() <= segmentMaxMessages;
+            var messages = last ? rows : rows.subList(0, segmentMaxMessages);
+            // Events travel with the final segment, once the message history is complete.
+            var events = last && maxEvents > 0
+                    ? conversationEventRepository.listRawForArchive(tenantId, conversationId, maxEvents)
+                    : List.<ConversationEventRepository.ConversationEventRawRow>of();
+            if (!writeSegment(tenantId, conversationId, messages, events)) return false;
+            archivedMessages.increment(messages.size());
+            archivedSeq = messages.getLast().seq();
+            if (last) return true;
+        }
+    }
+
+    private boolean writeSegment(
+            String tenantId,
+            String conversationId,
+            List<MessageRepository.MessageRow> messages,
+            List<ConversationEventRepository.ConversationEventRawRow> events
+    ) {
+        var minSeq = messages.getFirst().seq();
+        var maxSeq = messages.getLast().seq();
+        var bucket = archiveStore.bucket();
+        var key = MessageArchiveStore.objectKey(tenantId, conversationId, minSeq, maxSeq);
+        var bytes = archiveStore.encode(messages, events);
+        // The hot rows are deleted below: make sure the segment reads back complete before uploading it.
+        var check = archiveStore.decode(tenantId, conversationId, bytes);
+        if (check.messages().size() != messages.size() || check.events().size() != events.size()
+                || check.messages().getLast().seq() != maxSeq) {
+            throw new IllegalStateException("archive_segment_unreadable");
+        }
+        archiveStore.put(bucket, key, bytes);
+
+        var segment = new MessageArchiveSegmentRepository.SegmentRow(
+                UUID.randomUUID().toString(),
+                tenantId,
+                conversationId,
+                bucket,
+                key,
+                minSeq,
+                maxSeq,
+                messages.size(),
+                (int) messages.stream().filter(m -> "customer".equals(m.senderType())).count(),
+                events.size(),
+                messages.getFirst().createdAt(),
+                messages.getLast().createdAt(),
+                bytes.length,
+                MessageIdBloom.of(messages.stream().map(MessageRepository.MessageRow::id).toList())
+        );
+        Boolean committed;
+        try {
+            committed = transactionTemplate.execute(status -> {
+                if (!conversationRepository.lockIfClosed(tenantId, conversationId)) return false;
+                segmentRepository.insert(segment);
+                attachmentRepository.unlinkMessagesThroughSeq(tenantId, conversationId, maxSeq);
+                messageRepository.deleteThroughSeq(tenantId, conversationId, maxSeq);
+                conversationEventRepository.deleteByIds(tenantId, conversationId, events.stream()
+                        .map(ConversationEventRepository.ConversationEventRawRow::id)
+                        .toList());
+                conversationRepository.markArchivedThrough(tenantId, conversationId, maxSeq);
+                return true;
+            });
+        } catch (RuntimeException e) {
+            deleteQuietly(bucket, key);
+            throw e;
+        }
+        if (!Boolean.TRUE.equals(committed)) {
+            deleteQuietly(bucket, key);
+            return false;
+        }
+        return true;
+    }
+
+    private void deleteQuietly(String bucket, String key) {
+        try {
+            archiveStore.delete(bucket, key);
+        } catch (Exception e) {
+            // An unindexed object is never read; leave it for bucket lifecycle rules.
+            log.warn("message_archive_orphan_object key={}", key, e);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.chatlive.support.chat.service;
+
+import com.chatlive.support.chat.repo.ConversationEventRepository;
+import com.chatlive.support.chat.repo.MessageArchiveSegmentRepository;
+import com.chatlive.support.chat.repo.MessageRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads a conversation's history across the hot tables and the cold archive. {@code archivedSeq} (from the
+ * conversation row) is the split: messages up to it come from archive segments, everything newer from
+ * {@code message}. With {@code archivedSeq == 0} every call is a plain repository read.
+ */
+@Component
+public class MessageHistoryReader {
+
+    private final MessageRepository messageRepository;
+    private final ConversationEventRepository conversationEventRepository;
+    private final MessageArchiveSegmentRepository segmentRepository;
+    private final MessageArchiveStore archiveStore;
+
+    public MessageHistoryReader(
+            MessageRepository messageRepository,
+            ConversationEventRepository conversationEventRepository,
+            MessageArchiveSegmentRepository segmentRepository,
+            MessageArchiveStore archiveStore
+    ) {
+        this.messageRepository = messageRepository;
+        this.conversationEventRepository = conversationEventRepository;
+        this.segmentRepository = segmentRepository;
+        this.archiveStore = archiveStore;
+    }
+
+    public Optional<Long> findSeq(String tenantId, String conversationId, long archivedSeq, String msgId) {
+        var hot = messageRepository.findMarker(tenantId, conversationId, msgId).map(MessageRepository.Marker::seq);
+        if (hot.isPresent() || archivedSeq <= 0) return hot;
+        // Newest segments first: markers usually point near the end of the history. The id filter skips the download
+        // of every segment that cannot hold the id, so an unknown id normally reads nothing.
+        var segments = new ArrayList<>(segmentRepository.listByConversation(tenantId, conversationId));
+        segments.sort(Comparator.comparingLong(MessageArchiveSegmentRepository.SegmentRow::maxSeq).reversed());
+        for (var segment : segments) {
+            if (!MessageIdBloom.mightContain(segment.msgIdBloom(), msgId)) continue;
+            for (var m : archiveStore.read(segment).messages()) {
+                if (m.id().equals(msgId)) return Optional.of(m.seq());
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Same contract as {@link MessageRepository#listMessagesAfterSeq}.
+     */
+    public List<MessageRepository.MessageRow> listAfterSeq(
+            String tenantId, String conversationId, long archivedSeq, long afterSeq, int limit) {
+        if (archivedSeq <= 0 || afterSeq >= archivedSeq) {
+            return messageRepository.listMessagesAfterSeq(tenantId, conversationId, afterSeq, limit);
+        }
+        var out = new ArrayList<MessageRepository.MessageRow>(limit);
+        for (var segment : segmentRepository.listByConversation(tenantId, conversationId)) {
+            if (segment.maxSeq() <= afterSeq) continue;
+            for (var m : archiveStore.read(segment).messages()) {
+                if (m.seq() <= afterSeq) continue;
+                out.add(m);
+                if (out.size() >= limit) return out;
+            }
+        }
+        out.addAll(messageRepository.listMessagesAfterSeq(
+                tenantId, conversationId, Math.max(afterSeq, archivedSeq), limit - out.size()));
+        return out;
+    }
+
+    /**
+     * Same contract as {@link MessageRepository#listMessagesBeforeSeq}.
+     */
+    public List<MessageRepository.MessageRow> listBeforeSeq(
+            String tenantId, String conversationId, long archivedSeq, Long beforeSeq, int limit) {
+        var hot = messageRepository.listMessagesBeforeSeq(tenantId, conversationId, beforeSeq, limit);
+        if (archivedSeq <= 0 || hot.size() >= limit) return hot;
+
+        long upper = beforeSeq == null ? Long.MAX_VALUE : beforeSeq;
+        var older = new ArrayList<MessageRepository.MessageRow>();
+        var segments = new ArrayList<>(segmentRepository.listByConversation(tenantId, conversationId));
+        for (int i = segments.size() - 1; i >= 0 && hot.size() + older.size() < limit; i--) {
+            var segment = segments.get(i);
+            if (segment.minSeq() >= upper) continue;
+            var messages = archiveStore.read(segment).messages();
+            for (int j = messages.size() - 1; j >= 0 && hot.size() + older.size() < limit; j--) {
+                if (messages.get(j).seq() < upper) older.add(messages.get(j));
+            }
+        }
+        var out = new ArrayList<MessageRepository.MessageRow>(older.size() + hot.size());
+        for (int i = older.size() - 1; i >= 0; i--) out.add(older.get(i));
+        out.addAll(hot);
+        return out;
+    }
+
+    /**
+     * Same contract as {@link ConversationEventRepository#listRawByConversation}: the oldest {@code limit} events.
+     */
+    public List<ConversationEventRepository.ConversationEventRawRow> listEvents(
+            String tenantId, String conversationId, long archivedSeq, int limit) {
+        var hot = conversationEventRepository.listRawByConversation(tenantId, conversationId, limit);
+        if (archivedSeq <= 0) return hot;
+        var out = new ArrayList<ConversationEventRepository.ConversationEventRawRow>();
+        for (var segment : segmentRepository.listByConversation(tenantId, conversationId)) {
+            if (segment.eventCount() == 0) continue;
+            out.addAll(archiveStore.read(segment).events());
+        }
+        out.addAll(hot);
+        out.sort(Comparator.comparing(ConversationEventRepository.ConversationEventRawRow::createdAt));
+        return out.size() > limit ? out.subList(0, limit) : out;
+    }
+
+    /**
+     * The newest {@code limit} events in timeline order: what a tail page (the newest messages) is replayed with.
+     * Archive segments are read newest first and only until enough events are collected.
+     */
+    public List<ConversationEventRepository.ConversationEventRawRow> listNewestEvents(
+            String tenantId, String conversationId, long archivedSeq, int limit) {
+        var hot = conversationEventRepository.listRawNewestByConversation(tenantId, conversationId, limit);
+        if (archivedSeq <= 0 || hot.size() >= limit) return hot;
+        var out = new ArrayList<>(hot);
+        var segments = segmentRepository.listByConversation(tenantId, conversationId);
+        for (int i = segments.size() - 1; i >= 0 && out.size() < limit; i--) {
+            if (segments.get(i).eventCount() == 0) continue;
+            out.addAll(archiveStore.read(segments.get(i)).events());
+        }
+        out.sort(Comparator.comparing(ConversationEventRepository.ConversationEventRawRow::createdAt));
+        return out.size() > limit ? out.subList(out.size() - limit, out.size()) : out;
+    }
+}
@@ -0,0 +1,64 @@
+package com.chatlive.support.chat.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Bloom filter over the message ids of one archive segment, stored with the segment's index row.
+ *
+ * 10 bits per id and 7 probes (~1% false positives): a 1000-message segment costs 1.25 KB in the database and
+ * saves downloading the segment for every id it does not hold.
+ */
+final class MessageIdBloom {
+
+    private static final int BITS_PER_ID = 10;
+    private static final int PROBES = 7;
+
+    private MessageIdBloom() {
+    }
+
+    static byte[] of(Collection<String> ids) {
+        var bits = new byte[Math.max(8, (ids.size() * BITS_PER_ID + 7) / 8)];
+        for (var id : ids) {
+            long h = hash(id);
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32);
+            for (int i = 0; i < PROBES; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bits.length * 8);
+                bits[bit >>> 3] |= (byte) (1 << (bit & 7));
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * False only if {@code id} is certainly not in the segment; a missing filter (older segments) may hold anything.
+     */
+    static boolean mightContain(byte[] bits, String id) {
+        if (bits == null || bits.length == 0) return true;
+        long h = hash(id);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < PROBES; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bits.length * 8);
+            if ((bits[bit >>> 3] & (1 << (bit & 7))) == 0) return false;
+        }
+        return true;
+    }
+
+    // 64-bit FNV-1a over the UTF-8 bytes plus the murmur3 finalizer (both halves are used as hashes). Must stay
+    // stable: filters are persisted.
+    private static long hash(String id) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : id.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,119 @@
+package com.chatlive.support.chat.service;
+
+import com.chatlive.support.chat.repo.MessagePartitionRepository;
+import com.chatlive.support.chat.repo.MessageSearchRepository;
+import com.chatlive.support.chat.repo.PgAdvisoryLockRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Keeps the monthly partitions of {@code message} / {@code conversation_event} ahead of time and retires old ones.
+ *
+ * Retention works on whole partitions (detach or drop, never row deletes): a partition is retired once its whole range
+ * is older than {@code app.chat.retention.days} (0 keeps everything). Partitions hold every tenant's rows, so this is
+ * one deployment-wide value rather than a tenant setting. A no-op on H2 and on databases that were not partitioned.
+ *
+ * Runs outside any transaction: partitions are detached {@code CONCURRENTLY}, which Postgres refuses inside one.
+ */
+@Component
+public class MessagePartitionMaintenance {
+
+    private static final Logger log = LoggerFactory.getLogger(MessagePartitionMaintenance.class);
+
+    private final MessagePartitionRepository partitionRepository;
+    private final MessageSearchRepository messageSearchRepository;
+    private final PgAdvisoryLockRepository lockRepository;
+    private final boolean enabled;
+    private final int premakeMonths;
+    private final int retentionDays;
+    private final boolean dropRetired;
+
+    private final Counter retired;
+
+    public MessagePartitionMaintenance(
+            MessagePartitionRepository partitionRepository,
+            MessageSearchRepository messageSearchRepository,
+            PgAdvisoryLockRepository lockRepository,
+            MeterRegistry meterRegistry,
+            @Value("${app.chat.partitions.enabled:true}") boolean enabled,
+            @Value("${app.chat.partitions.premake-months:3}") int premakeMonths,
+            @Value("${app.chat.retention.days:0}") int retentionDays,
+            @Value("${app.chat.retention.mode:detach}") String retentionMode
+    ) {
+        this.partitionRepository = partitionRepository;
+        this.messageSearchRepository = messageSearchRepository;
+        this.lockRepository = lockRepository;
+        this.enabled = enabled;
+        this.premakeMonths = Math.max(1, Math.min(premakeMonths, 24));
+        this.retentionDays = Math.max(0, retentionDays);
+        this.dropRetired = "drop".equalsIgnoreCase(retentionMode == null ? "" : retentionMode.trim());
+
+        // Low-cardinality metrics: do NOT tag by tenant/partition.
+        this.retired = Counter.builder("chatlive.chat.partitions.retired")
+                .description("History partitions detached or dropped by retention")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.chat.partitions.maintenance-interval-ms:3600000}")
+    public void maintain() {
+        if (!enabled) return;
+        var lockKey = "message_partitions";
+        if (!lockRepository.tryLock(lockKey)) return;
+        try {
+            for (var table : MessagePartitionRepository.PARTITIONED_TABLES) {
+                if (!partitionRepository.isPartitioned(table)) continue;
+                ensureAhead(table);
+                applyRetention(table);
+            }
+        } catch (Exception e) {
+            log.warn("message_partition_maintenance_failed", e);
+        } finally {
+            lockRepository.unlock(lockKey);
+        }
+    }
+
+    private void ensureAhead(String table) {
+        var existing = partitionRepository.listPartitions(table);
+        var current = YearMonth.now(ZoneOffset.UTC);
+        for (int i = 0; i <= premakeMonths; i++) {
+            var month = current.plusMonths(i);
+            var name = MessagePartitionRepository.partitionName(table, month);
+            // Covered by a monthly partition, or by the pre-partitioning one whose range ends after this month.
+            var covered = existing.stream().anyMatch(p -> p.name().equals(name)
+                    || (p.name().contains("_p_before_") && month.isBefore(p.upperBoundExclusive())));
+            if (covered) continue;
+            partitionRepository.createMonthlyPartition(table, month);
+            log.info("message_partition_created table={} partition={}", table, name);
+        }
+    }
+
+    private void applyRetention(String table) {
+        if (retentionDays <= 0) return;
+        var cutoff = Instant.now().minus(retentionDays, ChronoUnit.DAYS);
+        for (var p : partitionRepository.listPartitions(table)) {
+            var upper = p.upperBoundExclusive().atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+            if (upper.isAfter(cutoff)) continue;
+            if (dropRetired) {
+                partitionRepository.dropPartition(p);
+            } else {
+                partitionRepository.detachPartition(p);
+            }
+            if ("message".equals(table)) {
+                // The search index is not partitioned: forget the retired messages there too.
+                messageSearchRepository.deleteCreatedBefore(upper);
+            }
+            retired.increment();
+            log.info("message_partition_retired table={} partition={} mode={}", table, p.name(), dropRetired ? "drop" : "detach");
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.chatlive.support.chat.service;
+
+import com.chatlive.support.auth.service.jwt.JwtClaims;
+import com.chatlive.support.chat.api.MessageSearchHit;
+import com.chatlive.support.chat.api.MessageSearchPage;
+import com.chatlive.support.chat.repo.MessageSearchRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Message search for the agent workbench: newest matches first, keyset-paged with an opaque cursor. Snippets and
+ * highlight ranges are cut from the indexed body of each hit, so no transcript is loaded; they use the same
+ * case-insensitive substring rule as the query, so every hit highlights every term.
+ */
+@Service
+public class MessageSearchService {
+
+    private static final int MAX_TERMS = 8;
+    private static final int MAX_TERM_LENGTH = 64;
+    private static final int SNIPPET_LENGTH = 200;
+    private static final int SNIPPET_LEAD = 60;
+
+    private final MessageSearchRepository searchRepository;
+    private final Timer latency;
+
+    public MessageSearchService(MessageSearchRepository searchRepository, MeterRegistry meterRegistry) {
+        this.searchRepository = searchRepository;
+
+        // Low-cardinality metrics: do NOT tag by tenant/conversation.
+        this.latency = Timer.builder("chatlive.chat.search.latency")
+                .description("Message search query latency")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    public MessageSearchPage search(
+            JwtClaims claims,
+            String query,
+            String siteId,
+            String agentUserId,
+            String tag,
+            Long fromEpochSeconds,
+            Long toEpochSeconds,
+            String cursor,
+            int limit
+    ) {
+        if (!"agent".equals(claims.role()) && !"admin".equals(claims.role())) {
+            throw new IllegalArgumentException("forbidden");
+        }
+        var terms = parseTerms(query);
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("missing_query");
+        }
+
+        Instant beforeCreatedAt = null;
+        String beforeMessageId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                var decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                var sep = decoded.indexOf('\n');
+                beforeCreatedAt = Instant.parse(decoded.substring(0, sep));
+                beforeMessageId = decoded.substring(sep + 1);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("invalid_cursor");
+            }
+        }
+
+        var filter = new MessageSearchRepository.SearchFilter(
+                claims.tenantId(),
+                terms,
+                blankToNull(siteId),
+                blankToNull(agentUserId),
+                blankToNull(tag),
+                fromEpochSeconds == null ? null : Instant.ofEpochSecond(fromEpochSeconds),
+                toEpochSeconds == null ? null : Instant.ofEpochSecond(toEpochSeconds),
+                "admin".equals(claims.role()) ? null : claims.userId(),
+                beforeCreatedAt,
+                beforeMessageId,
+                limit + 1
+        );
+        var rows = latency.record(() -> searchRepository.search(filter));
+
+        var hasMore = rows.size() > limit;
+        if (hasMore) {
+            rows = rows.subList(0, limit);
+        }
+        var hits = new ArrayList<MessageSearchHit>(rows.size());
+        for (var row : rows) {
+            var snippet = snippet(row.body(), terms);
+            hits.add(new MessageSearchHit(
+                    row.messageId(),
+                    row.conversationId(),
+                    row.seq(),
+                    row.senderType(),
+                    row.senderId(),
+                    row.createdAt().getEpochSecond(),
+                    row.siteId(),
+                    row.assignedAgentUserId(),
+                    snippet.text(),
+                    snippet.highlights()
+            ));
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            var last = rows.getLast();
+            nextCursor = Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((last.createdAt() + "\n" + last.messageId()).getBytes(StandardCharsets.UTF_8));
+        }
+        return new MessageSearchPage(hits, hasMore, nextCursor);
+    }
+
+    /**
+     * Lower-cased word terms (letters and digits only, so they are safe in a LIKE pattern). An unsegmented CJK run
+     * is one term and matches as a substring, like any other.
+     */
+    static List<String> parseTerms(String query) {
+        var out = new LinkedHashSet<String>();
+        if (query == null) return List.of();
+        for (var part : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (part.isEmpty()) continue;
+            out.add(part.length() > MAX_TERM_LENGTH ? part.substring(0, MAX_TERM_LENGTH) : part);
+            if (out.size() >= MAX_TERMS) break;
+        }
+        return List.copyOf(out);
+    }
+
+    record Snippet(String text, List<int[]> highlights) {
+    }
+
+    /**
+     * Up to {@link #SNIPPET_LENGTH} characters around the first match, with the term occurrences inside it.
+     */
+    static Snippet snippet(String body, List<String> terms) {
+        if (body == null) return new Snippet("", List.of());
+        int first = -1;
+        for (int i = 0; i < body.length() && first < 0; i++) {
+            for (var term : terms) {
+                if (body.regionMatches(true, i, term, 0, term.length())) {
+                    first = i;
+                    break;
+                }
+            }
+        }
+        int start = 0;
+        if (body.length() > SNIPPET_LENGTH && first > SNIPPET_LEAD) {
+            start = Math.min(first - SNIPPET_LEAD, body.length() - SNIPPET_LENGTH);
+        }
+        int end = Math.min(body.length(), start + SNIPPET_LENGTH);
+
+        var prefix = start > 0 ? "…" : "";
+        var text = prefix + body.substring(start, end) + (end < body.length() ? "…" : "");
+        var highlights = new ArrayList<int[]>();
+        int i = start;
+        while (i < end) {
+            int matched = 0;
+            for (var term : terms) {
+                if (term.length() > matched && i + term.length() <= end && body.regionMatches(true, i, term, 0, term.length())) {
+                    matched = term.length();
+                }
+            }
+            if (matched == 0) {
+                i++;
+                continue;
+            }
+            int from = i - start + prefix.length();
+            var last = highlights.isEmpty() ? null : highlights.getLast();
+            if (last != null && last[1] >= from) {
+                last[1] = Math.max(last[1], from + matched);
+            } else {
+                highlights.add(new int[]{from, from + matched});
+            }
+            i += matched;
+        }
+        return new Snippet(text, highlights);
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s.trim();
+    }
+}
@@ -7,22 +7,32 @@ import com.chatlive.support.chat.repo.ChatFileSharingSettingsRepository;
 import com.chatlive.support.chat.repo.ConversationRepository;
 import com.chatlive.support.chat.repo.MessageRepository;
 import com.chatlive.support.chat.repo.MessageStateRepository;
+import com.chatlive.support.chat.repo.RecentMessageCache;
+import com.chatlive.support.chat.ws.WsBroadcaster;
 import com.chatlive.support.chat.ws.WsSessionRegistry;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.RawValue;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class MessageService {
 
     private final ConversationRepository conversationRepository;
-    private final MessageRepository messageRepository;
+    private final MessageWritePipeline messageWritePipeline;
+    private final RecentMessageCache recentMessageCache;
+    private final MessageHistoryReader historyReader;
     private final MessageStateRepository messageStateRepository;
     private final ObjectMapper objectMapper;
     private final WsSessionRegistry wsSessionRegistry;
+    private final WsBroadcaster broadcaster;
     private final AttachmentService attachmentService;
     private final AssignmentService assignmentService;
     private final ChatFileSharingSettingsRepository fileSharingSettingsRepository;
@@ -32,10 +42,13 @@ public class MessageService {
 
     public MessageService(
             ConversationRepository conversationRepository,
-            MessageRepository messageRepository,
+            MessageWritePipeline messageWritePipeline,
+            RecentMessageCache recentMessageCache,
+            MessageHistoryReader historyReader,
             MessageStateRepository messageStateRepository,
             ObjectMapper objectMapper,
             WsSessionRegistry wsSessionRegistry,
+            WsBroadcaster broadcaster,
             AttachmentService attachmentService,
             AssignmentService assignmentService,
             ChatFileSharingSettingsRepository fileSharingSettingsRepository,
@@ -43,10 +56,13 @@ public class MessageService {
             @org.springframework.beans.factory.annotation.Value("${app.chat.file-sharing.agent-enabled:true}") boolean defaultAgentFileEnabled
     ) {
         this.conversationRepository = conversationRepository;
-        this.messageRepository = messageRepository;
+        this.messageWritePipeline = messageWritePipeline;
+        this.recentMessageCache = recentMessageCache;
+        this.historyReader = historyReader;
         this.messageStateRepository = messageStateRepository;
         this.objectMapper = objectMapper;
         this.wsSessionRegistry = wsSessionRegistry;
+        this.broadcaster = broadcaster;
         this.attachmentService = attachmentService;
         this.assignmentService = assignmentService;
         this.fileSharingSettingsRepository = fileSharingSettingsRepository;
@@ -57,7 +73,24 @@ public class MessageService {
     public record SendResult(MessageItem item, boolean inserted, boolean reopened) {
     }
 
+    /**
+     * A send that passed validation and was handed to the write pipeline. {@link #finishSend} completes it once
+     * {@link MessageWritePipeline#await} returns; in between the caller holds no database resources.
+     */
+    public record PendingSend(
+            ConversationRepository.ConversationAccessRow conv,
+            boolean reopened,
+            String attachmentId,
+            CompletableFuture<MessageRepository.InsertResult> write
+    ) {
+    }
+
     public SendResult sendText(JwtClaims claims, String conversationId, String clientMsgId, String text) {
+        var send = submitText(claims, conversationId, clientMsgId, text);
+        return finishSend(claims, send, MessageWritePipeline.await(send.write()));
+    }
+
+    public PendingSend submitText(JwtClaims claims, String conversationId, String clientMsgId, String text) {
         var conv = conversationRepository.findAccess(claims.tenantId(), conversationId)
                 .orElseThrow(() -> new IllegalArgumentException("conversation_not_found"));
         ensureCanAccessConversation(claims, conv);
@@ -72,23 +105,16 @@ public class MessageService {
         ObjectNode content = objectMapper.createObjectNode();
         content.put("text", text);
 
-        var insert = messageRepository.insertTextMessage(
+        var write = messageWritePipeline.submit(new MessageRepository.PendingInsert(
                 claims.tenantId(),
                 conversationId,
-            senderType,
+                senderType,
                 claims.userId(),
                 clientMsgId,
+                "text",
                 content.toString()
-        );
-
-        if (insert.inserted()) {
-            conversationRepository.touchLastMsgAt(claims.tenantId(), conversationId);
-            if ("customer".equals(senderType)) {
-                conversationRepository.touchLastCustomerMsgAt(claims.tenantId(), conversationId);
-            }
-        }
-
-        return new SendResult(toItem(insert.row(), content), insert.inserted(), reopened);
+        ));
+        return new PendingSend(conv, reopened, null, write);
     }
 
     public SendResult sendFile(
@@ -96,6 +122,16 @@ public class MessageService {
             String conversationId,
             String clientMsgId,
             String attachmentId
+    ) {
+        var send = submitFile(claims, conversationId, clientMsgId, attachmentId);
+        return finishSend(claims, send, MessageWritePipeline.await(send.write()));
+    }
+
+    public PendingSend submitFile(
+            JwtClaims claims,
+            String conversationId,
+            String clientMsgId,
+            String attachmentId
     ) {
         if (!isFileSharingEnabledForRole(claims)) {
             throw new IllegalArgumentException("file_sharing_disabled");
@@ -123,7 +159,7 @@ public class MessageService {
         }
         content.put("size_bytes", attachment.sizeBytes());
 
-        var insert = messageRepository.insertMessage(
+        var write = messageWritePipeline.submit(new MessageRepository.PendingInsert(
                 claims.tenantId(),
                 conversationId,
                 senderType,
@@ -131,17 +167,21 @@ public class MessageService {
                 clientMsgId,
                 "file",
                 content.toString()
-        );
+        ));
+        return new PendingSend(conv, reopened, attachment.id(), write);
+    }
 
+    /**
+     * Post-commit part of a send: link the attachment and push the assignee's unread count.
+     */
+    public SendResult finishSend(JwtClaims claims, PendingSend send, MessageRepository.InsertResult insert) {
         if (insert.inserted()) {
-            conversationRepository.touchLastMsgAt(claims.tenantId(), conversationId);
-            if ("customer".equals(senderType)) {
-                conversationRepository.touchLastCustomerMsgAt(claims.tenantId(), conversationId);
+            if (send.attachmentId() != null) {
+                attachmentService.markLinked(claims, send.attachmentId(), insert.row().id());
             }
-            attachmentService.markLinked(claims, attachment.id(), insert.row().id());
+            notifyUnreadOnCustomerMessage(send.conv(), insert.row());
         }
-
-        return new SendResult(toItem(insert.row(), content), insert.inserted(), reopened);
+        return new SendResult(toItem(insert.row()), insert.inserted(), send.reopened());
     }
 
     private boolean isFileSharingEnabledForRole(JwtClaims claims) {
@@ -187,57 +227,207 @@ public class MessageService {
         }
 
         // Ensure the marker exists within this conversation to avoid storing garbage ids.
-        messageRepository.findMarker(claims.tenantId(), conversationId, lastReadMsgId)
+        var markerSeq = historyReader.findSeq(claims.tenantId(), conversationId, conv.archivedSeq(), lastReadMsgId)
                 .orElseThrow(() -> new IllegalArgumentException("last_read_msg_id_not_found"));
 
-        return messageStateRepository.upsertLastReadAndGetUpdatedAtSeconds(conversationId, claims.userId(), lastReadMsgId);
+        var readAt = messageStateRepository.upsertLastReadAndGetUpdatedAtSeconds(conversationId, claims.userId(), lastReadMsgId, markerSeq);
+
+        // Keep the reader's other tabs/devices in sync.
+        if ("agent".equals(claims.role()) || "admin".equals(claims.role())) {
+            pushUnread(claims.tenantId(), claims.userId(), conversationId);
+        }
+        return readAt;
     }
 
-    public List<MessageItem> listMessages(JwtClaims claims, String conversationId, String afterMsgId, int limit) {
-        var conv = conversationRepository.findAccess(claims.tenantId(), conversationId)
-                .orElseThrow(() -> new IllegalArgumentException("conversation_not_found"));
-        ensureCanAccessConversation(claims, conv);
+    private void notifyUnreadOnCustomerMessage(ConversationRepository.ConversationAccessRow conv, MessageRepository.MessageRow row) {
+        if (!"customer".equals(row.senderType())) return;
+        var agentUserId = conv.assignedAgentUserId();
+        if (agentUserId == null || agentUserId.isBlank()) return;
+        pushUnread(row.tenantId(), agentUserId, row.conversationId());
+    }
 
+    private void pushUnread(String tenantId, String agentUserId, String conversationId) {
         try {
-            return toItems(messageRepository.listMessages(claims.tenantId(), conversationId, afterMsgId, limit));
-        } catch (IllegalArgumentException ex) {
-            // 断线续拉时客户端的 last_msg_id 可能失效（清库/迁移/历史被裁剪等），M1 先降级从头拉。
-            if ("after_msg_id_not_found".equals(ex.getMessage())) {
-                return toItems(messageRepository.listMessages(claims.tenantId(), conversationId, null, limit));
-            }
-            throw ex;
+            var unread = conversationRepository.findUnreadCount(tenantId, conversationId, agentUserId);
+            broadcaster.notifyUnread(tenantId, agentUserId, conversationId, unread);
+        } catch (Exception ignored) {
+            // best-effort
         }
     }
 
-    public MessagePage listMessagesPage(JwtClaims claims, String conversationId, String afterMsgId, int pageSize) {
+    public List<MessageItem> listMessages(JwtClaims claims, String conversationId, String afterMsgId, int limit) {
+        return listMessages(claims, conversationId, afterMsgId, null, limit);
+    }
+
+    /**
+     * {@code afterSeq} (when given) wins over {@code afterMsgId}: it is a single range scan with no marker lookup.
+     */
+    public List<MessageItem> listMessages(JwtClaims claims, String conversationId, String afterMsgId, Long afterSeq, int limit) {
+        return toItems(listMessageRowsPage(claims, conversationId, afterMsgId, afterSeq, limit).rows());
+    }
+
+    /**
+     * Page of stored rows (content still as JSON text) for writers that stream it without building a tree.
+     */
+    public record MessageRowPage(
+            List<MessageRepository.MessageRow> rows,
+            boolean hasMore,
+            String nextAfterMsgId,
+            boolean reset,
+            long nextAfterSeq,
+            boolean hasMoreBefore,
+            String prevBeforeMsgId,
+            Long prevBeforeSeq
+    ) {
+    }
+
+    public MessagePage listMessagesPage(JwtClaims claims, String conversationId, String afterMsgId, Long afterSeq, int pageSize) {
+        return toPage(listMessageRowsPage(claims, conversationId, afterMsgId, afterSeq, pageSize));
+    }
+
+    public MessagePage listMessagesPageBefore(JwtClaims claims, String conversationId, String beforeMsgId, Long beforeSeq, int pageSize) {
+        return toPage(listMessageRowsPageBefore(claims, conversationId, beforeMsgId, beforeSeq, pageSize));
+    }
+
+    public List<MessageItem> listMessagesBefore(JwtClaims claims, String conversationId, String beforeMsgId, Long beforeSeq, int limit) {
+        return toItems(listMessageRowsPageBefore(claims, conversationId, beforeMsgId, beforeSeq, limit).rows());
+    }
+
+    private MessagePage toPage(MessageRowPage page) {
+        return new MessagePage(
+                toItems(page.rows()),
+                page.hasMore(),
+                page.nextAfterMsgId(),
+                page.reset(),
+                page.nextAfterSeq(),
+                page.hasMoreBefore(),
+                page.prevBeforeMsgId(),
+                page.prevBeforeSeq()
+        );
+    }
+
+    public MessageRowPage listMessageRowsPage(JwtClaims claims, String conversationId, String afterMsgId, Long afterSeq, int pageSize) {
         var conv = conversationRepository.findAccess(claims.tenantId(), conversationId)
                 .orElseThrow(() -> new IllegalArgumentException("conversation_not_found"));
         ensureCanAccessConversation(claims, conv);
 
+        var tenantId = claims.tenantId();
         var effectiveAfter = afterMsgId;
+        long effectiveAfterSeq = afterSeq == null ? 0 : Math.max(0, afterSeq);
         var reset = false;
 
-        List<MessageRepository.MessageRow> rows;
-        try {
-            rows = messageRepository.listMessages(claims.tenantId(), conversationId, effectiveAfter, pageSize + 1);
-        } catch (IllegalArgumentException ex) {
-            if ("after_msg_id_not_found".equals(ex.getMessage())) {
+        if (afterSeq == null && effectiveAfter != null && !effectiveAfter.isBlank()) {
+            var known = recentMessageCache.seqOf(tenantId, conversationId, effectiveAfter);
+            var marker = known.isPresent()
+                    ? Optional.of(known.getAsLong())
+                    : historyReader.findSeq(tenantId, conversationId, conv.archivedSeq(), effectiveAfter);
+            if (marker.isPresent()) {
+                effectiveAfterSeq = marker.get();
+            } else {
+                // 断线续拉时客户端的 last_msg_id 可能失效（清库/迁移/历史被裁剪等），M1 先降级从头拉。
                 reset = true;
                 effectiveAfter = null;
-                rows = messageRepository.listMessages(claims.tenantId(), conversationId, null, pageSize + 1);
-            } else {
-                throw ex;
             }
         }
 
+        var generation = recentMessageCache.generation(tenantId, conversationId);
+        var cached = recentMessageCache.after(tenantId, conversationId, effectiveAfterSeq, pageSize + 1);
+        var rows = cached.isPresent()
+                ? withOlderAfter(tenantId, conversationId, conv.archivedSeq(), effectiveAfterSeq, pageSize + 1, cached.get())
+                : historyReader.listAfterSeq(tenantId, conversationId, conv.archivedSeq(), effectiveAfterSeq, pageSize + 1);
+        if (cached.isEmpty() && rows.size() <= pageSize && (!rows.isEmpty() || effectiveAfterSeq == 0)) {
+            // The read reached the newest message: keep it hot for the next SYNC.
+            recentMessageCache.seedNewest(tenantId, conversationId, generation, rows);
+        }
+
         var hasMore = rows.size() > pageSize;
         if (hasMore) {
             rows = rows.subList(0, pageSize);
         }
 
-        var items = toItems(rows);
-        var nextAfter = items.isEmpty() ? effectiveAfter : items.getLast().id();
-        return new MessagePage(items, hasMore, nextAfter, reset);
+        var nextAfter = rows.isEmpty() ? effectiveAfter : rows.getLast().id();
+        var nextAfterSeq = rows.isEmpty() ? effectiveAfterSeq : rows.getLast().seq();
+        return new MessageRowPage(rows, hasMore, nextAfter, reset, nextAfterSeq, false, null, null);
+    }
+
+    /**
+     * Backward page: the newest {@code pageSize} messages older than the marker, or the tail of the conversation
+     * when neither {@code beforeMsgId} nor {@code beforeSeq} is given. Rows are ascending; {@code hasMoreBefore} /
+     * {@code prevBefore*} drive the next (older) page, {@code nextAfter*} is the forward resume cursor. An unknown
+     * {@code beforeMsgId} falls back to the tail with {@code reset=true}.
+     */
+    public MessageRowPage listMessageRowsPageBefore(JwtClaims claims, String conversationId, String beforeMsgId, Long beforeSeq, int pageSize) {
+        var conv = conversationRepository.findAccess(claims.tenantId(), conversationId)
+                .orElseThrow(() -> new IllegalArgumentException("conversation_not_found"));
+        ensureCanAccessConversation(claims, conv);
+
+        var tenantId = claims.tenantId();
+        var effectiveBeforeSeq = beforeSeq;
+        var reset = false;
+        if (effectiveBeforeSeq == null && beforeMsgId != null && !beforeMsgId.isBlank()) {
+            var known = recentMessageCache.seqOf(tenantId, conversationId, beforeMsgId);
+            if (known.isPresent()) {
+                effectiveBeforeSeq = known.getAsLong();
+            } else {
+                var marker = historyReader.findSeq(tenantId, conversationId, conv.archivedSeq(), beforeMsgId);
+                if (marker.isPresent()) {
+                    effectiveBeforeSeq = marker.get();
+                } else {
+                    reset = true;
+                }
+            }
+        }
+
+        var generation = recentMessageCache.generation(tenantId, conversationId);
+        var cached = recentMessageCache.before(tenantId, conversationId, effectiveBeforeSeq, pageSize + 1);
+        var rows = cached.isPresent()
+                ? withOlderBefore(tenantId, conversationId, conv.archivedSeq(), pageSize + 1, cached.get())
+                : historyReader.listBeforeSeq(tenantId, conversationId, conv.archivedSeq(), effectiveBeforeSeq, pageSize + 1);
+        if (cached.isEmpty() && effectiveBeforeSeq == null) {
+            recentMessageCache.seedNewest(tenantId, conversationId, generation, rows);
+        }
+        var hasMoreBefore = rows.size() > pageSize;
+        if (hasMoreBefore) {
+            rows = rows.subList(1, rows.size());
+        }
+
+        var nextAfter = rows.isEmpty() ? null : rows.getLast().id();
+        var nextAfterSeq = rows.isEmpty() ? 0 : rows.getLast().seq();
+        var prevBefore = rows.isEmpty() ? null : rows.getFirst().id();
+        var prevBeforeSeq = rows.isEmpty() ? null : rows.getFirst().seq();
+        // has_more only describes forward paging; the client already holds (or is pushed) anything newer.
+        return new MessageRowPage(rows, false, nextAfter, reset, nextAfterSeq, hasMoreBefore, prevBefore, prevBeforeSeq);
+    }
+
+    /**
+     * Completes a forward page whose newer part came from the recent-message window: seqs are dense, so the rows
+     * between the cursor and the window are exactly {@code (afterSeq, first cached seq)}.
+     */
+    private List<MessageRepository.MessageRow> withOlderAfter(String tenantId, String conversationId, long archivedSeq,
+                                                              long afterSeq, int limit, List<MessageRepository.MessageRow> cached) {
+        if (cached.isEmpty()) return cached;
+        long gap = cached.getFirst().seq() - afterSeq - 1;
+        if (gap <= 0) return cached;
+        var older = historyReader.listAfterSeq(tenantId, conversationId, archivedSeq, afterSeq, (int) Math.min(limit, gap));
+        var out = new ArrayList<MessageRepository.MessageRow>(limit);
+        out.addAll(older);
+        out.addAll(cached.subList(0, Math.min(cached.size(), limit - out.size())));
+        return out;
+    }
+
+    /**
+     * Completes a backward page whose newest part came from the recent-message window with the older rows just
+     * before it.
+     */
+    private List<MessageRepository.MessageRow> withOlderBefore(String tenantId, String conversationId, long archivedSeq,
+                                                               int limit, List<MessageRepository.MessageRow> cached) {
+        if (cached.isEmpty() || cached.size() >= limit || cached.getFirst().seq() <= 1) return cached;
+        var older = historyReader.listBeforeSeq(tenantId, conversationId, archivedSeq, cached.getFirst().seq(),
+                limit - cached.size());
+        var out = new ArrayList<MessageRepository.MessageRow>(older.size() + cached.size());
+        out.addAll(older);
+        out.addAll(cached);
+        return out;
     }
 
     private void ensureCanAccessConversation(JwtClaims claims, ConversationRepository.ConversationAccessRow conv) {
@@ -291,26 +481,35 @@ public class MessageService {
         };
     }
 
-    private MessageItem toItem(MessageRepository.MessageRow row, JsonNode content) {
+    private MessageItem toItem(MessageRepository.MessageRow row) {
         return new MessageItem(
                 row.id(),
                 row.senderType(),
                 row.senderId(),
                 row.contentType(),
-                content,
-                row.createdAt().getEpochSecond()
+                new RawValue(contentJsonOrEmpty(objectMapper, row.contentJson())),
+                row.createdAt().getEpochSecond(),
+                row.seq()
         );
     }
 
+    /**
+     * The stored content if it is one well-formed JSON object, else {@code {}} (as the tree-parsing path did for
+     * legacy rows). Embedded raw, a malformed row would otherwise break the whole response; the check only
+     * tokenizes, it builds no tree.
+     */
+    public static String contentJsonOrEmpty(ObjectMapper objectMapper, String json) {
+        if (json == null || json.isBlank()) return "{}";
+        try (var parser = objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return "{}";
+            parser.skipChildren();
+            return parser.nextToken() == null ? json : "{}";
+        } catch (IOException e) {
+            return "{}";
+        }
+    }
+
     private List<MessageItem> toItems(List<MessageRepository.MessageRow> rows) {
-        return rows.stream().map(row -> {
-            JsonNode content;
-            try {
-                content = objectMapper.readTree(row.contentJson());
-            } catch (Exception e) {
-                content = objectMapper.createObjectNode();
-            }
-            return toItem(row, content);
-        }).toList();
+        return rows.stream().map(this::toItem).toList();
     }
 }
@@ -0,0 +1,264 @@
+package com.chatlive.support.chat.service;
+
+import com.chatlive.support.chat.repo.ConversationRepository;
+import com.chatlive.support.chat.repo.MessageRepository;
+import com.chatlive.support.chat.repo.MessageSearchRepository;
+import com.chatlive.support.chat.repo.RecentMessageCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for chat message writes.
+ *
+ * Concurrent sends are collected for a few milliseconds and written together in one transaction: one multi-row
+ * INSERT into {@code message} plus one set-based UPDATE of the conversations' {@code last_msg_at} /
+ * {@code last_customer_msg_at} and last-message snapshot. Each caller blocks until its batch has committed, so MSG_ACK (and the MSG
+ * broadcast) still only happen for durable rows. If a batch fails (e.g. a concurrent duplicate
+ * {@code client_msg_id}), its items are retried one by one so one bad message never fails its neighbours.
+ * Per-conversation {@code seq} numbers are allocated inside the same transaction (see
+ * {@link MessageRepository#insertMessages}). Committed rows are appended to the {@link RecentMessageCache}.
+ */
+@Service
+public class MessageWritePipeline implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageWritePipeline.class);
+
+    private record Pending(MessageRepository.PendingInsert insert, CompletableFuture<MessageRepository.InsertResult> result) {
+    }
+
+    private final MessageRepository messageRepository;
+    private final ConversationRepository conversationRepository;
+    private final MessageSearchRepository messageSearchRepository;
+    private final RecentMessageCache recentMessageCache;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long windowMs;
+    private final int maxBatch;
+
+    private final BlockingQueue<Pending> queue;
+
+    private final Counter batches;
+    private final Counter fallbacks;
+    private final DistributionSummary batchSize;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public MessageWritePipeline(
+            MessageRepository messageRepository,
+            ConversationRepository conversationRepository,
+            MessageSearchRepository messageSearchRepository,
+            RecentMessageCache recentMessageCache,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${app.chat.write-batch.enabled:true}") boolean enabled,
+            @Value("${app.chat.write-batch.window-ms:3}") long windowMs,
+            @Value("${app.chat.write-batch.max-batch:128}") int maxBatch,
+            @Value("${app.chat.write-batch.max-pending:10000}") int maxPending
+    ) {
+        this.messageRepository = messageRepository;
+        this.conversationRepository = conversationRepository;
+        this.messageSearchRepository = messageSearchRepository;
+        this.recentMessageCache = recentMessageCache;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.windowMs = Math.max(0, windowMs);
+        this.maxBatch = Math.max(1, maxBatch);
+        this.queue = new LinkedBlockingQueue<>(Math.max(100, maxPending));
+
+        // Low-cardinality metrics: do NOT tag by tenant/conversation.
+        this.batches = Counter.builder("chatlive.message.write.batches")
+                .description("Message write batches committed")
+                .register(meterRegistry);
+        this.fallbacks = Counter.builder("chatlive.message.write.fallbacks")
+                .description("Message write batches retried item by item after a failure")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("chatlive.message.write.batch_size")
+                .description("Messages per committed write batch")
+                .baseUnit("messages")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!enabled) return;
+        running = true;
+        writer = Thread.ofPlatform().name("message-write-pipeline").daemon().start(this::writeLoop);
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        if (writer != null) writer.interrupt();
+        // Whatever is still queued is written on this thread so no sender is left waiting.
+        var rest = new ArrayList<Pending>();
+        queue.drainTo(rest);
+        for (var p : rest) {
+            writeOne(p);
+        }
+    }
+
+    /**
+     * Insert one message and touch its conversation; returns once the write has committed.
+     */
+    public MessageRepository.InsertResult write(MessageRepository.PendingInsert insert) {
+        return await(submit(insert));
+    }
+
+    /**
+     * Queue one message for the next batch without waiting for it. The future completes when the batch has
+     * committed, so a caller holding a scarce resource (a WS database permit) can release it before
+     * {@link #await}ing; otherwise a whole batch window of senders would sit on those permits.
+     */
+    public CompletableFuture<MessageRepository.InsertResult> submit(MessageRepository.PendingInsert insert) {
+        // Inside a caller's transaction the row must be part of that transaction: write directly.
+        if (!running || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return CompletableFuture.completedFuture(writeDirect(insert));
+        }
+        var pending = new Pending(insert, new CompletableFuture<>());
+        if (!queue.offer(pending)) {
+            // Saturated: do not queue unbounded work, just write on the caller's thread.
+            return CompletableFuture.completedFuture(writeDirect(insert));
+        }
+        return pending.result();
+    }
+
+    /**
+     * Block until a {@link #submit}ted write has committed, rethrowing its failure as it was raised.
+     */
+    public static MessageRepository.InsertResult await(CompletableFuture<MessageRepository.InsertResult> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    private void writeLoop() {
+        var batch = new ArrayList<Pending>(maxBatch);
+        while (running) {
+            try {
+                var first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMs);
+                while (batch.size() < maxBatch) {
+                    if (queue.drainTo(batch, maxBatch - batch.size()) > 0) continue;
+                    var remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    var next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (var p : batch) {
+                    writeOne(p);
+                }
+                return;
+            } catch (Exception e) {
+                log.warn("message_write_loop_failed messages={}", batch.size(), e);
+                for (var p : batch) {
+                    p.result().completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        List<MessageRepository.InsertResult> results;
+        try {
+            results = transactionTemplate.execute(status -> {
+                var inserts = new ArrayList<MessageRepository.PendingInsert>(batch.size());
+                for (var p : batch) {
+                    inserts.add(p.insert());
+                }
+                var written = messageRepository.insertMessages(inserts);
+                var touches = new ArrayList<ConversationRepository.MessageTouch>();
+                var fresh = new ArrayList<MessageRepository.MessageRow>();
+                for (var r : written) {
+                    if (!r.inserted()) continue;
+                    touches.add(ConversationRepository.MessageTouch.of(r.row()));
+                    fresh.add(r.row());
+                }
+                conversationRepository.touchLastMsgAt(touches);
+                messageSearchRepository.indexMessages(fresh);
+                return written;
+            });
+        } catch (Exception e) {
+            fallbacks.increment();
+            log.debug("message_write_batch_failed messages={}", batch.size(), e);
+            for (var p : batch) {
+                writeOne(p);
+            }
+            return;
+        }
+
+        batches.increment();
+        batchSize.record(batch.size());
+        var committed = new ArrayList<MessageRepository.MessageRow>(results.size());
+        for (var r : results) {
+            if (r.inserted()) committed.add(r.row());
+        }
+        recentMessageCache.appendMessages(committed);
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result().complete(results.get(i));
+        }
+    }
+
+    private void writeOne(Pending p) {
+        try {
+            p.result().complete(writeDirect(p.insert()));
+        } catch (Exception e) {
+            p.result().completeExceptionally(e);
+        }
+    }
+
+    private MessageRepository.InsertResult writeDirect(MessageRepository.PendingInsert p) {
+        try {
+            var result = transactionTemplate.execute(status -> {
+                var insert = messageRepository.insertMessages(List.of(p)).getFirst();
+                if (insert.inserted()) {
+                    conversationRepository.touchLastMsgAt(List.of(ConversationRepository.MessageTouch.of(insert.row())));
+                    messageSearchRepository.indexMessages(List.of(insert.row()));
+                }
+                return insert;
+            });
+            if (result.inserted()) {
+                // Deferred to the caller's commit when this joined an outer transaction.
+                recentMessageCache.appendMessages(List.of(result.row()));
+            }
+            return result;
+        } catch (DuplicateKeyException dup) {
+            // Lost a race on the same client_msg_id: the winner's row is the result.
+            if (p.clientMsgId() != null && !p.clientMsgId().isBlank()) {
+                var existing = messageRepository.findByClientMsgId(p.tenantId(), p.senderId(), p.clientMsgId())
+                        .orElseThrow(() -> dup);
+                return new MessageRepository.InsertResult(existing, false);
+            }
+            throw dup;
+        }
+    }
+}
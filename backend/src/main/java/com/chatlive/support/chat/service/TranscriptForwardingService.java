@@ -37,7 +37,7 @@ public class TranscriptForwardingService {
 
     private final ChatTranscriptForwardingSettingsRepository transcriptForwardingSettingsRepository;
     private final ConversationRepository conversationRepository;
-    private final MessageRepository messageRepository;
+    private final MessageHistoryReader historyReader;
     private final AttachmentRepository attachmentRepository;
     private final SiteRepository siteRepository;
     private final VisitorRepository visitorRepository;
@@ -53,7 +53,7 @@ public class TranscriptForwardingService {
     public TranscriptForwardingService(
             ChatTranscriptForwardingSettingsRepository transcriptForwardingSettingsRepository,
             ConversationRepository conversationRepository,
-            MessageRepository messageRepository,
+            MessageHistoryReader historyReader,
             AttachmentRepository attachmentRepository,
             SiteRepository siteRepository,
             VisitorRepository visitorRepository,
@@ -65,7 +65,7 @@ public class TranscriptForwardingService {
     ) {
         this.transcriptForwardingSettingsRepository = transcriptForwardingSettingsRepository;
         this.conversationRepository = conversationRepository;
-        this.messageRepository = messageRepository;
+        this.historyReader = historyReader;
         this.attachmentRepository = attachmentRepository;
         this.siteRepository = siteRepository;
         this.visitorRepository = visitorRepository;
@@ -368,21 +368,25 @@ public class TranscriptForwardingService {
 
     private LoadedMessages loadAllMessages(String tenantId, String conversationId) {
         var all = new ArrayList<MessageRepository.MessageRow>();
-        String after = null;
+        // Reads through the cold archive for conversations whose history was already moved there.
+        long archivedSeq = conversationRepository.findAccess(tenantId, conversationId)
+                .map(ConversationRepository.ConversationAccessRow::archivedSeq)
+                .orElse(0L);
+        long afterSeq = 0;
         boolean truncated = false;
         while (all.size() < MAX_MESSAGES) {
             int pageLimit = Math.min(PAGE_SIZE, MAX_MESSAGES - all.size());
-            var batch = messageRepository.listMessages(tenantId, conversationId, after, pageLimit);
+            var batch = historyReader.listAfterSeq(tenantId, conversationId, archivedSeq, afterSeq, pageLimit);
             if (batch.isEmpty()) break;
             all.addAll(batch);
-            after = batch.get(batch.size() - 1).id();
+            afterSeq = batch.get(batch.size() - 1).seq();
             if (batch.size() < pageLimit) break;
         }
 
         // If there are more messages beyond MAX_MESSAGES, treat as truncated.
         if (all.size() >= MAX_MESSAGES) {
             try {
-                var extra = messageRepository.listMessages(tenantId, conversationId, after, 1);
+                var extra = historyReader.listAfterSeq(tenantId, conversationId, archivedSeq, afterSeq, 1);
                 truncated = !extra.isEmpty();
             } catch (Exception ignore) {
                 // ignore
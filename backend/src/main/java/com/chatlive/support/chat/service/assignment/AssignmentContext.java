@@ -5,11 +5,25 @@ import com.chatlive.support.chat.repo.AgentProfileRepository;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * @param memberWeights skill-group member weights by user id (empty for the tenant pool)
+ */
 public record AssignmentContext(
         String tenantId,
         String groupKey,
         String lastAgentUserId,
         List<AgentProfileRepository.AgentCandidateRow> candidates,
-        Map<String, Integer> activeLoads
+        Map<String, Integer> activeLoads,
+        Map<String, Integer> memberWeights
 ) {
+
+    public AssignmentContext(
+            String tenantId,
+            String groupKey,
+            String lastAgentUserId,
+            List<AgentProfileRepository.AgentCandidateRow> candidates,
+            Map<String, Integer> activeLoads
+    ) {
+        this(tenantId, groupKey, lastAgentUserId, candidates, activeLoads, Map.of());
+    }
 }
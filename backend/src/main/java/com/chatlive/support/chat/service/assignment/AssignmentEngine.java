@@ -0,0 +1,881 @@
+package com.chatlive.support.chat.service.assignment;
+
+import com.chatlive.support.chat.repo.AgentProfileRepository;
+import com.chatlive.support.chat.repo.AssignCursorRepository;
+import com.chatlive.support.chat.repo.ConversationRepository;
+import com.chatlive.support.chat.repo.SkillGroupRepository;
+import com.chatlive.support.chat.service.AgentPresenceService;
+import com.chatlive.support.chat.ws.WsClusterBus;
+import com.chatlive.support.chat.ws.WsClusterEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-memory per-tenant assignment model: agents (profile status, max_concurrent, label), skill-group membership,
+ * the open assignments and the round-robin cursors.
+ *
+ * A tenant is loaded from the database on first use. From then on agent loads follow the assign/close/transfer/
+ * reopen calls made by the services (applied immediately, reverted if the transaction rolls back, and relayed to
+ * the other nodes after commit), profile and membership changes reload only what changed, and presence is read
+ * from {@link AgentPresenceService}. Picking an agent therefore hands an {@link AssignmentContext} built from
+ * memory to the configured {@link AssignmentStrategy} without touching the database. A periodic reconcile re-reads
+ * every loaded tenant, persists the cursors and drops tenants that have been idle for a while.
+ *
+ * Changes made on this node that may give an agent room for queued work (a conversation released or moved away
+ * from its agent, an agent's profile reloaded, an agent's presence session starting or ending) are reported to the
+ * {@link CapacityListener}s after commit.
+ *
+ * The engine also holds each tenant's queue, ordered by due time: {@code created_at + target wait of the group -
+ * priority * priority step}, with the target wait capped at {@code max-target-wait-seconds} for ordering.
+ * Conversations closest to breaching their group's target are served first and a higher-priority group is pulled
+ * forward by a bounded amount, so a conversation is only ever overtaken by ones created at most (max boost + max
+ * target wait) after it and cannot starve. Entries are added when a new conversation stays queued (relayed to the
+ * other nodes), removed on any assignment or release, and the whole queue is re-read at load and reconcile, earliest
+ * due first; the conditional UPDATE stays the arbiter for stale entries. At {@code max-in-memory} entries the one
+ * due last gives way to an earlier one, so the cap never hides the conversations that should be served next.
+ */
+@Component
+public class AssignmentEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(AssignmentEngine.class);
+
+    public static final String DEFAULT_GROUP_KEY = "__default__";
+
+    /**
+     * A conversation provisionally counted against {@code agentUserId}; undo with {@link #cancel(Reservation)} if
+     * the conditional UPDATE does not win.
+     */
+    public record Reservation(
+            String tenantId,
+            String conversationId,
+            String groupKey,
+            String agentUserId,
+            String previousAgentUserId,
+            // created_at of a queue entry, null for a direct reserve
+            Instant queuedAt
+    ) {
+    }
+
+    /**
+     * Result of {@link #reserveQueue}: queue entries looked at and the reservations made, in queue order.
+     */
+    public record QueuePlan(int scanned, List<Reservation> reservations) {
+    }
+
+    /**
+     * Told after commit that queued conversations of the tenant may now find an agent.
+     */
+    @FunctionalInterface
+    public interface CapacityListener {
+        void capacityFreed(String tenantId);
+    }
+
+    private static final class Agent {
+        final String userId;
+        final String type;
+        final String status;
+        final int maxConcurrent;
+        final String label;
+
+        Agent(AgentProfileRepository.AssignableAgentRow row) {
+            this.userId = row.userId();
+            this.type = row.type();
+            this.status = row.status();
+            this.maxConcurrent = Math.max(1, row.maxConcurrent());
+            this.label = row.label();
+        }
+    }
+
+    private record QueuedEntry(String conversationId, String skillGroupId, Instant createdAt, long dueAtMs) {
+    }
+
+    private static final Comparator<QueuedEntry> QUEUE_ORDER = Comparator.comparingLong(QueuedEntry::dueAtMs)
+            .thenComparing(QueuedEntry::createdAt)
+            .thenComparing(QueuedEntry::conversationId);
+
+    // Highest accepted skill_group.priority; bounds how far a group can jump ahead.
+    private static final int MAX_PRIORITY = 10;
+
+    // All fields are guarded by the TenantState monitor.
+    private static final class TenantState {
+        final String tenantId;
+        Map<String, Agent> agents = new HashMap<>();
+        // groupId -> members in candidate order (weight desc, user asc)
+        Map<String, List<SkillGroupRepository.SkillGroupMemberRow>> members = new HashMap<>();
+        // conversationId -> assignee, and the per-agent counts derived from it
+        Map<String, String> assignments = new HashMap<>();
+        Map<String, Integer> loads = new HashMap<>();
+        Map<String, SkillGroupRepository.GroupRoutingRow> routing = new HashMap<>();
+        // Queued conversations by id, and the same entries in service order.
+        Map<String, QueuedEntry> queued = new HashMap<>();
+        TreeSet<QueuedEntry> queue = new TreeSet<>(QUEUE_ORDER);
+        // Changes applied inside transactions that have not completed yet (value may be null = released).
+        final Map<String, String> inflight = new HashMap<>();
+        final Map<String, String> cursors = new HashMap<>();
+        final Set<String> dirtyCursors = new HashSet<>();
+        long version;
+        volatile long lastUsedAtMs;
+
+        TenantState(String tenantId) {
+            this.tenantId = tenantId;
+        }
+    }
+
+    private final AgentProfileRepository agentProfileRepository;
+    private final SkillGroupRepository skillGroupRepository;
+    private final ConversationRepository conversationRepository;
+    private final AssignCursorRepository assignCursorRepository;
+    private final AgentPresenceService agentPresenceService;
+    private final AssignmentStrategyResolver strategyResolver;
+    private final WsClusterBus clusterBus;
+    private final long idleTtlMs;
+    private final long defaultTargetWaitMs;
+    private final long maxTargetWaitMs;
+    private final long priorityStepMs;
+    private final int maxQueued;
+    private final String nodeId = "node_" + UUID.randomUUID();
+
+    private final Map<String, TenantState> tenants = new ConcurrentHashMap<>();
+    private final List<CapacityListener> capacityListeners = new CopyOnWriteArrayList<>();
+
+    private final Counter decisions;
+    private final Counter tenantLoads;
+    private final Counter reconciles;
+    private final Counter reconcileSkipped;
+
+    public AssignmentEngine(
+            AgentProfileRepository agentProfileRepository,
+            SkillGroupRepository skillGroupRepository,
+            ConversationRepository conversationRepository,
+            AssignCursorRepository assignCursorRepository,
+            AgentPresenceService agentPresenceService,
+            AssignmentStrategyResolver strategyResolver,
+            WsClusterBus clusterBus,
+            MeterRegistry meterRegistry,
+            @Value("${app.assignment.engine.idle-ttl-seconds:900}") long idleTtlSeconds,
+            @Value("${app.assignment.queue.default-target-wait-seconds:120}") long defaultTargetWaitSeconds,
+            @Value("${app.assignment.queue.max-target-wait-seconds:600}") long maxTargetWaitSeconds,
+            @Value("${app.assignment.queue.priority-step-seconds:30}") long priorityStepSeconds,
+            @Value("${app.assignment.queue.max-in-memory:5000}") int maxQueued
+    ) {
+        this.agentProfileRepository = agentProfileRepository;
+        this.skillGroupRepository = skillGroupRepository;
+        this.conversationRepository = conversationRepository;
+        this.assignCursorRepository = assignCursorRepository;
+        this.agentPresenceService = agentPresenceService;
+        this.strategyResolver = strategyResolver;
+        this.clusterBus = clusterBus;
+        this.idleTtlMs = Math.max(60, idleTtlSeconds) * 1000L;
+        this.defaultTargetWaitMs = Math.max(1, defaultTargetWaitSeconds) * 1000L;
+        this.maxTargetWaitMs = Math.max(1, maxTargetWaitSeconds) * 1000L;
+        this.priorityStepMs = Math.max(0, priorityStepSeconds) * 1000L;
+        this.maxQueued = Math.max(100, maxQueued);
+
+        // Low-cardinality metrics: do NOT tag by tenant/agent.
+        this.decisions = Counter.builder("chatlive.assignment.engine.decisions")
+                .description("Agent selections made from the in-memory model")
+                .register(meterRegistry);
+        this.tenantLoads = Counter.builder("chatlive.assignment.engine.tenant_loads")
+                .description("Tenants loaded into the assignment engine from the database")
+                .register(meterRegistry);
+        this.reconciles = Counter.builder("chatlive.assignment.engine.reconciles")
+                .description("Tenant reconciles against the database")
+                .register(meterRegistry);
+        this.reconcileSkipped = Counter.builder("chatlive.assignment.engine.reconcile_skipped")
+                .description("Tenant reconciles whose assignment snapshot raced with a change and was not applied")
+                .register(meterRegistry);
+        Gauge.builder("chatlive.assignment.engine.tenants", tenants, Map::size)
+                .description("Tenants held by the assignment engine")
+                .register(meterRegistry);
+        Gauge.builder("chatlive.assignment.engine.queued", tenants,
+                        m -> m.values().stream().mapToInt(t -> t.queued.size()).sum())
+                .description("Queued conversations held by the assignment engine")
+                .register(meterRegistry);
+
+        clusterBus.subscribe(this::onClusterEvent);
+        // An agent whose profile already says online only becomes a candidate once its presence session starts.
+        agentPresenceService.subscribePresence((tenantId, userId, active) -> agentChanged(tenantId, userId));
+    }
+
+    public void subscribeCapacity(CapacityListener listener) {
+        if (listener != null) capacityListeners.add(listener);
+    }
+
+    /**
+     * Pick an agent for the conversation under the group's strategy and count it against that agent right away.
+     * An empty or unknown group falls back to the tenant pool, as does a group with nobody online.
+     *
+     * @return the reservation, or null if the conversation should stay queued
+     */
+    public Reservation reserve(String tenantId, String conversationId, String skillGroupId, String excludeAgentUserId) {
+        if (tenantId == null || tenantId.isBlank() || conversationId == null || conversationId.isBlank()) return null;
+        var state = state(tenantId);
+        synchronized (state) {
+            return reserveLocked(state, conversationId, skillGroupId, excludeAgentUserId, null);
+        }
+    }
+
+    /**
+     * Plan up to {@code limit} assignments from the tenant's queue in one pass (due-time order, each group under its
+     * own strategy), limited to one skill group when {@code skillGroupId} is not blank. Every entry is reserved as
+     * {@link #reserve} would, with the loads of earlier entries already counted; once a group yields nobody its
+     * remaining entries are skipped since loads only grow during the pass.
+     */
+    public QueuePlan reserveQueue(String tenantId, String skillGroupId, int limit) {
+        return reserveQueue(tenantId, skillGroupId, limit, true);
+    }
+
+    /**
+     * {@link #reserveQueue} over the whole queue for the periodic sweep, which does not count as use: a tenant only
+     * the sweep visits still reaches the idle TTL and is evicted at reconcile.
+     */
+    public QueuePlan sweepQueue(String tenantId, int limit) {
+        return reserveQueue(tenantId, null, limit, false);
+    }
+
+    private QueuePlan reserveQueue(String tenantId, String skillGroupId, int limit, boolean touch) {
+        if (tenantId == null || tenantId.isBlank() || limit <= 0) return new QueuePlan(0, List.of());
+        var onlyGroup = skillGroupId == null ? "" : skillGroupId.trim();
+        var state = state(tenantId, touch);
+        var out = new ArrayList<Reservation>();
+        var exhausted = new HashSet<String>();
+        int scanned = 0;
+        synchronized (state) {
+            for (var entry : state.queue) {
+                if (out.size() >= limit) break;
+                if (!onlyGroup.isEmpty() && !onlyGroup.equals(entry.skillGroupId())) continue;
+                scanned++;
+                // Already counted against someone (e.g. reserved by a concurrent drain).
+                if (state.assignments.containsKey(entry.conversationId())) continue;
+                if (exhausted.contains(entry.skillGroupId())) continue;
+                var reservation = reserveLocked(state, entry.conversationId(), entry.skillGroupId(), null,
+                        entry.createdAt());
+                if (reservation == null) {
+                    exhausted.add(entry.skillGroupId());
+                } else {
+                    out.add(reservation);
+                }
+            }
+        }
+        return new QueuePlan(scanned, out);
+    }
+
+    /**
+     * Queued conversations {@code agentUserId} may take (no group, or a group it belongs to), in due-time order.
+     */
+    public List<ConversationRepository.QueuedConversationRow> queuedForAgent(String tenantId, String agentUserId, int limit) {
+        if (tenantId == null || tenantId.isBlank() || agentUserId == null || limit <= 0) return List.of();
+        var state = state(tenantId);
+        var out = new ArrayList<ConversationRepository.QueuedConversationRow>();
+        synchronized (state) {
+            var groups = new HashSet<String>();
+            for (var entry : state.members.entrySet()) {
+                for (var m : entry.getValue()) {
+                    if (agentUserId.equals(m.agentUserId())) groups.add(entry.getKey());
+                }
+            }
+            for (var entry : state.queue) {
+                if (out.size() >= limit) break;
+                if (state.assignments.containsKey(entry.conversationId())) continue;
+                if (!entry.skillGroupId().isEmpty() && !groups.contains(entry.skillGroupId())) continue;
+                out.add(new ConversationRepository.QueuedConversationRow(
+                        entry.conversationId(), entry.skillGroupId(), entry.createdAt()));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * A new conversation stayed queued (nobody could take it): add it to the queue after commit, here and on the
+     * other nodes. {@code createdAt} null means now.
+     */
+    public void queued(String tenantId, String conversationId, String skillGroupId, Instant createdAt) {
+        if (tenantId == null || tenantId.isBlank() || conversationId == null || conversationId.isBlank()) return;
+        var group = skillGroupId == null ? "" : skillGroupId.trim();
+        var at = createdAt == null ? Instant.now() : createdAt;
+        afterCommit(() -> {
+            var state = tenants.get(tenantId);
+            if (state != null) {
+                synchronized (state) {
+                    enqueue(state, conversationId, group, at);
+                    // A snapshot read before this commit must not wipe the entry.
+                    state.version++;
+                }
+            }
+            clusterBus.publish(WsClusterEvent.assignmentQueued(nodeId, tenantId, conversationId, group, at.toEpochMilli()));
+        });
+    }
+
+    /**
+     * The conditional UPDATE found the conversation no longer queued: drop the stale entry (local only; the
+     * change that took it is relayed on its own, and reconcile re-reads the queue anyway).
+     */
+    public void discardQueued(String tenantId, String conversationId) {
+        if (tenantId == null || conversationId == null) return;
+        var state = tenants.get(tenantId);
+        if (state == null) return;
+        synchronized (state) {
+            dequeue(state, conversationId);
+        }
+    }
+
+    private Reservation reserveLocked(TenantState state, String conversationId, String skillGroupId,
+                                      String excludeAgentUserId, Instant queuedAt) {
+        boolean requestedGroup = skillGroupId != null && !skillGroupId.isBlank();
+        String groupKey = requestedGroup ? skillGroupId : DEFAULT_GROUP_KEY;
+        var candidates = requestedGroup ? groupCandidates(state, skillGroupId) : tenantCandidates(state);
+        Map<String, Integer> weights = requestedGroup ? memberWeights(state, skillGroupId) : Map.of();
+        if (requestedGroup && candidates.isEmpty()) {
+            groupKey = DEFAULT_GROUP_KEY;
+            candidates = tenantCandidates(state);
+            weights = Map.of();
+        }
+        if (excludeAgentUserId != null && !excludeAgentUserId.isBlank()) {
+            candidates.removeIf(c -> excludeAgentUserId.equals(c.userId()));
+        }
+        if (candidates.isEmpty()) return null;
+
+        var ctx = new AssignmentContext(
+                state.tenantId,
+                groupKey,
+                state.cursors.get(groupKey),
+                candidates,
+                Collections.unmodifiableMap(state.loads),
+                weights
+        );
+        var selected = strategyResolver.resolve(ctx).select(ctx);
+        if (selected == null) return null;
+
+        decisions.increment();
+        state.cursors.put(groupKey, selected.userId());
+        state.dirtyCursors.add(groupKey);
+        var previous = apply(state, conversationId, selected.userId());
+        trackTransaction(state, conversationId, selected.userId(), previous, null);
+        return new Reservation(state.tenantId, conversationId, groupKey, selected.userId(), previous, queuedAt);
+    }
+
+    /**
+     * Undo a reservation whose UPDATE did not take effect (unless something else changed the conversation since).
+     */
+    public void cancel(Reservation reservation) {
+        if (reservation == null) return;
+        var state = tenants.get(reservation.tenantId());
+        if (state == null) return;
+        synchronized (state) {
+            if (Objects.equals(state.assignments.get(reservation.conversationId()), reservation.agentUserId())) {
+                apply(state, reservation.conversationId(), reservation.previousAgentUserId());
+            }
+        }
+    }
+
+    /**
+     * The conversation is now assigned to {@code agentUserId} (auto, claim, transfer, reopen). Call after the
+     * UPDATE succeeded; idempotent for a reservation that already counted it.
+     */
+    public void assigned(String tenantId, String conversationId, String agentUserId) {
+        if (agentUserId == null || agentUserId.isBlank()) return;
+        change(tenantId, conversationId, agentUserId);
+    }
+
+    /**
+     * The conversation no longer counts against any agent (closed, or put back into the queue).
+     */
+    public void released(String tenantId, String conversationId) {
+        change(tenantId, conversationId, null);
+    }
+
+    /**
+     * Profile status/max_concurrent (or group membership of this agent) changed: reload it, after commit.
+     */
+    public void agentChanged(String tenantId, String userId) {
+        if (tenantId == null || tenantId.isBlank() || userId == null || userId.isBlank()) return;
+        afterCommit(() -> {
+            reloadAgent(tenantId, userId);
+            clusterBus.publish(WsClusterEvent.assignmentRefresh(nodeId, tenantId, userId));
+            fireCapacityFreed(tenantId);
+        });
+    }
+
+    /**
+     * Skill-group membership or routing (priority, target wait) of the tenant changed: reload it, after commit.
+     */
+    public void groupsChanged(String tenantId) {
+        if (tenantId == null || tenantId.isBlank()) return;
+        afterCommit(() -> {
+            reloadGroups(tenantId);
+            clusterBus.publish(WsClusterEvent.assignmentRefresh(nodeId, tenantId, null));
+        });
+    }
+
+    /**
+     * Whether anyone (other than {@code excludeAgentUserId}) is online for the group, or for the tenant pool when
+     * the group has nobody online. Capacity is not considered.
+     */
+    public boolean hasOnlineCandidate(String tenantId, String skillGroupId, String excludeAgentUserId) {
+        if (tenantId == null || tenantId.isBlank()) return false;
+        var state = state(tenantId);
+        synchronized (state) {
+            boolean requestedGroup = skillGroupId != null && !skillGroupId.isBlank();
+            var candidates = requestedGroup ? groupCandidates(state, skillGroupId) : tenantCandidates(state);
+            if (requestedGroup && candidates.isEmpty()) {
+                candidates = tenantCandidates(state);
+            }
+            for (var c : candidates) {
+                if (excludeAgentUserId == null || !excludeAgentUserId.equals(c.userId())) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Whether someone who could take a conversation of the group (tenant pool fallback as in {@link #reserve}) is
+     * online and below max_concurrent. A blank group asks about the whole tenant pool.
+     */
+    public boolean hasFreeCapacity(String tenantId, String skillGroupId) {
+        if (tenantId == null || tenantId.isBlank()) return false;
+        var state = state(tenantId);
+        synchronized (state) {
+            boolean requestedGroup = skillGroupId != null && !skillGroupId.isBlank();
+            var candidates = requestedGroup ? groupCandidates(state, skillGroupId) : tenantCandidates(state);
+            if (requestedGroup && candidates.isEmpty()) {
+                candidates = tenantCandidates(state);
+            }
+            for (var c : candidates) {
+                if (state.loads.getOrDefault(c.userId(), 0) < c.maxConcurrent()) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Display label (display name, else username) of an agent of a loaded tenant; empty if not known here.
+     */
+    public Optional<String> agentLabel(String tenantId, String userId) {
+        if (tenantId == null || userId == null) return Optional.empty();
+        var state = tenants.get(tenantId);
+        if (state == null) return Optional.empty();
+        synchronized (state) {
+            var agent = state.agents.get(userId);
+            var label = agent == null || agent.label == null ? null : agent.label.trim();
+            return (label == null || label.isBlank()) ? Optional.empty() : Optional.of(label);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.assignment.engine.reconcile-interval-ms:30000}")
+    public void reconcile() {
+        var now = System.currentTimeMillis();
+        for (var state : new ArrayList<>(tenants.values())) {
+            flushCursors(state);
+            if (now - state.lastUsedAtMs > idleTtlMs) {
+                tenants.remove(state.tenantId, state);
+                continue;
+            }
+            try {
+                load(state);
+                reconciles.increment();
+            } catch (Exception e) {
+                log.warn("assignment_engine_reconcile_failed tenant={}", state.tenantId, e);
+            }
+        }
+    }
+
+    private TenantState state(String tenantId) {
+        return state(tenantId, true);
+    }
+
+    private TenantState state(String tenantId, boolean touch) {
+        var existing = tenants.get(tenantId);
+        if (existing != null) {
+            if (touch) existing.lastUsedAtMs = System.currentTimeMillis();
+            return existing;
+        }
+        var created = new TenantState(tenantId);
+        created.lastUsedAtMs = System.currentTimeMillis();
+        // Load under the monitor so concurrent first callers wait for the snapshot instead of seeing an empty model.
+        synchronized (created) {
+            var raced = tenants.putIfAbsent(tenantId, created);
+            if (raced != null) return raced;
+            try {
+                created.cursors.putAll(assignCursorRepository.listLastAgents(tenantId));
+                load(created);
+                tenantLoads.increment();
+            } catch (RuntimeException e) {
+                tenants.remove(tenantId, created);
+                throw e;
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Replace agents, membership and (unless a change raced with the read) assignments with a database snapshot.
+     */
+    private void load(TenantState state) {
+        long version;
+        synchronized (state) {
+            version = state.version;
+        }
+        var agentRows = agentProfileRepository.listAssignableAgents(state.tenantId);
+        var memberRows = skillGroupRepository.listMembersByTenant(state.tenantId);
+        var routingRows = skillGroupRepository.listRoutingByTenant(state.tenantId);
+        var assignmentRows = conversationRepository.listActiveAssignments(state.tenantId);
+        var queuedRows = conversationRepository.listQueuedForAssignment(state.tenantId, maxQueued,
+                defaultTargetWaitMs / 1000, maxTargetWaitMs / 1000, priorityStepMs / 1000);
+
+        var agents = new HashMap<String, Agent>();
+        for (var row : agentRows) {
+            agents.put(row.userId(), new Agent(row));
+        }
+        var members = new HashMap<String, List<SkillGroupRepository.SkillGroupMemberRow>>();
+        for (var row : memberRows) {
+            members.computeIfAbsent(row.groupId(), k -> new ArrayList<>()).add(row);
+        }
+        var assignments = new HashMap<String, String>();
+        for (var row : assignmentRows) {
+            assignments.put(row.id(), row.assignedAgentUserId());
+        }
+
+        var routing = new HashMap<String, SkillGroupRepository.GroupRoutingRow>();
+        for (var row : routingRows) {
+            routing.put(row.groupId(), row);
+        }
+
+        synchronized (state) {
+            state.agents = agents;
+            state.members = members;
+            state.routing = routing;
+            if (state.version != version) {
+                // Keep the incrementally maintained maps; the next reconcile tries again.
+                rekeyQueue(state);
+                reconcileSkipped.increment();
+                return;
+            }
+            for (var entry : state.inflight.entrySet()) {
+                if (entry.getValue() == null) {
+                    assignments.remove(entry.getKey());
+                } else {
+                    assignments.put(entry.getKey(), entry.getValue());
+                }
+            }
+            var loads = new HashMap<String, Integer>();
+            for (var agentUserId : assignments.values()) {
+                loads.merge(agentUserId, 1, Integer::sum);
+            }
+            state.assignments = assignments;
+            state.loads = loads;
+
+            state.queued = new HashMap<>();
+            state.queue = new TreeSet<>(QUEUE_ORDER);
+            for (var row : queuedRows) {
+                if (assignments.containsKey(row.id())) continue;
+                enqueue(state, row.id(), row.skillGroupId() == null ? "" : row.skillGroupId().trim(), row.createdAt());
+            }
+        }
+    }
+
+    private void reloadAgent(String tenantId, String userId) {
+        var state = tenants.get(tenantId);
+        if (state == null) return;
+        var row = agentProfileRepository.findAssignableAgent(tenantId, userId).orElse(null);
+        var memberships = skillGroupRepository.listMembershipsForAgent(tenantId, userId);
+        synchronized (state) {
+            if (row == null) {
+                state.agents.remove(userId);
+            } else {
+                state.agents.put(userId, new Agent(row));
+            }
+            for (var list : state.members.values()) {
+                list.removeIf(m -> userId.equals(m.agentUserId()));
+            }
+            for (var m : memberships) {
+                var list = state.members.computeIfAbsent(m.groupId(), k -> new ArrayList<>());
+                list.add(m);
+                list.sort(MEMBER_ORDER);
+            }
+        }
+    }
+
+    private void reloadGroups(String tenantId) {
+        var state = tenants.get(tenantId);
+        if (state == null) return;
+        var memberRows = skillGroupRepository.listMembersByTenant(tenantId);
+        var members = new HashMap<String, List<SkillGroupRepository.SkillGroupMemberRow>>();
+        for (var row : memberRows) {
+            members.computeIfAbsent(row.groupId(), k -> new ArrayList<>()).add(row);
+        }
+        var routing = new HashMap<String, SkillGroupRepository.GroupRoutingRow>();
+        for (var row : skillGroupRepository.listRoutingByTenant(tenantId)) {
+            routing.put(row.groupId(), row);
+        }
+        synchronized (state) {
+            state.members = members;
+            state.routing = routing;
+            rekeyQueue(state);
+        }
+    }
+
+    // Due times depend on the routing; caller holds the state monitor.
+    private void rekeyQueue(TenantState state) {
+        var entries = new ArrayList<>(state.queued.values());
+        state.queued = new HashMap<>();
+        state.queue = new TreeSet<>(QUEUE_ORDER);
+        for (var e : entries) {
+            enqueue(state, e.conversationId(), e.skillGroupId(), e.createdAt());
+        }
+    }
+
+    private static final Comparator<SkillGroupRepository.SkillGroupMemberRow> MEMBER_ORDER =
+            Comparator.comparingInt(SkillGroupRepository.SkillGroupMemberRow::weight).reversed()
+                    .thenComparing(SkillGroupRepository.SkillGroupMemberRow::agentUserId);
+
+    // Same eligibility as AgentProfileRepository.listOnlineCandidatesForGroup/ForTenant.
+    private List<AgentProfileRepository.AgentCandidateRow> groupCandidates(TenantState state, String groupId) {
+        var out = new ArrayList<AgentProfileRepository.AgentCandidateRow>();
+        var list = state.members.get(groupId);
+        if (list == null) return out;
+        for (var m : list) {
+            var agent = state.agents.get(m.agentUserId());
+            if (agent != null && isOnline(agent)) {
+                out.add(new AgentProfileRepository.AgentCandidateRow(agent.userId, agent.maxConcurrent));
+            }
+        }
+        return out;
+    }
+
+    private List<AgentProfileRepository.AgentCandidateRow> tenantCandidates(TenantState state) {
+        var out = new ArrayList<AgentProfileRepository.AgentCandidateRow>();
+        for (var agent : state.agents.values()) {
+            if (("agent".equals(agent.type) || "admin".equals(agent.type)) && isOnline(agent)) {
+                out.add(new AgentProfileRepository.AgentCandidateRow(agent.userId, agent.maxConcurrent));
+            }
+        }
+        out.sort(Comparator.comparing(AgentProfileRepository.AgentCandidateRow::userId));
+        return out;
+    }
+
+    private static Map<String, Integer> memberWeights(TenantState state, String groupId) {
+        var list = state.members.get(groupId);
+        if (list == null || list.isEmpty()) return Map.of();
+        var out = new HashMap<String, Integer>(list.size() * 2);
+        for (var m : list) {
+            out.put(m.agentUserId(), m.weight());
+        }
+        return out;
+    }
+
+    /**
+     * Add or re-key a queue entry; caller holds the state monitor. When full, the entry due last is left out (it is
+     * re-read once the queue shrinks).
+     */
+    private void enqueue(TenantState state, String conversationId, String skillGroupId, Instant createdAt) {
+        var previous = state.queued.remove(conversationId);
+        if (previous != null) state.queue.remove(previous);
+        var entry = new QueuedEntry(conversationId, skillGroupId, createdAt, dueAtMs(state, skillGroupId, createdAt));
+        if (state.queued.size() >= maxQueued) {
+            var last = state.queue.last();
+            if (QUEUE_ORDER.compare(entry, last) >= 0) return;
+            dequeue(state, last.conversationId());
+        }
+        state.queued.put(conversationId, entry);
+        state.queue.add(entry);
+    }
+
+    private static QueuedEntry dequeue(TenantState state, String conversationId) {
+        var entry = state.queued.remove(conversationId);
+        if (entry != null) state.queue.remove(entry);
+        return entry;
+    }
+
+    private long dueAtMs(TenantState state, String skillGroupId, Instant createdAt) {
+        var routing = skillGroupId.isEmpty() ? null : state.routing.get(skillGroupId);
+        long targetMs = routing == null || routing.targetWaitSeconds() == null || routing.targetWaitSeconds() <= 0
+                ? defaultTargetWaitMs
+                : routing.targetWaitSeconds() * 1000L;
+        // Same rule as ConversationRepository.listQueuedForAssignment. Capped so a day-long target cannot park a
+        // conversation behind everything that arrives after it.
+        targetMs = Math.min(targetMs, maxTargetWaitMs);
+        int priority = routing == null ? 0 : Math.max(0, Math.min(MAX_PRIORITY, routing.priority()));
+        return createdAt.toEpochMilli() + targetMs - priority * priorityStepMs;
+    }
+
+    private boolean isOnline(Agent agent) {
+        return "online".equals(agent.status) && agentPresenceService.hasActiveSession(agent.userId);
+    }
+
+    /**
+     * Set the conversation's assignee; caller holds the state monitor. Returns the previous assignee.
+     */
+    private String apply(TenantState state, String conversationId, String agentUserId) {
+        var previous = agentUserId == null
+                ? state.assignments.remove(conversationId)
+                : state.assignments.put(conversationId, agentUserId);
+        if (previous != null) {
+            state.loads.computeIfPresent(previous, (k, n) -> n <= 1 ? null : n - 1);
+        }
+        if (agentUserId != null) {
+            state.loads.merge(agentUserId, 1, Integer::sum);
+        }
+        state.version++;
+        return previous;
+    }
+
+    private void change(String tenantId, String conversationId, String agentUserId) {
+        if (tenantId == null || tenantId.isBlank() || conversationId == null || conversationId.isBlank()) return;
+        var state = tenants.get(tenantId);
+        // Releases always may free someone; a move only when it took the conversation away from another agent.
+        boolean freed = agentUserId == null;
+        if (state != null) {
+            synchronized (state) {
+                var previous = apply(state, conversationId, agentUserId);
+                var entry = dequeue(state, conversationId);
+                trackTransaction(state, conversationId, agentUserId, previous, entry);
+                freed = previous != null && !previous.equals(agentUserId);
+            }
+        }
+        boolean notify = freed;
+        afterCommit(() -> {
+            clusterBus.publish(WsClusterEvent.assignmentChanged(nodeId, tenantId, conversationId, agentUserId));
+            if (notify) fireCapacityFreed(tenantId);
+        });
+    }
+
+    private void fireCapacityFreed(String tenantId) {
+        for (var listener : capacityListeners) {
+            try {
+                listener.capacityFreed(tenantId);
+            } catch (Exception e) {
+                log.warn("assignment_capacity_listener_failed tenant={}", tenantId, e);
+            }
+        }
+    }
+
+    /**
+     * Inside a transaction: keep the change across reconciles until completion and revert it on rollback. Caller
+     * holds the state monitor.
+     */
+    private void trackTransaction(TenantState state, String conversationId, String agentUserId, String previous,
+                                  QueuedEntry dequeued) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        state.inflight.put(conversationId, agentUserId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (state) {
+                    if (Objects.equals(state.inflight.get(conversationId), agentUserId)) {
+                        state.inflight.remove(conversationId);
+                    }
+                    if (status != STATUS_COMMITTED
+                            && Objects.equals(state.assignments.get(conversationId), agentUserId)) {
+                        apply(state, conversationId, previous);
+                        if (dequeued != null && !state.queued.containsKey(conversationId)) {
+                            enqueue(state, conversationId, dequeued.skillGroupId(), dequeued.createdAt());
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private void flushCursors(TenantState state) {
+        Map<String, String> dirty;
+        synchronized (state) {
+            if (state.dirtyCursors.isEmpty()) return;
+            dirty = new HashMap<>();
+            for (var groupKey : state.dirtyCursors) {
+                dirty.put(groupKey, state.cursors.get(groupKey));
+            }
+            state.dirtyCursors.clear();
+        }
+        for (var entry : dirty.entrySet()) {
+            try {
+                assignCursorRepository.upsertLastAgent(state.tenantId, entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                log.warn("assignment_cursor_flush_failed tenant={} group={}", state.tenantId, entry.getKey(), e);
+            }
+        }
+    }
+
+    private void onClusterEvent(WsClusterEvent event) {
+        if (event == null || event.kind() == null) return;
+        if (nodeId.equals(event.originNodeId())) return;
+        if (event.tenantId() == null || !tenants.containsKey(event.tenantId())) return;
+        switch (event.kind()) {
+            case WsClusterEvent.KIND_ASSIGNMENT_CHANGED -> {
+                var state = tenants.get(event.tenantId());
+                if (state == null || event.conversationId() == null) return;
+                synchronized (state) {
+                    apply(state, event.conversationId(), event.userId());
+                    dequeue(state, event.conversationId());
+                }
+            }
+            case WsClusterEvent.KIND_ASSIGNMENT_QUEUED -> {
+                var state = tenants.get(event.tenantId());
+                var frame = event.frame();
+                int sep = frame == null ? -1 : frame.indexOf(':');
+                if (state == null || event.conversationId() == null || sep < 0) return;
+                try {
+                    var createdAt = Instant.ofEpochMilli(Long.parseLong(frame.substring(0, sep)));
+                    synchronized (state) {
+                        if (!state.assignments.containsKey(event.conversationId())) {
+                            enqueue(state, event.conversationId(), frame.substring(sep + 1), createdAt);
+                            state.version++;
+                        }
+                    }
+                } catch (NumberFormatException e) {
+                    log.warn("assignment_engine_bad_queued_event tenant={}", event.tenantId());
+                }
+            }
+            case WsClusterEvent.KIND_ASSIGNMENT_REFRESH -> {
+                try {
+                    if (event.userId() == null) {
+                        reloadGroups(event.tenantId());
+                    } else {
+                        reloadAgent(event.tenantId(), event.userId());
+                    }
+                } catch (Exception e) {
+                    log.warn("assignment_engine_refresh_failed tenant={}", event.tenantId(), e);
+                }
+            }
+            default -> {
+                // not ours
+            }
+        }
+    }
+
+    private static void afterCommit(Runnable r) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    r.run();
+                }
+            });
+        } else {
+            r.run();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.chatlive.support.chat.service.assignment;
+
+import com.chatlive.support.chat.repo.AgentProfileRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+
+/**
+ * Weighted least-load: among candidates below max_concurrent, pick the one whose load after taking the conversation
+ * is lowest relative to its skill-group weight, {@code (active + 1) / weight}. A member with weight 2 thus carries
+ * about twice the chats of a weight-1 member (still capped by max_concurrent). Weights below 1 count as 1, so the
+ * tenant pool (no weights) behaves like least_open.
+ */
+@Component("weighted")
+public class WeightedAssignmentStrategy implements AssignmentStrategy {
+
+    @Override
+    public AgentProfileRepository.AgentCandidateRow select(AssignmentContext ctx) {
+        if (ctx == null || ctx.candidates() == null || ctx.candidates().isEmpty()) return null;
+
+        var loads = ctx.activeLoads();
+        var weights = ctx.memberWeights();
+
+        // Best score so far as the fraction bestLoad / bestWeight; compared by cross-multiplication.
+        long bestLoad = -1;
+        long bestWeight = 1;
+        var bestList = new ArrayList<AgentProfileRepository.AgentCandidateRow>();
+
+        for (var c : ctx.candidates()) {
+            var active = loads == null ? 0 : loads.getOrDefault(c.userId(), 0);
+            if (active >= c.maxConcurrent()) {
+                continue;
+            }
+            long load = active + 1L;
+            long weight = Math.max(1, weights == null ? 1 : weights.getOrDefault(c.userId(), 1));
+            if (bestLoad < 0 || load * bestWeight < bestLoad * weight) {
+                bestLoad = load;
+                bestWeight = weight;
+                bestList.clear();
+                bestList.add(c);
+            } else if (load * bestWeight == bestLoad * weight) {
+                bestList.add(c);
+            }
+        }
+
+        if (bestList.isEmpty()) return null;
+
+        // Fair tie-break among equal scores using cursor rotation
+        var last = ctx.lastAgentUserId();
+        int tieStartIdx = 0;
+        if (last != null && !last.isBlank()) {
+            for (int i = 0; i < bestList.size(); i++) {
+                if (last.equals(bestList.get(i).userId())) {
+                    tieStartIdx = (i + 1) % bestList.size();
+                    break;
+                }
+            }
+        }
+
+        return bestList.get(tieStartIdx);
+    }
+}
@@ -0,0 +1,43 @@
+package com.chatlive.support.chat.ws;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Single-JVM bus: delivers synchronously to every subscribed listener.
+ *
+ * This is the default (single node, dev, tests). Several {@link WsBroadcaster} instances sharing one bus
+ * behave like several nodes, which is how cross-node fanout is exercised without a database.
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.ws.cluster", name = "mode", havingValue = "local", matchIfMissing = true)
+public class InProcessWsClusterBus implements WsClusterBus {
+
+    private static final Logger log = LoggerFactory.getLogger(InProcessWsClusterBus.class);
+
+    private final List<Consumer<WsClusterEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(WsClusterEvent event) {
+        if (event == null) return;
+        for (var listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (Exception e) {
+                log.warn("ws_cluster_local_deliver_failed kind={}", event.kind(), e);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<WsClusterEvent> listener) {
+        if (listener == null) return;
+        listeners.add(listener);
+    }
+}
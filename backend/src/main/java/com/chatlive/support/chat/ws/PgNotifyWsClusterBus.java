@@ -0,0 +1,359 @@
+package com.chatlive.support.chat.ws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import org.postgresql.PGConnection;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Cross-node bus on Postgres LISTEN/NOTIFY.
+ *
+ * Publishing is batched: a single publisher thread drains whatever accumulated since the last round and packs it
+ * into as few NOTIFYs as fit under the payload limit. Events too large for a NOTIFY are spilled to
+ * {@code ws_cluster_payload} and only their id is sent. A dedicated (non-pooled) connection LISTENs so the bus
+ * never holds a Hikari connection; it reconnects on failure. Delivery is best-effort, exactly like local fanout:
+ * clients recover missed frames via SYNC.
+ *
+ * The listening thread only receives: each event goes to one of {@code delivery-threads} single-threaded lanes,
+ * chosen by its conversation (else tenant, else site), which resolves spilled payloads and runs the listeners. A
+ * slow database read or listener therefore holds up only its lane, and events of one conversation stay in order.
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.ws.cluster", name = "mode", havingValue = "postgres")
+public class PgNotifyWsClusterBus implements WsClusterBus, InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(PgNotifyWsClusterBus.class);
+
+    static final String CHANNEL = "chatlive_ws";
+
+    // Postgres rejects NOTIFY payloads of 8000 bytes or more; keep headroom for the batch wrapper.
+    static final int MAX_NOTIFY_BYTES = 7500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maxBatch;
+    private final long spillRetentionSeconds;
+
+    private final BlockingQueue<WsClusterEvent> outgoing;
+    private final List<Consumer<WsClusterEvent>> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService[] lanes;
+
+    private final Counter published;
+    private final Counter notifies;
+    private final Counter received;
+    private final Counter spilled;
+    private final Counter dropped;
+    private final Counter deliveryDropped;
+
+    private volatile boolean running;
+    private Thread publisher;
+    private Thread receiver;
+
+    public PgNotifyWsClusterBus(
+            JdbcTemplate jdbcTemplate,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${spring.datasource.url}") String url,
+            @Value("${spring.datasource.username:}") String username,
+            @Value("${spring.datasource.password:}") String password,
+            @Value("${app.ws.cluster.max-pending:10000}") int maxPending,
+            @Value("${app.ws.cluster.max-batch:200}") int maxBatch,
+            @Value("${app.ws.cluster.spill-retention-seconds:300}") long spillRetentionSeconds,
+            @Value("${app.ws.cluster.delivery-threads:4}") int deliveryThreads
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.spillRetentionSeconds = Math.max(30, spillRetentionSeconds);
+        this.outgoing = new LinkedBlockingQueue<>(Math.max(100, maxPending));
+        this.lanes = new ExecutorService[Math.max(1, Math.min(deliveryThreads, 64))];
+        for (int i = 0; i < lanes.length; i++) {
+            var name = "ws-cluster-delivery-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(Math.max(100, maxPending)),
+                    r -> Thread.ofPlatform().name(name).daemon().unstarted(r));
+        }
+
+        // Low-cardinality metrics: do NOT tag by tenant/conversation.
+        this.published = Counter.builder("chatlive.ws.cluster.published")
+                .description("WS events published to other nodes")
+                .register(meterRegistry);
+        this.notifies = Counter.builder("chatlive.ws.cluster.notifies")
+                .description("NOTIFY statements issued (each carries a batch of events)")
+                .register(meterRegistry);
+        this.received = Counter.builder("chatlive.ws.cluster.received")
+                .description("WS events received from the cluster channel")
+                .register(meterRegistry);
+        this.spilled = Counter.builder("chatlive.ws.cluster.spilled")
+                .description("WS events too large for NOTIFY, sent by reference")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("chatlive.ws.cluster.dropped")
+                .description("WS events dropped because the publish queue was full or the NOTIFY failed")
+                .register(meterRegistry);
+        this.deliveryDropped = Counter.builder("chatlive.ws.cluster.delivery_dropped")
+                .description("Received WS events dropped because their delivery lane was full")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        running = true;
+        publisher = Thread.ofPlatform().name("ws-cluster-publisher").daemon().start(this::publishLoop);
+        receiver = Thread.ofPlatform().name("ws-cluster-listener").daemon().start(this::listenLoop);
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        if (publisher != null) publisher.interrupt();
+        if (receiver != null) receiver.interrupt();
+        for (var lane : lanes) {
+            lane.shutdownNow();
+        }
+    }
+
+    @Override
+    public void publish(WsClusterEvent event) {
+        if (event == null) return;
+        if (!outgoing.offer(event)) {
+            dropped.increment();
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<WsClusterEvent> listener) {
+        if (listener == null) return;
+        listeners.add(listener);
+    }
+
+    @Scheduled(fixedDelayString = "${app.ws.cluster.spill-cleanup-interval-ms:60000}")
+    public void purgeSpilledPayloads() {
+        try {
+            var cutoff = Timestamp.from(Instant.now().minusSeconds(spillRetentionSeconds));
+            jdbcTemplate.update("delete from ws_cluster_payload where created_at < ?", cutoff);
+        } catch (Exception e) {
+            log.debug("ws_cluster_spill_cleanup_failed", e);
+        }
+    }
+
+    private void publishLoop() {
+        var batch = new ArrayList<WsClusterEvent>(maxBatch);
+        while (running) {
+            try {
+                var first = outgoing.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                outgoing.drainTo(batch, maxBatch - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                dropped.increment(batch.size());
+                log.warn("ws_cluster_publish_failed events={}", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<WsClusterEvent> batch) throws Exception {
+        var payload = new StringBuilder(MAX_NOTIFY_BYTES);
+        int payloadBytes = 0;
+        for (var event : batch) {
+            var json = objectMapper.writeValueAsString(event);
+            int bytes = json.getBytes(StandardCharsets.UTF_8).length;
+            if (bytes + 2 > MAX_NOTIFY_BYTES) {
+                json = spill(json, laneKey(event));
+                bytes = json.getBytes(StandardCharsets.UTF_8).length;
+            }
+            if (payloadBytes > 0 && payloadBytes + bytes + 2 > MAX_NOTIFY_BYTES) {
+                notify(payload);
+                payload.setLength(0);
+                payloadBytes = 0;
+            }
+            payload.append(payloadBytes == 0 ? '[' : ',').append(json);
+            payloadBytes += bytes + 1;
+        }
+        if (payloadBytes > 0) {
+            notify(payload);
+        }
+        published.increment(batch.size());
+    }
+
+    private String spill(String json, String key) {
+        var id = "wcp_" + UUID.randomUUID();
+        jdbcTemplate.update(
+                "insert into ws_cluster_payload(id, payload, created_at) values (?, ?, ?)",
+                id,
+                json,
+                Timestamp.from(Instant.now())
+        );
+        spilled.increment();
+        // The key lets the receiver pick the event's lane before reading the payload back.
+        return objectMapper.createObjectNode().put("ref", id).put("key", key).toString();
+    }
+
+    private void notify(StringBuilder payload) {
+        payload.append(']');
+        jdbcTemplate.queryForList("select pg_notify(?, ?)", CHANNEL, payload.toString());
+        notifies.increment();
+    }
+
+    private void listenLoop() {
+        while (running) {
+            try (var conn = DriverManager.getConnection(url, username, password)) {
+                try (var st = conn.createStatement()) {
+                    st.execute("LISTEN " + CHANNEL);
+                }
+                var pg = new NotificationReader(conn);
+                log.info("ws_cluster_listening channel={}", CHANNEL);
+                while (running) {
+                    for (var payload : pg.poll(1000)) {
+                        dispatch(payload);
+                    }
+                }
+            } catch (Exception e) {
+                if (!running) return;
+                log.warn("ws_cluster_listen_failed; reconnecting", e);
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs on the listening thread: parse and hand each event to its lane, nothing else.
+     */
+    void dispatch(String payload) {
+        if (payload == null || payload.isBlank()) return;
+        JsonNode items;
+        try {
+            items = objectMapper.readTree(payload);
+        } catch (Exception e) {
+            log.warn("ws_cluster_bad_payload bytes={}", payload.length());
+            return;
+        }
+        if (items == null || !items.isArray()) return;
+        for (var item : items) {
+            var ref = item.path("ref").asText(null);
+            if (ref != null) {
+                deliver(item.path("key").asText(""), () -> resolveSpilled(ref));
+                continue;
+            }
+            WsClusterEvent event;
+            try {
+                event = objectMapper.treeToValue(item, WsClusterEvent.class);
+            } catch (Exception e) {
+                log.warn("ws_cluster_dispatch_failed", e);
+                continue;
+            }
+            deliver(laneKey(event), () -> event);
+        }
+    }
+
+    private interface EventSource {
+        WsClusterEvent get() throws Exception;
+    }
+
+    private void deliver(String key, EventSource source) {
+        var lane = lanes[Math.floorMod(key.hashCode(), lanes.length)];
+        try {
+            lane.execute(() -> {
+                try {
+                    var event = source.get();
+                    if (event == null) return;
+                    received.increment();
+                    for (var listener : listeners) {
+                        listener.accept(event);
+                    }
+                } catch (Exception e) {
+                    log.warn("ws_cluster_dispatch_failed", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            deliveryDropped.increment();
+        }
+    }
+
+    private WsClusterEvent resolveSpilled(String ref) throws Exception {
+        var spilledJson = jdbcTemplate.query(
+                "select payload from ws_cluster_payload where id = ?",
+                (rs, rowNum) -> rs.getString(1),
+                ref
+        );
+        if (spilledJson.isEmpty()) return null;
+        return objectMapper.readValue(spilledJson.getFirst(), WsClusterEvent.class);
+    }
+
+    private static String laneKey(WsClusterEvent event) {
+        if (event.conversationId() != null) return event.conversationId();
+        if (event.tenantId() != null) return event.tenantId();
+        return event.siteId() == null ? "" : event.siteId();
+    }
+
+    /**
+     * Reads NOTIFY payloads through the driver's {@code PGConnection} (the driver is compiled against but, as for
+     * any other JDBC use, supplied at runtime).
+     */
+    static final class NotificationReader {
+
+        private final PGConnection pg;
+
+        NotificationReader(Connection conn) throws SQLException {
+            this.pg = conn.unwrap(PGConnection.class);
+        }
+
+        /**
+         * Payloads received within {@code timeoutMs} (empty if none).
+         */
+        List<String> poll(int timeoutMs) throws SQLException {
+            var notifications = pg.getNotifications(timeoutMs);
+            if (notifications == null || notifications.length == 0) return List.of();
+            var out = new ArrayList<String>(notifications.length);
+            for (var n : notifications) {
+                out.add(n.getParameter());
+            }
+            return out;
+        }
+    }
+}
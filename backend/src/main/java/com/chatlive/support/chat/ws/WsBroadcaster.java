@@ -1,53 +1,103 @@
 package com.chatlive.support.chat.ws;
 
 import com.chatlive.support.chat.repo.ConversationEventRepository;
+import com.chatlive.support.chat.repo.RecentMessageCache;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.UUID;
 
+/**
+ * Fans WebSocket frames out to live sessions.
+ *
+ * Every broadcast is delivered to this node's sessions directly and published once to the {@link WsClusterBus};
+ * other nodes deliver it to their own sessions and never re-publish it.
+ */
 @Component
 public class WsBroadcaster {
 
     private final ObjectMapper objectMapper;
     private final WsSessionRegistry sessionRegistry;
     private final ConversationEventRepository conversationEventRepository;
+    private final RecentMessageCache recentMessageCache;
+    private final WsOutboundDispatcher outbound;
+    private final WsClusterBus clusterBus;
+    private final WsFrameWriter frameWriter;
+    private final String nodeId = "node_" + UUID.randomUUID();
 
     private final Map<String, WebSocketSession> liveSessions = new ConcurrentHashMap<>();
 
-    public WsBroadcaster(ObjectMapper objectMapper, WsSessionRegistry sessionRegistry, ConversationEventRepository conversationEventRepository) {
+    public WsBroadcaster(
+            ObjectMapper objectMapper,
+            WsSessionRegistry sessionRegistry,
+            ConversationEventRepository conversationEventRepository,
+            RecentMessageCache recentMessageCache,
+            WsOutboundDispatcher outbound,
+            WsClusterBus clusterBus,
+            WsFrameWriter frameWriter
+    ) {
         this.objectMapper = objectMapper;
         this.sessionRegistry = sessionRegistry;
         this.conversationEventRepository = conversationEventRepository;
+        this.recentMessageCache = recentMessageCache;
+        this.outbound = outbound;
+        this.clusterBus = clusterBus;
+        this.frameWriter = frameWriter;
+        clusterBus.subscribe(this::onClusterEvent);
     }
 
     public void register(WebSocketSession session) {
         if (session == null) return;
         liveSessions.put(session.getId(), session);
+        outbound.register(session);
     }
 
     public void unregister(WebSocketSession session) {
         if (session == null) return;
         liveSessions.remove(session.getId());
+        outbound.unregister(session);
     }
 
     public void broadcastToConversation(String conversationId, JsonNode node) {
         if (conversationId == null || conversationId.isBlank()) return;
-        for (var sessionId : sessionRegistry.getSubscriberSessionIds(conversationId)) {
+        var frame = toFrame(node);
+        if (frame == null) return;
+        broadcastFrameToConversation(conversationId, frame);
+    }
+
+    /**
+     * Same as {@link #broadcastToConversation(String, JsonNode)} for a frame that is already encoded
+     * (see {@link WsFrameWriter}).
+     */
+    public void broadcastFrameToConversation(String conversationId, TextMessage frame) {
+        if (conversationId == null || conversationId.isBlank()) return;
+        if (frame == null) return;
+        deliverToConversation(conversationId, frame);
+        clusterBus.publish(WsClusterEvent.toConversation(nodeId, conversationId, frame.getPayload()));
+    }
+
+    private void deliverToConversation(String conversationId, TextMessage frame) {
+        var subscribers = sessionRegistry.getSubscriberSessionIds(conversationId);
+        if (subscribers.isEmpty()) return;
+        for (var sessionId : subscribers) {
             var s = liveSessions.get(sessionId);
             if (s == null) continue;
             try {
-                send(s, node);
+                send(s, frame);
             } catch (IOException ignored) {
                 // best-effort
             }
@@ -56,15 +106,20 @@ public class WsBroadcaster {
 
     public void broadcastToTenantAgents(String tenantId, JsonNode node) {
         if (tenantId == null || tenantId.isBlank()) return;
-        for (var s : liveSessions.values()) {
+        var frame = toFrame(node);
+        if (frame == null) return;
+        deliverToTenantAgents(tenantId, frame);
+        clusterBus.publish(WsClusterEvent.toTenantAgents(nodeId, tenantId, frame.getPayload()));
+    }
+
+    private void deliverToTenantAgents(String tenantId, TextMessage frame) {
+        var recipients = sessionRegistry.getTenantAgentSessionIds(tenantId);
+        if (recipients.isEmpty()) return;
+        for (var sessionId : recipients) {
+            var s = liveSessions.get(sessionId);
             if (s == null) continue;
-            var ctx = sessionRegistry.get(s).orElse(null);
-            if (ctx == null || ctx.claims() == null) continue;
-            if (ctx.claims().tenantId() == null || !tenantId.equals(ctx.claims().tenantId())) continue;
-            var role = ctx.claims().role();
-            if (!"agent".equals(role) && !"admin".equals(role)) continue;
             try {
-                send(s, node);
+                send(s, frame);
             } catch (IOException ignored) {
                 // best-effort
             }
@@ -74,16 +129,23 @@ public class WsBroadcaster {
     public void sendToTenantAgentUser(String tenantId, String agentUserId, JsonNode node) {
         if (tenantId == null || tenantId.isBlank()) return;
         if (agentUserId == null || agentUserId.isBlank()) return;
-        for (var s : liveSessions.values()) {
+        var frame = toFrame(node);
+        if (frame == null) return;
+        deliverToTenantAgentUser(tenantId, agentUserId, frame);
+        clusterBus.publish(WsClusterEvent.toAgentUser(nodeId, tenantId, agentUserId, frame.getPayload()));
+    }
+
+    private void deliverToTenantAgentUser(String tenantId, String agentUserId, TextMessage frame) {
+        for (var sessionId : sessionRegistry.getUserSessionIds(agentUserId)) {
+            var s = liveSessions.get(sessionId);
             if (s == null) continue;
-            var ctx = sessionRegistry.get(s).orElse(null);
+            var ctx = sessionRegistry.get(sessionId).orElse(null);
             if (ctx == null || ctx.claims() == null) continue;
             if (ctx.claims().tenantId() == null || !tenantId.equals(ctx.claims().tenantId())) continue;
-            if (ctx.claims().userId() == null || !agentUserId.equals(ctx.claims().userId())) continue;
             var role = ctx.claims().role();
             if (!"agent".equals(role) && !"admin".equals(role)) continue;
             try {
-                send(s, node);
+                send(s, frame);
             } catch (IOException ignored) {
                 // best-effort
             }
@@ -97,6 +159,18 @@ public class WsBroadcaster {
         broadcastToTenantAgents(tenantId, payload);
     }
 
+    /**
+     * Several AGENT_STATUS payloads in one frame (same fields per item, under {@code agents}).
+     */
+    public void broadcastAgentStatusBatch(String tenantId, ArrayNode agents) {
+        if (tenantId == null || tenantId.isBlank()) return;
+        if (agents == null || agents.isEmpty()) return;
+        ObjectNode evt = objectMapper.createObjectNode();
+        evt.put("type", "AGENT_STATUS_BATCH");
+        evt.set("agents", agents);
+        broadcastToTenantAgents(tenantId, evt);
+    }
+
     /**
      * Immediately disconnect live visitor WS sessions for a site+ip.
      *
@@ -106,11 +180,18 @@ public class WsBroadcaster {
         if (siteId == null || siteId.isBlank()) return 0;
         if (ip == null || ip.isBlank()) return 0;
 
+        clusterBus.publish(WsClusterEvent.kickVisitor(nodeId, siteId, ip, code));
+        return kickLocalVisitorSessions(siteId, ip, code);
+    }
+
+    private int kickLocalVisitorSessions(String siteId, String ip, String code) {
         int kicked = 0;
-        var snapshot = new ArrayList<>(liveSessions.values());
-        for (var s : snapshot) {
+        // Snapshot: closing a session unbinds it from the index we are iterating.
+        var snapshot = new ArrayList<>(sessionRegistry.getVisitorSessionIds(siteId, ip));
+        for (var sessionId : snapshot) {
+            var s = liveSessions.get(sessionId);
             if (s == null || !s.isOpen()) continue;
-            var ctx = sessionRegistry.get(s).orElse(null);
+            var ctx = sessionRegistry.get(sessionId).orElse(null);
             if (ctx == null || ctx.claims() == null) continue;
             if (!"visitor".equals(ctx.claims().role())) continue;
             if (ctx.claims().siteId() == null || !siteId.equals(ctx.claims().siteId())) continue;
@@ -121,16 +202,13 @@ public class WsBroadcaster {
                 err.put("type", "ERROR");
                 err.put("code", code == null || code.isBlank() ? "forbidden" : code);
                 err.put("message", code == null || code.isBlank() ? "forbidden" : code);
-                send(s, err);
+                send(s, toFrame(err));
             } catch (Exception ignored) {
                 // best-effort
             }
 
-            try {
-                s.close();
-            } catch (Exception ignored) {
-                // best-effort
-            }
+            // Close after the ERROR frame has been flushed.
+            outbound.closeAfterFlush(s, CloseStatus.NORMAL);
             kicked += 1;
         }
 
@@ -154,6 +232,67 @@ public class WsBroadcaster {
         sendToTenantAgentUser(tenantId, agentUserId, evt);
     }
 
+    /**
+     * Push one conversation's unread count to an agent's sessions (absolute value, so a lost frame self-heals).
+     */
+    public void notifyUnread(String tenantId, String agentUserId, String conversationId, long unreadCount) {
+        if (tenantId == null || tenantId.isBlank()) return;
+        if (agentUserId == null || agentUserId.isBlank()) return;
+        if (conversationId == null || conversationId.isBlank()) return;
+
+        ObjectNode evt = objectMapper.createObjectNode();
+        evt.put("type", "UNREAD");
+        evt.put("conversation_id", conversationId);
+        evt.put("unread_count", Math.max(0, unreadCount));
+
+        sendToTenantAgentUser(tenantId, agentUserId, evt);
+    }
+
+    public record ConversationEvent(String conversationId, String eventKey, ObjectNode data) {
+    }
+
+    /**
+     * {@link #broadcastConversationEvent} for many conversations of a tenant: the events are persisted in one
+     * batch, then each is delivered to its conversation's subscribers.
+     */
+    public void broadcastConversationEvents(String tenantId, List<ConversationEvent> events) {
+        if (tenantId == null || tenantId.isBlank()) return;
+        if (events == null || events.isEmpty()) return;
+
+        var now = Instant.now();
+        var rows = new ArrayList<ConversationEventRepository.NewEventRow>(events.size());
+        var data = new ArrayList<ObjectNode>(events.size());
+        for (var e : events) {
+            if (e.conversationId() == null || e.conversationId().isBlank()) continue;
+            if (e.eventKey() == null || e.eventKey().isBlank()) continue;
+            var json = (e.data() == null) ? "{}" : e.data().toString();
+            rows.add(new ConversationEventRepository.NewEventRow(
+                    "ce_" + UUID.randomUUID(), tenantId, e.conversationId(), e.eventKey(), json, now));
+            data.add(e.data());
+        }
+
+        // Best-effort persist for reload/history replay.
+        try {
+            conversationEventRepository.insertEvents(rows);
+            for (var row : rows) {
+                recentMessageCache.appendEvent(tenantId, row.conversationId(),
+                        new ConversationEventRepository.ConversationEventRawRow(row.id(), row.eventKey(), now, row.dataJson()));
+            }
+        } catch (Exception ignored) {
+            // best-effort
+        }
+
+        for (int i = 0; i < rows.size(); i++) {
+            var row = rows.get(i);
+            try {
+                broadcastFrameToConversation(row.conversationId(),
+                        frameWriter.convEvent(row.conversationId(), row.id(), row.eventKey(), now, data.get(i)));
+            } catch (IOException ignored) {
+                // best-effort
+            }
+        }
+    }
+
     /**
      * Broadcast a conversation lifecycle event to current conversation subscribers.
      *
@@ -172,26 +311,67 @@ public class WsBroadcaster {
         try {
             var json = (data == null) ? "{}" : data.toString();
             conversationEventRepository.insertEvent(eventId, tenantId, conversationId, eventKey, json, now);
+            recentMessageCache.appendEvent(tenantId, conversationId,
+                    new ConversationEventRepository.ConversationEventRawRow(eventId, eventKey, now, json));
         } catch (Exception ignored) {
             // best-effort
         }
 
-        ObjectNode evt = objectMapper.createObjectNode();
-        evt.put("type", "CONV_EVENT");
-        evt.put("conversation_id", conversationId);
-        evt.put("event_id", eventId);
-        evt.put("event_key", eventKey);
-        evt.put("created_at", now.getEpochSecond());
-        if (data != null) {
-            evt.set("data", data);
+        try {
+            broadcastFrameToConversation(conversationId, frameWriter.convEvent(conversationId, eventId, eventKey, now, data));
+        } catch (IOException ignored) {
+            // best-effort
         }
+    }
 
-        broadcastToConversation(conversationId, evt);
+    /**
+     * Deliver an event published by another node to this node's sessions only (never re-published).
+     */
+    private void onClusterEvent(WsClusterEvent event) {
+        if (event == null || event.kind() == null) return;
+        if (nodeId.equals(event.originNodeId())) return;
+        if (WsClusterEvent.KIND_KICK_VISITOR.equals(event.kind())) {
+            if (event.siteId() == null || event.ip() == null) return;
+            kickLocalVisitorSessions(event.siteId(), event.ip(), event.frame());
+            return;
+        }
+        if (event.frame() == null) return;
+        // From bytes, so the outboxes' per-recipient size accounting does not re-encode the payload.
+        var frame = new TextMessage(event.frame().getBytes(StandardCharsets.UTF_8));
+        switch (event.kind()) {
+            case WsClusterEvent.KIND_CONVERSATION -> {
+                if (event.conversationId() != null) deliverToConversation(event.conversationId(), frame);
+            }
+            case WsClusterEvent.KIND_TENANT_AGENTS -> {
+                if (event.tenantId() != null) deliverToTenantAgents(event.tenantId(), frame);
+            }
+            case WsClusterEvent.KIND_AGENT_USER -> {
+                if (event.tenantId() != null && event.userId() != null) {
+                    deliverToTenantAgentUser(event.tenantId(), event.userId(), frame);
+                }
+            }
+            default -> {
+                // unknown kind from a newer node: ignore
+            }
+        }
+    }
+
+    /**
+     * Encode a payload once; the resulting {@link TextMessage} is immutable and shared by every recipient.
+     * Built from UTF-8 bytes: {@code getPayloadLength()} on a String-built message re-encodes it on every call.
+     */
+    private TextMessage toFrame(JsonNode node) {
+        if (node == null) return null;
+        try {
+            return new TextMessage(objectMapper.writeValueAsBytes(node));
+        } catch (IOException e) {
+            return null;
+        }
     }
 
-    private void send(WebSocketSession session, JsonNode node) throws IOException {
-        if (session == null || node == null) return;
+    private void send(WebSocketSession session, TextMessage frame) throws IOException {
+        if (session == null || frame == null) return;
         if (!session.isOpen()) return;
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(node)));
+        outbound.send(session, frame);
     }
 }
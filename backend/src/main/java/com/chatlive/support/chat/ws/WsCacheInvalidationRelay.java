@@ -0,0 +1,56 @@
+package com.chatlive.support.chat.ws;
+
+import com.chatlive.support.chat.repo.ConversationAccessCache;
+import com.chatlive.support.chat.repo.RecentMessageCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Keeps the per-node read caches ({@link ConversationAccessCache}, {@link RecentMessageCache}) coherent across nodes:
+ * committed local invalidations are published on the {@link WsClusterBus}, and invalidations from other nodes are
+ * applied locally.
+ *
+ * The {@code local} bus reaches no other node, so with more than one node configured the caches would serve stale
+ * rows until their TTL; startup fails instead, unless both caches are disabled.
+ */
+@Component
+public class WsCacheInvalidationRelay {
+
+    private final String nodeId = "node_" + UUID.randomUUID();
+    private final ConversationAccessCache accessCache;
+    private final RecentMessageCache recentCache;
+
+    public WsCacheInvalidationRelay(
+            WsClusterBus clusterBus,
+            ConversationAccessCache accessCache,
+            RecentMessageCache recentCache,
+            @Value("${app.ws.cluster.nodes:1}") int nodes
+    ) {
+        this.accessCache = accessCache;
+        this.recentCache = recentCache;
+
+        if (clusterBus instanceof InProcessWsClusterBus && nodes > 1
+                && (accessCache.isEnabled() || recentCache.isEnabled())) {
+            throw new IllegalStateException("app.ws.cluster.mode=local cannot invalidate caches across " + nodes
+                    + " nodes: use app.ws.cluster.mode=postgres or disable app.conversation.access-cache"
+                    + " and app.chat.recent-cache");
+        }
+
+        accessCache.setInvalidationPublisher((tenantId, conversationId) ->
+                clusterBus.publish(WsClusterEvent.invalidateAccess(nodeId, tenantId, conversationId)));
+        recentCache.setInvalidationPublisher((tenantId, conversationId) ->
+                clusterBus.publish(WsClusterEvent.invalidateRecent(nodeId, tenantId, conversationId)));
+        clusterBus.subscribe(this::onClusterEvent);
+    }
+
+    private void onClusterEvent(WsClusterEvent event) {
+        if (event == null || nodeId.equals(event.originNodeId())) return;
+        if (WsClusterEvent.KIND_ACCESS_INVALIDATE.equals(event.kind())) {
+            accessCache.evictRemote(event.tenantId(), event.conversationId());
+        } else if (WsClusterEvent.KIND_RECENT_INVALIDATE.equals(event.kind())) {
+            recentCache.evictRemote(event.tenantId(), event.conversationId());
+        }
+    }
+}
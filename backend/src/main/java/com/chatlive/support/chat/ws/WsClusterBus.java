@@ -0,0 +1,20 @@
+package com.chatlive.support.chat.ws;
+
+import java.util.function.Consumer;
+
+/**
+ * Fanout of WebSocket events to the other backend nodes.
+ *
+ * {@link WsBroadcaster} delivers to its own sessions directly and publishes every broadcast once here;
+ * implementations hand it to the listeners of every node (including the publisher, which ignores its own
+ * events by {@link WsClusterEvent#originNodeId()}).
+ */
+public interface WsClusterBus {
+
+    /**
+     * Publish asynchronously. Must never block the caller on the network.
+     */
+    void publish(WsClusterEvent event);
+
+    void subscribe(Consumer<WsClusterEvent> listener);
+}
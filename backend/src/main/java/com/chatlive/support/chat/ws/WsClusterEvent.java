@@ -0,0 +1,82 @@
+package com.chatlive.support.chat.ws;
+
+/**
+ * A pre-encoded WebSocket frame addressed to a logical audience, exchanged between nodes (or, for
+ * {@link #KIND_ACCESS_INVALIDATE} / {@link #KIND_RECENT_INVALIDATE}, a cache invalidation without a frame, and for
+ * {@link #KIND_ASSIGNMENT_CHANGED} / {@link #KIND_ASSIGNMENT_REFRESH} / {@link #KIND_ASSIGNMENT_QUEUED}, an assignment
+ * engine update).
+ *
+ * Only the fields relevant to {@code kind} are set; receivers resolve the audience against their own
+ * {@link WsSessionRegistry} and drop events they hold no sessions for.
+ */
+public record WsClusterEvent(
+        String originNodeId,
+        String kind,
+        String tenantId,
+        String conversationId,
+        String userId,
+        String siteId,
+        String ip,
+        String frame
+) {
+
+    public static final String KIND_CONVERSATION = "conv";
+    public static final String KIND_TENANT_AGENTS = "tenant_agents";
+    public static final String KIND_AGENT_USER = "agent_user";
+    public static final String KIND_KICK_VISITOR = "kick_visitor";
+    public static final String KIND_ACCESS_INVALIDATE = "access_invalidate";
+    public static final String KIND_RECENT_INVALIDATE = "recent_invalidate";
+    public static final String KIND_ASSIGNMENT_CHANGED = "assignment_changed";
+    public static final String KIND_ASSIGNMENT_REFRESH = "assignment_refresh";
+    public static final String KIND_ASSIGNMENT_QUEUED = "assignment_queued";
+
+    public static WsClusterEvent toConversation(String originNodeId, String conversationId, String frame) {
+        return new WsClusterEvent(originNodeId, KIND_CONVERSATION, null, conversationId, null, null, null, frame);
+    }
+
+    public static WsClusterEvent toTenantAgents(String originNodeId, String tenantId, String frame) {
+        return new WsClusterEvent(originNodeId, KIND_TENANT_AGENTS, tenantId, null, null, null, null, frame);
+    }
+
+    public static WsClusterEvent toAgentUser(String originNodeId, String tenantId, String userId, String frame) {
+        return new WsClusterEvent(originNodeId, KIND_AGENT_USER, tenantId, null, userId, null, null, frame);
+    }
+
+    /**
+     * {@code frame} carries the error code here; each node builds its own ERROR frame before closing.
+     */
+    public static WsClusterEvent kickVisitor(String originNodeId, String siteId, String ip, String code) {
+        return new WsClusterEvent(originNodeId, KIND_KICK_VISITOR, null, null, null, siteId, ip, code);
+    }
+
+    public static WsClusterEvent invalidateAccess(String originNodeId, String tenantId, String conversationId) {
+        return new WsClusterEvent(originNodeId, KIND_ACCESS_INVALIDATE, tenantId, conversationId, null, null, null, null);
+    }
+
+    public static WsClusterEvent invalidateRecent(String originNodeId, String tenantId, String conversationId) {
+        return new WsClusterEvent(originNodeId, KIND_RECENT_INVALIDATE, tenantId, conversationId, null, null, null, null);
+    }
+
+    /**
+     * {@code userId} is the new assignee, or null when the conversation no longer counts against anyone.
+     */
+    public static WsClusterEvent assignmentChanged(String originNodeId, String tenantId, String conversationId, String userId) {
+        return new WsClusterEvent(originNodeId, KIND_ASSIGNMENT_CHANGED, tenantId, conversationId, userId, null, null, null);
+    }
+
+    /**
+     * Reload one agent ({@code userId} set) or the tenant's skill-group membership ({@code userId} null).
+     */
+    public static WsClusterEvent assignmentRefresh(String originNodeId, String tenantId, String userId) {
+        return new WsClusterEvent(originNodeId, KIND_ASSIGNMENT_REFRESH, tenantId, null, userId, null, null, null);
+    }
+
+    /**
+     * The conversation entered the queue. {@code frame} carries {@code <created_at epoch ms>:<skill group id or empty>}.
+     */
+    public static WsClusterEvent assignmentQueued(String originNodeId, String tenantId, String conversationId,
+                                                  String skillGroupId, long createdAtEpochMs) {
+        var frame = createdAtEpochMs + ":" + (skillGroupId == null ? "" : skillGroupId);
+        return new WsClusterEvent(originNodeId, KIND_ASSIGNMENT_QUEUED, tenantId, conversationId, null, null, null, frame);
+    }
+}
@@ -0,0 +1,320 @@
+package com.chatlive.support.chat.ws;
+
+import com.chatlive.support.chat.api.MessageItem;
+import com.chatlive.support.chat.repo.ConversationEventRepository;
+import com.chatlive.support.chat.repo.MessageRepository;
+import com.chatlive.support.chat.service.MessageService;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Streams the high-volume frames (SYNC_RES, MSG, CONV_EVENT) with a {@link JsonGenerator} into pooled buffers.
+ *
+ * Field names and order match the tree-built frames they replace. Stored message content and event data are
+ * embedded as raw JSON straight from the database instead of being parsed into a tree and serialized again; rows
+ * read for SYNC pass the same streaming well-formedness check as REST pages
+ * ({@link MessageService#contentJsonOrEmpty}), so one malformed legacy row cannot break the frame; for messages the
+ * check and the preview read share one parse.
+ */
+@Component
+public class WsFrameWriter {
+
+    private static final int MAX_POOLED_BUFFERS = 64;
+    private static final String EMPTY_OBJECT = "{}";
+
+    private final ObjectMapper objectMapper;
+    private final Queue<ByteArrayBuilder> buffers = new ConcurrentLinkedQueue<>();
+
+    public WsFrameWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @FunctionalInterface
+    private interface Body {
+        void write(JsonGenerator gen) throws IOException;
+    }
+
+    public TextMessage syncRes(
+            String conversationId,
+            String afterMsgId,
+            MessageService.MessageRowPage page,
+            List<ConversationEventRepository.ConversationEventRawRow> events
+    ) throws IOException {
+        return syncRes(conversationId, afterMsgId, null, page, events);
+    }
+
+    /**
+     * {@code direction} is {@code "tail"} / {@code "before"} for backward pages and is echoed (with
+     * {@code has_more_before} / {@code prev_before_*}) so the client knows not to treat them as the live edge.
+     */
+    public TextMessage syncRes(
+            String conversationId,
+            String afterMsgId,
+            String direction,
+            MessageService.MessageRowPage page,
+            List<ConversationEventRepository.ConversationEventRawRow> events
+    ) throws IOException {
+        return frame(gen -> {
+            gen.writeStartObject();
+            gen.writeStringField("type", "SYNC_RES");
+            gen.writeStringField("conversation_id", conversationId);
+            if (afterMsgId != null && !afterMsgId.isBlank()) {
+                gen.writeStringField("after_msg_id", afterMsgId);
+            }
+            if (direction != null) {
+                gen.writeStringField("direction", direction);
+                gen.writeBooleanField("has_more_before", page.hasMoreBefore());
+                if (page.prevBeforeMsgId() != null) {
+                    gen.writeStringField("prev_before_msg_id", page.prevBeforeMsgId());
+                    gen.writeNumberField("prev_before_seq", page.prevBeforeSeq());
+                }
+            }
+            gen.writeArrayFieldStart("messages");
+            for (var row : page.rows()) {
+                writeMessage(gen, row);
+            }
+            gen.writeEndArray();
+            gen.writeBooleanField("has_more", page.hasMore());
+            if (page.nextAfterMsgId() != null && !page.nextAfterMsgId().isBlank()) {
+                gen.writeStringField("next_after_msg_id", page.nextAfterMsgId());
+            }
+            gen.writeNumberField("next_after_seq", page.nextAfterSeq());
+            if (page.reset()) {
+                gen.writeBooleanField("reset", true);
+            }
+            // First-page sync only (events == null otherwise).
+            if (events != null) {
+                gen.writeArrayFieldStart("conversation_events");
+                for (var ev : events) {
+                    writeEvent(gen, conversationId, ev.id(), ev.eventKey(), ev.createdAt(), storedOrEmpty(ev.dataJson()));
+                }
+                gen.writeEndArray();
+            }
+            gen.writeEndObject();
+        });
+    }
+
+    public TextMessage msg(String conversationId, MessageItem item, String previewText) throws IOException {
+        return frame(gen -> {
+            gen.writeStartObject();
+            gen.writeStringField("type", "MSG");
+            gen.writeStringField("conversation_id", conversationId);
+            gen.writeObjectFieldStart("msg");
+            gen.writeStringField("id", item.id());
+            gen.writeStringField("sender_type", item.sender_type());
+            gen.writeStringField("sender_id", item.sender_id());
+            gen.writeStringField("content_type", item.content_type());
+            gen.writeFieldName("content");
+            gen.writeRawValue(rawOrEmpty(item.contentJson()));
+            gen.writeNumberField("created_at", item.created_at());
+            gen.writeNumberField("seq", item.seq());
+            gen.writeStringField("preview_text", previewText);
+            gen.writeEndObject();
+            gen.writeEndObject();
+        });
+    }
+
+    public TextMessage convEvent(String conversationId, String eventId, String eventKey, Instant createdAt, JsonNode data)
+            throws IOException {
+        return frame(gen -> {
+            gen.writeStartObject();
+            gen.writeStringField("type", "CONV_EVENT");
+            gen.writeStringField("conversation_id", conversationId);
+            gen.writeStringField("event_id", eventId);
+            gen.writeStringField("event_key", eventKey);
+            gen.writeNumberField("created_at", createdAt.getEpochSecond());
+            if (data != null) {
+                gen.writeFieldName("data");
+                writeTree(gen, data);
+            }
+            gen.writeEndObject();
+        });
+    }
+
+    /**
+     * Same rules as the preview shown in inbox lists, read from stored content without building a tree.
+     */
+    public String previewText(String contentType, String contentJson) {
+        return preview(contentType, topLevelString(contentJson, previewField(contentType)));
+    }
+
+    /**
+     * Collapses each run of {@code \s} to one space, trims and caps at 200 chars, like
+     * {@code replaceAll("\\s+", " ").trim()}; text that needs no collapsing (most of it) is only trimmed.
+     */
+    public static String normalizePreviewText(String s) {
+        if (s == null) return "";
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            char c = s.charAt(i);
+            if (isRegexSpace(c) && (c != ' ' || (i + 1 < n && isRegexSpace(s.charAt(i + 1))))) break;
+            i++;
+        }
+        String collapsed = s;
+        if (i < n) {
+            var sb = new StringBuilder(n).append(s, 0, i);
+            boolean inRun = false;
+            for (; i < n; i++) {
+                char c = s.charAt(i);
+                if (isRegexSpace(c)) {
+                    if (!inRun) sb.append(' ');
+                    inRun = true;
+                } else {
+                    sb.append(c);
+                    inRun = false;
+                }
+            }
+            collapsed = sb.toString();
+        }
+        var trimmed = collapsed.trim();
+        if (trimmed.length() > 200) return trimmed.substring(0, 200);
+        return trimmed;
+    }
+
+    // \s without UNICODE_CHARACTER_CLASS: [ \t\n\x0B\f\r]
+    private static boolean isRegexSpace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    private static String previewField(String contentType) {
+        if ("text".equals(contentType)) return "text";
+        if ("file".equals(contentType)) return "filename";
+        return null;
+    }
+
+    private static String preview(String contentType, String fieldValue) {
+        var ct = contentType == null ? "" : contentType;
+        if ("text".equals(ct)) {
+            return normalizePreviewText(fieldValue);
+        }
+        if ("file".equals(ct)) {
+            var name = normalizePreviewText(fieldValue);
+            if (!name.isBlank()) return "[附件] " + name;
+            return "[附件]";
+        }
+        return normalizePreviewText("[" + ct + "]");
+    }
+
+    private void writeMessage(JsonGenerator gen, MessageRepository.MessageRow row) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("id", row.id());
+        gen.writeStringField("sender_type", row.senderType());
+        gen.writeStringField("sender_id", row.senderId());
+        gen.writeStringField("content_type", row.contentType());
+        var content = scanStored(row.contentJson(), previewField(row.contentType()));
+        gen.writeFieldName("content");
+        gen.writeRawValue(content.json());
+        gen.writeNumberField("created_at", row.createdAt().getEpochSecond());
+        gen.writeNumberField("seq", row.seq());
+        gen.writeStringField("preview_text", preview(row.contentType(), content.field()));
+        gen.writeEndObject();
+    }
+
+    private void writeEvent(JsonGenerator gen, String conversationId, String eventId, String eventKey, Instant createdAt, String rawData)
+            throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("conversation_id", conversationId);
+        gen.writeStringField("event_id", eventId);
+        gen.writeStringField("event_key", eventKey);
+        gen.writeNumberField("created_at", createdAt.getEpochSecond());
+        gen.writeFieldName("data");
+        gen.writeRawValue(rawData);
+        gen.writeEndObject();
+    }
+
+    private void writeTree(JsonGenerator gen, JsonNode node) throws IOException {
+        if (node == null) {
+            gen.writeNull();
+            return;
+        }
+        objectMapper.writeTree(gen, node);
+    }
+
+    private String topLevelString(String json, String field) {
+        if (field == null || json == null || json.isBlank()) return "";
+        try (var parser = objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return "";
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                var name = parser.currentName();
+                parser.nextToken();
+                if (field.equals(name)) {
+                    return parser.currentToken().isScalarValue() ? parser.getValueAsString("") : "";
+                }
+                parser.skipChildren();
+            }
+            return "";
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private String storedOrEmpty(String json) {
+        return MessageService.contentJsonOrEmpty(objectMapper, json);
+    }
+
+    /**
+     * {@link MessageService#contentJsonOrEmpty} and {@link #topLevelString} in one pass over a stored row: the
+     * content if it is one well-formed object (else {@code {}}) and its top-level {@code field} ("" if absent,
+     * non-scalar or the content was rejected, as the tree path read it from {@code {}}).
+     */
+    private StoredContent scanStored(String json, String field) {
+        if (json == null || json.isBlank()) return StoredContent.EMPTY;
+        try (var parser = objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return StoredContent.EMPTY;
+            String value = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var name = parser.currentName();
+                var token = parser.nextToken();
+                if (value == null && field != null && field.equals(name)) {
+                    value = token.isScalarValue() ? parser.getValueAsString("") : "";
+                }
+                parser.skipChildren();
+            }
+            if (parser.nextToken() != null) return StoredContent.EMPTY;
+            return new StoredContent(json, value == null ? "" : value);
+        } catch (IOException e) {
+            return StoredContent.EMPTY;
+        }
+    }
+
+    private record StoredContent(String json, String field) {
+        static final StoredContent EMPTY = new StoredContent(EMPTY_OBJECT, "");
+    }
+
+    // MessageItem content was already checked when the item was built.
+    private static String rawOrEmpty(String json) {
+        return (json == null || json.isBlank()) ? EMPTY_OBJECT : json;
+    }
+
+    private TextMessage frame(Body body) throws IOException {
+        var buffer = buffers.poll();
+        if (buffer == null) {
+            buffer = new ByteArrayBuilder(8192);
+        }
+        try {
+            try (var gen = objectMapper.getFactory().createGenerator(buffer, JsonEncoding.UTF8)) {
+                body.write(gen);
+            }
+            return new TextMessage(buffer.toByteArray());
+        } finally {
+            buffer.reset();
+            if (buffers.size() < MAX_POOLED_BUFFERS) {
+                buffers.offer(buffer);
+            }
+        }
+    }
+}
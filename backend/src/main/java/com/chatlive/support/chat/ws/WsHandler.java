@@ -3,14 +3,18 @@ package com.chatlive.support.chat.ws;
 import com.chatlive.support.auth.service.jwt.JwtService;
 import com.chatlive.support.chat.api.MessageItem;
 import com.chatlive.support.chat.repo.AgentProfileRepository;
+import com.chatlive.support.chat.service.MessageHistoryReader;
 import com.chatlive.support.chat.service.MessageService;
+import com.chatlive.support.chat.service.MessageWritePipeline;
 import com.chatlive.support.chat.service.AgentPresenceService;
+import com.chatlive.support.chat.service.AgentStatusTracker;
 import com.chatlive.support.chat.service.AssignmentService;
+import com.chatlive.support.chat.service.assignment.AssignmentEngine;
 import com.chatlive.support.chat.repo.ConversationEventRepository;
 import com.chatlive.support.chat.repo.ConversationRepository;
+import com.chatlive.support.chat.repo.RecentMessageCache;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.chatlive.support.widget.repo.SiteBannedCustomerRepository;
 import io.jsonwebtoken.ExpiredJwtException;
@@ -29,6 +33,7 @@ import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -42,12 +47,19 @@ public class WsHandler extends TextWebSocketHandler {
     private final JwtService jwtService;
     private final WsSessionRegistry sessionRegistry;
     private final WsBroadcaster broadcaster;
+    private final WsOutboundDispatcher outbound;
+    private final WsInboundDispatcher inbound;
+    private final WsTypingCoordinator typingCoordinator;
+    private final WsFrameWriter frameWriter;
+    private final AgentStatusTracker agentStatusTracker;
     private final MessageService messageService;
     private final AgentPresenceService agentPresenceService;
     private final AgentProfileRepository agentProfileRepository;
     private final AssignmentService assignmentService;
+    private final AssignmentEngine assignmentEngine;
     private final ConversationRepository conversationRepository;
-    private final ConversationEventRepository conversationEventRepository;
+    private final MessageHistoryReader historyReader;
+    private final RecentMessageCache recentMessageCache;
     private final SiteBannedCustomerRepository bannedCustomerRepository;
     private final Set<String> allowedVisitorOrigins;
 
@@ -56,12 +68,19 @@ public class WsHandler extends TextWebSocketHandler {
             JwtService jwtService,
             WsSessionRegistry sessionRegistry,
             WsBroadcaster broadcaster,
+            WsOutboundDispatcher outbound,
+            WsInboundDispatcher inbound,
+            WsTypingCoordinator typingCoordinator,
+            WsFrameWriter frameWriter,
+            AgentStatusTracker agentStatusTracker,
             MessageService messageService,
             AgentPresenceService agentPresenceService,
             AgentProfileRepository agentProfileRepository,
             AssignmentService assignmentService,
+            AssignmentEngine assignmentEngine,
             ConversationRepository conversationRepository,
-            ConversationEventRepository conversationEventRepository,
+            MessageHistoryReader historyReader,
+            RecentMessageCache recentMessageCache,
             SiteBannedCustomerRepository bannedCustomerRepository,
             @Value("${app.widget.public-embed-url:http://localhost:5173/visitor/embed}") String publicEmbedUrl,
             @Value("${app.ws.public-allowed-origins:}") String extraAllowedOriginsCsv
@@ -70,41 +89,27 @@ public class WsHandler extends TextWebSocketHandler {
         this.jwtService = jwtService;
         this.sessionRegistry = sessionRegistry;
         this.broadcaster = broadcaster;
+        this.outbound = outbound;
+        this.inbound = inbound;
+        this.typingCoordinator = typingCoordinator;
+        this.frameWriter = frameWriter;
+        this.agentStatusTracker = agentStatusTracker;
         this.messageService = messageService;
         this.agentPresenceService = agentPresenceService;
         this.agentProfileRepository = agentProfileRepository;
         this.assignmentService = assignmentService;
+        this.assignmentEngine = assignmentEngine;
         this.conversationRepository = conversationRepository;
-        this.conversationEventRepository = conversationEventRepository;
+        this.historyReader = historyReader;
+        this.recentMessageCache = recentMessageCache;
         this.bannedCustomerRepository = bannedCustomerRepository;
 
         this.allowedVisitorOrigins = buildAllowedVisitorOrigins(publicEmbedUrl, extraAllowedOriginsCsv);
     }
 
-    private static String normalizePreviewText(String s) {
-        if (s == null) return "";
-        var trimmed = s.replaceAll("\\s+", " ").trim();
-        if (trimmed.length() > 200) return trimmed.substring(0, 200);
-        return trimmed;
-    }
-
     private String buildPreviewText(MessageItem item) {
         if (item == null) return "";
-        var ct = item.content_type() == null ? "" : item.content_type();
-        JsonNode content = item.content();
-        if (content == null) content = objectMapper.createObjectNode();
-
-        if ("text".equals(ct)) {
-            return normalizePreviewText(content.path("text").asText(""));
-        }
-
-        if ("file".equals(ct)) {
-            var name = normalizePreviewText(content.path("filename").asText(""));
-            if (name != null && !name.isBlank()) return "[附件] " + name;
-            return "[附件]";
-        }
-
-        return normalizePreviewText("[" + ct + "]");
+        return frameWriter.previewText(item.content_type(), item.contentJson());
     }
 
     @Override
@@ -116,80 +121,82 @@ public class WsHandler extends TextWebSocketHandler {
         var params = parseQueryParams(uri);
         var token = params.get("token");
         if (token != null && !token.isBlank()) {
-            try {
-                var claims = jwtService.parse(token);
-
-                if ("visitor".equals(claims.role()) && isVisitorBanned(session, claims.siteId())) {
-                    try {
-                        sendError(session, "banned_customer", null);
-                    } catch (Exception ignore) {
-                        // ignore
-                    }
-                    closeQuietly(session, CloseStatus.NOT_ACCEPTABLE);
-                    return;
-                }
+            // Runs on the session's inbound queue: it touches the database and must precede the first frame.
+            inbound.dispatch(session, () -> inbound.withDbPermit(() -> authenticateFromQuery(session, params, token)));
+        }
+    }
 
-                // Browser safety: only allow visitor WS connections from our embed app origin(s).
-                if ("visitor".equals(claims.role()) && !isVisitorOriginAllowed(session)) {
-                    try {
-                        sendError(session, "origin_not_allowed", null);
-                    } catch (Exception ignore) {
-                        // ignore
-                    }
-                    try {
-                        session.close(CloseStatus.NOT_ACCEPTABLE);
-                    } catch (Exception ignore) {
-                        // ignore
-                    }
-                    return;
-                }
+    private void authenticateFromQuery(WebSocketSession session, Map<String, String> params, String token) {
+        try {
+            var claims = jwtService.parse(token);
 
-                var client = params.getOrDefault("client", "unknown");
-                var agentSessionId = params.get("session_id");
-                var clientIp = resolveClientIp(session);
-                sessionRegistry.bind(session, new WsSessionRegistry.SessionContext(claims, client, agentSessionId, clientIp));
-
-                ObjectNode ok = objectMapper.createObjectNode();
-                ok.put("type", "AUTH_OK");
-                ok.put("user_id", claims.userId());
-                ok.put("role", claims.role());
-                ok.put("tenant_id", claims.tenantId());
-                if (claims.siteId() != null && !claims.siteId().isBlank()) {
-                    ok.put("site_id", claims.siteId());
-                }
-                send(session, ok);
-
-                var convId = params.get("conversation_id");
-                if (convId != null && !convId.isBlank()) {
-                    var access = conversationRepository.findAccess(claims.tenantId(), convId).orElse(null);
-                    if (access != null && canAccessConversation(claims, access)) {
-                        sessionRegistry.subscribe(convId, session);
-                        ObjectNode ack = objectMapper.createObjectNode();
-                        ack.put("type", "SUB_OK");
-                        ack.put("conversation_id", convId);
-                        send(session, ack);
-                    }
-                }
-            } catch (ExpiredJwtException ex) {
+            if ("visitor".equals(claims.role()) && isVisitorBanned(session, claims.siteId())) {
                 try {
-                    sendError(session, "token_expired", null);
+                    sendError(session, "banned_customer", null);
                 } catch (Exception ignore) {
                     // ignore
                 }
                 closeQuietly(session, CloseStatus.NOT_ACCEPTABLE);
-            } catch (Exception ex) {
+                return;
+            }
+
+            // Browser safety: only allow visitor WS connections from our embed app origin(s).
+            if ("visitor".equals(claims.role()) && !isVisitorOriginAllowed(session)) {
                 try {
-                    sendError(session, "invalid_token", null);
+                    sendError(session, "origin_not_allowed", null);
                 } catch (Exception ignore) {
                     // ignore
                 }
                 closeQuietly(session, CloseStatus.NOT_ACCEPTABLE);
+                return;
             }
+
+            var client = params.getOrDefault("client", "unknown");
+            var agentSessionId = params.get("session_id");
+            var clientIp = resolveClientIp(session);
+            sessionRegistry.bind(session, new WsSessionRegistry.SessionContext(claims, client, agentSessionId, clientIp));
+
+            ObjectNode ok = objectMapper.createObjectNode();
+            ok.put("type", "AUTH_OK");
+            ok.put("user_id", claims.userId());
+            ok.put("role", claims.role());
+            ok.put("tenant_id", claims.tenantId());
+            if (claims.siteId() != null && !claims.siteId().isBlank()) {
+                ok.put("site_id", claims.siteId());
+            }
+            send(session, ok);
+
+            var convId = params.get("conversation_id");
+            if (convId != null && !convId.isBlank()) {
+                var access = conversationRepository.findAccess(claims.tenantId(), convId).orElse(null);
+                if (access != null && canAccessConversation(claims, access)) {
+                    sessionRegistry.subscribe(convId, session);
+                    ObjectNode ack = objectMapper.createObjectNode();
+                    ack.put("type", "SUB_OK");
+                    ack.put("conversation_id", convId);
+                    send(session, ack);
+                }
+            }
+        } catch (ExpiredJwtException ex) {
+            try {
+                sendError(session, "token_expired", null);
+            } catch (Exception ignore) {
+                // ignore
+            }
+            closeQuietly(session, CloseStatus.NOT_ACCEPTABLE);
+        } catch (Exception ex) {
+            try {
+                sendError(session, "invalid_token", null);
+            } catch (Exception ignore) {
+                // ignore
+            }
+            closeQuietly(session, CloseStatus.NOT_ACCEPTABLE);
         }
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        inbound.unregister(session);
         broadcaster.unregister(session);
         sessionRegistry.unbind(session);
     }
@@ -197,6 +204,18 @@ public class WsHandler extends TextWebSocketHandler {
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
         final String rid = "ws_" + session.getId() + "_" + System.nanoTime();
+        // PONG is a liveness signal: answer here instead of behind this session's queued (database-bound) frames.
+        // Only the reply skips the queue; the presence heartbeat still runs in order below.
+        if (isPing(message)) {
+            send(session, PONG);
+        }
+        // Never handle frames on the container I/O thread: handlers block on JDBC.
+        if (!inbound.dispatch(session, () -> handleFrame(session, message, rid))) {
+            sendError(session, "too_many_inflight_frames", rid);
+        }
+    }
+
+    private void handleFrame(WebSocketSession session, TextMessage message, String rid) throws IOException {
         try {
             JsonNode root = objectMapper.readTree(message.getPayload());
             var type = root.path("type").asText(null);
@@ -206,70 +225,16 @@ public class WsHandler extends TextWebSocketHandler {
             }
 
             switch (type) {
-                case "AUTH" -> handleAuth(session, root);
-                case "SUB" -> handleSub(session, root);
+                case "AUTH" -> inbound.withDbPermit(() -> handleAuth(session, root));
+                case "SUB" -> inbound.withDbPermit(() -> handleSub(session, root));
                 case "UNSUB" -> handleUnsub(session, root);
+                // Takes the permit itself: not while waiting for the write batch to commit.
                 case "MSG_SEND" -> handleMsgSend(session, root, rid);
-                case "SYNC" -> handleSync(session, root, rid);
-                case "MSG_READ" -> handleMsgRead(session, root, rid);
-                case "TYPING" -> handleTyping(session, root, rid);
-                case "PING" -> {
-                    var ctx = sessionRegistry.get(session).orElse(null);
-                    if (ctx != null && ctx.claims() != null && !"customer".equals(ctx.claims().role())) {
-                        var sid = ctx.agentSessionId();
-                        if (sid != null && !sid.isBlank()) {
-                            var ok = agentPresenceService.heartbeat(sid, ctx.claims().userId());
-                            if (!ok) {
-                                var tenantId = ctx.claims().tenantId();
-                                var userId = ctx.claims().userId();
-                                if (tenantId != null && userId != null) {
-                                    var newSessionId = agentPresenceService.createSession(tenantId, userId);
-                                    sessionRegistry.bind(session, new WsSessionRegistry.SessionContext(
-                                            ctx.claims(),
-                                            ctx.client(),
-                                            newSessionId,
-                                            ctx.clientIp()
-                                    ));
-
-                                    ObjectNode refresh = objectMapper.createObjectNode();
-                                    refresh.put("type", "SESSION");
-                                    refresh.put("session_id", newSessionId);
-                                    refresh.put("heartbeat_interval_seconds", agentPresenceService.heartbeatIntervalSeconds());
-                                    refresh.put("heartbeat_ttl_seconds", agentPresenceService.heartbeatTtlSeconds());
-                                    send(session, refresh);
-                                }
-                            }
-                        }
-
-                        var userId = ctx.claims().userId();
-                        var tenantId = ctx.claims().tenantId();
-                        if (userId != null && tenantId != null) {
-                            var profile = agentProfileRepository.findByUserId(userId)
-                                    .orElse(new AgentProfileRepository.AgentProfileRow(userId, "offline", 3));
-                            var assignedActive = assignmentService.getAssignedActiveCount(tenantId, userId);
-                            var maxC = Math.max(1, profile.maxConcurrent());
-                            var remaining = Math.max(0, maxC - assignedActive);
-                            var hasPresence = agentPresenceService.hasActiveSession(userId);
-                            var status = profile.status();
-                            if (hasPresence && "offline".equals(status)) {
-                                status = "online";
-                            }
-                            var effective = ("online".equals(status) && remaining == 0) ? "busy" : status;
-                            var canAccept = "online".equals(status) && remaining > 0;
-
-                            ObjectNode evt = objectMapper.createObjectNode();
-                            evt.put("user_id", userId);
-                            evt.put("status", status);
-                            evt.put("effective_status", effective);
-                            evt.put("max_concurrent", maxC);
-                            evt.put("assigned_active", assignedActive);
-                            evt.put("remaining_capacity", remaining);
-                            evt.put("can_accept", canAccept);
-                            broadcaster.broadcastAgentStatus(tenantId, evt);
-                        }
-                    }
-                    send(session, obj("type", "PONG"));
-                }
+                case "SYNC" -> inbound.withDbPermit(() -> handleSync(session, root, rid));
+                case "MSG_READ" -> inbound.withDbPermit(() -> handleMsgRead(session, root, rid));
+                case "TYPING" -> inbound.withDbPermit(() -> handleTyping(session, root, rid));
+                // PONG was already sent by handleTextMessage.
+                case "PING" -> inbound.withDbPermit(() -> handlePing(session));
                 default -> sendError(session, "unsupported_type", rid);
             }
         } catch (IllegalArgumentException ex) {
@@ -280,6 +245,57 @@ public class WsHandler extends TextWebSocketHandler {
         }
     }
 
+    private static final TextMessage PONG = new TextMessage("{\"type\":\"PONG\"}".getBytes(StandardCharsets.UTF_8));
+
+    /**
+     * Cheap check on the I/O thread: only tiny frames mentioning PING are parsed.
+     */
+    private boolean isPing(TextMessage message) {
+        var payload = message.getPayload();
+        if (payload.length() > 128 || !payload.contains("PING")) return false;
+        try {
+            return "PING".equals(objectMapper.readTree(payload).path("type").asText(null));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void handlePing(WebSocketSession session) throws IOException {
+        var ctx = sessionRegistry.get(session).orElse(null);
+        if (ctx == null || ctx.claims() == null || "customer".equals(ctx.claims().role())) return;
+
+        var tenantId = ctx.claims().tenantId();
+        var userId = ctx.claims().userId();
+        var sid = ctx.agentSessionId();
+        if (sid != null && !sid.isBlank()) {
+            var ok = agentPresenceService.heartbeat(sid, userId);
+            if (!ok && tenantId != null && userId != null) {
+                var newSessionId = agentPresenceService.createSession(tenantId, userId);
+                sessionRegistry.bind(session, new WsSessionRegistry.SessionContext(
+                        ctx.claims(),
+                        ctx.client(),
+                        newSessionId,
+                        ctx.clientIp()
+                ));
+
+                ObjectNode refresh = objectMapper.createObjectNode();
+                refresh.put("type", "SESSION");
+                refresh.put("session_id", newSessionId);
+                refresh.put("heartbeat_interval_seconds", agentPresenceService.heartbeatIntervalSeconds());
+                refresh.put("heartbeat_ttl_seconds", agentPresenceService.heartbeatTtlSeconds());
+                send(session, refresh);
+
+                // Presence was re-created: status may have flipped offline -> online.
+                agentStatusTracker.markDirty(tenantId, userId);
+                return;
+            }
+        }
+
+        // Status/capacity changes are pushed by AgentStatusTracker on real transitions; a heartbeat only makes
+        // sure this agent is part of the model.
+        agentStatusTracker.track(tenantId, userId);
+    }
+
     private void handleAuth(WebSocketSession session, JsonNode root) throws IOException {
         var token = root.path("token").asText(null);
         if (token == null || token.isBlank()) {
@@ -339,6 +355,7 @@ public class WsHandler extends TextWebSocketHandler {
                 var promoted = false;
                 if (hasPresence && (st.isBlank() || "offline".equals(st))) {
                     agentProfileRepository.upsertStatus(userId, "online", null);
+                    assignmentEngine.agentChanged(tenantId, userId);
                     promoted = true;
                 }
 
@@ -350,6 +367,7 @@ public class WsHandler extends TextWebSocketHandler {
                     if (remaining > 0) {
                         assignmentService.tryAssignFromQueueToAgent(tenantId, userId, remaining);
                     }
+                    agentStatusTracker.markDirty(tenantId, userId);
                 }
             }
         } catch (Exception ignore) {
@@ -631,7 +649,7 @@ public class WsHandler extends TextWebSocketHandler {
         return claims.tenantId() != null && claims.tenantId().equals(conv.tenantId());
     }
 
-    private void handleMsgSend(WebSocketSession session, JsonNode root, String rid) throws IOException {
+    private void handleMsgSend(WebSocketSession session, JsonNode root, String rid) throws Exception {
         var ctx = sessionRegistry.get(session).orElse(null);
         if (ctx == null) {
             sendError(session, "unauthorized", rid);
@@ -651,7 +669,7 @@ public class WsHandler extends TextWebSocketHandler {
         sessionRegistry.subscribe(conversationId, session);
 
         try {
-            MessageService.SendResult result;
+            MessageService.PendingSend pending;
 
             if ("text".equals(contentType)) {
                 var text = root.path("content").path("text").asText(null);
@@ -659,18 +677,21 @@ public class WsHandler extends TextWebSocketHandler {
                     sendError(session, "missing_text", rid);
                     return;
                 }
-                result = messageService.sendText(ctx.claims(), conversationId, clientMsgId, text);
+                pending = inbound.callWithDbPermit(() -> messageService.submitText(ctx.claims(), conversationId, clientMsgId, text));
             } else if ("file".equals(contentType)) {
                 var attachmentId = root.path("content").path("attachment_id").asText(null);
                 if (attachmentId == null || attachmentId.isBlank()) {
                     sendError(session, "missing_attachment_id", rid);
                     return;
                 }
-                result = messageService.sendFile(ctx.claims(), conversationId, clientMsgId, attachmentId);
+                pending = inbound.callWithDbPermit(() -> messageService.submitFile(ctx.claims(), conversationId, clientMsgId, attachmentId));
             } else {
                 sendError(session, "unsupported_content_type", rid);
                 return;
             }
+            // No permit while the batch commits: the pipeline writes on its own connection.
+            var insert = MessageWritePipeline.await(pending.write());
+            var result = inbound.callWithDbPermit(() -> messageService.finishSend(ctx.claims(), pending, insert));
             var item = result.item();
 
             ObjectNode ack = objectMapper.createObjectNode();
@@ -681,29 +702,15 @@ public class WsHandler extends TextWebSocketHandler {
             ack.put("msg_id", item.id());
             send(session, ack);
 
-            ObjectNode msg = objectMapper.createObjectNode();
-            msg.put("type", "MSG");
-            msg.put("conversation_id", conversationId);
-
-            ObjectNode msgObj = objectMapper.createObjectNode();
-            msgObj.put("id", item.id());
-            msgObj.put("sender_type", item.sender_type());
-            msgObj.put("sender_id", item.sender_id());
-            msgObj.put("content_type", item.content_type());
-            msgObj.set("content", item.content());
-            msgObj.put("created_at", item.created_at());
-            msgObj.put("preview_text", buildPreviewText(item));
-            msg.set("msg", msgObj);
-
             // Idempotency: if client_msg_id was already inserted, do not broadcast again.
             if (result.inserted()) {
-                broadcaster.broadcastToConversation(conversationId, msg);
+                broadcaster.broadcastFrameToConversation(conversationId, frameWriter.msg(conversationId, item, buildPreviewText(item)));
             }
 
             // If the visitor/customer message reopened a previously closed conversation, notify tenant agents
             // so their inbox can refresh (they may not be subscribed to this conversation yet).
             if (result.inserted() && result.reopened()) {
-                var access = conversationRepository.findAccess(ctx.claims().tenantId(), conversationId).orElse(null);
+                var access = inbound.callWithDbPermit(() -> conversationRepository.findAccess(ctx.claims().tenantId(), conversationId).orElse(null));
                 ObjectNode evt = objectMapper.createObjectNode();
                 evt.put("type", "CONV_REOPENED");
                 evt.put("conversation_id", conversationId);
@@ -784,7 +791,7 @@ public class WsHandler extends TextWebSocketHandler {
         }
         var isTyping = root.path("is_typing").asBoolean(false);
 
-        // Prevent unauthorized typing events (same rule as SUB).
+        // Prevent unauthorized typing events (same rule as SUB). Served by the access cache, not the database.
         var access = conversationRepository.findAccess(ctx.claims().tenantId(), conversationId).orElse(null);
         if (access == null) {
             sendError(session, "conversation_not_found", rid);
@@ -798,13 +805,7 @@ public class WsHandler extends TextWebSocketHandler {
         // convenience: ensure sender is subscribed before broadcast
         sessionRegistry.subscribe(conversationId, session);
 
-        ObjectNode evt = objectMapper.createObjectNode();
-        evt.put("type", "TYPING");
-        evt.put("conversation_id", conversationId);
-        evt.put("sender_role", ctx.claims().role());
-        evt.put("sender_id", ctx.claims().userId());
-        evt.put("is_typing", isTyping);
-        broadcaster.broadcastToConversation(conversationId, evt);
+        typingCoordinator.onTyping(conversationId, ctx.claims().role(), ctx.claims().userId(), isTyping);
     }
 
     private void handleSync(WebSocketSession session, JsonNode root, String rid) throws IOException {
@@ -820,69 +821,64 @@ public class WsHandler extends TextWebSocketHandler {
             return;
         }
         var afterMsgId = root.path("after_msg_id").asText(null);
+        // Preferred resume cursor: seq of the last message the client holds (no marker lookup server-side).
+        Long afterSeq = root.path("after_seq").canConvertToLong() ? root.path("after_seq").asLong() : null;
+        // Backward modes: "tail" opens at the newest page, before_msg_id / before_seq scroll further back.
+        var beforeMsgId = root.path("before_msg_id").asText(null);
+        Long beforeSeq = root.path("before_seq").canConvertToLong() ? root.path("before_seq").asLong() : null;
+        var hasBefore = beforeSeq != null || (beforeMsgId != null && !beforeMsgId.isBlank());
+        var tail = root.path("tail").asBoolean(false) && !hasBefore;
 
         // convenience: ensure sender is subscribed
         sessionRegistry.subscribe(conversationId, session);
 
         try {
-            var page = messageService.listMessagesPage(ctx.claims(), conversationId, afterMsgId, 200);
-
-            ObjectNode res = objectMapper.createObjectNode();
-            res.put("type", "SYNC_RES");
-            res.put("conversation_id", conversationId);
-            if (afterMsgId != null && !afterMsgId.isBlank()) {
-                res.put("after_msg_id", afterMsgId);
+            if (tail || hasBefore) {
+                var page = messageService.listMessageRowsPageBefore(ctx.claims(), conversationId, beforeMsgId, beforeSeq, 200);
+                List<ConversationEventRepository.ConversationEventRawRow> events = null;
+                if (tail || page.reset()) {
+                    // The page holds the newest messages: replay the newest events with it, not the oldest.
+                    events = listSyncEvents(ctx.claims().tenantId(), conversationId, true);
+                }
+                send(session, frameWriter.syncRes(conversationId, null, tail || page.reset() ? "tail" : "before", page, events));
+                return;
             }
 
-            ArrayNode arr = objectMapper.createArrayNode();
-            for (var item : page.messages()) {
-                ObjectNode msgObj = objectMapper.createObjectNode();
-                msgObj.put("id", item.id());
-                msgObj.put("sender_type", item.sender_type());
-                msgObj.put("sender_id", item.sender_id());
-                msgObj.put("content_type", item.content_type());
-                msgObj.set("content", item.content());
-                msgObj.put("created_at", item.created_at());
-                msgObj.put("preview_text", buildPreviewText(item));
-                arr.add(msgObj);
-            }
-            res.set("messages", arr);
-            res.put("has_more", page.has_more());
-            if (page.next_after_msg_id() != null && !page.next_after_msg_id().isBlank()) {
-                res.put("next_after_msg_id", page.next_after_msg_id());
-            }
-            if (page.reset()) {
-                res.put("reset", true);
-            }
+            var page = messageService.listMessageRowsPage(ctx.claims(), conversationId, afterMsgId, afterSeq, 200);
 
             // First-page sync: include conversation lifecycle events for timeline replay.
-            if (afterMsgId == null || afterMsgId.isBlank()) {
-                ArrayNode evArr = objectMapper.createArrayNode();
-                try {
-                    var events = conversationEventRepository.listByConversation(ctx.claims().tenantId(), conversationId, 500);
-                    for (var ev : events) {
-                        ObjectNode o = objectMapper.createObjectNode();
-                        o.put("conversation_id", conversationId);
-                        o.put("event_id", ev.id());
-                        o.put("event_key", ev.eventKey());
-                        o.put("created_at", ev.createdAt().getEpochSecond());
-                        if (ev.data() != null) {
-                            o.set("data", ev.data());
-                        }
-                        evArr.add(o);
-                    }
-                } catch (Exception ignored) {
-                    // best-effort
-                }
-                res.set("conversation_events", evArr);
+            List<ConversationEventRepository.ConversationEventRawRow> events = null;
+            if ((afterMsgId == null || afterMsgId.isBlank()) && (afterSeq == null || afterSeq <= 0)) {
+                events = listSyncEvents(ctx.claims().tenantId(), conversationId, false);
             }
 
-            send(session, res);
+            send(session, frameWriter.syncRes(conversationId, afterMsgId, page, events));
         } catch (IllegalArgumentException ex) {
             sendError(session, ex.getMessage(), rid);
         }
     }
 
+    private List<ConversationEventRepository.ConversationEventRawRow> listSyncEvents(
+            String tenantId, String conversationId, boolean newest) {
+        // A cached list is the complete history (shorter than the limit), so it serves both directions.
+        var cached = recentMessageCache.events(tenantId, conversationId);
+        if (cached.isPresent()) return cached.get();
+        try {
+            var generation = recentMessageCache.generation(tenantId, conversationId);
+            long archivedSeq = conversationRepository.findAccess(tenantId, conversationId)
+                    .map(ConversationRepository.ConversationAccessRow::archivedSeq)
+                    .orElse(0L);
+            var events = newest
+                    ? historyReader.listNewestEvents(tenantId, conversationId, archivedSeq, 500)
+                    : historyReader.listEvents(tenantId, conversationId, archivedSeq, 500);
+            recentMessageCache.seedEvents(tenantId, conversationId, generation, events, 500);
+            return events;
+        } catch (Exception ignored) {
+            // best-effort
+            return List.of();
+        }
+    }
+
     private void sendError(WebSocketSession session, String code, String rid) throws IOException {
         ObjectNode err = objectMapper.createObjectNode();
         err.put("type", "ERROR");
@@ -916,18 +912,14 @@ public class WsHandler extends TextWebSocketHandler {
             case "forbidden" -> "forbidden";
             case "unsupported_type" -> "unsupported message type";
             case "ws_internal_error" -> "internal websocket error";
+            case "too_many_inflight_frames" -> "too many frames in flight";
             default -> code;
         };
     }
 
     private void closeQuietly(WebSocketSession session, CloseStatus status) {
-        try {
-            if (session != null && session.isOpen()) {
-                session.close(status);
-            }
-        } catch (Exception ignore) {
-            // ignore
-        }
+        // Queued behind any pending frames so a preceding ERROR still reaches the client.
+        outbound.closeAfterFlush(session, status);
     }
 
     private String safeOneLine(String s) {
@@ -938,7 +930,12 @@ public class WsHandler extends TextWebSocketHandler {
 
     private void send(WebSocketSession session, JsonNode node) throws IOException {
         if (!session.isOpen()) return;
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(node)));
+        outbound.send(session, new TextMessage(objectMapper.writeValueAsString(node)));
+    }
+
+    private void send(WebSocketSession session, TextMessage frame) {
+        if (!session.isOpen()) return;
+        outbound.send(session, frame);
     }
 
     private ObjectNode obj(String k, String v) {
@@ -0,0 +1,204 @@
+package com.chatlive.support.chat.ws;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moves inbound WebSocket frame handling off the container I/O threads.
+ *
+ * Each session gets a serial inbox drained by at most one virtual thread, so frames from one session are handled
+ * strictly in arrival order while different sessions proceed in parallel. The number of frames a session may have
+ * queued or running is bounded. Work that touches the database runs under {@link #withDbPermit(Task)}, a semaphore
+ * sized to the connection pool, so a burst of writes waits here (cheaply, on virtual threads) instead of piling up
+ * on Hikari and starving frames that need no database at all (PONG).
+ */
+@Component
+public class WsInboundDispatcher implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(WsInboundDispatcher.class);
+
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface Call<T> {
+        T call() throws Exception;
+    }
+
+    private final int maxInFlightPerSession;
+    private final Semaphore dbPermits;
+
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Inbox> inboxes = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Timer dispatchLag;
+    private final Timer dbPermitWait;
+    private final Counter rejected;
+
+    public WsInboundDispatcher(
+            MeterRegistry meterRegistry,
+            @Value("${app.ws.inbound.max-in-flight-per-session:32}") int maxInFlightPerSession,
+            @Value("${app.ws.inbound.db-permits:${spring.datasource.hikari.maximum-pool-size:10}}") int dbPermits
+    ) {
+        this.maxInFlightPerSession = Math.max(1, maxInFlightPerSession);
+        this.dbPermits = new Semaphore(Math.max(1, dbPermits), true);
+
+        // Low-cardinality metrics: do NOT tag by session/tenant.
+        Gauge.builder("chatlive.ws.inbound.in_flight", inFlight, AtomicInteger::get)
+                .description("Inbound WebSocket frames queued or being handled")
+                .register(meterRegistry);
+        Gauge.builder("chatlive.ws.inbound.db_permits_available", this.dbPermits, Semaphore::availablePermits)
+                .description("Database permits currently available to WebSocket handlers")
+                .register(meterRegistry);
+        this.dispatchLag = Timer.builder("chatlive.ws.inbound.dispatch_lag")
+                .description("Time from frame arrival until its handler starts")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.dbPermitWait = Timer.builder("chatlive.ws.inbound.db_permit_wait")
+                .description("Time WebSocket handlers wait for a database permit")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("chatlive.ws.inbound.rejected")
+                .description("Inbound frames rejected because the session had too many in flight")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue a frame handler for the session. Never blocks.
+     *
+     * @return false if the session already has the maximum number of frames in flight
+     */
+    public boolean dispatch(WebSocketSession session, Task task) {
+        if (session == null || task == null) return false;
+        var inbox = inboxes.computeIfAbsent(session.getId(), k -> new Inbox(session.getId()));
+        if (!inbox.offer(task)) {
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Forget a closed session. Frames already queued still drain; with the session unbound and closed they
+     * reduce to no-ops.
+     */
+    public void unregister(WebSocketSession session) {
+        if (session == null) return;
+        inboxes.remove(session.getId());
+    }
+
+    /**
+     * Run database work under the shared permit.
+     */
+    public void withDbPermit(Task task) throws Exception {
+        callWithDbPermit(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * {@link #withDbPermit(Task)} for work that returns a value. Only the database work belongs under the permit:
+     * waiting on something else (a write batch's commit) while holding it starves the frames queued behind.
+     */
+    public <T> T callWithDbPermit(Call<T> call) throws Exception {
+        long start = System.nanoTime();
+        dbPermits.acquire();
+        dbPermitWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        try {
+            return call.call();
+        } finally {
+            dbPermits.release();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        workers.shutdownNow();
+    }
+
+    private record Pending(Task task, long enqueuedAtNanos) {
+    }
+
+    private final class Inbox implements Runnable {
+
+        private final String sessionId;
+        private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Inbox(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        boolean offer(Task task) {
+            if (pending.incrementAndGet() > maxInFlightPerSession) {
+                pending.decrementAndGet();
+                return false;
+            }
+            queue.add(new Pending(task, System.nanoTime()));
+            inFlight.incrementAndGet();
+            schedule();
+            return true;
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this);
+                } catch (Exception e) {
+                    // Executor shut down (application stopping).
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Pending item;
+                while ((item = queue.poll()) != null) {
+                    dispatchLag.record(System.nanoTime() - item.enqueuedAtNanos(), TimeUnit.NANOSECONDS);
+                    try {
+                        item.task().run();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (Exception e) {
+                        // Handlers report their own errors to the client; this is a last resort.
+                        log.warn("ws_inbound_task_failed sessionId={}", sessionId, e);
+                    } finally {
+                        pending.decrementAndGet();
+                        inFlight.decrementAndGet();
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                if (!queue.isEmpty() && !Thread.currentThread().isInterrupted()) {
+                    schedule();
+                }
+            }
+        }
+    }
+}
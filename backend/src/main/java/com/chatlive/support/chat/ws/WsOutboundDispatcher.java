@@ -0,0 +1,260 @@
+package com.chatlive.support.chat.ws;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous outbound pipeline for WebSocket sessions.
+ *
+ * Every session gets a bounded queue drained by at most one writer at a time, so callers never block on a
+ * slow socket and frames to one session are never written concurrently. When a session exceeds its buffer
+ * limits, the configured overflow policy either drops the new frame or evicts (closes) the session.
+ */
+@Component
+public class WsOutboundDispatcher implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(WsOutboundDispatcher.class);
+
+    private final int maxQueuedFrames;
+    private final long maxBufferedBytes;
+    private final boolean closeOnOverflow;
+
+    private final ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
+    private final AtomicLong queuedFrames = new AtomicLong();
+
+    private final Counter droppedFrames;
+    private final Counter evictions;
+    private final DistributionSummary sessionQueueDepth;
+
+    public WsOutboundDispatcher(
+            MeterRegistry meterRegistry,
+            @Value("${app.ws.outbound.max-queued-frames:256}") int maxQueuedFrames,
+            @Value("${app.ws.outbound.max-buffered-bytes:1048576}") long maxBufferedBytes,
+            @Value("${app.ws.outbound.overflow-policy:close}") String overflowPolicy
+    ) {
+        this.maxQueuedFrames = Math.max(1, maxQueuedFrames);
+        this.maxBufferedBytes = Math.max(1024, maxBufferedBytes);
+        this.closeOnOverflow = !"drop".equalsIgnoreCase(overflowPolicy == null ? "" : overflowPolicy.trim());
+
+        // Low-cardinality metrics: do NOT tag by session/tenant.
+        Gauge.builder("chatlive.ws.outbound.queue_depth", queuedFrames, AtomicLong::get)
+                .description("Frames queued for delivery across all WebSocket sessions")
+                .register(meterRegistry);
+        this.droppedFrames = Counter.builder("chatlive.ws.outbound.dropped_frames")
+                .description("Frames dropped because a session exceeded its outbound buffer")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("chatlive.ws.outbound.evictions")
+                .description("Sessions closed as slow consumers or after a failed send")
+                .register(meterRegistry);
+        this.sessionQueueDepth = DistributionSummary.builder("chatlive.ws.outbound.session_queue_depth")
+                .description("Per-session queue depth observed at enqueue time")
+                .baseUnit("frames")
+                .register(meterRegistry);
+    }
+
+    public void register(WebSocketSession session) {
+        if (session == null) return;
+        outboxes.computeIfAbsent(session.getId(), k -> new Outbox(session));
+    }
+
+    public void unregister(WebSocketSession session) {
+        if (session == null) return;
+        var outbox = outboxes.remove(session.getId());
+        if (outbox != null) {
+            outbox.discard();
+        }
+    }
+
+    /**
+     * Queue a frame for delivery. Never blocks on the socket.
+     *
+     * @return false if the frame was not accepted (session closed, dropped or evicted)
+     */
+    public boolean send(WebSocketSession session, TextMessage frame) {
+        if (session == null || frame == null) return false;
+        if (!session.isOpen()) return false;
+        var outbox = outboxes.get(session.getId());
+        if (outbox == null) {
+            // Session is being set up or torn down by the container; fall back to an on-demand outbox.
+            outbox = outboxes.computeIfAbsent(session.getId(), k -> new Outbox(session));
+        }
+        return outbox.offer(frame);
+    }
+
+    /**
+     * Close the session after every frame queued so far has been written (e.g. ERROR followed by close).
+     */
+    public void closeAfterFlush(WebSocketSession session, CloseStatus status) {
+        if (session == null) return;
+        var outbox = outboxes.get(session.getId());
+        if (outbox == null) {
+            closeQuietly(session, status);
+            return;
+        }
+        outbox.offerClose(status == null ? CloseStatus.NORMAL : status);
+    }
+
+    @Override
+    public void destroy() {
+        writers.shutdownNow();
+    }
+
+    private static void closeQuietly(WebSocketSession session, CloseStatus status) {
+        try {
+            if (session.isOpen()) {
+                session.close(status);
+            }
+        } catch (Exception ignore) {
+            // ignore
+        }
+    }
+
+    private record CloseRequest(CloseStatus status) {
+    }
+
+    private final class Outbox implements Runnable {
+
+        private final WebSocketSession session;
+        private final Queue<Object> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger frames = new AtomicInteger();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private Outbox(WebSocketSession session) {
+            this.session = session;
+        }
+
+        boolean offer(TextMessage frame) {
+            if (closed) return false;
+            int size = frame.getPayloadLength();
+            int depth = frames.incrementAndGet();
+            long buffered = bytes.addAndGet(size);
+            // A single frame larger than the byte limit (e.g. a first-page SYNC_RES) is still accepted when
+            // nothing else is waiting; otherwise the client would loop reconnect -> SYNC -> evict.
+            if (depth > maxQueuedFrames || (buffered > maxBufferedBytes && depth > 1)) {
+                frames.decrementAndGet();
+                bytes.addAndGet(-size);
+                overflow();
+                return false;
+            }
+            queue.add(frame);
+            queuedFrames.incrementAndGet();
+            if (closed) {
+                // Raced with discard(): make sure the frame does not stay counted in a dead outbox.
+                drain();
+                return false;
+            }
+            sessionQueueDepth.record(depth);
+            schedule();
+            return true;
+        }
+
+        void offerClose(CloseStatus status) {
+            if (closed) return;
+            queue.add(new CloseRequest(status));
+            schedule();
+        }
+
+        private void overflow() {
+            if (!closeOnOverflow) {
+                droppedFrames.increment();
+                return;
+            }
+            log.info("ws_outbound_evict sessionId={} queued={} bytes={}", session.getId(), frames.get(), bytes.get());
+            evict(CloseStatus.SESSION_NOT_RELIABLE);
+        }
+
+        private void evict(CloseStatus status) {
+            if (closed) return;
+            evictions.increment();
+            discard();
+            writers.execute(() -> closeQuietly(session, status));
+        }
+
+        void discard() {
+            closed = true;
+            drain();
+        }
+
+        private void drain() {
+            Object item;
+            while ((item = queue.poll()) != null) {
+                if (item instanceof TextMessage frame) {
+                    dequeued(frame);
+                    droppedFrames.increment();
+                }
+            }
+        }
+
+        // The only place counters go down: whoever polls a frame off the queue (writer or drain) accounts for it,
+        // so a discard racing the writer cannot count a frame twice.
+        private void dequeued(TextMessage frame) {
+            frames.decrementAndGet();
+            bytes.addAndGet(-frame.getPayloadLength());
+            queuedFrames.decrementAndGet();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    writers.execute(this);
+                } catch (Exception e) {
+                    // Executor shut down (application stopping).
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Object item;
+                while (!closed && (item = queue.poll()) != null) {
+                    if (item instanceof CloseRequest close) {
+                        closed = true;
+                        closeQuietly(session, close.status());
+                        drain();
+                        break;
+                    }
+                    var frame = (TextMessage) item;
+                    dequeued(frame);
+                    if (!session.isOpen()) continue;
+                    try {
+                        session.sendMessage(frame);
+                    } catch (Exception e) {
+                        // A failed write leaves the socket in an unknown state; do not keep feeding it.
+                        evict(CloseStatus.SESSION_NOT_RELIABLE);
+                        break;
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                if (!closed && !queue.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    }
+}
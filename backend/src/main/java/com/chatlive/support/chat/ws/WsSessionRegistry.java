@@ -18,28 +18,132 @@ public class WsSessionRegistry {
     private final Map<String, Set<String>> sessionSubscribedConversationIds = new ConcurrentHashMap<>();
     private final Map<String, Map<String, Integer>> userConvSubCounts = new ConcurrentHashMap<>();
 
+    // Secondary indexes so targeted sends cost O(recipients) instead of O(all live sessions).
+    private final Map<String, Set<String>> tenantAgentSessionIds = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> userSessionIds = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> visitorSessionIdsBySiteIp = new ConcurrentHashMap<>();
+
     public void bind(WebSocketSession session, SessionContext ctx) {
-        sessions.put(session.getId(), ctx);
+        var sessionId = session.getId();
+        var prev = ctx == null ? sessions.remove(sessionId) : sessions.put(sessionId, ctx);
+        // Rebind (e.g. presence session refresh) must not leave stale index entries behind.
+        if (prev != null) {
+            unindex(sessionId, prev);
+        }
+        if (ctx != null) {
+            index(sessionId, ctx);
+        }
     }
 
     public Optional<SessionContext> get(WebSocketSession session) {
         return Optional.ofNullable(sessions.get(session.getId()));
     }
 
+    public Optional<SessionContext> get(String sessionId) {
+        if (sessionId == null) return Optional.empty();
+        return Optional.ofNullable(sessions.get(sessionId));
+    }
+
     public void unbind(WebSocketSession session) {
         var sessionId = session.getId();
         var ctx = sessions.remove(sessionId);
         var userId = (ctx != null && ctx.claims() != null) ? ctx.claims().userId() : null;
+        if (ctx != null) {
+            unindex(sessionId, ctx);
+        }
 
+        // sessionSubscribedConversationIds is the reverse index of convSubscribers, so only the
+        // conversations this session actually joined need to be touched.
         var subscribed = sessionSubscribedConversationIds.remove(sessionId);
         if (subscribed != null && !subscribed.isEmpty()) {
             for (var convId : subscribed) {
                 unsubscribeInternal(convId, sessionId, userId);
             }
         }
+    }
+
+    /**
+     * Session ids of agent/admin connections within a tenant.
+     */
+    public Set<String> getTenantAgentSessionIds(String tenantId) {
+        if (tenantId == null || tenantId.isBlank()) return Collections.emptySet();
+        return tenantAgentSessionIds.getOrDefault(tenantId, Collections.emptySet());
+    }
+
+    /**
+     * Session ids bound to a user id (any role). Callers still verify tenant/role from the context.
+     */
+    public Set<String> getUserSessionIds(String userId) {
+        if (userId == null || userId.isBlank()) return Collections.emptySet();
+        return userSessionIds.getOrDefault(userId, Collections.emptySet());
+    }
+
+    /**
+     * Session ids of visitor connections for a site, coming from the given client ip.
+     */
+    public Set<String> getVisitorSessionIds(String siteId, String ip) {
+        var key = siteIpKey(siteId, ip);
+        if (key == null) return Collections.emptySet();
+        return visitorSessionIdsBySiteIp.getOrDefault(key, Collections.emptySet());
+    }
+
+    private void index(String sessionId, SessionContext ctx) {
+        var claims = ctx.claims();
+        if (claims == null) return;
+
+        if (isAgentRole(claims.role()) && claims.tenantId() != null && !claims.tenantId().isBlank()) {
+            indexAdd(tenantAgentSessionIds, claims.tenantId(), sessionId);
+        }
+        if (claims.userId() != null && !claims.userId().isBlank()) {
+            indexAdd(userSessionIds, claims.userId(), sessionId);
+        }
+        if ("visitor".equals(claims.role())) {
+            var key = siteIpKey(claims.siteId(), ctx.clientIp());
+            if (key != null) {
+                indexAdd(visitorSessionIdsBySiteIp, key, sessionId);
+            }
+        }
+    }
+
+    private void unindex(String sessionId, SessionContext ctx) {
+        var claims = ctx.claims();
+        if (claims == null) return;
+
+        if (claims.tenantId() != null && !claims.tenantId().isBlank()) {
+            indexRemove(tenantAgentSessionIds, claims.tenantId(), sessionId);
+        }
+        if (claims.userId() != null && !claims.userId().isBlank()) {
+            indexRemove(userSessionIds, claims.userId(), sessionId);
+        }
+        var key = siteIpKey(claims.siteId(), ctx.clientIp());
+        if (key != null) {
+            indexRemove(visitorSessionIdsBySiteIp, key, sessionId);
+        }
+    }
+
+    private static void indexAdd(Map<String, Set<String>> index, String key, String sessionId) {
+        index.compute(key, (k, set) -> {
+            var next = set == null ? ConcurrentHashMap.<String>newKeySet() : set;
+            next.add(sessionId);
+            return next;
+        });
+    }
+
+    private static void indexRemove(Map<String, Set<String>> index, String key, String sessionId) {
+        index.computeIfPresent(key, (k, set) -> {
+            set.remove(sessionId);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static boolean isAgentRole(String role) {
+        return "agent".equals(role) || "admin".equals(role);
+    }
 
-        // best-effort cleanup for legacy sessions
-        convSubscribers.values().forEach(set -> set.remove(sessionId));
+    private static String siteIpKey(String siteId, String ip) {
+        if (siteId == null || siteId.isBlank()) return null;
+        if (ip == null || ip.isBlank()) return null;
+        return siteId + "|" + ip.trim().toLowerCase();
     }
 
     public void subscribe(String conversationId, WebSocketSession session) {
@@ -0,0 +1,140 @@
+package com.chatlive.support.chat.ws;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces TYPING frames per (conversation, sender).
+ *
+ * Clients send one frame per keystroke; subscribers only need state changes. Identical states are suppressed,
+ * transitions are rate-limited per sender (a suppressed change is delivered by the next sweep), and a sender that
+ * stops sending while "typing" gets an automatic {@code is_typing=false} after the idle timeout.
+ */
+@Component
+public class WsTypingCoordinator {
+
+    private static final class State {
+        final String conversationId;
+        final String senderRole;
+        final String senderId;
+        boolean desired;
+        boolean emitted;
+        long lastEmitMs;
+        long lastSeenMs;
+
+        State(String conversationId, String senderRole, String senderId) {
+            this.conversationId = conversationId;
+            this.senderRole = senderRole;
+            this.senderId = senderId;
+        }
+    }
+
+    private final WsBroadcaster broadcaster;
+    private final ObjectMapper objectMapper;
+    private final long minIntervalMs;
+    private final long idleTimeoutMs;
+
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+
+    private final Counter emitted;
+    private final Counter suppressed;
+
+    public WsTypingCoordinator(
+            WsBroadcaster broadcaster,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.ws.typing.min-interval-ms:500}") long minIntervalMs,
+            @Value("${app.ws.typing.idle-timeout-ms:6000}") long idleTimeoutMs
+    ) {
+        this.broadcaster = broadcaster;
+        this.objectMapper = objectMapper;
+        this.minIntervalMs = Math.max(0, minIntervalMs);
+        this.idleTimeoutMs = Math.max(1000, idleTimeoutMs);
+
+        // Low-cardinality metrics: do NOT tag by tenant/conversation.
+        this.emitted = Counter.builder("chatlive.ws.typing.emitted")
+                .description("TYPING state changes broadcast to subscribers")
+                .register(meterRegistry);
+        this.suppressed = Counter.builder("chatlive.ws.typing.suppressed")
+                .description("TYPING frames absorbed (duplicate state or rate-limited)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Record a TYPING frame from an already authorized sender; broadcasts only when subscribers must learn a
+     * new state.
+     */
+    public void onTyping(String conversationId, String senderRole, String senderId, boolean isTyping) {
+        if (conversationId == null || senderId == null) return;
+        var now = System.currentTimeMillis();
+        var emit = new boolean[1];
+        states.compute(conversationId + "|" + senderId, (k, state) -> {
+            if (state == null) {
+                state = new State(conversationId, senderRole, senderId);
+            }
+            state.desired = isTyping;
+            state.lastSeenMs = now;
+            if (state.desired != state.emitted && now - state.lastEmitMs >= minIntervalMs) {
+                state.emitted = state.desired;
+                state.lastEmitMs = now;
+                emit[0] = true;
+            }
+            return state;
+        });
+        if (emit[0]) {
+            broadcast(conversationId, senderRole, senderId, isTyping);
+        } else {
+            suppressed.increment();
+        }
+    }
+
+    /**
+     * Flush rate-limited changes, expire idle typers and forget settled senders.
+     */
+    @Scheduled(fixedDelayString = "${app.ws.typing.sweep-interval-ms:1000}")
+    public void sweep() {
+        var now = System.currentTimeMillis();
+        var toEmit = new ArrayList<State>();
+        for (var key : states.keySet()) {
+            states.computeIfPresent(key, (k, state) -> {
+                if (state.emitted && now - state.lastSeenMs >= idleTimeoutMs) {
+                    state.desired = false;
+                }
+                if (state.desired != state.emitted && now - state.lastEmitMs >= minIntervalMs) {
+                    state.emitted = state.desired;
+                    state.lastEmitMs = now;
+                    toEmit.add(state);
+                    return state;
+                }
+                // Nothing pending and not typing: drop the entry after a quiet period.
+                if (!state.emitted && !state.desired && now - state.lastSeenMs >= idleTimeoutMs) {
+                    return null;
+                }
+                return state;
+            });
+        }
+        for (var state : toEmit) {
+            broadcast(state.conversationId, state.senderRole, state.senderId, state.emitted);
+        }
+    }
+
+    private void broadcast(String conversationId, String senderRole, String senderId, boolean isTyping) {
+        ObjectNode evt = objectMapper.createObjectNode();
+        evt.put("type", "TYPING");
+        evt.put("conversation_id", conversationId);
+        evt.put("sender_role", senderRole);
+        evt.put("sender_id", senderId);
+        evt.put("is_typing", isTyping);
+        broadcaster.broadcastToConversation(conversationId, evt);
+        emitted.increment();
+    }
+}
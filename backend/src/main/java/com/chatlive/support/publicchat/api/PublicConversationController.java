@@ -83,13 +83,20 @@ public class PublicConversationController {
             @RequestHeader(value = "Authorization", required = false) String authorization,
             @PathVariable("id") String conversationId,
             @RequestParam(value = "after_msg_id", required = false) String afterMsgId,
+            @RequestParam(value = "after_seq", required = false) Long afterSeq,
+            @RequestParam(value = "before_msg_id", required = false) String beforeMsgId,
+            @RequestParam(value = "before_seq", required = false) Long beforeSeq,
+            @RequestParam(value = "tail", required = false, defaultValue = "false") boolean tail,
             @RequestParam(value = "limit", required = false, defaultValue = "50") int limit
         ) {
         var token = JwtService.extractBearerToken(authorization)
             .orElseThrow(() -> new IllegalArgumentException("missing_token"));
         var claims = jwtService.parse(token);
         var safeLimit = Math.max(1, Math.min(limit, 200));
-        return ApiResponse.ok(publicConversationQueryService.listMessagesPage(claims, conversationId, afterMsgId, safeLimit));
+        if (tail || beforeSeq != null || (beforeMsgId != null && !beforeMsgId.isBlank())) {
+            return ApiResponse.ok(publicConversationQueryService.listMessagesPageBefore(claims, conversationId, beforeMsgId, beforeSeq, safeLimit));
+        }
+        return ApiResponse.ok(publicConversationQueryService.listMessagesPage(claims, conversationId, afterMsgId, afterSeq, safeLimit));
         }
 
         @PostMapping("/conversations/{id}/events/page_view")
@@ -54,10 +54,15 @@ public class PublicConversationQueryService {
         );
     }
 
-    public MessagePage listMessagesPage(JwtClaims claims, String conversationId, String afterMsgId, int limit) {
+    public MessagePage listMessagesPage(JwtClaims claims, String conversationId, String afterMsgId, Long afterSeq, int limit) {
         ensureVisitorClaims(claims);
         // MessageService 内部会做会话访问校验（含 visitor）
-        return messageService.listMessagesPage(claims, conversationId, afterMsgId, limit);
+        return messageService.listMessagesPage(claims, conversationId, afterMsgId, afterSeq, limit);
+    }
+
+    public MessagePage listMessagesPageBefore(JwtClaims claims, String conversationId, String beforeMsgId, Long beforeSeq, int limit) {
+        ensureVisitorClaims(claims);
+        return messageService.listMessagesPageBefore(claims, conversationId, beforeMsgId, beforeSeq, limit);
     }
 
     private static void ensureVisitorClaims(JwtClaims claims) {
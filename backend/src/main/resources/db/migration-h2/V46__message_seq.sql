@@ -0,0 +1,31 @@
+-- Dense per-conversation message sequence numbers.
+-- conversation.last_seq is the allocator (bumped under the row lock in the inserting transaction);
+-- message.seq orders and pages messages; message_state.last_read_seq drives unread counts.
+
+alter table conversation add column if not exists last_seq bigint not null default 0;
+alter table message add column if not exists seq bigint;
+alter table message_state add column if not exists last_read_seq bigint;
+
+-- Backfill in the order messages were listed before: (created_at, id).
+merge into message m
+using (
+    select id, row_number() over (partition by conversation_id order by created_at asc, id asc) as rn
+    from message
+) s
+on m.id = s.id
+when matched then update set seq = s.rn;
+
+update conversation c
+set last_seq = coalesce((select max(m.seq) from message m where m.conversation_id = c.id), 0);
+
+update message_state ms
+set last_read_seq = (
+    select m.seq from message m
+    where m.conversation_id = ms.conversation_id and m.id = ms.last_read_msg_id
+)
+where ms.last_read_seq is null;
+
+-- Every row has a seq now; inserts always allocate one.
+alter table message alter column seq set not null;
+
+create unique index if not exists uq_message_conversation_seq on message(conversation_id, seq);
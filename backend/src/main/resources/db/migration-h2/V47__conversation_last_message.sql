@@ -0,0 +1,17 @@
+-- Denormalized last-message snapshot on conversation, maintained in the message-insert transaction.
+-- Inbox/archive lists read these columns instead of four correlated subqueries against message.
+
+alter table conversation add column if not exists last_message_id varchar(80);
+alter table conversation add column if not exists last_message_sender_type varchar(16);
+alter table conversation add column if not exists last_message_content_type varchar(32);
+alter table conversation add column if not exists last_message_preview varchar(512);
+alter table conversation add column if not exists last_message_created_at timestamp;
+
+-- Backfill from each conversation's highest seq. content is a CLOB here (no JSON operators), so the preview
+-- text is only backfilled on Postgres; new messages fill it in on both.
+update conversation c
+set last_message_id = (select m.id from message m where m.conversation_id = c.id and m.seq = c.last_seq),
+    last_message_sender_type = (select m.sender_type from message m where m.conversation_id = c.id and m.seq = c.last_seq),
+    last_message_content_type = (select m.content_type from message m where m.conversation_id = c.id and m.seq = c.last_seq),
+    last_message_created_at = (select m.created_at from message m where m.conversation_id = c.id and m.seq = c.last_seq)
+where c.last_seq > 0;
@@ -0,0 +1,8 @@
+-- Message retention settings. On Postgres this version also range-partitions message / conversation_event by month;
+-- H2 keeps flat tables (partition maintenance is a no-op there).
+create table if not exists chat_retention_settings (
+    tenant_id varchar(64) primary key,
+    -- Days of message/event history to keep; null = app default, 0 = keep forever.
+    message_retention_days int,
+    updated_at timestamp not null default current_timestamp
+);
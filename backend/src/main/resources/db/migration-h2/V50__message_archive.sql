@@ -0,0 +1,24 @@
+-- Cold archive tier (see the Postgres migration). H2 has no partial indexes.
+
+alter table conversation add column if not exists archived_seq bigint not null default 0;
+
+create index if not exists idx_conversation_archive_candidates on conversation(status, closed_at);
+
+create table if not exists message_archive_segment (
+    id varchar(64) primary key,
+    tenant_id varchar(64) not null,
+    conversation_id varchar(80) not null,
+    bucket varchar(255) not null,
+    object_key varchar(1024) not null,
+    min_seq bigint not null,
+    max_seq bigint not null,
+    message_count int not null,
+    customer_count int not null,
+    event_count int not null,
+    first_created_at timestamp,
+    last_created_at timestamp,
+    compressed_bytes bigint not null,
+    created_at timestamp not null default current_timestamp
+);
+
+create index if not exists idx_message_archive_segment_conv_seq on message_archive_segment(conversation_id, max_seq);
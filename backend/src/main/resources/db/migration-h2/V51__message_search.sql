@@ -0,0 +1,15 @@
+-- Message search (see the Postgres migration). Same ILIKE matching, without the trigram index.
+-- New messages are indexed on insert; no backfill for dev databases.
+
+create table if not exists message_search (
+    message_id varchar(80) primary key,
+    tenant_id varchar(64) not null,
+    conversation_id varchar(80) not null,
+    seq bigint not null,
+    sender_type varchar(32) not null,
+    sender_id varchar(64),
+    created_at timestamp not null,
+    body varchar(4000) not null
+);
+
+create index if not exists idx_message_search_tenant_created on message_search(tenant_id, created_at, message_id);
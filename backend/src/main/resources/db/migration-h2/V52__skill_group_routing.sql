@@ -0,0 +1,7 @@
+-- Queue routing per skill group (see the Postgres migration).
+
+alter table skill_group
+    add column if not exists priority int default 0 not null;
+
+alter table skill_group
+    add column if not exists target_wait_seconds int;
@@ -0,0 +1,3 @@
+-- Bloom filter of the message ids in each archive segment (see the Postgres migration).
+
+alter table message_archive_segment add column if not exists msg_id_bloom varbinary;
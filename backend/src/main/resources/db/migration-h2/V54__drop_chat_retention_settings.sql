@@ -0,0 +1,4 @@
+-- Retention is one deployment-wide value (app.chat.retention.days): partitions hold every tenant's rows, so a
+-- per-tenant setting could never be honoured. Stored values were never applied.
+
+drop table if exists chat_retention_settings;
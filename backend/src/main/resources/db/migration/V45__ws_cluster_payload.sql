@@ -0,0 +1,10 @@
+-- Oversized WS cluster events (NOTIFY payload limit) are stored here and sent by reference.
+-- Rows are short-lived and purged by the publishing nodes.
+
+create table if not exists ws_cluster_payload (
+    id varchar(64) primary key,
+    payload text not null,
+    created_at timestamptz not null default now()
+);
+
+create index if not exists idx_ws_cluster_payload_created_at on ws_cluster_payload(created_at);
@@ -0,0 +1,90 @@
+-- Backfill and constraints for the V46 seq columns. Runs outside a transaction (see the .conf file) so that no
+-- statement here holds a lock for long:
+--   * seq is backfilled a batch of conversations at a time, committing after each batch, in the order messages were
+--     listed before: (created_at, id). Each batch locks its conversation rows, as inserts do, so last_seq and the
+--     numbers handed out stay consistent. A final pass picks up rows that older nodes inserted meanwhile;
+--   * NOT NULL is proven by a CHECK added NOT VALID and then validated (SHARE UPDATE EXCLUSIVE only), which lets
+--     SET NOT NULL skip its scan under the ACCESS EXCLUSIVE lock;
+--   * the unique index is built CONCURRENTLY.
+-- Rerunnable: only rows still without a seq are numbered. A CONCURRENTLY build that fails leaves an INVALID index
+-- behind: drop it before retrying this migration.
+
+do $$
+declare
+    batch_size constant int := 500;
+    last_id text := '';
+    catching_up boolean := false;
+    ids text[];
+begin
+    loop
+        if not catching_up then
+            select array_agg(id order by id) into ids
+            from (
+                select id from conversation
+                where id > last_id
+                order by id
+                limit batch_size
+                for update
+            ) b;
+            if ids is null then
+                -- Messages written by not-yet-upgraded nodes while this ran (a single scan; usually nothing).
+                catching_up := true;
+                continue;
+            end if;
+            last_id := ids[array_length(ids, 1)];
+        else
+            select array_agg(id order by id) into ids
+            from (
+                select c.id from conversation c
+                where c.id in (select conversation_id from message where seq is null limit batch_size)
+                order by c.id
+                for update
+            ) b;
+            exit when ids is null;
+        end if;
+
+        update message m
+        set seq = s.rn
+        from (
+            select id, row_number() over (partition by conversation_id order by created_at asc, id asc) as rn
+            from message
+            where conversation_id = any(ids)
+        ) s
+        where m.id = s.id
+          and m.seq is null;
+
+        update conversation c
+        set last_seq = s.max_seq
+        from (
+            select conversation_id, max(seq) as max_seq
+            from message
+            where conversation_id = any(ids)
+            group by conversation_id
+        ) s
+        where c.id = s.conversation_id
+          and c.last_seq < s.max_seq;
+
+        update message_state ms
+        set last_read_seq = m.seq
+        from message m
+        where ms.conversation_id = any(ids)
+          and m.conversation_id = ms.conversation_id
+          and m.id = ms.last_read_msg_id
+          and ms.last_read_seq is null;
+
+        commit;
+    end loop;
+end $$;
+
+-- Every row has a seq now; inserts always allocate one.
+do $$
+begin
+    if not exists (select 1 from pg_constraint where conrelid = 'message'::regclass and conname = 'message_seq_not_null') then
+        alter table message add constraint message_seq_not_null check (seq is not null) not valid;
+    end if;
+end $$;
+alter table message validate constraint message_seq_not_null;
+alter table message alter column seq set not null;
+alter table message drop constraint if exists message_seq_not_null;
+
+create unique index concurrently if not exists uq_message_conversation_seq on message(conversation_id, seq);
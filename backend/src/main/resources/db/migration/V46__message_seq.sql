@@ -0,0 +1,10 @@
+-- Dense per-conversation message sequence numbers.
+-- conversation.last_seq is the allocator (bumped under the row lock in the inserting transaction);
+-- message.seq orders and pages messages; message_state.last_read_seq drives unread counts.
+--
+-- Only the columns are added here: catalog-only changes (the last_seq default is not written into existing rows).
+-- V46.1 backfills them in batches and then enforces NOT NULL and uniqueness without long locks.
+
+alter table conversation add column if not exists last_seq bigint not null default 0;
+alter table message add column if not exists seq bigint;
+alter table message_state add column if not exists last_read_seq bigint;
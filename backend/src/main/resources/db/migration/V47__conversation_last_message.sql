@@ -0,0 +1,29 @@
+-- Denormalized last-message snapshot on conversation, maintained in the message-insert transaction.
+-- Inbox/archive lists read these columns instead of four correlated subqueries against message.
+
+alter table conversation add column if not exists last_message_id text;
+alter table conversation add column if not exists last_message_sender_type text;
+alter table conversation add column if not exists last_message_content_type text;
+alter table conversation add column if not exists last_message_preview text;
+alter table conversation add column if not exists last_message_created_at timestamptz;
+
+-- Backfill from each conversation's highest seq (same preview rules as the application).
+update conversation c
+set last_message_id = m.id,
+    last_message_sender_type = m.sender_type,
+    last_message_content_type = m.content_type,
+    last_message_preview = left(
+        case
+            when m.content_type = 'text'
+                then trim(regexp_replace(coalesce(m.content_jsonb ->> 'text', ''), '\s+', ' ', 'g'))
+            when coalesce(m.content_jsonb ->> 'filename', '') <> ''
+                then trim('[附件] ' || (m.content_jsonb ->> 'filename'))
+            else '[' || m.content_type || ']'
+        end,
+        500
+    ),
+    last_message_created_at = m.created_at
+from message m
+where m.conversation_id = c.id
+  and m.seq = c.last_seq
+  and c.last_seq > 0;
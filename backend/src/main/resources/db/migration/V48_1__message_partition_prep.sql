@@ -0,0 +1,38 @@
+-- Online preparation for V49, which turns message and conversation_event into partitioned tables and attaches
+-- the existing tables as their first partition. Runs outside a transaction (see the .conf file) so that nothing
+-- here blocks writes for long:
+--   * the indexes the partitioned parents will have are built with CREATE INDEX CONCURRENTLY, so ATTACH adopts
+--     them instead of building them under its ACCESS EXCLUSIVE lock (V49 turns the unique ones into the
+--     partitions' primary keys and renames all of them);
+--   * a CHECK (created_at < cutover) is added NOT VALID and then validated (SHARE UPDATE EXCLUSIVE only), so ATTACH
+--     can prove the partition bound from it and skips its validation scan.
+-- cutover is the next UTC month start, as in V49. Rows at or after it are rejected until V49 runs; both are meant
+-- to run in the same migrate.
+-- A CONCURRENTLY build that fails leaves an INVALID index behind: drop it before retrying this migration.
+
+create unique index concurrently if not exists message_p_before_id_created_at
+    on message(id, created_at);
+create index concurrently if not exists message_p_before_conversation_seq
+    on message(conversation_id, seq);
+create index concurrently if not exists message_p_before_client_msg
+    on message(client_msg_id, sender_id) where client_msg_id is not null;
+
+create unique index concurrently if not exists conversation_event_p_before_id_created_at
+    on conversation_event(id, created_at);
+
+do $$
+declare
+    cutover timestamptz := (date_trunc('month', now() at time zone 'UTC') + interval '1 month') at time zone 'UTC';
+begin
+    if not exists (select 1 from pg_constraint where conrelid = 'message'::regclass and conname = 'message_before_cutover') then
+        execute format('alter table message add constraint message_before_cutover check (created_at < %L) not valid', cutover);
+    end if;
+    if not exists (select 1 from pg_constraint
+                   where conrelid = 'conversation_event'::regclass and conname = 'conversation_event_before_cutover') then
+        execute format('alter table conversation_event add constraint conversation_event_before_cutover check (created_at < %L) not valid',
+                cutover);
+    end if;
+end $$;
+
+alter table message validate constraint message_before_cutover;
+alter table conversation_event validate constraint conversation_event_before_cutover;
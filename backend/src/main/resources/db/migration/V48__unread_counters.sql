@@ -0,0 +1,31 @@
+-- Materialized unread counters.
+-- conversation.customer_msg_count counts customer messages (bumped in the message-insert transaction);
+-- message_state.read_customer_count is that count as of the user's read marker.
+-- unread(conversation, user) = customer_msg_count - read_customer_count, O(1) per inbox row.
+
+alter table conversation add column if not exists customer_msg_count bigint not null default 0;
+alter table message_state add column if not exists read_customer_count bigint;
+
+-- Covers the count of customer messages up to a read marker older than the newest message (index-only scan).
+create index if not exists idx_message_conversation_customer_seq on message(conversation_id, seq)
+    where sender_type = 'customer';
+
+update conversation c
+set customer_msg_count = s.cnt
+from (
+    select conversation_id, count(1) as cnt
+    from message
+    where sender_type = 'customer'
+    group by conversation_id
+) s
+where c.id = s.conversation_id;
+
+update message_state ms
+set read_customer_count = (
+    select count(1)
+    from message m
+    where m.conversation_id = ms.conversation_id
+      and m.sender_type = 'customer'
+      and m.seq <= ms.last_read_seq
+)
+where ms.last_read_seq is not null;
@@ -0,0 +1,104 @@
+-- Monthly range partitions for message and conversation_event, plus per-tenant retention settings.
+--
+-- The existing tables are attached as one partition each ("<table>_p_before_YYYYMM": everything before the next
+-- month), so no rows are copied. V48.1 built their indexes and validated their range beforehand, so everything
+-- below is catalog-only: ATTACH adopts those indexes and skips the scan. Monthly partitions "<table>_pYYYYMM" ([month, month + 1)) are created ahead of
+-- time by MessagePartitionMaintenance, which also detaches/drops partitions past the retention horizon.
+--
+-- Partitioned tables can only enforce uniqueness together with the partition key, so:
+--   * primary keys become (id, created_at);
+--   * (conversation_id, seq) and (client_msg_id, sender_id) become plain indexes: seq is allocated under the
+--     conversation row lock, and client_msg_id dedupe now runs under that same lock (MessageRepository);
+--   * attachment.linked_msg_id loses its foreign key to message.
+
+create table if not exists chat_retention_settings (
+    tenant_id varchar(64) primary key,
+    -- Days of message/event history to keep; null = app default, 0 = keep forever.
+    message_retention_days int,
+    updated_at timestamp not null default current_timestamp
+);
+
+alter table attachment drop constraint if exists attachment_linked_msg_id_fkey;
+
+alter table message drop constraint if exists message_pkey;
+-- Replaced by the plain V48.1 indexes on the same columns.
+drop index if exists uq_message_client_msg;
+drop index if exists uq_message_conversation_seq;
+-- Superseded by (conversation_id, seq) paging.
+drop index if exists idx_message_conversation_id_id;
+
+alter table conversation_event drop constraint if exists conversation_event_pkey;
+
+do $$
+declare
+    cutover timestamp := date_trunc('month', now() at time zone 'UTC') + interval '1 month';
+    suffix text := to_char(cutover, 'YYYYMM');
+    m timestamp;
+begin
+    -- ATTACH only adopts a unique index for the parent's primary key if it backs the partition's own primary key.
+    execute format('alter table message add constraint %I primary key using index message_p_before_id_created_at',
+            'message_p_before_' || suffix || '_pkey');
+    execute format('alter table conversation_event add constraint %I primary key using index conversation_event_p_before_id_created_at',
+            'conversation_event_p_before_' || suffix || '_pkey');
+
+    execute format('alter table message rename to %I', 'message_p_before_' || suffix);
+    execute format('alter table conversation_event rename to %I', 'conversation_event_p_before_' || suffix);
+    -- Same definitions as the parents' indexes, so ATTACH adopts them instead of building others; renamed to
+    -- free the parents' names.
+    execute format('alter index idx_conversation_event_tenant_conv_created rename to %I',
+            'conversation_event_p_before_' || suffix || '_tenant_conv_created');
+    execute format('alter index idx_message_conversation_customer_seq rename to %I',
+            'message_p_before_' || suffix || '_conversation_customer_seq');
+    execute format('alter index message_p_before_conversation_seq rename to %I',
+            'message_p_before_' || suffix || '_conversation_seq');
+    execute format('alter index message_p_before_client_msg rename to %I',
+            'message_p_before_' || suffix || '_client_msg');
+
+    create table message (
+        id text not null,
+        tenant_id text not null references tenant(id),
+        conversation_id text not null references conversation(id),
+        sender_type text not null check (sender_type in ('customer','agent','system')),
+        sender_id text not null,
+        client_msg_id text,
+        content_type text not null,
+        content_jsonb jsonb not null,
+        created_at timestamptz not null default now(),
+        seq bigint not null,
+        primary key (id, created_at)
+    ) partition by range (created_at);
+
+    create index idx_message_conversation_seq on message(conversation_id, seq);
+    create index idx_message_client_msg on message(client_msg_id, sender_id) where client_msg_id is not null;
+    create index idx_message_conversation_customer_seq on message(conversation_id, seq) where sender_type = 'customer';
+
+    create table conversation_event (
+        id text not null,
+        tenant_id text not null references tenant(id),
+        conversation_id text not null references conversation(id),
+        event_key text not null,
+        data_jsonb jsonb not null,
+        created_at timestamptz not null default now(),
+        primary key (id, created_at)
+    ) partition by range (created_at);
+
+    create index idx_conversation_event_tenant_conv_created on conversation_event(tenant_id, conversation_id, created_at);
+
+    -- Bounds are UTC month starts. The validated V48.1 checks (created_at < a bound no later than this one) imply
+    -- the partition constraint, so neither ATTACH scans its table; they are redundant afterwards.
+    execute format('alter table message attach partition %I for values from (minvalue) to (%L)',
+            'message_p_before_' || suffix, (cutover at time zone 'UTC'));
+    execute format('alter table conversation_event attach partition %I for values from (minvalue) to (%L)',
+            'conversation_event_p_before_' || suffix, (cutover at time zone 'UTC'));
+    execute format('alter table %I drop constraint message_before_cutover', 'message_p_before_' || suffix);
+    execute format('alter table %I drop constraint conversation_event_before_cutover', 'conversation_event_p_before_' || suffix);
+
+    m := cutover;
+    while m < cutover + interval '3 months' loop
+        execute format('create table if not exists %I partition of message for values from (%L) to (%L)',
+                'message_p' || to_char(m, 'YYYYMM'), (m at time zone 'UTC'), ((m + interval '1 month') at time zone 'UTC'));
+        execute format('create table if not exists %I partition of conversation_event for values from (%L) to (%L)',
+                'conversation_event_p' || to_char(m, 'YYYYMM'), (m at time zone 'UTC'), ((m + interval '1 month') at time zone 'UTC'));
+        m := m + interval '1 month';
+    end loop;
+end $$;
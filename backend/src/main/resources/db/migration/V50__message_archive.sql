@@ -0,0 +1,30 @@
+-- Cold archive tier: history of long-closed conversations moves to gzip NDJSON segments in object storage
+-- (MessageArchiver). Rows with seq <= conversation.archived_seq live only in the segments indexed below; reads
+-- stitch both sources together (MessageHistoryReader).
+
+alter table conversation add column if not exists archived_seq bigint not null default 0;
+
+create index if not exists idx_conversation_archive_candidates
+    on conversation(closed_at)
+    where status = 'closed' and last_seq > archived_seq;
+
+create table if not exists message_archive_segment (
+    id text primary key,
+    tenant_id text not null,
+    conversation_id text not null,
+    bucket text not null,
+    object_key text not null,
+    min_seq bigint not null,
+    max_seq bigint not null,
+    message_count int not null,
+    -- Customer messages in the segment: keeps read markers' customer counts exact without the rows.
+    customer_count int not null,
+    event_count int not null,
+    first_created_at timestamptz,
+    last_created_at timestamptz,
+    compressed_bytes bigint not null,
+    created_at timestamptz not null default now()
+);
+
+create index if not exists idx_message_archive_segment_conv_seq
+    on message_archive_segment(conversation_id, max_seq);
@@ -0,0 +1,35 @@
+-- Message search. message_search holds the searchable text of each message (text body or attachment
+-- filename), written in the same transaction as the message (MessageSearchRepository). It is kept apart from the
+-- partitioned message table so archived history (V50) stays searchable; partition retention prunes it.
+--
+-- Matching is case-insensitive substring (ILIKE) served by a trigram index: unlike word-based tsvector parsing it
+-- also finds words inside unsegmented CJK text. Terms shorter than three characters have no trigram and fall back
+-- to filtering the tenant's rows.
+
+create extension if not exists pg_trgm;
+
+create table if not exists message_search (
+    message_id text primary key,
+    tenant_id text not null,
+    conversation_id text not null,
+    seq bigint not null,
+    sender_type text not null,
+    sender_id text,
+    created_at timestamptz not null,
+    body text not null
+);
+
+create index if not exists idx_message_search_body_trgm on message_search using gin (body gin_trgm_ops);
+-- Keyset order of the result pages; also serves date-range scans.
+create index if not exists idx_message_search_tenant_created on message_search(tenant_id, created_at desc, message_id desc);
+
+insert into message_search(message_id, tenant_id, conversation_id, seq, sender_type, sender_id, created_at, body)
+select id, tenant_id, conversation_id, seq, sender_type, sender_id, created_at, left(body, 4000)
+from (
+    select m.*,
+           case when m.content_type = 'text' then m.content_jsonb ->> 'text' else m.content_jsonb ->> 'filename' end as body
+    from message m
+    where m.content_type in ('text', 'file')
+) src
+where coalesce(btrim(body), '') <> ''
+on conflict (message_id) do nothing;
@@ -0,0 +1,15 @@
+-- Queue routing per skill group (see AssignmentEngine): queued conversations are served by due time,
+-- created_at + target wait, pulled earlier by the group's priority. NULL target wait = app default.
+
+alter table skill_group
+    add column if not exists priority int not null default 0;
+
+alter table skill_group
+    add column if not exists target_wait_seconds int;
+
+alter table skill_group
+    drop constraint if exists ck_skill_group_routing;
+
+alter table skill_group
+    add constraint ck_skill_group_routing
+        check (priority between 0 and 10 and (target_wait_seconds is null or target_wait_seconds between 1 and 86400));
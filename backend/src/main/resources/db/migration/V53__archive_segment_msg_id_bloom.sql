@@ -0,0 +1,5 @@
+-- Bloom filter of the message ids in each archive segment (MessageIdBloom), so resolving a msg_id cursor or read
+-- marker downloads only the segment that holds it, and an unknown id downloads nothing.
+-- Segments written before this have none and are still scanned.
+
+alter table message_archive_segment add column if not exists msg_id_bloom bytea;
@@ -0,0 +1,75 @@
+package com.chatlive.support.chat.repo;
+
+import com.chatlive.support.bootstrap.ChatLiveApplication;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The assigning UPDATEs enforce max_concurrent themselves: another node's in-memory loads may be behind.
+ */
+@SpringBootTest(classes = ChatLiveApplication.class)
+@ActiveProfiles("dev")
+class ConversationAssignCapacityTest {
+
+    @Autowired
+    ConversationRepository conversationRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void direct_assign_stops_at_max_concurrent() {
+        var agent = insertAgent(1);
+        var first = insertQueued();
+        var second = insertQueued();
+
+        assertEquals(1, conversationRepository.tryAssignToAgent("t1", first, agent));
+        assertEquals(0, conversationRepository.tryAssignToAgent("t1", second, agent));
+        assertEquals("queued", jdbcTemplate.queryForObject("select status from conversation where id = ?", String.class, second));
+    }
+
+    @Test
+    void batch_counts_its_own_earlier_assignments() {
+        var agent = insertAgent(2);
+        var held = insertQueued();
+        assertEquals(1, conversationRepository.tryAssignToAgent("t1", held, agent));
+        var a = insertQueued();
+        var b = insertQueued();
+
+        var won = conversationRepository.tryAssignBatch("t1", List.of(
+                new ConversationRepository.AgentAssignment(a, agent),
+                new ConversationRepository.AgentAssignment(b, agent)));
+
+        assertEquals(1, won.size());
+        assertTrue(Set.of(a, b).containsAll(won));
+    }
+
+    private String insertAgent(int maxConcurrent) {
+        var id = "u_cap_" + UUID.randomUUID().toString().substring(0, 8);
+        jdbcTemplate.update("""
+                insert into user_account(id, tenant_id, type, username, password_hash, status)
+                values (?, 't1', 'agent', ?, 'x', 'active')
+                """, id, id);
+        jdbcTemplate.update("insert into agent_profile(user_id, status, max_concurrent) values (?, 'offline', ?)", id, maxConcurrent);
+        return id;
+    }
+
+    private String insertQueued() {
+        var id = "c_" + UUID.randomUUID();
+        jdbcTemplate.update("""
+                insert into conversation(id, tenant_id, customer_user_id, channel, status, created_at)
+                values (?, 't1', 'u_cust1', 'web', 'queued', current_timestamp)
+                """, id);
+        return id;
+    }
+}
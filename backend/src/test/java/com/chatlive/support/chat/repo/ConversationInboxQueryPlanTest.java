@@ -0,0 +1,99 @@
+package com.chatlive.support.chat.repo;
+
+import com.chatlive.support.bootstrap.ChatLiveApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Inbox lists read the last-message snapshot and unread counters from {@code conversation}/{@code message_state};
+ * their plans must not scan {@code message}.
+ */
+@SpringBootTest(classes = ChatLiveApplication.class)
+@ActiveProfiles("dev")
+class ConversationInboxQueryPlanTest {
+
+    private record Captured(String sql, Object[] args) {
+    }
+
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    ConversationAccessCache accessCache;
+
+    // Table reference in an H2 plan ("public"."message" "m"), not message_state.
+    private static final Pattern MESSAGE_TABLE = Pattern.compile("(?i)[\\s.\"]message[\"\\s]");
+    private static final Pattern CONVERSATION_TABLE = Pattern.compile("(?i)[\\s.\"]conversation[\"\\s]");
+
+    private final List<Captured> captured = new ArrayList<>();
+    private ConversationRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        captured.clear();
+        var recording = new JdbcTemplate(dataSource) {
+            @Override
+            public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+                captured.add(new Captured(sql, args));
+                return super.query(sql, rowMapper, args);
+            }
+        };
+        repository = new ConversationRepository(recording, objectMapper, accessCache);
+    }
+
+    @Test
+    void list_inbox_does_not_touch_message() {
+        repository.listInbox("t1", null);
+        repository.listInbox("t1", "queued");
+        assertPlansAvoidMessageTable();
+    }
+
+    @Test
+    void list_by_customer_does_not_touch_message() {
+        repository.listByCustomer("t1", "u_cust1", null);
+        repository.listByCustomer("t1", "u_cust1", "queued");
+        assertPlansAvoidMessageTable();
+    }
+
+    @Test
+    void agent_lists_do_not_touch_message() {
+        repository.listVisibleToAgent("t1", "u_admin", Set.of(), null, false);
+        repository.listVisibleToAgent("t1", "u_admin", Set.of(), "assigned", true);
+        repository.listClosedForAgent("t1", "u_admin", false);
+        assertPlansAvoidMessageTable();
+    }
+
+    private void assertPlansAvoidMessageTable() {
+        assertFalse(captured.isEmpty());
+        for (var q : captured) {
+            var plan = jdbcTemplate.queryForList("explain " + q.sql(), q.args()).stream()
+                    .flatMap(row -> row.values().stream())
+                    .map(String::valueOf)
+                    .collect(Collectors.joining("\n"));
+            assertTrue(CONVERSATION_TABLE.matcher(plan).find(), plan);
+            assertFalse(MESSAGE_TABLE.matcher(plan).find(), plan);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.chatlive.support.chat.repo;
+
+import com.chatlive.support.bootstrap.ChatLiveApplication;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The queue snapshot comes back in the engine's due-time order, so a truncated load keeps what is served first.
+ */
+@SpringBootTest(classes = ChatLiveApplication.class)
+@ActiveProfiles("dev")
+class ConversationQueueOrderTest {
+
+    @Autowired
+    ConversationRepository conversationRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void queued_rows_come_earliest_due_first() {
+        var suffix = UUID.randomUUID().toString().substring(0, 8);
+        var vip = "g_vip_" + suffix;
+        var slow = "g_slow_" + suffix;
+        jdbcTemplate.update("insert into skill_group(id, tenant_id, name, priority, target_wait_seconds) values (?, 't1', ?, 10, 60)",
+                vip, vip);
+        jdbcTemplate.update("insert into skill_group(id, tenant_id, name, priority, target_wait_seconds) values (?, 't1', ?, 0, 86400)",
+                slow, slow);
+
+        var base = Instant.parse("2020-01-01T00:00:00Z");
+        // due = created + min(target, 600) - priority * 30
+        var plain = insertQueued(null, base);                       // +120
+        var boosted = insertQueued(vip, base.plusSeconds(200));     // 200 + 60 - 300 = -40
+        var capped = insertQueued(slow, base.plusSeconds(10));      // 10 + 600 = 610 (not 86410)
+        var later = insertQueued(null, base.plusSeconds(1000));     // 1120
+
+        var mine = List.of(plain, boosted, capped, later);
+        var order = conversationRepository.listQueuedForAssignment("t1", 10_000, 120, 600, 30).stream()
+                .map(ConversationRepository.QueuedConversationRow::id)
+                .filter(mine::contains)
+                .toList();
+
+        assertEquals(List.of(boosted, plain, capped, later), order);
+    }
+
+    private String insertQueued(String skillGroupId, Instant createdAt) {
+        var id = "c_" + UUID.randomUUID();
+        jdbcTemplate.update("""
+                insert into conversation(id, tenant_id, customer_user_id, channel, status, skill_group_id, created_at)
+                values (?, 't1', 'u_cust1', 'web', 'queued', ?, ?)
+                """, id, skillGroupId, Timestamp.from(createdAt));
+        return id;
+    }
+}
@@ -0,0 +1,69 @@
+package com.chatlive.support.chat.repo;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Retirement DDL must not take ACCESS EXCLUSIVE on the partitioned parent.
+ */
+class MessagePartitionRepositoryTest {
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final MessagePartitionRepository repository = new MessagePartitionRepository(jdbc);
+    private final MessagePartitionRepository.Partition partition =
+            new MessagePartitionRepository.Partition("message", "message_p202401", YearMonth.of(2024, 2));
+
+    @Test
+    void detach_runs_concurrently() {
+        pending(List.of(false));
+
+        repository.detachPartition(partition);
+
+        verify(jdbc).execute("alter table message detach partition message_p202401 concurrently");
+    }
+
+    @Test
+    void interrupted_concurrent_detach_is_finalized() {
+        pending(List.of(true));
+
+        repository.detachPartition(partition);
+
+        verify(jdbc).execute("alter table message detach partition message_p202401 finalize");
+        verify(jdbc, never()).execute("alter table message detach partition message_p202401 concurrently");
+    }
+
+    @Test
+    void drop_detaches_before_dropping() {
+        pending(List.of(false));
+
+        repository.dropPartition(partition);
+
+        InOrder order = inOrder(jdbc);
+        order.verify(jdbc).execute("alter table message detach partition message_p202401 concurrently");
+        order.verify(jdbc).execute("drop table if exists message_p202401");
+    }
+
+    @Test
+    void names_that_listPartitions_would_not_produce_are_rejected() {
+        var foreign = new MessagePartitionRepository.Partition("message", "message; drop table tenant", YearMonth.of(2024, 2));
+        assertThrows(IllegalArgumentException.class, () -> repository.detachPartition(foreign));
+        verify(jdbc, never()).execute(anyString());
+    }
+
+    private void pending(List<Boolean> rows) {
+        when(jdbc.queryForList(anyString(), eq(Boolean.class), eq("message_p202401"), eq("message"))).thenReturn(rows);
+    }
+}
@@ -0,0 +1,150 @@
+package com.chatlive.support.chat.repo;
+
+import com.chatlive.support.bootstrap.ChatLiveApplication;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(classes = ChatLiveApplication.class)
+@ActiveProfiles("dev")
+class MessageRepositoryTest {
+
+    @Autowired
+    MessageRepository messageRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    private String conversationId;
+
+    @BeforeEach
+    void setUp() {
+        conversationId = "c_" + UUID.randomUUID();
+        jdbcTemplate.update("""
+                insert into conversation(id, tenant_id, customer_user_id, channel, status)
+                values (?, 't1', 'u_cust1', 'web', 'open')
+                """, conversationId);
+    }
+
+    private List<MessageRepository.PendingInsert> batch(int size) {
+        var out = new ArrayList<MessageRepository.PendingInsert>();
+        for (int i = 0; i < size; i++) {
+            out.add(new MessageRepository.PendingInsert("t1", conversationId, "customer", "u_cust1", null, "text",
+                    "{\"text\":\"" + i + "\"}"));
+        }
+        return out;
+    }
+
+    @Test
+    void batch_rows_get_strictly_increasing_created_at_in_seq_order() {
+        transactionTemplate.executeWithoutResult(s -> messageRepository.insertMessages(batch(20)));
+        transactionTemplate.executeWithoutResult(s -> messageRepository.insertMessages(batch(20)));
+
+        var stored = jdbcTemplate.query(
+                "select created_at, seq from message where conversation_id = ? order by seq",
+                (rs, i) -> rs.getTimestamp("created_at"), conversationId);
+        assertEquals(40, stored.size());
+        for (int i = 1; i < stored.size(); i++) {
+            Timestamp prev = stored.get(i - 1);
+            assertTrue(stored.get(i).after(prev), "created_at must increase with seq at " + i);
+        }
+    }
+
+    @Test
+    void seq_reads_tolerate_node_clock_skew_against_the_conversation_row() {
+        transactionTemplate.executeWithoutResult(s -> messageRepository.insertMessages(batch(3)));
+        // The writing node's clock ran an hour behind the database's when the conversation was created.
+        jdbcTemplate.update("update conversation set created_at = current_timestamp + interval '1' hour where id = ?", conversationId);
+
+        assertEquals(3, messageRepository.listMessagesAfterSeq("t1", conversationId, 0, 10).size());
+        assertEquals(3, messageRepository.listMessagesBeforeSeq("t1", conversationId, null, 10).size());
+        var first = messageRepository.listMessagesAfterSeq("t1", conversationId, 0, 1).getFirst();
+        assertEquals(1L, messageRepository.findMarker("t1", conversationId, first.id()).orElseThrow().seq());
+        assertEquals(3, messageRepository.deleteThroughSeq("t1", conversationId, 3));
+    }
+
+    @Test
+    void concurrent_batches_get_gap_free_ordered_seqs() throws Exception {
+        int threads = 8;
+        int batchesPerThread = 10;
+        int batchSize = 5;
+        var pool = Executors.newFixedThreadPool(threads);
+        var start = new CountDownLatch(1);
+        var futures = new ArrayList<Future<List<List<Long>>>>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                var seqsPerBatch = new ArrayList<List<Long>>();
+                for (int b = 0; b < batchesPerThread; b++) {
+                    var results = transactionTemplate.execute(s -> messageRepository.insertMessages(batch(batchSize)));
+                    seqsPerBatch.add(results.stream().map(r -> r.row().seq()).toList());
+                }
+                return seqsPerBatch;
+            }));
+        }
+        start.countDown();
+
+        var all = new ArrayList<Long>();
+        for (var f : futures) {
+            for (var seqs : f.get(60, TimeUnit.SECONDS)) {
+                // A batch gets one contiguous, ascending run.
+                for (int i = 1; i < seqs.size(); i++) {
+                    assertEquals(seqs.get(i - 1) + 1, seqs.get(i));
+                }
+                all.addAll(seqs);
+            }
+        }
+        pool.shutdown();
+
+        int total = threads * batchesPerThread * batchSize;
+        Collections.sort(all);
+        assertEquals(LongStream.rangeClosed(1, total).boxed().toList(), all);
+        assertEquals(total, jdbcTemplate.queryForObject(
+                "select last_seq from conversation where id = ?", Long.class, conversationId));
+        assertEquals(total, jdbcTemplate.queryForObject(
+                "select count(distinct seq) from message where conversation_id = ?", Long.class, conversationId));
+    }
+
+    @Test
+    void rolled_back_batch_gives_its_seqs_back() {
+        transactionTemplate.executeWithoutResult(s -> messageRepository.insertMessages(batch(3)));
+        transactionTemplate.executeWithoutResult(s -> {
+            messageRepository.insertMessages(batch(3));
+            s.setRollbackOnly();
+        });
+        var results = transactionTemplate.execute(s -> messageRepository.insertMessages(batch(2)));
+
+        assertEquals(List.of(4L, 5L), results.stream().map(r -> r.row().seq()).toList());
+    }
+
+    @Test
+    void seq_is_required() {
+        assertThrows(DataIntegrityViolationException.class, () -> jdbcTemplate.update("""
+                insert into message(id, tenant_id, conversation_id, sender_type, sender_id, content_type, content_jsonb)
+                values ('m_' || random_uuid(), 't1', ?, 'customer', 'u_cust1', 'text', '{}')
+                """, conversationId));
+    }
+}
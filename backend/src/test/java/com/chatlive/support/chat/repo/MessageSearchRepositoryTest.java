@@ -0,0 +1,55 @@
+package com.chatlive.support.chat.repo;
+
+import com.chatlive.support.bootstrap.ChatLiveApplication;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(classes = ChatLiveApplication.class)
+@ActiveProfiles("dev")
+class MessageSearchRepositoryTest {
+
+    @Autowired
+    MessageSearchRepository searchRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void every_term_matches_as_a_case_insensitive_substring() {
+        var conversationId = "c_" + UUID.randomUUID();
+        jdbcTemplate.update("""
+                insert into conversation(id, tenant_id, customer_user_id, channel, status)
+                values (?, 't1', 'u_cust1', 'web', 'open')
+                """, conversationId);
+        var marker = UUID.randomUUID().toString().substring(0, 8);
+        searchRepository.indexMessages(List.of(
+                row(conversationId, 1, "我想申请退款，订单号是42 " + marker),
+                row(conversationId, 2, "Refund for ORDER 42 " + marker),
+                row(conversationId, 3, "nothing here " + marker)
+        ));
+
+        assertEquals(List.of(1L), seqs(List.of("退款", marker)));
+        assertEquals(List.of(2L), seqs(List.of("refund", "order", marker)));
+        assertEquals(List.of(2L, 1L), seqs(List.of("42", marker)));
+    }
+
+    private List<Long> seqs(List<String> terms) {
+        var filter = new MessageSearchRepository.SearchFilter("t1", terms, null, null, null, null, null, null,
+                null, null, 10);
+        return searchRepository.search(filter).stream().map(MessageSearchRepository.SearchRow::seq).toList();
+    }
+
+    private static MessageRepository.MessageRow row(String conversationId, long seq, String text) {
+        return new MessageRepository.MessageRow("m_" + UUID.randomUUID(), "t1", conversationId, "customer", "u_cust1",
+                null, "text", "{\"text\":\"" + text + "\"}", Instant.now().plusMillis(seq), seq);
+    }
+}
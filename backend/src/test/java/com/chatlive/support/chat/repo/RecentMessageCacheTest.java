@@ -0,0 +1,76 @@
+package com.chatlive.support.chat.repo;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecentMessageCacheTest {
+
+    private static RecentMessageCache cache(int window) {
+        return new RecentMessageCache(new SimpleMeterRegistry(), true, 1000, window, 600);
+    }
+
+    private static MessageRepository.MessageRow row(long seq) {
+        return new MessageRepository.MessageRow("m" + seq, "t1", "c1", "customer", "u1", null, "text",
+                "{\"text\":\"" + seq + "\"}", Instant.now(), seq);
+    }
+
+    private static List<MessageRepository.MessageRow> rows(long from, long to) {
+        var out = new ArrayList<MessageRepository.MessageRow>();
+        for (long s = from; s <= to; s++) out.add(row(s));
+        return out;
+    }
+
+    private static List<Long> seqs(List<MessageRepository.MessageRow> rows) {
+        return rows.stream().map(MessageRepository.MessageRow::seq).toList();
+    }
+
+    @Test
+    void serves_the_window_part_of_a_page_and_misses_cursors_below_it() {
+        var cache = cache(10);
+        cache.seedNewest("t1", "c1", cache.generation("t1", "c1"), rows(1, 30));
+
+        var after = cache.after("t1", "c1", 25, 100).orElseThrow();
+        assertEquals(List.of(26L, 27L, 28L, 29L, 30L), after.stream().map(MessageRepository.MessageRow::seq).toList());
+        assertTrue(cache.after("t1", "c1", 30, 100).orElseThrow().isEmpty());
+        // Cursor older than the window: the window's rows, the caller reads 6..20 from the database.
+        assertEquals(seqs(rows(21, 30)), seqs(cache.after("t1", "c1", 5, 100).orElseThrow()));
+
+        var tail = cache.before("t1", "c1", null, 3).orElseThrow();
+        assertEquals(List.of(28L, 29L, 30L), tail.stream().map(MessageRepository.MessageRow::seq).toList());
+        // A tail page longer than the window (SYNC asks for 201): the newest part, 21..30.
+        assertEquals(seqs(rows(21, 30)), seqs(cache.before("t1", "c1", null, 201).orElseThrow()));
+        assertEquals(List.of(21L), seqs(cache.before("t1", "c1", 22L, 5).orElseThrow()));
+        assertTrue(cache.before("t1", "c1", 21L, 5).isEmpty());
+        assertEquals(27L, cache.seqOf("t1", "c1", "m27").orElseThrow());
+    }
+
+    @Test
+    void appends_in_order_and_drops_the_window_on_a_gap() {
+        var cache = cache(10);
+        cache.seedNewest("t1", "c1", cache.generation("t1", "c1"), rows(1, 3));
+
+        cache.appendMessages(List.of(row(4)));
+        assertEquals(1, cache.after("t1", "c1", 3, 10).orElseThrow().size());
+
+        cache.appendMessages(List.of(row(6)));
+        assertTrue(cache.after("t1", "c1", 3, 10).isEmpty());
+    }
+
+    @Test
+    void seed_that_raced_with_an_append_is_discarded() {
+        var cache = cache(10);
+        var generation = cache.generation("t1", "c1");
+        // Committed while the seed read was in flight; there is no window to append to yet.
+        cache.appendMessages(List.of(row(4)));
+        cache.seedNewest("t1", "c1", generation, rows(1, 3));
+
+        assertTrue(cache.after("t1", "c1", 0, 10).isEmpty());
+    }
+}
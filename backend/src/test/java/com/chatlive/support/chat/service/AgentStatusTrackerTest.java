@@ -0,0 +1,84 @@
+package com.chatlive.support.chat.service;
+
+import com.chatlive.support.chat.repo.AgentProfileRepository;
+import com.chatlive.support.chat.repo.ConversationRepository;
+import com.chatlive.support.chat.ws.WsBroadcaster;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AgentStatusTrackerTest {
+
+    private final AgentProfileRepository profiles = mock(AgentProfileRepository.class);
+    private final ConversationRepository conversations = mock(ConversationRepository.class);
+    private final AgentPresenceService presence = mock(AgentPresenceService.class);
+    private final WsBroadcaster broadcaster = mock(WsBroadcaster.class);
+    private AgentStatusTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new AgentStatusTracker(profiles, conversations, presence, broadcaster, new ObjectMapper(),
+                new SimpleMeterRegistry());
+        when(profiles.findByUserIds(eq("t1"), anyList())).thenReturn(Map.of(
+                "a1", new AgentProfileRepository.AgentProfileRow("a1", "online", 2),
+                "a2", new AgentProfileRepository.AgentProfileRow("a2", "online", 2),
+                "a3", new AgentProfileRepository.AgentProfileRow("a3", "away", 2)));
+        when(conversations.countActiveAssignedByAgents(eq("t1"), anyList())).thenReturn(Map.of("a1", 2));
+        when(presence.hasActiveSession(anyString())).thenReturn(true);
+    }
+
+    @Test
+    void flush_loads_profiles_once_per_tenant_and_batches_the_transitions() {
+        tracker.markDirty("t1", "a1");
+        tracker.markDirty("t1", "a2");
+        tracker.markDirty("t1", "a3");
+
+        tracker.flush();
+
+        verify(profiles, times(1)).findByUserIds(eq("t1"), anyList());
+        verify(profiles, never()).findByUserId(anyString());
+        var frame = ArgumentCaptor.forClass(ArrayNode.class);
+        verify(broadcaster).broadcastAgentStatusBatch(eq("t1"), frame.capture());
+        assertEquals(3, frame.getValue().size());
+        assertEquals("busy", tracker.find("t1", "a1").orElseThrow().effectiveStatus());
+        assertEquals("away", tracker.find("t1", "a3").orElseThrow().effectiveStatus());
+    }
+
+    @Test
+    void reconcile_broadcasts_only_what_changed() {
+        tracker.markDirty("t1", "a1");
+        tracker.markDirty("t1", "a2");
+        tracker.flush();
+
+        // Nothing changed: no frame at all.
+        tracker.reconcile();
+        verify(broadcaster, times(1)).broadcastAgentStatusBatch(eq("t1"), any());
+        verify(broadcaster, never()).broadcastAgentStatus(anyString(), any());
+
+        // A change nobody marked (e.g. made on another node) is picked up and sent alone.
+        when(presence.hasActiveSession("a2")).thenReturn(false);
+        tracker.reconcile();
+        var event = ArgumentCaptor.forClass(ObjectNode.class);
+        verify(broadcaster).broadcastAgentStatus(eq("t1"), event.capture());
+        assertEquals("a2", event.getValue().path("user_id").asText());
+        assertEquals("offline", event.getValue().path("status").asText());
+        verify(broadcaster, times(1)).broadcastAgentStatusBatch(eq("t1"), any());
+    }
+}
@@ -0,0 +1,41 @@
+package com.chatlive.support.chat.service;
+
+import com.chatlive.support.chat.repo.ConversationRepository;
+import com.chatlive.support.chat.repo.PgAdvisoryLockRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The sweep visits only tenants with something queued, so it neither loads nor keeps alive idle tenants.
+ */
+class AssignmentSchedulerTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void only_tenants_with_queued_conversations_are_drained() {
+        var conversations = mock(ConversationRepository.class);
+        var locks = mock(PgAdvisoryLockRepository.class);
+        var service = mock(AssignmentService.class);
+        var tx = mock(TransactionTemplate.class);
+        when(conversations.listTenantIdsWithQueued()).thenReturn(List.of("t2"));
+        when(locks.tryXactLock(anyString())).thenReturn(true);
+        when(tx.execute(any())).thenAnswer(inv -> ((TransactionCallback<Object>) inv.getArgument(0)).doInTransaction(null));
+
+        new AssignmentScheduler(conversations, locks, service, tx, 50).scanAndAssignQueued();
+
+        verify(service).tryAssignFromQueue("t2", 50);
+        verify(service, never()).tryAssignFromQueue(eq("t1"), anyInt());
+    }
+}
@@ -0,0 +1,59 @@
+package com.chatlive.support.chat.service;
+
+import com.chatlive.support.chat.repo.ConversationEventRepository;
+import com.chatlive.support.chat.repo.MessageRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MessageArchiveStoreTest {
+
+    @Test
+    void segment_round_trips_messages_and_events() {
+        var objectMapper = new ObjectMapper();
+        var createdAt = Instant.parse("2026-01-02T03:04:05.123456Z");
+        var messages = List.of(
+                new MessageRepository.MessageRow("m1", "t1", "c1", "customer", "u1", "cm1", "text",
+                        "{\"text\":\"hi \\\"there\\\"\\n\"}", createdAt, 1),
+                new MessageRepository.MessageRow("m2", "t1", "c1", "agent", "a1", null, "file",
+                        "{\"attachment_id\":\"att1\"}", createdAt.plusSeconds(1), 2)
+        );
+        var events = List.of(
+                new ConversationEventRepository.ConversationEventRawRow("e1", "closed", createdAt.plusSeconds(2), "{\"by\":\"a1\"}")
+        );
+
+        var bytes = MessageArchiveStore.encode(objectMapper, messages, events);
+        var decoded = MessageArchiveStore.decode(objectMapper, "t1", "c1", bytes);
+
+        assertEquals(messages, decoded.messages());
+        assertEquals(events, decoded.events());
+        assertNull(decoded.messages().get(1).clientMsgId());
+    }
+
+    @Test
+    void malformed_stored_json_is_archived_as_an_empty_object() {
+        var objectMapper = new ObjectMapper();
+        var createdAt = Instant.parse("2026-01-02T03:04:05Z");
+        var messages = List.of(
+                new MessageRepository.MessageRow("m1", "t1", "c1", "customer", "u1", null, "text",
+                        "{\"text\":\"cut off", createdAt, 1),
+                new MessageRepository.MessageRow("m2", "t1", "c1", "customer", "u1", null, "text",
+                        "{\"text\":\"ok\"}", createdAt, 2)
+        );
+        var events = List.of(
+                new ConversationEventRepository.ConversationEventRawRow("e1", "closed", createdAt, "{\"a\":1} trailing")
+        );
+
+        var decoded = MessageArchiveStore.decode(objectMapper, "t1", "c1",
+                MessageArchiveStore.encode(objectMapper, messages, events));
+
+        assertEquals("{}", decoded.messages().get(0).contentJson());
+        assertEquals("{\"text\":\"ok\"}", decoded.messages().get(1).contentJson());
+        assertEquals("{}", decoded.events().get(0).dataJson());
+    }
+}
@@ -0,0 +1,110 @@
+package com.chatlive.support.chat.service;
+
+import com.chatlive.support.bootstrap.ChatLiveApplication;
+import com.chatlive.support.chat.repo.MessageArchiveSegmentRepository;
+import com.chatlive.support.chat.repo.MessageRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Archive round trip against an in-memory object store: upload, the index/delete transaction, and read-through.
+ */
+@SpringBootTest(classes = ChatLiveApplication.class, properties = "app.chat.archive.enabled=true")
+@ActiveProfiles("dev")
+@Import(UnreadCounterTest.ArchiveStorage.class)
+class MessageArchiverTest {
+
+    @Autowired
+    MessageArchiver messageArchiver;
+
+    @Autowired
+    MessageRepository messageRepository;
+
+    @Autowired
+    MessageArchiveSegmentRepository segmentRepository;
+
+    @Autowired
+    MessageHistoryReader historyReader;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    S3Client s3Client;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private double segmentReads() {
+        return meterRegistry.counter("chatlive.chat.archive.segment_cache.hits").count()
+                + meterRegistry.counter("chatlive.chat.archive.segment_cache.misses").count();
+    }
+
+    @Test
+    void archives_closed_history_into_segments_and_reads_it_back() {
+        var conversationId = "c_" + UUID.randomUUID();
+        jdbcTemplate.update("""
+                insert into conversation(id, tenant_id, customer_user_id, channel, status)
+                values (?, 't1', 'u_cust1', 'web', 'open')
+                """, conversationId);
+        var batch = new ArrayList<MessageRepository.PendingInsert>();
+        for (int i = 1; i <= 25; i++) {
+            batch.add(new MessageRepository.PendingInsert("t1", conversationId, i % 2 == 0 ? "agent" : "customer",
+                    i % 2 == 0 ? "u_admin" : "u_cust1", null, "text", "{\"text\":\"" + i + "\"}"));
+        }
+        var ids = transactionTemplate.execute(s -> messageRepository.insertMessages(batch)).stream()
+                .map(r -> r.row().id())
+                .toList();
+        jdbcTemplate.update("""
+                update conversation set status = 'closed', closed_at = dateadd('DAY', -40, current_timestamp)
+                where id = ?
+                """, conversationId);
+
+        messageArchiver.archive();
+
+        // Upload + index + delete from the hot table, in one transaction per segment.
+        var segments = segmentRepository.listByConversation("t1", conversationId);
+        assertEquals(1, segments.size());
+        var segment = segments.getFirst();
+        assertEquals(1, segment.minSeq());
+        assertEquals(25, segment.maxSeq());
+        assertEquals(13, segment.customerCount());
+        var store = (InMemoryS3Client) s3Client;
+        assertTrue(store.objects.containsKey(segment.bucket() + "/" + segment.objectKey()));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "select count(1) from message where conversation_id = ?", Integer.class, conversationId));
+        assertEquals(25L, jdbcTemplate.queryForObject(
+                "select archived_seq from conversation where id = ?", Long.class, conversationId));
+
+        // Ids the segment does not hold are rejected without reading it (bar the filter's ~1% false positives).
+        double reads = segmentReads();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(historyReader.findSeq("t1", conversationId, 25, "m_" + UUID.randomUUID()).isEmpty());
+        }
+        assertTrue(segmentReads() - reads <= 3, "segment reads: " + (segmentReads() - reads));
+
+        assertEquals(7L, historyReader.findSeq("t1", conversationId, 25, ids.get(6)).orElseThrow());
+        var read = historyReader.listAfterSeq("t1", conversationId, 25, 0, 100);
+        assertEquals(LongStream.rangeClosed(1, 25).boxed().toList(), read.stream().map(MessageRepository.MessageRow::seq).toList());
+        assertEquals(ids, read.stream().map(MessageRepository.MessageRow::id).toList());
+        assertEquals(List.of(), historyReader.listAfterSeq("t1", conversationId, 25, 25, 100));
+    }
+}
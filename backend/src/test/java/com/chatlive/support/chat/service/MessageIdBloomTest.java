@@ -0,0 +1,25 @@
+package com.chatlive.support.chat.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageIdBloomTest {
+
+    @Test
+    void holds_every_id_and_rarely_matches_others() {
+        var ids = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) ids.add("m_in_" + i);
+        var bloom = MessageIdBloom.of(ids);
+
+        for (var id : ids) assertTrue(MessageIdBloom.mightContain(bloom, id), id);
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (MessageIdBloom.mightContain(bloom, "m_out_" + i)) falsePositives++;
+        }
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+        assertTrue(MessageIdBloom.mightContain(null, "m_any"));
+    }
+}
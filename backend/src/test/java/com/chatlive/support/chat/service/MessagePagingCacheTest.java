@@ -0,0 +1,92 @@
+package com.chatlive.support.chat.service;
+
+import com.chatlive.support.auth.service.jwt.JwtClaims;
+import com.chatlive.support.bootstrap.ChatLiveApplication;
+import com.chatlive.support.chat.repo.MessageRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pages longer than the recent-message window take its newest part and read only the older rest.
+ */
+@SpringBootTest(classes = ChatLiveApplication.class, properties = "app.chat.recent-cache.window=16")
+@ActiveProfiles("dev")
+class MessagePagingCacheTest {
+
+    private static final JwtClaims CUSTOMER = new JwtClaims("u_cust1", "t1", "customer", "customer1", null);
+
+    @Autowired
+    MessageService messageService;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    private String conversationId;
+
+    @BeforeEach
+    void setUp() {
+        conversationId = "c_" + UUID.randomUUID();
+        jdbcTemplate.update("""
+                insert into conversation(id, tenant_id, customer_user_id, channel, status)
+                values (?, 't1', 'u_cust1', 'web', 'queued')
+                """, conversationId);
+        // From seq 1 on, so the window builds up from the appends alone.
+        for (int i = 1; i <= 40; i++) {
+            messageService.sendText(CUSTOMER, conversationId, null, "m" + i);
+        }
+    }
+
+    @Test
+    void tail_page_longer_than_the_window_is_complete() {
+        var hits = hits();
+
+        var page = messageService.listMessageRowsPageBefore(CUSTOMER, conversationId, null, null, 200);
+
+        assertEquals(range(1, 40), seqs(page.rows()));
+        assertFalse(page.hasMoreBefore());
+        assertEquals(hits + 1, hits());
+
+        var shorter = messageService.listMessageRowsPageBefore(CUSTOMER, conversationId, null, null, 30);
+        assertEquals(range(11, 40), seqs(shorter.rows()));
+        assertTrue(shorter.hasMoreBefore());
+    }
+
+    @Test
+    void forward_page_from_a_cursor_below_the_window_is_complete() {
+        var page = messageService.listMessageRowsPage(CUSTOMER, conversationId, null, 5L, 200);
+        assertEquals(range(6, 40), seqs(page.rows()));
+        assertFalse(page.hasMore());
+
+        var limited = messageService.listMessageRowsPage(CUSTOMER, conversationId, null, 5L, 20);
+        assertEquals(range(6, 25), seqs(limited.rows()));
+        assertTrue(limited.hasMore());
+    }
+
+    private double hits() {
+        return meterRegistry.counter("chatlive.chat.recent_cache.hits").count();
+    }
+
+    private static List<Long> seqs(List<MessageRepository.MessageRow> rows) {
+        return rows.stream().map(MessageRepository.MessageRow::seq).toList();
+    }
+
+    private static List<Long> range(long from, long to) {
+        return LongStream.rangeClosed(from, to).boxed().toList();
+    }
+}
@@ -0,0 +1,87 @@
+package com.chatlive.support.chat.service;
+
+import com.chatlive.support.chat.repo.MessagePartitionRepository;
+import com.chatlive.support.chat.repo.MessageSearchRepository;
+import com.chatlive.support.chat.repo.PgAdvisoryLockRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Whole partitions are retired once their range is older than the deployment-wide retention.
+ */
+class MessagePartitionMaintenanceTest {
+
+    private final MessagePartitionRepository partitions = mock(MessagePartitionRepository.class);
+    private final MessageSearchRepository search = mock(MessageSearchRepository.class);
+    private final PgAdvisoryLockRepository locks = mock(PgAdvisoryLockRepository.class);
+
+    private final YearMonth now = YearMonth.now(ZoneOffset.UTC);
+    private final MessagePartitionRepository.Partition before = partition("message_p_before_" + suffix(now.minusMonths(11)), now.minusMonths(11));
+    private final MessagePartitionRepository.Partition fiveMonthsAgo = monthly(now.minusMonths(5));
+    private final MessagePartitionRepository.Partition lastMonth = monthly(now.minusMonths(1));
+    private final MessagePartitionRepository.Partition current = monthly(now);
+
+    @BeforeEach
+    void setUp() {
+        when(locks.tryLock("message_partitions")).thenReturn(true);
+        when(partitions.isPartitioned("message")).thenReturn(true);
+        when(partitions.listPartitions("message")).thenReturn(List.of(before, fiveMonthsAgo, lastMonth, current));
+    }
+
+    @Test
+    void partitions_past_the_retention_are_retired() {
+        maintenance(90, "detach").maintain();
+
+        verify(partitions).detachPartition(before);
+        verify(partitions).detachPartition(fiveMonthsAgo);
+        verify(partitions, never()).detachPartition(lastMonth);
+        verify(partitions, never()).detachPartition(current);
+        verify(partitions, never()).dropPartition(any());
+    }
+
+    @Test
+    void zero_keeps_everything() {
+        maintenance(0, "detach").maintain();
+
+        verify(partitions, never()).detachPartition(any());
+        verify(search, never()).deleteCreatedBefore(any());
+    }
+
+    @Test
+    void drop_mode_drops_retired_partitions() {
+        // Longer than any month, so last month's partition is never due.
+        maintenance(35, "drop").maintain();
+
+        verify(partitions).dropPartition(before);
+        verify(partitions).dropPartition(fiveMonthsAgo);
+        verify(partitions, never()).detachPartition(any());
+    }
+
+    private MessagePartitionMaintenance maintenance(int retentionDays, String mode) {
+        return new MessagePartitionMaintenance(partitions, search, locks, new SimpleMeterRegistry(),
+                true, 3, retentionDays, mode);
+    }
+
+    private static MessagePartitionRepository.Partition monthly(YearMonth month) {
+        return partition("message_p" + suffix(month), month.plusMonths(1));
+    }
+
+    private static MessagePartitionRepository.Partition partition(String name, YearMonth upperBoundExclusive) {
+        return new MessagePartitionRepository.Partition("message", name, upperBoundExclusive);
+    }
+
+    private static String suffix(YearMonth month) {
+        return String.format("%04d%02d", month.getYear(), month.getMonthValue());
+    }
+}
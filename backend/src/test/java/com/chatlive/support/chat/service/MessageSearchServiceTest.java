@@ -0,0 +1,53 @@
+package com.chatlive.support.chat.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageSearchServiceTest {
+
+    @Test
+    void terms_are_lower_cased_words_without_query_syntax() {
+        assertEquals(List.of("refund", "order", "42"), MessageSearchService.parseTerms("Refund & order:* #42 refund"));
+        assertTrue(MessageSearchService.parseTerms(" !&| ").isEmpty());
+    }
+
+    @Test
+    void snippet_is_cut_around_the_first_match_with_highlight_ranges() {
+        var body = "x".repeat(300) + " Refund requested for order 42 " + "y".repeat(300);
+        var snippet = MessageSearchService.snippet(body, List.of("refund", "order"));
+
+        assertTrue(snippet.text().startsWith("…"));
+        assertTrue(snippet.text().endsWith("…"));
+        assertEquals(2, snippet.highlights().size());
+        var first = snippet.highlights().getFirst();
+        assertEquals("Refund", snippet.text().substring(first[0], first[1]));
+        var second = snippet.highlights().get(1);
+        assertEquals("order", snippet.text().substring(second[0], second[1]));
+    }
+
+    @Test
+    void short_bodies_are_returned_whole() {
+        var snippet = MessageSearchService.snippet("Where is my order?", List.of("order"));
+
+        assertEquals("Where is my order?", snippet.text());
+        assertArrayEquals(new int[]{12, 17}, snippet.highlights().getFirst());
+    }
+
+    @Test
+    void cjk_terms_match_and_highlight_inside_unsegmented_text() {
+        var terms = MessageSearchService.parseTerms("退款，订单");
+        assertEquals(List.of("退款", "订单"), terms);
+
+        var snippet = MessageSearchService.snippet("我想申请退款，订单号是42", terms);
+        assertEquals(2, snippet.highlights().size());
+        var first = snippet.highlights().getFirst();
+        assertEquals("退款", snippet.text().substring(first[0], first[1]));
+        var second = snippet.highlights().get(1);
+        assertEquals("订单", snippet.text().substring(second[0], second[1]));
+    }
+}
@@ -0,0 +1,31 @@
+package com.chatlive.support.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Stored content is embedded into responses verbatim, so only a well-formed object may pass.
+ */
+class MessageServiceContentTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void well_formed_content_passes_through_unchanged() {
+        var json = "{\"text\":\"你好 \\\"hi\\\"\",\"meta\":{\"a\":[1,2,{\"b\":null}]}}";
+        assertEquals(json, MessageService.contentJsonOrEmpty(objectMapper, json));
+    }
+
+    @Test
+    void malformed_or_non_object_legacy_content_becomes_an_empty_object() {
+        assertEquals("{}", MessageService.contentJsonOrEmpty(objectMapper, null));
+        assertEquals("{}", MessageService.contentJsonOrEmpty(objectMapper, " "));
+        assertEquals("{}", MessageService.contentJsonOrEmpty(objectMapper, "plain text from an old import"));
+        assertEquals("{}", MessageService.contentJsonOrEmpty(objectMapper, "{\"text\":\"cut off"));
+        assertEquals("{}", MessageService.contentJsonOrEmpty(objectMapper, "{\"text\":\"a\"} trailing"));
+        assertEquals("{}", MessageService.contentJsonOrEmpty(objectMapper, "[1,2]"));
+        assertEquals("{}", MessageService.contentJsonOrEmpty(objectMapper, "{\"a\":1}{\"b\":2}"));
+    }
+}
@@ -0,0 +1,124 @@
+package com.chatlive.support.chat.service;
+
+import com.chatlive.support.auth.service.jwt.JwtClaims;
+import com.chatlive.support.bootstrap.ChatLiveApplication;
+import com.chatlive.support.chat.repo.ConversationAccessCache;
+import com.chatlive.support.chat.repo.ConversationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The materialized unread counter ({@code conversation.customer_msg_count - message_state.read_customer_count})
+ * through send, read and archive.
+ */
+@SpringBootTest(classes = ChatLiveApplication.class, properties = "app.chat.archive.enabled=true")
+@ActiveProfiles("dev")
+@Import(UnreadCounterTest.ArchiveStorage.class)
+class UnreadCounterTest {
+
+    @TestConfiguration
+    static class ArchiveStorage {
+        @Bean
+        S3Client s3Client() {
+            return new InMemoryS3Client();
+        }
+    }
+
+    private static final JwtClaims CUSTOMER = new JwtClaims("u_cust1", "t1", "customer", "customer1", null);
+    private static final JwtClaims AGENT = new JwtClaims("u_admin", "t1", "agent", "admin", null);
+
+    @Autowired
+    MessageService messageService;
+
+    @Autowired
+    MessageArchiver messageArchiver;
+
+    @Autowired
+    ConversationRepository conversationRepository;
+
+    @Autowired
+    ConversationAccessCache accessCache;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    private String conversationId;
+
+    @BeforeEach
+    void setUp() {
+        conversationId = "c_" + UUID.randomUUID();
+        jdbcTemplate.update("""
+                insert into conversation(id, tenant_id, customer_user_id, channel, status, assigned_agent_user_id)
+                values (?, 't1', 'u_cust1', 'web', 'assigned', 'u_admin')
+                """, conversationId);
+    }
+
+    private String send(JwtClaims claims, String text) {
+        return messageService.sendText(claims, conversationId, null, text).item().id();
+    }
+
+    private long unread() {
+        return conversationRepository.findUnreadCount("t1", conversationId, AGENT.userId());
+    }
+
+    @Test
+    void counts_customer_messages_after_the_read_marker() {
+        send(CUSTOMER, "one");
+        var second = send(CUSTOMER, "two");
+        var third = send(CUSTOMER, "three");
+        assertEquals(3, unread());
+
+        // Older marker: counted up to it.
+        messageService.markRead(AGENT, conversationId, second);
+        assertEquals(1, unread());
+
+        // Marker at the newest message: copied from the conversation counter.
+        messageService.markRead(AGENT, conversationId, third);
+        assertEquals(0, unread());
+
+        // Agent replies are never unread for the agent.
+        var reply = send(AGENT, "reply");
+        assertEquals(0, unread());
+
+        send(CUSTOMER, "four");
+        assertEquals(1, unread());
+        messageService.markRead(AGENT, conversationId, reply);
+        assertEquals(1, unread());
+    }
+
+    @Test
+    void archived_history_keeps_the_counter() {
+        send(CUSTOMER, "one");
+        var second = send(CUSTOMER, "two");
+        send(AGENT, "reply");
+        var last = send(CUSTOMER, "three");
+        messageService.markRead(AGENT, conversationId, second);
+        assertEquals(1, unread());
+
+        jdbcTemplate.update("""
+                update conversation set status = 'closed', closed_at = dateadd('DAY', -40, current_timestamp)
+                where id = ?
+                """, conversationId);
+        accessCache.invalidate("t1", conversationId);
+        messageArchiver.archive();
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "select count(1) from message where conversation_id = ?", Integer.class, conversationId));
+
+        assertEquals(1, unread());
+        // The marker now resolves through the archive segment.
+        messageService.markRead(AGENT, conversationId, last);
+        assertEquals(0, unread());
+    }
+}
@@ -0,0 +1,418 @@
+package com.chatlive.support.chat.service.assignment;
+
+import com.chatlive.support.chat.repo.AgentProfileRepository;
+import com.chatlive.support.chat.repo.AgentSessionRepository;
+import com.chatlive.support.chat.repo.AssignCursorRepository;
+import com.chatlive.support.chat.repo.ConversationRepository;
+import com.chatlive.support.chat.repo.SkillGroupRepository;
+import com.chatlive.support.chat.service.AgentPresenceService;
+import com.chatlive.support.chat.ws.WsClusterBus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AssignmentEngineTest {
+
+    private static AssignmentEngine engine(
+            List<AgentProfileRepository.AssignableAgentRow> agents,
+            List<SkillGroupRepository.SkillGroupMemberRow> members,
+            List<ConversationRepository.ActiveAssignmentRow> assignments
+    ) {
+        return engine(agents, members, assignments, List.of(), List.of(), new RoundRobinAssignmentStrategy());
+    }
+
+    private static AssignmentEngine engine(
+            List<AgentProfileRepository.AssignableAgentRow> agents,
+            List<SkillGroupRepository.SkillGroupMemberRow> members,
+            List<ConversationRepository.ActiveAssignmentRow> assignments,
+            List<ConversationRepository.QueuedConversationRow> queue,
+            List<SkillGroupRepository.GroupRoutingRow> routing,
+            AssignmentStrategy strategy
+    ) {
+        var convRepo = mock(ConversationRepository.class);
+        when(convRepo.listActiveAssignments("t1")).thenReturn(assignments);
+        when(convRepo.listQueuedForAssignment(eq("t1"), anyInt(), anyLong(), anyLong(), anyLong())).thenReturn(queue);
+        var presence = mock(AgentPresenceService.class);
+        when(presence.hasActiveSession(anyString())).thenReturn(true);
+        return engine(agents, members, routing, convRepo, presence, strategy, 5000);
+    }
+
+    private static AssignmentEngine engine(
+            List<AgentProfileRepository.AssignableAgentRow> agents,
+            List<SkillGroupRepository.SkillGroupMemberRow> members,
+            List<SkillGroupRepository.GroupRoutingRow> routing,
+            ConversationRepository convRepo,
+            AgentPresenceService presence,
+            AssignmentStrategy strategy,
+            int maxQueued
+    ) {
+        var agentRepo = mock(AgentProfileRepository.class);
+        when(agentRepo.listAssignableAgents("t1")).thenReturn(agents);
+        for (var agent : agents) {
+            when(agentRepo.findAssignableAgent("t1", agent.userId())).thenReturn(Optional.of(agent));
+        }
+        var groupRepo = mock(SkillGroupRepository.class);
+        when(groupRepo.listMembersByTenant("t1")).thenReturn(members);
+        when(groupRepo.listRoutingByTenant("t1")).thenReturn(routing);
+        var cursorRepo = mock(AssignCursorRepository.class);
+        when(cursorRepo.listLastAgents("t1")).thenReturn(Map.of());
+        AssignmentStrategyResolver resolver = ctx -> strategy;
+        return new AssignmentEngine(agentRepo, groupRepo, convRepo, cursorRepo, presence, resolver,
+                mock(WsClusterBus.class), new SimpleMeterRegistry(), 900, 120, 600, 30, maxQueued);
+    }
+
+    // Runs the block as if inside a transaction, then completes it with the given status.
+    private static void inTransaction(int completionStatus, Runnable block) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            block.run();
+            var synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            if (completionStatus == TransactionSynchronization.STATUS_COMMITTED) {
+                synchronizations.forEach(TransactionSynchronization::afterCommit);
+            }
+            synchronizations.forEach(sync -> sync.afterCompletion(completionStatus));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static List<String> ids(AssignmentEngine.QueuePlan plan) {
+        return plan.reservations().stream().map(AssignmentEngine.Reservation::conversationId).toList();
+    }
+
+    private static AgentProfileRepository.AssignableAgentRow agent(String id, int maxConcurrent) {
+        return new AgentProfileRepository.AssignableAgentRow(id, "agent", "online", maxConcurrent, id);
+    }
+
+    private static ConversationRepository.QueuedConversationRow queued(String id, String groupId) {
+        return queued(id, groupId, 0);
+    }
+
+    private static ConversationRepository.QueuedConversationRow queued(String id, String groupId, long createdAtSeconds) {
+        return new ConversationRepository.QueuedConversationRow(id, groupId, Instant.ofEpochSecond(createdAtSeconds));
+    }
+
+    @Test
+    void plans_the_queue_against_remaining_capacity() {
+        var engine = engine(
+                List.of(agent("a1", 2), agent("a2", 1)),
+                List.of(),
+                List.of(new ConversationRepository.ActiveAssignmentRow("old", "a1")),
+                List.of(queued("c1", null, 0), queued("c2", null, 1), queued("c3", null, 2)),
+                List.of(),
+                new RoundRobinAssignmentStrategy()
+        );
+
+        var plan = engine.reserveQueue("t1", null, 50).reservations();
+
+        assertEquals(List.of("c1", "c2"), plan.stream().map(AssignmentEngine.Reservation::conversationId).toList());
+        assertEquals(List.of("a1", "a2"), plan.stream().map(AssignmentEngine.Reservation::agentUserId).toList());
+        assertNull(engine.reserve("t1", "c3", null, null));
+    }
+
+    @Test
+    void group_without_online_members_falls_back_to_the_tenant_pool() {
+        var engine = engine(
+                List.of(agent("a1", 1), agent("a2", 1)),
+                List.of(new SkillGroupRepository.SkillGroupMemberRow("g1", "a2", 0)),
+                List.of(),
+                List.of(queued("c1", "g1", 0), queued("c2", "g1", 1), queued("c3", "g2", 2)),
+                List.of(),
+                new RoundRobinAssignmentStrategy()
+        );
+
+        var plan = engine.reserveQueue("t1", null, 50).reservations();
+
+        // g1 fills a2; once a2 is full the group still has an online member, so c2 stays queued.
+        assertEquals(2, plan.size());
+        assertEquals("a2", plan.get(0).agentUserId());
+        assertEquals("c3", plan.get(1).conversationId());
+        assertEquals(AssignmentEngine.DEFAULT_GROUP_KEY, plan.get(1).groupKey());
+    }
+
+    @Test
+    void queue_is_served_by_due_time_not_arrival() {
+        // vip: 60s target, priority 2 (30s each) -> due at created+0; default groups: created+120s.
+        var engine = engine(
+                List.of(agent("a1", 2)),
+                List.of(),
+                List.of(),
+                List.of(queued("c1", null, 0), queued("c2", "g1", 10), queued("c3", "vip", 90)),
+                List.of(new SkillGroupRepository.GroupRoutingRow("vip", 2, 60)),
+                new RoundRobinAssignmentStrategy()
+        );
+
+        assertEquals(List.of("c3", "c1"), ids(engine.reserveQueue("t1", null, 50)));
+    }
+
+    @Test
+    void priority_boost_is_bounded_so_old_conversations_still_come_first() {
+        // Priority 10 pulls "hot" forward by at most 300s; c1 has waited longer than that.
+        var engine = engine(
+                List.of(agent("a1", 1)),
+                List.of(),
+                List.of(),
+                List.of(queued("c1", null, 0), queued("c2", "hot", 400)),
+                List.of(new SkillGroupRepository.GroupRoutingRow("hot", 99, null)),
+                new RoundRobinAssignmentStrategy()
+        );
+
+        assertEquals(List.of("c1"), ids(engine.reserveQueue("t1", null, 50)));
+    }
+
+    @Test
+    void group_drain_only_takes_that_group_and_assigned_entries_leave_the_queue() {
+        var engine = engine(
+                List.of(agent("a1", 3)),
+                List.of(new SkillGroupRepository.SkillGroupMemberRow("g1", "a1", 0)),
+                List.of(),
+                List.of(queued("c1", null, 0), queued("c2", "g1", 1), queued("c3", "g1", 2)),
+                List.of(),
+                new RoundRobinAssignmentStrategy()
+        );
+
+        var plan = engine.reserveQueue("t1", "g1", 1);
+        assertEquals(List.of("c2"), ids(plan));
+
+        engine.assigned("t1", "c2", "a1");
+        assertEquals(List.of("c1", "c3"),
+                engine.queuedForAgent("t1", "a1", 10).stream().map(ConversationRepository.QueuedConversationRow::id).toList());
+    }
+
+    @Test
+    void weighted_strategy_gets_group_member_weights() {
+        var engine = engine(
+                List.of(agent("a1", 10), agent("a2", 10)),
+                List.of(new SkillGroupRepository.SkillGroupMemberRow("g1", "a1", 1),
+                        new SkillGroupRepository.SkillGroupMemberRow("g1", "a2", 3)),
+                List.of(),
+                List.of(queued("c1", "g1", 0), queued("c2", "g1", 1), queued("c3", "g1", 2), queued("c4", "g1", 3)),
+                List.of(),
+                new WeightedAssignmentStrategy()
+        );
+
+        var plan = engine.reserveQueue("t1", null, 50).reservations();
+
+        var perAgent = new java.util.HashMap<String, Integer>();
+        plan.forEach(r -> perAgent.merge(r.agentUserId(), 1, Integer::sum));
+        assertEquals(Map.of("a1", 1, "a2", 3), perAgent);
+    }
+
+    @Test
+    void cancelled_reservation_frees_the_capacity() {
+        var engine = engine(List.of(agent("a1", 1)), List.of(), List.of());
+
+        var first = engine.reserve("t1", "c1", null, null);
+        assertNull(engine.reserve("t1", "c2", null, null));
+
+        engine.cancel(first);
+        assertEquals("a1", engine.reserve("t1", "c2", null, null).agentUserId());
+    }
+
+    @Test
+    void release_reports_freed_capacity() {
+        var engine = engine(List.of(agent("a1", 1)), List.of(), List.of());
+        var freed = new java.util.ArrayList<String>();
+        engine.subscribeCapacity(freed::add);
+
+        engine.reserve("t1", "c1", null, null);
+        assertFalse(engine.hasFreeCapacity("t1", null));
+        engine.assigned("t1", "c1", "a1");
+        assertTrue(freed.isEmpty());
+
+        engine.released("t1", "c1");
+        assertEquals(List.of("t1"), freed);
+        assertTrue(engine.hasFreeCapacity("t1", null));
+    }
+
+    @Test
+    void loads_follow_assign_transfer_and_release_without_reloading() {
+        var convRepo = mock(ConversationRepository.class);
+        when(convRepo.listActiveAssignments("t1")).thenReturn(List.of());
+        var presence = mock(AgentPresenceService.class);
+        when(presence.hasActiveSession(anyString())).thenReturn(true);
+        var engine = engine(List.of(agent("a1", 1), agent("a2", 1)), List.of(), List.of(), convRepo, presence,
+                new RoundRobinAssignmentStrategy(), 5000);
+        var freed = new java.util.ArrayList<String>();
+        engine.subscribeCapacity(freed::add);
+        // Loads the tenant; changes to tenants not held here are left to the next load.
+        assertTrue(engine.hasFreeCapacity("t1", null));
+
+        engine.assigned("t1", "c1", "a1");
+        engine.assigned("t1", "c2", "a2");
+        assertFalse(engine.hasFreeCapacity("t1", null));
+
+        // Transfer a1 -> a2: a1 is free again, a2 now holds two.
+        engine.assigned("t1", "c1", "a2");
+        assertEquals(List.of("t1"), freed);
+        assertEquals("a1", engine.reserve("t1", "c3", null, null).agentUserId());
+        assertNull(engine.reserve("t1", "c4", null, null));
+
+        engine.released("t1", "c2");
+        assertEquals(List.of("t1", "t1"), freed);
+        assertFalse(engine.hasFreeCapacity("t1", null));
+        engine.released("t1", "c1");
+        assertTrue(engine.hasFreeCapacity("t1", null));
+
+        // All of the above came from memory: the assignments were read once, at load.
+        verify(convRepo, times(1)).listActiveAssignments("t1");
+    }
+
+    @Test
+    void rolled_back_changes_are_reverted_and_queue_entries_restored() {
+        var engine = engine(
+                List.of(agent("a1", 1)),
+                List.of(),
+                List.of(),
+                List.of(queued("c1", null, 0)),
+                List.of(),
+                new RoundRobinAssignmentStrategy()
+        );
+
+        // A reservation whose transaction rolls back gives the capacity back.
+        inTransaction(TransactionSynchronization.STATUS_ROLLED_BACK, () -> {
+            assertEquals("a1", engine.reserve("t1", "c9", null, null).agentUserId());
+            assertFalse(engine.hasFreeCapacity("t1", null));
+        });
+        assertTrue(engine.hasFreeCapacity("t1", null));
+
+        // An assignment out of the queue that rolls back puts the entry back in the queue.
+        inTransaction(TransactionSynchronization.STATUS_ROLLED_BACK, () -> {
+            engine.assigned("t1", "c1", "a1");
+            assertTrue(engine.queuedForAgent("t1", "a1", 10).isEmpty());
+        });
+        assertTrue(engine.hasFreeCapacity("t1", null));
+        assertEquals(List.of("c1"),
+                engine.queuedForAgent("t1", "a1", 10).stream().map(ConversationRepository.QueuedConversationRow::id).toList());
+
+        // The committed one sticks.
+        inTransaction(TransactionSynchronization.STATUS_COMMITTED, () -> engine.assigned("t1", "c1", "a1"));
+        assertFalse(engine.hasFreeCapacity("t1", null));
+        assertTrue(engine.queuedForAgent("t1", "a1", 10).isEmpty());
+    }
+
+    @Test
+    void reconcile_snapshot_that_raced_a_change_is_not_applied() {
+        var convRepo = mock(ConversationRepository.class);
+        var presence = mock(AgentPresenceService.class);
+        when(presence.hasActiveSession(anyString())).thenReturn(true);
+        var engineRef = new AtomicReference<AssignmentEngine>();
+        var raceOnce = new AtomicBoolean(false);
+        // The snapshot never contains c1; on the racing read, c1 gets assigned while the snapshot is being taken.
+        when(convRepo.listActiveAssignments("t1")).thenAnswer(inv -> {
+            if (raceOnce.compareAndSet(true, false)) {
+                engineRef.get().assigned("t1", "c1", "a1");
+            }
+            return List.of();
+        });
+        var engine = engine(List.of(agent("a1", 1)), List.of(), List.of(), convRepo, presence,
+                new RoundRobinAssignmentStrategy(), 5000);
+        engineRef.set(engine);
+        assertTrue(engine.hasFreeCapacity("t1", null));
+
+        raceOnce.set(true);
+        engine.reconcile();
+        // The stale snapshot would have wiped c1 and shown a1 as free.
+        assertFalse(engine.hasFreeCapacity("t1", null));
+
+        // A later reconcile with no race applies the database view again.
+        engine.reconcile();
+        assertTrue(engine.hasFreeCapacity("t1", null));
+    }
+
+    @Test
+    void presence_session_start_of_an_online_agent_reports_capacity() {
+        var sessions = mock(AgentSessionRepository.class);
+        var presence = new AgentPresenceService(sessions, new SimpleMeterRegistry(), 45, 20);
+        var convRepo = mock(ConversationRepository.class);
+        when(convRepo.listActiveAssignments("t1")).thenReturn(List.of());
+        // Profile already says online; only the presence session is missing.
+        var engine = engine(List.of(agent("a1", 1)), List.of(), List.of(), convRepo, presence,
+                new RoundRobinAssignmentStrategy(), 5000);
+        var freed = new java.util.ArrayList<String>();
+        engine.subscribeCapacity(freed::add);
+        assertFalse(engine.hasFreeCapacity("t1", null));
+
+        var sessionId = presence.createSession("t1", "a1");
+        assertEquals(List.of("t1"), freed);
+        assertTrue(engine.hasFreeCapacity("t1", null));
+
+        // A second session of the same agent changes nothing.
+        var second = presence.createSession("t1", "a1");
+        assertEquals(1, freed.size());
+
+        presence.logout(second, "a1");
+        assertEquals(1, freed.size());
+        presence.logout(sessionId, "a1");
+        assertEquals(2, freed.size());
+        assertFalse(engine.hasFreeCapacity("t1", null));
+    }
+
+    @Test
+    void target_wait_is_capped_so_a_long_sla_group_cannot_starve() {
+        // "slow" asks for a day; ordering caps it at 600s, so c1 (due 600s) still beats c2 (due 1120s).
+        var engine = engine(
+                List.of(agent("a1", 1)),
+                List.of(),
+                List.of(),
+                List.of(queued("c1", "slow", 0), queued("c2", null, 1000)),
+                List.of(new SkillGroupRepository.GroupRoutingRow("slow", 0, 86400)),
+                new RoundRobinAssignmentStrategy()
+        );
+
+        assertEquals(List.of("c1"), ids(engine.reserveQueue("t1", null, 50)));
+    }
+
+    @Test
+    void full_queue_keeps_the_earliest_due_entries() {
+        var queue = new java.util.ArrayList<ConversationRepository.QueuedConversationRow>();
+        for (int i = 0; i < 100; i++) {
+            queue.add(queued("c" + i, null, i));
+        }
+        var convRepo = mock(ConversationRepository.class);
+        when(convRepo.listActiveAssignments("t1")).thenReturn(List.of());
+        when(convRepo.listQueuedForAssignment(eq("t1"), eq(100), anyLong(), anyLong(), anyLong())).thenReturn(queue);
+        var presence = mock(AgentPresenceService.class);
+        when(presence.hasActiveSession(anyString())).thenReturn(true);
+        var engine = engine(
+                List.of(agent("a1", 1)),
+                List.of(new SkillGroupRepository.SkillGroupMemberRow("vip", "a1", 0)),
+                List.of(new SkillGroupRepository.GroupRoutingRow("vip", 10, 60)),
+                convRepo, presence, new RoundRobinAssignmentStrategy(), 100);
+        assertTrue(engine.hasFreeCapacity("t1", null));
+
+        // Due at 200 + 60 - 300 = -40s: ahead of everything, so the entry due last (c99) gives way.
+        engine.queued("t1", "hot", "vip", Instant.ofEpochSecond(200));
+        // Due after everything held: left for the next reload.
+        engine.queued("t1", "late", null, Instant.ofEpochSecond(1000));
+
+        var held = engine.queuedForAgent("t1", "a1", 200).stream()
+                .map(ConversationRepository.QueuedConversationRow::id)
+                .toList();
+        assertEquals(100, held.size());
+        assertEquals("hot", held.getFirst());
+        assertEquals("c98", held.getLast());
+        assertFalse(held.contains("late"));
+    }
+}
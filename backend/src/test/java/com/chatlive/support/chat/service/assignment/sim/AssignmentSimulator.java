@@ -0,0 +1,301 @@
+package com.chatlive.support.chat.service.assignment.sim;
+
+import com.chatlive.support.chat.repo.AgentProfileRepository;
+import com.chatlive.support.chat.service.assignment.AssignmentContext;
+import com.chatlive.support.chat.service.assignment.AssignmentEngine;
+import com.chatlive.support.chat.service.assignment.AssignmentStrategy;
+import com.chatlive.support.chat.service.assignment.LeastOpenAssignmentStrategy;
+import com.chatlive.support.chat.service.assignment.RoundRobinAssignmentStrategy;
+import com.chatlive.support.chat.service.assignment.WeightedAssignmentStrategy;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Offline discrete-event simulation of conversation assignment.
+ *
+ * Replays a {@link SimulationScenario} through a real {@link AssignmentStrategy}, building each
+ * {@link AssignmentContext} the way {@link AssignmentEngine} does: online group members (tenant pool when the group
+ * has nobody online), sorted by user id, with the live loads and the per-group cursor. A new conversation is tried
+ * on arrival and queued otherwise; the queue is drained in arrival order (a group that yields nobody is skipped for
+ * the rest of the pass) either on every capacity change, as with event-driven wakeups, or every
+ * {@code drainIntervalSeconds} to model a polling sweep. Agents going offline keep their open chats but take no new
+ * ones.
+ *
+ * Run from the command line with the {@code bench} profile (see pom.xml), e.g.
+ * <pre>
+ * mvn -Pbench test-compile exec:exec -Dbench.main=com.chatlive.support.chat.service.assignment.sim.AssignmentSimulator \
+ *     -Dbench.args="agents=40 rate=30 minutes=120 drain-interval=5"
+ * </pre>
+ * Options ({@code key=value}, a leading {@code --} is allowed): {@code strategy=round_robin,least_open} (default
+ * all), {@code agents-csv} and {@code arrivals-csv} for a recorded trace (see {@link SimulationScenario}), otherwise
+ * {@code seed agents minutes rate mean-chat min-concurrent max-concurrent groups} for a synthetic one, and
+ * {@code drain-interval} (seconds, 0 = on capacity change).
+ */
+public final class AssignmentSimulator {
+
+    /** Strategies the command line can pick, by their bean name. */
+    public static final Map<String, Supplier<AssignmentStrategy>> STRATEGIES;
+
+    static {
+        var strategies = new LinkedHashMap<String, Supplier<AssignmentStrategy>>();
+        strategies.put("round_robin", RoundRobinAssignmentStrategy::new);
+        strategies.put("least_open", LeastOpenAssignmentStrategy::new);
+        // Scenarios carry no member weights, so this measures the scoring cost at weight 1.
+        strategies.put("weighted", WeightedAssignmentStrategy::new);
+        STRATEGIES = Collections.unmodifiableMap(strategies);
+    }
+
+    private static final String TENANT_ID = "sim";
+
+    // Same-time ordering: free capacity before taking new work.
+    private static final int END = 0;
+    private static final int AGENT_ON = 1;
+    private static final int AGENT_OFF = 2;
+    private static final int DRAIN = 3;
+    private static final int ARRIVAL = 4;
+
+    private record Event(double at, int kind, long seq, String agentUserId, SimulationScenario.Arrival arrival) {
+    }
+
+    private static final Comparator<Event> EVENT_ORDER = Comparator.comparingDouble(Event::at)
+            .thenComparingInt(Event::kind)
+            .thenComparingLong(Event::seq);
+
+    private static final class AgentState {
+        final SimulationScenario.Agent spec;
+        boolean online;
+        double lastChangeAt;
+        double busySeconds;
+        double capacitySeconds;
+
+        AgentState(SimulationScenario.Agent spec) {
+            this.spec = spec;
+        }
+    }
+
+    private final String strategyKey;
+    private final AssignmentStrategy strategy;
+    private final double drainIntervalSeconds;
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>(EVENT_ORDER);
+    private final TreeMap<String, AgentState> agents = new TreeMap<>();
+    private final Map<String, List<String>> members = new HashMap<>();
+    private final Map<String, Integer> loads = new HashMap<>();
+    private final Map<String, String> cursors = new HashMap<>();
+    private final List<SimulationScenario.Arrival> queue = new ArrayList<>();
+    private final List<Double> waits = new ArrayList<>();
+    private long seq;
+    private long decisions;
+    private long selectNanos;
+
+    public AssignmentSimulator(String strategyKey, AssignmentStrategy strategy, double drainIntervalSeconds) {
+        this.strategyKey = strategyKey;
+        this.strategy = strategy;
+        this.drainIntervalSeconds = Math.max(0, drainIntervalSeconds);
+    }
+
+    /**
+     * Simulate the whole scenario. An instance runs one scenario.
+     */
+    public SimulationReport run(SimulationScenario scenario) {
+        double horizon = 0;
+        for (var agent : scenario.agents()) {
+            agents.put(agent.userId(), new AgentState(agent));
+            for (var group : agent.groups()) {
+                members.computeIfAbsent(group, k -> new ArrayList<>()).add(agent.userId());
+            }
+            for (var shift : agent.shifts()) {
+                schedule(new Event(shift.onlineFrom(), AGENT_ON, seq++, agent.userId(), null));
+                schedule(new Event(shift.onlineTo(), AGENT_OFF, seq++, agent.userId(), null));
+                horizon = Math.max(horizon, shift.onlineTo());
+            }
+        }
+        members.values().forEach(Collections::sort);
+        for (var arrival : scenario.arrivals()) {
+            schedule(new Event(arrival.atSeconds(), ARRIVAL, seq++, null, arrival));
+            horizon = Math.max(horizon, arrival.atSeconds());
+        }
+        if (drainIntervalSeconds > 0) {
+            for (double t = drainIntervalSeconds; t <= horizon; t += drainIntervalSeconds) {
+                schedule(new Event(t, DRAIN, seq++, null, null));
+            }
+        }
+
+        double now = 0;
+        while (!events.isEmpty()) {
+            var event = events.poll();
+            now = event.at();
+            switch (event.kind()) {
+                case ARRIVAL -> {
+                    if (!assign(event.arrival(), now)) queue.add(event.arrival());
+                }
+                case END -> {
+                    var agent = agents.get(event.agentUserId());
+                    advance(agent, now);
+                    loads.computeIfPresent(event.agentUserId(), (k, n) -> n <= 1 ? null : n - 1);
+                    capacityChanged(now);
+                }
+                case AGENT_ON -> {
+                    var agent = agents.get(event.agentUserId());
+                    advance(agent, now);
+                    agent.online = true;
+                    capacityChanged(now);
+                }
+                case AGENT_OFF -> {
+                    var agent = agents.get(event.agentUserId());
+                    advance(agent, now);
+                    agent.online = false;
+                }
+                case DRAIN -> drain(now);
+                default -> throw new IllegalStateException("unknown event " + event.kind());
+            }
+        }
+
+        var utilization = new ArrayList<Double>();
+        for (var agent : agents.values()) {
+            advance(agent, now);
+            if (agent.capacitySeconds > 0) utilization.add(agent.busySeconds / agent.capacitySeconds);
+        }
+        return SimulationReport.of(
+                strategyKey,
+                scenario.arrivals().size(),
+                waits.stream().mapToDouble(Double::doubleValue).toArray(),
+                queue.size(),
+                utilization.stream().mapToDouble(Double::doubleValue).toArray(),
+                decisions,
+                selectNanos
+        );
+    }
+
+    private void schedule(Event event) {
+        events.add(event);
+    }
+
+    private void capacityChanged(double now) {
+        if (drainIntervalSeconds == 0) drain(now);
+    }
+
+    private void drain(double now) {
+        var exhausted = new HashSet<String>();
+        var it = queue.iterator();
+        while (it.hasNext()) {
+            var arrival = it.next();
+            var group = groupOf(arrival);
+            if (exhausted.contains(group)) continue;
+            if (assign(arrival, now)) {
+                it.remove();
+            } else {
+                exhausted.add(group);
+            }
+        }
+    }
+
+    private boolean assign(SimulationScenario.Arrival arrival, double now) {
+        var group = groupOf(arrival);
+        var groupKey = group.isEmpty() ? AssignmentEngine.DEFAULT_GROUP_KEY : group;
+        var candidates = group.isEmpty() ? tenantCandidates() : groupCandidates(group);
+        if (!group.isEmpty() && candidates.isEmpty()) {
+            groupKey = AssignmentEngine.DEFAULT_GROUP_KEY;
+            candidates = tenantCandidates();
+        }
+        if (candidates.isEmpty()) return false;
+
+        var ctx = new AssignmentContext(TENANT_ID, groupKey, cursors.get(groupKey), candidates,
+                Collections.unmodifiableMap(loads));
+        long started = System.nanoTime();
+        var selected = strategy.select(ctx);
+        selectNanos += System.nanoTime() - started;
+        decisions++;
+        if (selected == null) return false;
+
+        var agent = agents.get(selected.userId());
+        advance(agent, now);
+        cursors.put(groupKey, selected.userId());
+        loads.merge(selected.userId(), 1, Integer::sum);
+        waits.add(now - arrival.atSeconds());
+        schedule(new Event(now + arrival.durationSeconds(), END, seq++, selected.userId(), null));
+        return true;
+    }
+
+    private static String groupOf(SimulationScenario.Arrival arrival) {
+        return arrival.skillGroupId() == null ? "" : arrival.skillGroupId().trim();
+    }
+
+    private List<AgentProfileRepository.AgentCandidateRow> groupCandidates(String group) {
+        var out = new ArrayList<AgentProfileRepository.AgentCandidateRow>();
+        for (var userId : members.getOrDefault(group, List.of())) {
+            var agent = agents.get(userId);
+            if (agent.online) out.add(new AgentProfileRepository.AgentCandidateRow(userId, agent.spec.maxConcurrent()));
+        }
+        return out;
+    }
+
+    private List<AgentProfileRepository.AgentCandidateRow> tenantCandidates() {
+        var out = new ArrayList<AgentProfileRepository.AgentCandidateRow>();
+        for (var agent : agents.values()) {
+            if (agent.online) out.add(new AgentProfileRepository.AgentCandidateRow(agent.spec.userId(), agent.spec.maxConcurrent()));
+        }
+        return out;
+    }
+
+    // Accumulate open-chat and offered-capacity seconds up to now (only while online).
+    private void advance(AgentState agent, double now) {
+        double dt = now - agent.lastChangeAt;
+        if (dt > 0 && agent.online) {
+            int load = loads.getOrDefault(agent.spec.userId(), 0);
+            agent.busySeconds += Math.min(load, agent.spec.maxConcurrent()) * dt;
+            agent.capacitySeconds += agent.spec.maxConcurrent() * dt;
+        }
+        agent.lastChangeAt = now;
+    }
+
+    public static void main(String[] args) throws Exception {
+        var options = new HashMap<String, String>();
+        for (var arg : args) {
+            var opt = arg.startsWith("--") ? arg.substring(2) : arg;
+            int eq = opt.indexOf('=');
+            if (eq > 0) options.put(opt.substring(0, eq), opt.substring(eq + 1));
+        }
+
+        SimulationScenario scenario;
+        if (options.containsKey("agents-csv") && options.containsKey("arrivals-csv")) {
+            scenario = SimulationScenario.load(Path.of(options.get("agents-csv")), Path.of(options.get("arrivals-csv")));
+        } else {
+            var d = SimulationScenario.Synthetic.defaults();
+            scenario = SimulationScenario.synthetic(new SimulationScenario.Synthetic(
+                    Long.parseLong(options.getOrDefault("seed", String.valueOf(d.seed()))),
+                    Integer.parseInt(options.getOrDefault("agents", String.valueOf(d.agents()))),
+                    Double.parseDouble(options.getOrDefault("minutes", String.valueOf(d.minutes()))),
+                    Double.parseDouble(options.getOrDefault("rate", String.valueOf(d.arrivalsPerMinute()))),
+                    Double.parseDouble(options.getOrDefault("mean-chat", String.valueOf(d.meanChatSeconds()))),
+                    Integer.parseInt(options.getOrDefault("min-concurrent", String.valueOf(d.minConcurrent()))),
+                    Integer.parseInt(options.getOrDefault("max-concurrent", String.valueOf(d.maxConcurrent()))),
+                    Integer.parseInt(options.getOrDefault("groups", String.valueOf(d.groups())))
+            ));
+        }
+        double drainInterval = Double.parseDouble(options.getOrDefault("drain-interval", "0"));
+
+        var keys = options.containsKey("strategy")
+                ? List.of(options.get("strategy").split(","))
+                : List.copyOf(STRATEGIES.keySet());
+        System.out.printf("agents=%d arrivals=%d drain_interval_s=%s%n",
+                scenario.agents().size(), scenario.arrivals().size(), drainInterval);
+        for (var key : keys) {
+            var supplier = STRATEGIES.get(key.trim());
+            if (supplier == null) throw new IllegalArgumentException("unknown strategy: " + key);
+            var report = new AssignmentSimulator(key.trim(), supplier.get(), drainInterval).run(scenario);
+            System.out.println(report.format());
+        }
+    }
+}
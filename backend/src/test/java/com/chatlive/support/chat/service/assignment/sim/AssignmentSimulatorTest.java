@@ -0,0 +1,76 @@
+package com.chatlive.support.chat.service.assignment.sim;
+
+import com.chatlive.support.chat.service.assignment.LeastOpenAssignmentStrategy;
+import com.chatlive.support.chat.service.assignment.RoundRobinAssignmentStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AssignmentSimulatorTest {
+
+    private static SimulationScenario.Agent agent(String id, int maxConcurrent, double from, double to) {
+        return new SimulationScenario.Agent(id, maxConcurrent, List.of(new SimulationScenario.Shift(from, to)), Set.of());
+    }
+
+    private static SimulationScenario.Arrival arrival(double at, String id, double duration) {
+        return new SimulationScenario.Arrival(at, id, "", duration);
+    }
+
+    private static SimulationScenario oneSlot() {
+        return new SimulationScenario(
+                List.of(agent("a1", 1, 0, 100)),
+                List.of(arrival(0, "c1", 10), arrival(1, "c2", 10), arrival(2, "c3", 10))
+        );
+    }
+
+    @Test
+    void queue_is_served_in_arrival_order_as_capacity_frees_up() {
+        var report = new AssignmentSimulator("round_robin", new RoundRobinAssignmentStrategy(), 0).run(oneSlot());
+
+        assertEquals(3, report.served());
+        assertEquals(0, report.unserved());
+        // c1 waits 0, c2 takes over at 10 (waited 9), c3 at 20 (waited 18)
+        assertEquals(9.0, report.waitP50(), 1e-9);
+        assertEquals(18.0, report.waitMax(), 1e-9);
+    }
+
+    @Test
+    void polling_sweep_adds_the_wait_until_the_next_tick() {
+        var report = new AssignmentSimulator("round_robin", new RoundRobinAssignmentStrategy(), 4).run(oneSlot());
+
+        // freed at 10 -> picked up at 12; freed at 22 -> picked up at 24
+        assertEquals(11.0, report.waitP50(), 1e-9);
+        assertEquals(22.0, report.waitMax(), 1e-9);
+    }
+
+    @Test
+    void least_open_spreads_light_load_evenly() {
+        var scenario = new SimulationScenario(
+                List.of(agent("a1", 3, 0, 100), agent("a2", 3, 0, 100)),
+                List.of(arrival(0, "c1", 50), arrival(1, "c2", 50), arrival(2, "c3", 50), arrival(3, "c4", 50))
+        );
+
+        var report = new AssignmentSimulator("least_open", new LeastOpenAssignmentStrategy(), 0).run(scenario);
+
+        assertEquals(4, report.served());
+        assertEquals(0.0, report.waitMax(), 1e-9);
+        assertEquals(report.utilizationMin(), report.utilizationMax(), 0.02);
+    }
+
+    @Test
+    void synthetic_trace_is_reproducible_from_its_seed() {
+        var settings = SimulationScenario.Synthetic.defaults();
+
+        var first = new AssignmentSimulator("least_open", new LeastOpenAssignmentStrategy(), 0)
+                .run(SimulationScenario.synthetic(settings));
+        var second = new AssignmentSimulator("least_open", new LeastOpenAssignmentStrategy(), 0)
+                .run(SimulationScenario.synthetic(settings));
+
+        assertEquals(first.arrivals(), second.arrivals());
+        assertEquals(first.served(), second.served());
+        assertEquals(first.waitP99(), second.waitP99(), 1e-9);
+    }
+}
@@ -0,0 +1,68 @@
+package com.chatlive.support.chat.service.assignment.sim;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Outcome of one {@link AssignmentSimulator} run.
+ *
+ * Waits are in seconds of simulated time and cover the conversations that got an agent; {@code unserved} were
+ * still queued when the trace ended. Utilization is per agent: open-chat seconds over max_concurrent seconds while
+ * online; {@code utilizationCv} (stddev / mean across agents) is the balance figure, lower is more even.
+ * {@code decisionsPerSecond} is strategy calls per second of wall time spent inside {@code select()}.
+ */
+public record SimulationReport(
+        String strategy,
+        int arrivals,
+        int served,
+        int unserved,
+        double waitP50,
+        double waitP95,
+        double waitP99,
+        double waitMax,
+        double utilizationMean,
+        double utilizationMin,
+        double utilizationMax,
+        double utilizationCv,
+        long decisions,
+        double decisionsPerSecond
+) {
+
+    static double percentile(double[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    static SimulationReport of(String strategy, int arrivals, double[] waits, int unserved, double[] utilization,
+                               long decisions, long selectNanos) {
+        var sortedWaits = waits.clone();
+        Arrays.sort(sortedWaits);
+        double mean = Arrays.stream(utilization).average().orElse(0);
+        double variance = Arrays.stream(utilization).map(u -> (u - mean) * (u - mean)).average().orElse(0);
+        return new SimulationReport(
+                strategy,
+                arrivals,
+                sortedWaits.length,
+                unserved,
+                percentile(sortedWaits, 0.50),
+                percentile(sortedWaits, 0.95),
+                percentile(sortedWaits, 0.99),
+                sortedWaits.length == 0 ? 0 : sortedWaits[sortedWaits.length - 1],
+                mean,
+                Arrays.stream(utilization).min().orElse(0),
+                Arrays.stream(utilization).max().orElse(0),
+                mean == 0 ? 0 : Math.sqrt(variance) / mean,
+                decisions,
+                selectNanos == 0 ? 0 : decisions * 1e9 / selectNanos
+        );
+    }
+
+    public String format() {
+        return String.format(Locale.ROOT,
+                "%-14s arrivals=%d served=%d unserved=%d wait_s p50=%.1f p95=%.1f p99=%.1f max=%.1f"
+                        + " util mean=%.2f min=%.2f max=%.2f cv=%.3f decisions=%d decisions/s=%.0f",
+                strategy, arrivals, served, unserved, waitP50, waitP95, waitP99, waitMax,
+                utilizationMean, utilizationMin, utilizationMax, utilizationCv, decisions, decisionsPerSecond);
+    }
+}
@@ -0,0 +1,152 @@
+package com.chatlive.support.chat.service.assignment.sim;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Input of an {@link AssignmentSimulator} run: the agents with their online windows and the conversation arrivals.
+ * Times are seconds from the start of the run.
+ *
+ * Scenarios are either generated ({@link #synthetic}) or read from two CSV files ({@link #load}):
+ * <pre>
+ * agents.csv:   agent_user_id,max_concurrent,online_from,online_to[,group;group...]
+ * arrivals.csv: arrival_seconds,conversation_id,skill_group_id,duration_seconds
+ * </pre>
+ * An agent may appear on several lines for several shifts. A header line and lines starting with '#' are skipped.
+ */
+public record SimulationScenario(List<Agent> agents, List<Arrival> arrivals) {
+
+    public record Shift(double onlineFrom, double onlineTo) {
+    }
+
+    public record Agent(String userId, int maxConcurrent, List<Shift> shifts, Set<String> groups) {
+    }
+
+    /**
+     * @param skillGroupId blank for the tenant pool
+     * @param durationSeconds how long the chat stays open once an agent has it
+     */
+    public record Arrival(double atSeconds, String conversationId, String skillGroupId, double durationSeconds) {
+    }
+
+    /**
+     * Knobs of {@link #synthetic}. Arrivals are Poisson with {@code arrivalsPerMinute}, chat durations exponential
+     * around {@code meanChatSeconds}; every agent gets a random max_concurrent in [minConcurrent, maxConcurrent]
+     * and one shift that starts in the first quarter and ends in the last quarter of the run, so agents come and go.
+     * With {@code groups} > 0 each agent joins one or two groups and arrivals are spread evenly over them.
+     */
+    public record Synthetic(
+            long seed,
+            int agents,
+            double minutes,
+            double arrivalsPerMinute,
+            double meanChatSeconds,
+            int minConcurrent,
+            int maxConcurrent,
+            int groups
+    ) {
+        public static Synthetic defaults() {
+            return new Synthetic(42L, 40, 120, 20, 240, 2, 5, 0);
+        }
+    }
+
+    public static SimulationScenario synthetic(Synthetic s) {
+        var random = new Random(s.seed());
+        double horizon = s.minutes() * 60.0;
+
+        var agents = new ArrayList<Agent>(s.agents());
+        for (int i = 0; i < s.agents(); i++) {
+            int span = Math.max(0, s.maxConcurrent() - s.minConcurrent());
+            int maxConcurrent = s.minConcurrent() + (span == 0 ? 0 : random.nextInt(span + 1));
+            double from = random.nextDouble() * horizon * 0.25;
+            double to = horizon * 0.75 + random.nextDouble() * horizon * 0.25;
+            var groups = new java.util.TreeSet<String>();
+            if (s.groups() > 0) {
+                groups.add("g" + (i % s.groups()));
+                if (random.nextBoolean()) groups.add("g" + random.nextInt(s.groups()));
+            }
+            agents.add(new Agent(String.format("a%04d", i), Math.max(1, maxConcurrent),
+                    List.of(new Shift(from, to)), Set.copyOf(groups)));
+        }
+
+        var arrivals = new ArrayList<Arrival>();
+        double ratePerSecond = s.arrivalsPerMinute() / 60.0;
+        double t = 0;
+        int n = 0;
+        while (ratePerSecond > 0) {
+            t += -Math.log(1 - random.nextDouble()) / ratePerSecond;
+            if (t >= horizon) break;
+            double duration = -Math.log(1 - random.nextDouble()) * s.meanChatSeconds();
+            String group = s.groups() > 0 ? "g" + random.nextInt(s.groups()) : "";
+            arrivals.add(new Arrival(t, String.format("c%06d", n++), group, Math.max(1.0, duration)));
+        }
+        return new SimulationScenario(List.copyOf(agents), List.copyOf(arrivals));
+    }
+
+    public static SimulationScenario load(Path agentsCsv, Path arrivalsCsv) throws IOException {
+        var shifts = new java.util.LinkedHashMap<String, List<Shift>>();
+        var maxConcurrent = new java.util.HashMap<String, Integer>();
+        var groups = new java.util.HashMap<String, Set<String>>();
+        for (var cols : readCsv(agentsCsv)) {
+            var userId = cols[0];
+            maxConcurrent.put(userId, Integer.parseInt(cols[1]));
+            shifts.computeIfAbsent(userId, k -> new ArrayList<>())
+                    .add(new Shift(Double.parseDouble(cols[2]), Double.parseDouble(cols[3])));
+            var g = new java.util.TreeSet<String>();
+            if (cols.length > 4 && !cols[4].isBlank()) {
+                for (var part : cols[4].split(";")) {
+                    if (!part.isBlank()) g.add(part.trim());
+                }
+            }
+            groups.merge(userId, Set.copyOf(g), (a, b) -> {
+                var all = new java.util.TreeSet<>(a);
+                all.addAll(b);
+                return Set.copyOf(all);
+            });
+        }
+        var agents = new ArrayList<Agent>();
+        for (var entry : shifts.entrySet()) {
+            agents.add(new Agent(entry.getKey(), maxConcurrent.get(entry.getKey()), List.copyOf(entry.getValue()),
+                    groups.getOrDefault(entry.getKey(), Set.of())));
+        }
+
+        var arrivals = new ArrayList<Arrival>();
+        for (var cols : readCsv(arrivalsCsv)) {
+            arrivals.add(new Arrival(Double.parseDouble(cols[0]), cols[1], cols[2], Double.parseDouble(cols[3])));
+        }
+        arrivals.sort(Comparator.comparingDouble(Arrival::atSeconds));
+        return new SimulationScenario(List.copyOf(agents), List.copyOf(arrivals));
+    }
+
+    private static List<String[]> readCsv(Path path) throws IOException {
+        var out = new ArrayList<String[]>();
+        for (var line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            var trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+            var cols = trimmed.split(",", -1);
+            for (int i = 0; i < cols.length; i++) {
+                cols[i] = cols[i].trim();
+            }
+            // Header: neither of the first two columns is a number (every data line has one).
+            if (out.isEmpty() && !isNumber(cols[0]) && (cols.length < 2 || !isNumber(cols[1]))) continue;
+            out.add(cols);
+        }
+        return out;
+    }
+
+    private static boolean isNumber(String s) {
+        try {
+            Double.parseDouble(s);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.chatlive.support.chat.ws;
+
+import com.chatlive.support.auth.service.jwt.JwtClaims;
+import com.chatlive.support.chat.repo.ConversationEventRepository;
+import com.chatlive.support.chat.repo.RecentMessageCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InProcessWsClusterBusTest {
+
+    @Test
+    void delivers_to_every_listener_even_if_one_fails() {
+        var bus = new InProcessWsClusterBus();
+        var first = new ArrayList<WsClusterEvent>();
+        var second = new ArrayList<WsClusterEvent>();
+        bus.subscribe(first::add);
+        bus.subscribe(e -> {
+            throw new IllegalStateException("boom");
+        });
+        bus.subscribe(second::add);
+
+        var event = WsClusterEvent.toConversation("node-a", "c1", "{}");
+        bus.publish(event);
+
+        assertEquals(List.of(event), first);
+        assertEquals(List.of(event), second);
+    }
+
+    @Test
+    void each_node_delivers_a_broadcast_once_and_ignores_its_own_relay() throws Exception {
+        // Two broadcasters on one bus behave like two nodes.
+        var bus = new InProcessWsClusterBus();
+        var nodeA = node(bus);
+        var nodeB = node(bus);
+        var onA = session(nodeA, "sa");
+        var onB = session(nodeB, "sb");
+
+        var payload = new ObjectMapper().createObjectNode().put("type", "MSG");
+        nodeA.broadcaster.broadcastToConversation("c1", payload);
+
+        // Without the origin filter node A would deliver its own relay a second time.
+        verify(onA, timeout(2000)).sendMessage(any(TextMessage.class));
+        verify(onB, timeout(2000)).sendMessage(any(TextMessage.class));
+        verify(onA, after(200).times(1)).sendMessage(any(TextMessage.class));
+        verify(onB, times(1)).sendMessage(any(TextMessage.class));
+    }
+
+    private record Node(WsBroadcaster broadcaster, WsSessionRegistry registry) {
+    }
+
+    private static Node node(WsClusterBus bus) {
+        var objectMapper = new ObjectMapper();
+        var registry = new WsSessionRegistry();
+        var broadcaster = new WsBroadcaster(
+                objectMapper,
+                registry,
+                mock(ConversationEventRepository.class),
+                mock(RecentMessageCache.class),
+                new WsOutboundDispatcher(new SimpleMeterRegistry(), 16, 1 << 20, "close"),
+                bus,
+                new WsFrameWriter(objectMapper)
+        );
+        return new Node(broadcaster, registry);
+    }
+
+    private static WebSocketSession session(Node node, String id) {
+        var session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        var claims = new JwtClaims("u-" + id, "t1", "agent", "u-" + id, null);
+        node.registry.bind(session, new WsSessionRegistry.SessionContext(claims, "agent", null, "10.0.0.1"));
+        node.registry.subscribe("c1", session);
+        node.broadcaster.register(session);
+        return session;
+    }
+}
@@ -0,0 +1,79 @@
+package com.chatlive.support.chat.ws;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PgNotifyWsClusterBusTest {
+
+    @Test
+    void notification_reader_unwraps_the_driver_connection() throws Exception {
+        var notification = mock(PGNotification.class);
+        when(notification.getParameter()).thenReturn("[{\"kind\":\"conversation\"}]");
+        var pg = mock(PGConnection.class);
+        when(pg.getNotifications(1000)).thenReturn(new PGNotification[]{notification}).thenReturn(null);
+        var conn = mock(Connection.class);
+        when(conn.unwrap(PGConnection.class)).thenReturn(pg);
+
+        var reader = new PgNotifyWsClusterBus.NotificationReader(conn);
+
+        assertEquals(List.of("[{\"kind\":\"conversation\"}]"), reader.poll(1000));
+        assertEquals(List.of(), reader.poll(1000));
+    }
+
+    @Test
+    void a_blocked_listener_holds_up_only_its_own_lane() throws Exception {
+        var objectMapper = new ObjectMapper();
+        var bus = new PgNotifyWsClusterBus(mock(JdbcTemplate.class), objectMapper, new SimpleMeterRegistry(),
+                "jdbc:postgresql://unused", "", "", 1000, 200, 300, 4);
+        var release = new CountDownLatch(1);
+        var delivered = new LinkedBlockingQueue<String>();
+        bus.subscribe(event -> {
+            if ("slow".equals(event.frame())) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            delivered.add(event.conversationId() + ":" + event.frame());
+        });
+
+        // Find a conversation id that lands on a different lane than "c_slow" (4 lanes, floorMod of hashCode).
+        var other = "c_0";
+        for (int i = 0; Math.floorMod(other.hashCode(), 4) == Math.floorMod("c_slow".hashCode(), 4); i++) {
+            other = "c_" + i;
+        }
+        try {
+            bus.dispatch(objectMapper.writeValueAsString(List.of(
+                    WsClusterEvent.toConversation("n2", "c_slow", "slow"),
+                    WsClusterEvent.toConversation("n2", "c_slow", "after_slow"),
+                    WsClusterEvent.toConversation("n2", other, "fast"))));
+
+            assertEquals(other + ":fast", delivered.poll(5, TimeUnit.SECONDS));
+            release.countDown();
+            assertEquals("c_slow:slow", delivered.poll(5, TimeUnit.SECONDS));
+            var last = delivered.poll(5, TimeUnit.SECONDS);
+            assertNotNull(last);
+            assertTrue(last.endsWith("after_slow"));
+        } finally {
+            release.countDown();
+            bus.destroy();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.chatlive.support.chat.ws;
+
+import com.chatlive.support.chat.repo.ConversationAccessCache;
+import com.chatlive.support.chat.repo.ConversationRepository;
+import com.chatlive.support.chat.repo.MessageRepository;
+import com.chatlive.support.chat.repo.RecentMessageCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class WsCacheInvalidationRelayTest {
+
+    private record Node(ConversationAccessCache access, RecentMessageCache recent) {
+    }
+
+    private static Node node(WsClusterBus bus, boolean enabled, int nodes) {
+        var registry = new SimpleMeterRegistry();
+        var access = new ConversationAccessCache(registry, enabled, 1000, 600);
+        var recent = new RecentMessageCache(registry, enabled, 1000, 16, 600);
+        new WsCacheInvalidationRelay(bus, access, recent, nodes);
+        return new Node(access, recent);
+    }
+
+    @Test
+    void invalidation_on_one_node_evicts_the_other_nodes_copy() {
+        var bus = new InProcessWsClusterBus();
+        var nodeA = node(bus, true, 1);
+        var nodeB = node(bus, true, 1);
+        var row = mock(ConversationRepository.ConversationAccessRow.class);
+        var loads = new AtomicInteger();
+
+        nodeB.access().get("t1", "c1", () -> {
+            loads.incrementAndGet();
+            return Optional.of(row);
+        });
+        nodeB.access().get("t1", "c1", Optional::empty);
+        assertEquals(1, loads.get());
+
+        nodeA.access().invalidate("t1", "c1");
+
+        nodeB.access().get("t1", "c1", () -> {
+            loads.incrementAndGet();
+            return Optional.of(row);
+        });
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void commit_on_one_node_drops_the_other_nodes_recent_window() {
+        var bus = new InProcessWsClusterBus();
+        var nodeA = node(bus, true, 1);
+        var nodeB = node(bus, true, 1);
+        var row = new MessageRepository.MessageRow("m1", "t1", "c1", "customer", "u1", null, "text",
+                "{\"text\":\"1\"}", Instant.now(), 1);
+        nodeB.recent().seedNewest("t1", "c1", nodeB.recent().generation("t1", "c1"), List.of(row));
+        assertTrue(nodeB.recent().after("t1", "c1", 0, 10).isPresent());
+
+        nodeA.recent().appendMessages(List.of(new MessageRepository.MessageRow("m2", "t1", "c1", "customer", "u1",
+                null, "text", "{\"text\":\"2\"}", Instant.now(), 2)));
+
+        assertTrue(nodeB.recent().after("t1", "c1", 0, 10).isEmpty());
+    }
+
+    @Test
+    void local_bus_with_several_nodes_requires_the_caches_to_be_disabled() {
+        assertThrows(IllegalStateException.class, () -> node(new InProcessWsClusterBus(), true, 2));
+        assertDoesNotThrow(() -> node(new InProcessWsClusterBus(), false, 2));
+        assertDoesNotThrow(() -> node(mock(WsClusterBus.class), true, 2));
+    }
+}
@@ -0,0 +1,60 @@
+package com.chatlive.support.chat.ws;
+
+import com.chatlive.support.chat.repo.ConversationEventRepository;
+import com.chatlive.support.chat.repo.MessageRepository;
+import com.chatlive.support.chat.service.MessageService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WsFrameWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final WsFrameWriter frameWriter = new WsFrameWriter(objectMapper);
+
+    @Test
+    void preview_normalization_matches_the_regex_it_replaces() {
+        var samples = List.of("", " ", "hello", "  hello  ", "a b", "a  b", "a\tb", "a \t\n b", "\r\nline1\r\nline2\r\n",
+                "a\u000Bb\fc", "全角　空格", "nbsp kept", "x".repeat(250), " " + "y ".repeat(150));
+        for (var s : samples) {
+            var expected = s.replaceAll("\\s+", " ").trim();
+            if (expected.length() > 200) expected = expected.substring(0, 200);
+            assertEquals(expected, WsFrameWriter.normalizePreviewText(s), () -> "input: [" + s + "]");
+        }
+    }
+
+    @Test
+    void sync_frame_replaces_malformed_stored_json_and_keeps_previews() throws Exception {
+        var now = Instant.parse("2026-01-01T00:00:00Z");
+        var rows = List.of(
+                row("m1", "text", "{\"text\":\"  hi\\n there \",\"meta\":{\"text\":\"nested\"}}", now, 1),
+                row("m2", "file", "{\"filename\":\"a.pdf\"}", now, 2),
+                row("m3", "text", "{\"text\":\"cut off", now, 3),
+                row("m4", "text", "{\"text\":\"a\"} trailing", now, 4));
+        var page = new MessageService.MessageRowPage(rows, false, "m4", false, 4L, false, null, null);
+        var events = List.of(
+                new ConversationEventRepository.ConversationEventRawRow("e1", "assigned", now, "{\"to\":\"a1\"}"),
+                new ConversationEventRepository.ConversationEventRawRow("e2", "assigned", now, "not json"));
+
+        var frame = objectMapper.readTree(frameWriter.syncRes("c1", null, page, events).getPayload());
+
+        var messages = frame.path("messages");
+        assertEquals("hi there", messages.get(0).path("preview_text").asText());
+        assertEquals("nested", messages.get(0).path("content").path("meta").path("text").asText());
+        assertEquals("[附件] a.pdf", messages.get(1).path("preview_text").asText());
+        for (int i = 2; i < 4; i++) {
+            assertEquals(objectMapper.createObjectNode(), messages.get(i).path("content"));
+            assertEquals("", messages.get(i).path("preview_text").asText());
+        }
+        assertEquals("a1", frame.path("conversation_events").get(0).path("data").path("to").asText());
+        assertEquals(objectMapper.createObjectNode(), frame.path("conversation_events").get(1).path("data"));
+    }
+
+    private static MessageRepository.MessageRow row(String id, String contentType, String json, Instant at, long seq) {
+        return new MessageRepository.MessageRow(id, "t1", "c1", "customer", "u1", null, contentType, json, at, seq);
+    }
+}
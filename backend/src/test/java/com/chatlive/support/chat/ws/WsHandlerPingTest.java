@@ -0,0 +1,75 @@
+package com.chatlive.support.chat.ws;
+
+import com.chatlive.support.auth.service.jwt.JwtService;
+import com.chatlive.support.chat.repo.AgentProfileRepository;
+import com.chatlive.support.chat.repo.ConversationRepository;
+import com.chatlive.support.chat.repo.RecentMessageCache;
+import com.chatlive.support.chat.service.AgentPresenceService;
+import com.chatlive.support.chat.service.AgentStatusTracker;
+import com.chatlive.support.chat.service.AssignmentService;
+import com.chatlive.support.chat.service.MessageHistoryReader;
+import com.chatlive.support.chat.service.MessageService;
+import com.chatlive.support.chat.service.assignment.AssignmentEngine;
+import com.chatlive.support.widget.repo.SiteBannedCustomerRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WsHandlerPingTest {
+
+    @Test
+    void pong_is_not_queued_behind_the_same_sessions_blocked_frames() throws Exception {
+        var objectMapper = new ObjectMapper();
+        var inbound = new WsInboundDispatcher(new SimpleMeterRegistry(), 1000, 1);
+        var outbound = mock(WsOutboundDispatcher.class);
+        var handler = new WsHandler(
+                objectMapper,
+                mock(JwtService.class),
+                new WsSessionRegistry(),
+                mock(WsBroadcaster.class),
+                outbound,
+                inbound,
+                mock(WsTypingCoordinator.class),
+                new WsFrameWriter(objectMapper),
+                mock(AgentStatusTracker.class),
+                mock(MessageService.class),
+                mock(AgentPresenceService.class),
+                mock(AgentProfileRepository.class),
+                mock(AssignmentService.class),
+                mock(AssignmentEngine.class),
+                mock(ConversationRepository.class),
+                mock(MessageHistoryReader.class),
+                mock(RecentMessageCache.class),
+                mock(SiteBannedCustomerRepository.class),
+                "http://localhost:5173/visitor/embed",
+                ""
+        );
+        var session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("s1");
+        when(session.isOpen()).thenReturn(true);
+
+        // Another session holds the only database permit, so this session's SYNC blocks its inbound queue.
+        var release = new CountDownLatch(1);
+        var holder = mock(WebSocketSession.class);
+        when(holder.getId()).thenReturn("holder");
+        inbound.dispatch(holder, () -> inbound.withDbPermit(release::await));
+        handler.handleTextMessage(session, new TextMessage("{\"type\":\"SYNC\",\"conversation_id\":\"c1\"}"));
+
+        handler.handleTextMessage(session, new TextMessage("{\"type\":\"PING\"}"));
+
+        verify(outbound, timeout(200)).send(any(), argThat(frame -> frame.getPayload().contains("\"PONG\"")));
+        release.countDown();
+        inbound.destroy();
+    }
+}
@@ -0,0 +1,145 @@
+package com.chatlive.support.chat.ws;
+
+import com.chatlive.support.auth.service.jwt.JwtClaims;
+import com.chatlive.support.auth.service.jwt.JwtService;
+import com.chatlive.support.chat.repo.AgentProfileRepository;
+import com.chatlive.support.chat.repo.ConversationEventRepository;
+import com.chatlive.support.chat.repo.ConversationRepository;
+import com.chatlive.support.chat.repo.MessageRepository;
+import com.chatlive.support.chat.repo.RecentMessageCache;
+import com.chatlive.support.chat.service.AgentPresenceService;
+import com.chatlive.support.chat.service.AgentStatusTracker;
+import com.chatlive.support.chat.service.AssignmentService;
+import com.chatlive.support.chat.service.MessageHistoryReader;
+import com.chatlive.support.chat.service.MessageService;
+import com.chatlive.support.chat.service.assignment.AssignmentEngine;
+import com.chatlive.support.widget.repo.SiteBannedCustomerRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WsHandlerSyncTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final WsOutboundDispatcher outbound = mock(WsOutboundDispatcher.class);
+    private final MessageService messageService = mock(MessageService.class);
+    private final MessageHistoryReader historyReader = mock(MessageHistoryReader.class);
+    private final WsSessionRegistry sessionRegistry = new WsSessionRegistry();
+    private final WebSocketSession session = mock(WebSocketSession.class);
+    private WsInboundDispatcher inbound;
+    private WsHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        inbound = new WsInboundDispatcher(new SimpleMeterRegistry(), 1000, 4);
+        handler = new WsHandler(
+                objectMapper,
+                mock(JwtService.class),
+                sessionRegistry,
+                mock(WsBroadcaster.class),
+                outbound,
+                inbound,
+                mock(WsTypingCoordinator.class),
+                new WsFrameWriter(objectMapper),
+                mock(AgentStatusTracker.class),
+                messageService,
+                mock(AgentPresenceService.class),
+                mock(AgentProfileRepository.class),
+                mock(AssignmentService.class),
+                mock(AssignmentEngine.class),
+                mock(ConversationRepository.class),
+                historyReader,
+                mock(RecentMessageCache.class),
+                mock(SiteBannedCustomerRepository.class),
+                "http://localhost:5173/visitor/embed",
+                ""
+        );
+        when(session.getId()).thenReturn("s1");
+        when(session.isOpen()).thenReturn(true);
+        var claims = new JwtClaims("u1", "t1", "agent", "agent1", null);
+        sessionRegistry.bind(session, new WsSessionRegistry.SessionContext(claims, "agent", null, "127.0.0.1"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        inbound.destroy();
+    }
+
+    private static MessageRepository.MessageRow row(long seq) {
+        return new MessageRepository.MessageRow("m" + seq, "t1", "c1", "customer", "u2", null, "text",
+                "{\"text\":\"" + seq + "\"}", Instant.now(), seq);
+    }
+
+    private static ConversationEventRepository.ConversationEventRawRow event(String id) {
+        return new ConversationEventRepository.ConversationEventRawRow(id, "assigned", Instant.now(), "{}");
+    }
+
+    private JsonNode syncRes(String request) throws Exception {
+        handler.handleTextMessage(session, new TextMessage(request));
+        var frame = ArgumentCaptor.forClass(TextMessage.class);
+        verify(outbound, timeout(2000)).send(eq(session), frame.capture());
+        return objectMapper.readTree(frame.getValue().getPayload());
+    }
+
+    @Test
+    void tail_sync_replays_the_newest_events_with_the_newest_messages() throws Exception {
+        var page = new MessageService.MessageRowPage(List.of(row(900), row(901)), false, "m901", false, 901, true, "m900", 900L);
+        when(messageService.listMessageRowsPageBefore(any(), eq("c1"), isNull(), isNull(), anyInt())).thenReturn(page);
+        when(historyReader.listNewestEvents(eq("t1"), eq("c1"), anyLong(), anyInt()))
+                .thenReturn(List.of(event("e_new1"), event("e_new2")));
+
+        var res = syncRes("{\"type\":\"SYNC\",\"conversation_id\":\"c1\",\"tail\":true}");
+
+        assertEquals("tail", res.path("direction").asText());
+        assertEquals("e_new1", res.path("conversation_events").get(0).path("event_id").asText());
+        assertEquals(2, res.path("conversation_events").size());
+        verify(historyReader, never()).listEvents(any(), any(), anyLong(), anyInt());
+    }
+
+    @Test
+    void first_page_sync_replays_the_oldest_events_with_the_oldest_messages() throws Exception {
+        var page = new MessageService.MessageRowPage(List.of(row(1), row(2)), true, "m2", false, 2, false, null, null);
+        when(messageService.listMessageRowsPage(any(), eq("c1"), isNull(), isNull(), anyInt())).thenReturn(page);
+        when(historyReader.listEvents(eq("t1"), eq("c1"), anyLong(), anyInt())).thenReturn(List.of(event("e_old")));
+
+        var res = syncRes("{\"type\":\"SYNC\",\"conversation_id\":\"c1\"}");
+
+        assertEquals("e_old", res.path("conversation_events").get(0).path("event_id").asText());
+        verify(historyReader, never()).listNewestEvents(any(), any(), anyLong(), anyInt());
+    }
+
+    @Test
+    void resumed_sync_sends_messages_without_events() throws Exception {
+        var page = new MessageService.MessageRowPage(List.of(row(11)), false, "m11", false, 11, false, null, null);
+        when(messageService.listMessageRowsPage(any(), eq("c1"), isNull(), eq(10L), anyInt())).thenReturn(page);
+
+        var res = syncRes("{\"type\":\"SYNC\",\"conversation_id\":\"c1\",\"after_seq\":10}");
+
+        assertEquals(1, res.path("messages").size());
+        assertTrue(res.path("conversation_events").isMissingNode());
+        verify(historyReader, never()).listEvents(any(), any(), anyLong(), anyInt());
+        verify(historyReader, never()).listNewestEvents(any(), any(), anyLong(), anyInt());
+    }
+}
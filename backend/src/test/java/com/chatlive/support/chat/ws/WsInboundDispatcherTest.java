@@ -0,0 +1,105 @@
+package com.chatlive.support.chat.ws;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WsInboundDispatcherTest {
+
+    @Test
+    void frames_of_one_session_run_in_order() throws Exception {
+        var dispatcher = new WsInboundDispatcher(new SimpleMeterRegistry(), 1000, 4);
+        var session = session("s1");
+        List<Integer> seen = new CopyOnWriteArrayList<>();
+        var done = new CountDownLatch(500);
+        for (int i = 0; i < 500; i++) {
+            int n = i;
+            assertTrue(dispatcher.dispatch(session, () -> {
+                seen.add(n);
+                done.countDown();
+            }));
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, seen.get(i));
+        }
+        dispatcher.destroy();
+    }
+
+    @Test
+    void rejects_when_session_has_too_many_in_flight() throws Exception {
+        var dispatcher = new WsInboundDispatcher(new SimpleMeterRegistry(), 2, 4);
+        var session = session("s1");
+        var release = new CountDownLatch(1);
+        assertTrue(dispatcher.dispatch(session, release::await));
+        assertTrue(dispatcher.dispatch(session, () -> { }));
+        assertFalse(dispatcher.dispatch(session, () -> { }));
+        release.countDown();
+        dispatcher.destroy();
+    }
+
+    @Test
+    void pong_is_not_delayed_by_saturated_db_permits() throws Exception {
+        var dispatcher = new WsInboundDispatcher(new SimpleMeterRegistry(), 1000, 2);
+        var release = new CountDownLatch(1);
+
+        // MSG_SEND-like traffic from many sessions holding (and queueing for) every database permit.
+        for (int i = 0; i < 50; i++) {
+            dispatcher.dispatch(session("writer" + i), () -> dispatcher.withDbPermit(release::await));
+        }
+
+        var pong = new CountDownLatch(1);
+        long start = System.nanoTime();
+        dispatcher.dispatch(session("pinger"), pong::countDown);
+        assertTrue(pong.await(1, TimeUnit.SECONDS));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMs < 200, "pong took " + elapsedMs + "ms");
+
+        release.countDown();
+        dispatcher.destroy();
+    }
+
+    @Test
+    void senders_waiting_on_one_batch_commit_do_not_hold_db_permits() throws Exception {
+        var dispatcher = new WsInboundDispatcher(new SimpleMeterRegistry(), 1000, 2);
+        // One write batch that commits only once all 20 senders have joined it (a MessageWritePipeline window).
+        var joined = new CountDownLatch(20);
+        var commit = new CompletableFuture<Void>();
+        var acked = new CountDownLatch(20);
+
+        for (int i = 0; i < 20; i++) {
+            dispatcher.dispatch(session("sender" + i), () -> {
+                var write = dispatcher.callWithDbPermit(() -> {
+                    joined.countDown();
+                    return commit;
+                });
+                write.join();
+                dispatcher.withDbPermit(acked::countDown);
+            });
+        }
+
+        assertTrue(joined.await(2, TimeUnit.SECONDS), "senders blocked behind permits held across the commit wait");
+        commit.complete(null);
+        assertTrue(acked.await(2, TimeUnit.SECONDS));
+        dispatcher.destroy();
+    }
+
+    private static WebSocketSession session(String id) {
+        var session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        return session;
+    }
+}
@@ -0,0 +1,111 @@
+package com.chatlive.support.chat.ws;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WsOutboundDispatcherTest {
+
+    private static final int MAX_BYTES = 2048;
+
+    private static TextMessage frame(int bytes) {
+        return new TextMessage("x".repeat(bytes));
+    }
+
+    private static double queueDepth(SimpleMeterRegistry registry) {
+        return registry.get("chatlive.ws.outbound.queue_depth").gauge().value();
+    }
+
+    @Test
+    void oversized_frame_on_an_empty_queue_is_delivered() throws Exception {
+        var registry = new SimpleMeterRegistry();
+        var dispatcher = new WsOutboundDispatcher(registry, 16, MAX_BYTES, "close");
+        var session = session("s1");
+        dispatcher.register(session);
+
+        assertTrue(dispatcher.send(session, frame(MAX_BYTES * 4)));
+
+        verify(session, timeout(2000)).sendMessage(any());
+        verify(session, never()).close(any());
+        dispatcher.destroy();
+    }
+
+    @Test
+    void oversized_frame_behind_queued_frames_evicts_and_counters_return_to_zero() throws Exception {
+        var registry = new SimpleMeterRegistry();
+        var dispatcher = new WsOutboundDispatcher(registry, 16, MAX_BYTES, "close");
+        var session = session("s1");
+        var writing = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        doAnswer(inv -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(session).sendMessage(any());
+        dispatcher.register(session);
+
+        // First frame is taken by the writer and blocks in sendMessage; the next ones wait in the queue.
+        assertTrue(dispatcher.send(session, frame(10)));
+        assertTrue(writing.await(2, TimeUnit.SECONDS));
+        assertTrue(dispatcher.send(session, frame(10)));
+        assertTrue(dispatcher.send(session, frame(10)));
+        assertEquals(2.0, queueDepth(registry));
+
+        assertFalse(dispatcher.send(session, frame(MAX_BYTES * 4)));
+        verify(session, timeout(2000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        release.countDown();
+
+        assertEquals(0.0, queueDepth(registry));
+        assertEquals(2.0, registry.get("chatlive.ws.outbound.dropped_frames").counter().count());
+        dispatcher.destroy();
+    }
+
+    @Test
+    void close_after_flush_drops_what_was_queued_behind_it() throws Exception {
+        var registry = new SimpleMeterRegistry();
+        var dispatcher = new WsOutboundDispatcher(registry, 16, MAX_BYTES, "close");
+        var session = session("s1");
+        var release = new CountDownLatch(1);
+        doAnswer(inv -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(session).sendMessage(any());
+        dispatcher.register(session);
+
+        dispatcher.send(session, frame(10));
+        dispatcher.closeAfterFlush(session, CloseStatus.NORMAL);
+        dispatcher.send(session, frame(10));
+        release.countDown();
+
+        verify(session, timeout(2000)).close(CloseStatus.NORMAL);
+        // The writer counts down after close(); give it a moment to finish the drain.
+        for (int i = 0; i < 100 && queueDepth(registry) != 0.0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0.0, queueDepth(registry));
+        dispatcher.destroy();
+    }
+
+    private static WebSocketSession session(String id) {
+        var session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        return session;
+    }
+}
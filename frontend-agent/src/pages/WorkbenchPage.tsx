@@ -83,6 +83,7 @@ export function WorkbenchPage({ mode = "inbox" }: WorkbenchPageProps) {
         loadConversationDetail,
         setStarred,
         loadHistory,
+        loadOlderMessages,
         sendText,
         sendRead,
         sendTyping,
@@ -356,20 +357,18 @@ export function WorkbenchPage({ mode = "inbox" }: WorkbenchPageProps) {
 
     const [contextDrawerOpen, setContextDrawerOpen] = useState(false);
 
-    const [historyLimit, setHistoryLimit] = useState(50);
+    const [hasOlderHistory, setHasOlderHistory] = useState(true);
     const [historyLoading, setHistoryLoading] = useState(false);
 
     useEffect(() => {
-        setHistoryLimit(50);
+        setHasOlderHistory(true);
     }, [selectedId]);
 
     async function loadOlderHistory() {
         if (!selectedId) return;
-        const next = Math.min(2000, historyLimit + 50);
         setHistoryLoading(true);
         try {
-            await loadHistory(selectedId, next);
-            setHistoryLimit(next);
+            setHasOlderHistory(await loadOlderMessages(selectedId, 50));
         } finally {
             setHistoryLoading(false);
         }
@@ -639,7 +638,7 @@ export function WorkbenchPage({ mode = "inbox" }: WorkbenchPageProps) {
                                     getAttachmentUrl={downloadAttachment}
                                     onOpenQuickReplies={() => setQrOpen(true)}
                                     onReopen={onReopenConversation}
-                                    canLoadOlder={Boolean(selectedId) && messages.length >= historyLimit && historyLimit < 2000}
+                                    canLoadOlder={Boolean(selectedId) && hasOlderHistory}
                                     loadingOlder={historyLoading}
                                     onLoadOlder={loadOlderHistory}
                                 />
@@ -207,6 +207,7 @@ type ChatState = {
     disconnectWs: () => void;
 
     loadHistory: (conversationId: string, limit?: number) => Promise<void>;
+    loadOlderMessages: (conversationId: string, limit?: number) => Promise<boolean>;
     sync: (conversationId: string) => void;
 
     sendText: (conversationId: string, text: string) => void;
@@ -532,6 +533,24 @@ function addSystemEvents(conversationId: string, incoming: ConversationSystemEve
     });
 }
 
+function dispatchAgentStatus(obj: Record<string, unknown>) {
+    const userId = String(obj.user_id ?? "");
+    if (!userId) return;
+    window.dispatchEvent(
+        new CustomEvent("chatlive:agentStatus", {
+            detail: {
+                user_id: userId,
+                status: obj.status,
+                effective_status: obj.effective_status,
+                max_concurrent: obj.max_concurrent,
+                assigned_active: obj.assigned_active,
+                remaining_capacity: obj.remaining_capacity,
+                can_accept: obj.can_accept,
+            },
+        }),
+    );
+}
+
 function handleWsEvent(e: WsInboundEvent) {
     if (!e || typeof e !== "object") return;
 
@@ -564,6 +583,20 @@ function handleWsEvent(e: WsInboundEvent) {
         return;
     }
 
+    if (e.type === "UNREAD") {
+        // Server-maintained unread count for one conversation (absolute value).
+        const obj = e as Record<string, unknown>;
+        const convId = String(obj.conversation_id ?? "");
+        if (!convId) return;
+        const unread = Math.max(0, Number(obj.unread_count ?? 0));
+        useChatStore.setState((prev) => ({
+            conversations: prev.conversations.map((c) =>
+                c.id === convId ? { ...c, unread_count: prev.selectedConversationId === convId ? 0 : unread } : c,
+            ),
+        }));
+        return;
+    }
+
     if (e.type === "SESSION") {
         const obj = e as Record<string, unknown>;
         saveSessionToStorage(obj);
@@ -571,22 +604,17 @@ function handleWsEvent(e: WsInboundEvent) {
     }
 
     if (e.type === "AGENT_STATUS") {
-        const obj = e as Record<string, unknown>;
-        const userId = String(obj.user_id ?? "");
-        if (!userId) return;
-        window.dispatchEvent(
-            new CustomEvent("chatlive:agentStatus", {
-                detail: {
-                    user_id: userId,
-                    status: obj.status,
-                    effective_status: obj.effective_status,
-                    max_concurrent: obj.max_concurrent,
-                    assigned_active: obj.assigned_active,
-                    remaining_capacity: obj.remaining_capacity,
-                    can_accept: obj.can_accept,
-                },
-            }),
-        );
+        dispatchAgentStatus(e as Record<string, unknown>);
+        return;
+    }
+
+    if (e.type === "AGENT_STATUS_BATCH") {
+        const agents = (e as Record<string, unknown>).agents;
+        if (!Array.isArray(agents)) return;
+        for (const item of agents) {
+            const obj = asRecord(item);
+            if (obj) dispatchAgentStatus(obj);
+        }
         return;
     }
 
@@ -739,7 +767,8 @@ function handleWsEvent(e: WsInboundEvent) {
         if (msgs.length) {
             addMessages(convId, msgs);
             const last = msgs[msgs.length - 1];
-            if (last) patchConversationLastMessage(convId, last);
+            // A "before" page is old history, not the live edge.
+            if (last && e.direction !== "before") patchConversationLastMessage(convId, last);
         }
 
         const evRaw = (e as unknown as { conversation_events?: unknown[] }).conversation_events;
@@ -1012,7 +1041,9 @@ export const useChatStore = create<ChatState>((set, get) => ({
             ws.subscribe(id);
             const msgs = get().messagesByConversationId[id] || [];
             const lastId = msgs.length ? msgs[msgs.length - 1].id : null;
-            ws.sync(id, lastId);
+            // Nothing cached yet: open at the newest page instead of replaying history from the start.
+            if (lastId) ws.sync(id, lastId);
+            else ws.syncTail(id);
         }
 
         if (id) {
@@ -1068,7 +1099,7 @@ export const useChatStore = create<ChatState>((set, get) => ({
     loadHistory: async (conversationId, limit = 50) => {
         if (!conversationId) return;
         const res = await http.get<unknown[]>(`/api/v1/conversations/${encodeURIComponent(conversationId)}/messages`, {
-            params: { limit },
+            params: { tail: true, limit },
         });
         const list = Array.isArray(res.data) ? res.data : [];
         const msgs = list.map(coerceMessageItem).filter((x): x is MessageItem => Boolean(x));
@@ -1106,6 +1137,20 @@ export const useChatStore = create<ChatState>((set, get) => ({
         });
     },
 
+    loadOlderMessages: async (conversationId, limit = 50) => {
+        if (!conversationId) return false;
+        const held = get().messagesByConversationId[conversationId] || [];
+        const oldestId = held.length ? held[0].id : null;
+        const res = await http.get<unknown[]>(`/api/v1/conversations/${encodeURIComponent(conversationId)}/messages`, {
+            params: oldestId ? { before_msg_id: oldestId, limit } : { tail: true, limit },
+        });
+        const list = Array.isArray(res.data) ? res.data : [];
+        const msgs = list.map(coerceMessageItem).filter((x): x is MessageItem => Boolean(x));
+        if (msgs.length) addMessages(conversationId, msgs);
+        // A short page means we reached the start of the conversation.
+        return list.length >= limit;
+    },
+
     sync: (conversationId) => {
         if (!conversationId) return;
         const ws = ensureWs();
@@ -1113,7 +1158,8 @@ export const useChatStore = create<ChatState>((set, get) => ({
         ws.subscribe(conversationId);
         const msgs = get().messagesByConversationId[conversationId] || [];
         const lastId = msgs.length ? msgs[msgs.length - 1].id : null;
-        ws.sync(conversationId, lastId);
+        if (lastId) ws.sync(conversationId, lastId);
+        else ws.syncTail(conversationId);
     },
 
     sendText: (conversationId, text) => {
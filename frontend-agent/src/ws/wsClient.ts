@@ -2,7 +2,19 @@ export type WsStatus = "disconnected" | "connecting" | "connected";
 
 export type WsInboundEvent =
     | { type: "MSG"; conversation_id?: string; msg: unknown }
-    | { type: "SYNC_RES"; conversation_id?: string; messages?: unknown[]; conversation_events?: unknown[] }
+    | {
+          type: "SYNC_RES";
+          conversation_id?: string;
+          messages?: unknown[];
+          has_more?: boolean;
+          next_after_msg_id?: string;
+          next_after_seq?: number;
+          direction?: "tail" | "before";
+          has_more_before?: boolean;
+          prev_before_msg_id?: string;
+          prev_before_seq?: number;
+          conversation_events?: unknown[];
+      }
     | { type: "MSG_ACK"; msg_id?: string; client_msg_id?: string }
     | { type: "SESSION"; session_id?: string; heartbeat_interval_seconds?: number; heartbeat_ttl_seconds?: number }
     | {
@@ -15,6 +27,8 @@ export type WsInboundEvent =
           remaining_capacity?: number;
           can_accept?: boolean;
       }
+    | { type: "AGENT_STATUS_BATCH"; agents?: unknown[] }
+    | { type: "UNREAD"; conversation_id?: string; unread_count?: number }
     | {
           type: "CONV_EVENT";
           conversation_id?: string;
@@ -180,15 +194,23 @@ export class WsClient {
         this.subscribedConversationIds = next;
     }
 
-    sync(conversationId: string, afterMsgId: string | null) {
+    sync(conversationId: string, afterMsgId: string | null, afterSeq?: number | null) {
         if (!conversationId) return;
         this.send({
             type: "SYNC",
             conversation_id: conversationId,
             after_msg_id: afterMsgId,
+            // Preferred by the server when present (messages carry a per-conversation seq).
+            ...(afterSeq != null ? { after_seq: afterSeq } : {}),
         });
     }
 
+    // Newest page first; older pages are fetched lazily on scroll (see chatStore.loadOlderMessages).
+    syncTail(conversationId: string) {
+        if (!conversationId) return;
+        this.send({ type: "SYNC", conversation_id: conversationId, tail: true });
+    }
+
     sendText(conversationId: string, text: string) {
         if (!conversationId || !text.trim()) return;
         this.send({